@@ -5,8 +5,14 @@
  */
 package com.todoroo.andlib.data;
 
+import java.io.File;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -14,7 +20,11 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.database.sqlite.SQLiteTransactionListener;
 import android.util.Log;
 
 import com.todoroo.andlib.data.Property.PropertyVisitor;
@@ -22,6 +32,7 @@ import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
 import com.todoroo.andlib.service.ExceptionService;
+import com.todoroo.andlib.sql.BoundQuery;
 import com.todoroo.andlib.utility.AndroidUtilities;
 
 /**
@@ -35,6 +46,11 @@ import com.todoroo.andlib.utility.AndroidUtilities;
  * <p>
  * Direct querying is not recommended for type safety reasons. Instead, use one
  * of the service classes to issue the request and return a {@link TodorooCursor}.
+ * <p>
+ * All writes go through one connection and are serialized on this object.
+ * Databases that return true from {@link #useWriteAheadLogging()} run in
+ * write-ahead logging mode, where the platform spreads queries over its
+ * pool of read connections so that they don't wait for writes in progress.
  *
  * @author Tim Su <tim@todoroo.com>
  *
@@ -59,6 +75,15 @@ abstract public class AbstractDatabase {
      */
     protected abstract int getVersion();
 
+    /**
+     * Whether to run in write-ahead logging mode, letting queries run while
+     * another thread writes. Return false to run every statement on a
+     * single connection
+     */
+    protected boolean useWriteAheadLogging() {
+        return false;
+    }
+
     /**
      * Called after database and tables are created. Use this method to
      * create indices and perform other database maintenance
@@ -86,6 +111,92 @@ abstract public class AbstractDatabase {
      */
     protected SQLiteDatabase database = null;
 
+    /**
+     * First platform version whose SQLite supports write-ahead logging
+     */
+    private static final int WAL_MIN_SDK = 11;
+
+    /**
+     * Maximum number of compiled statements kept open
+     */
+    private static final int STATEMENT_CACHE_SIZE = 16;
+
+    /**
+     * Compiled statements keyed by their SQL, evicted least-recently-used.
+     * Statements belong to the open database and are closed with it
+     */
+    private final LinkedHashMap<String, SQLiteStatement> statementCache =
+        new LinkedHashMap<String, SQLiteStatement>(STATEMENT_CACHE_SIZE, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if(size() <= STATEMENT_CACHE_SIZE)
+                    return false;
+                eldest.getValue().close();
+                return true;
+            }
+        };
+
+    /** Database the cached statements were compiled against */
+    private SQLiteDatabase statementCacheDatabase = null;
+
+    /**
+     * Compiled statements of one thread for queries run on
+     * {@link #walDatabase}. Statements hold their bound arguments, so they
+     * can't be shared between threads that don't hold this object's lock
+     */
+    private static final class ReadStatements extends LinkedHashMap<String, SQLiteStatement> {
+        private static final long serialVersionUID = 1L;
+
+        /** Database the statements were compiled against */
+        SQLiteDatabase database = null;
+
+        ReadStatements() {
+            super(STATEMENT_CACHE_SIZE, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+            if(size() <= STATEMENT_CACHE_SIZE)
+                return false;
+            eldest.getValue().close();
+            return true;
+        }
+
+        void closeAll() {
+            for(SQLiteStatement statement : values())
+                statement.close();
+            clear();
+        }
+    }
+
+    private final ThreadLocal<ReadStatements> readStatements = new ThreadLocal<ReadStatements>() {
+        @Override
+        protected ReadStatements initialValue() {
+            return new ReadStatements();
+        }
+    };
+
+    /**
+     * {@link #database} once write-ahead logging is enabled on it, so that
+     * queries can use it without waiting for writes, or null when all
+     * statements are serialized on this object
+     */
+    private volatile SQLiteDatabase walDatabase = null;
+
+    /** Timings of the statements run against this database */
+    private final QueryProfiler profiler = new QueryProfiler();
+
+    /** Source recorded for statements not issued through a DAO */
+    private static final String RAW_SOURCE = "raw";
+
+    /** Start time of statements run while profiling is off */
+    private static final long NOT_PROFILED = Long.MIN_VALUE;
+
+    /** Model factories for each table's model class, built on first use */
+    private HashMap<Class<? extends AbstractModel>, ModelFactory<?>> modelFactories = null;
+
     // --- listeners
 
     /**
@@ -105,11 +216,211 @@ abstract public class AbstractDatabase {
     }
 
     protected void onDatabaseUpdated() {
+        if(batchDepth > 0) {
+            batchUpdated = true;
+            return;
+        }
         for(DatabaseUpdateListener listener : listeners) {
             listener.onDatabaseUpdated();
         }
     }
 
+    /**
+     * Interface for responding to changes to particular tables
+     */
+    public interface TableUpdateListener {
+        /**
+         * Called after rows of a table were inserted, updated or deleted.
+         * Runs while the database is locked, so must return quickly
+         *
+         * @param table name of the changed table
+         * @param values columns set by an update, or null when rows may
+         * have been added or removed
+         */
+        public void onTableUpdated(String table, ContentValues values);
+    }
+
+    private final CopyOnWriteArrayList<TableUpdateListener> tableListeners =
+        new CopyOnWriteArrayList<TableUpdateListener>();
+
+    /** Number of updates to one table a batch reports one by one */
+    private static final int MAX_BATCH_TABLE_UPDATES = 100;
+
+    /**
+     * Updates made by the running batch, by table. Null for a table whose
+     * rows may have been added or removed, or that was updated too often
+     */
+    private final LinkedHashMap<String, ArrayList<ContentValues>> batchTables =
+        new LinkedHashMap<String, ArrayList<ContentValues>>();
+
+    public void addTableListener(TableUpdateListener listener) {
+        tableListeners.add(listener);
+    }
+
+    public void removeTableListener(TableUpdateListener listener) {
+        tableListeners.remove(listener);
+    }
+
+    /**
+     * Notify table listeners of a write. Changes made inside a batch are
+     * reported when the batch ends, since they are not visible to other
+     * connections before that. Updates are reported one by one, unless
+     * rows were added or removed or there were too many, in which case the
+     * table is reported once with no values
+     */
+    protected void onTableUpdated(String table, ContentValues values) {
+        if(tableListeners.isEmpty())
+            return;
+        if(batchDepth > 0) {
+            if(!batchTables.containsKey(table))
+                batchTables.put(table, new ArrayList<ContentValues>());
+            ArrayList<ContentValues> updates = batchTables.get(table);
+            if(updates == null)
+                return;
+            if(values == null || updates.size() >= MAX_BATCH_TABLE_UPDATES)
+                batchTables.put(table, null);
+            else
+                updates.add(new ContentValues(values));
+            return;
+        }
+        for(TableUpdateListener listener : tableListeners)
+            listener.onTableUpdated(table, values);
+    }
+
+    // --- write batches
+
+    /**
+     * Interface for state that DAOs collect during a write batch and write
+     * out or publish when it ends
+     */
+    public interface BatchParticipant {
+        /**
+         * Called before the batch transaction is committed
+         * @return false if the batch should be rolled back
+         */
+        public boolean onBatchCommitting();
+
+        /**
+         * Called after the batch transaction has ended
+         * @param committed true if the batch was committed
+         */
+        public void onBatchFinished(boolean committed);
+    }
+
+    /** Depth of nested {@link #runInBatch} calls */
+    private int batchDepth = 0;
+
+    /** Set when the running batch must be rolled back */
+    private boolean batchFailed = false;
+
+    /** Set when the running batch has changed the database */
+    private boolean batchUpdated = false;
+
+    private final ArrayList<BatchParticipant> batchParticipants = new ArrayList<BatchParticipant>();
+
+    /**
+     * Run a group of writes in one transaction. While a batch runs, inserts
+     * use cached compiled statements, DAOs buffer outstanding entries and
+     * model update notifications, and database listeners are notified once
+     * at the end. Nested batches join the outermost one.
+     *
+     * @param operation writes to run
+     * @return true if the batch was committed
+     */
+    public synchronized boolean runInBatch(Runnable operation) {
+        if(batchDepth > 0) {
+            batchDepth++;
+            try {
+                operation.run();
+            } finally {
+                batchDepth--;
+            }
+            return !batchFailed;
+        }
+
+        SQLiteDatabase db = getDatabase();
+        batchDepth = 1;
+        batchFailed = false;
+        batchUpdated = false;
+        boolean successful = false;
+        db.beginTransactionWithListener(new SQLiteTransactionListener() {
+            @Override
+            public void onRollback() {
+                batchFailed = true;
+            }
+            @Override
+            public void onCommit() {/**/}
+            @Override
+            public void onBegin() {/**/}
+        });
+        try {
+            operation.run();
+            for(int i = 0; i < batchParticipants.size() && !batchFailed; i++) {
+                if(!batchParticipants.get(i).onBatchCommitting())
+                    batchFailed = true;
+            }
+            if(!batchFailed) {
+                db.setTransactionSuccessful();
+                successful = true;
+            }
+        } finally {
+            try {
+                db.endTransaction();
+            } finally {
+                boolean committed = successful && !batchFailed;
+                batchDepth = 0;
+                BatchParticipant[] participants = batchParticipants.toArray(
+                        new BatchParticipant[batchParticipants.size()]);
+                batchParticipants.clear();
+                for(BatchParticipant participant : participants)
+                    participant.onBatchFinished(committed);
+                if(batchUpdated) {
+                    batchUpdated = false;
+                    onDatabaseUpdated();
+                }
+                if(!batchTables.isEmpty()) {
+                    ArrayList<Map.Entry<String, ArrayList<ContentValues>>> tables =
+                        new ArrayList<Map.Entry<String, ArrayList<ContentValues>>>(batchTables.entrySet());
+                    batchTables.clear();
+                    for(Map.Entry<String, ArrayList<ContentValues>> table : tables) {
+                        if(table.getValue() == null)
+                            onTableUpdated(table.getKey(), null);
+                        else
+                            for(ContentValues values : table.getValue())
+                                onTableUpdated(table.getKey(), values);
+                    }
+                }
+            }
+        }
+        return successful && !batchFailed;
+    }
+
+    /**
+     * @return true if the calling thread is running a write batch. Batches
+     *         hold this object's lock, so other threads get false without
+     *         waiting for the batch to end
+     */
+    public boolean isInBatch() {
+        return Thread.holdsLock(this) && batchDepth > 0;
+    }
+
+    /**
+     * Register state to be written or published when the running batch ends
+     */
+    public synchronized void joinBatch(BatchParticipant participant) {
+        if(batchDepth == 0)
+            throw new IllegalStateException("No batch is running");
+        if(!batchParticipants.contains(participant))
+            batchParticipants.add(participant);
+    }
+
+    /**
+     * Mark the running batch to be rolled back when it ends
+     */
+    public synchronized void failBatch() {
+        batchFailed = true;
+    }
+
 	// --- internal implementation
 
     @Autowired
@@ -132,6 +443,31 @@ abstract public class AbstractDatabase {
         throw new UnsupportedOperationException("Unknown model class " + modelType); //$NON-NLS-1$
     }
 
+    /**
+     * Return the factory for models stored in this database. Factories for
+     * all tables are registered together the first time one is requested
+     * @param modelType
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized final <TYPE extends AbstractModel> ModelFactory<TYPE> getModelFactory(Class<TYPE> modelType) {
+        if(modelFactories == null) {
+            HashMap<Class<? extends AbstractModel>, ModelFactory<?>> factories =
+                new HashMap<Class<? extends AbstractModel>, ModelFactory<?>>();
+            for(Table table : getTables())
+                factories.put(table.modelClass, createModelFactory(table.modelClass));
+            modelFactories = factories;
+        }
+        ModelFactory<?> factory = modelFactories.get(modelType);
+        if(factory == null)
+            throw new UnsupportedOperationException("Unknown model class " + modelType); //$NON-NLS-1$
+        return (ModelFactory<TYPE>) factory;
+    }
+
+    private static <TYPE extends AbstractModel> ModelFactory<TYPE> createModelFactory(Class<TYPE> modelType) {
+        return new ModelFactory<TYPE>(modelType);
+    }
+
     public final Table getOutstandingTable(Class<? extends AbstractModel> modelType) {
         try {
             Field f = modelType.getDeclaredField("OUTSTANDING_MODEL");
@@ -169,6 +505,7 @@ abstract public class AbstractDatabase {
 
         try {
             database = helper.getWritableDatabase();
+            enableWriteAheadLogging();
         } catch (NullPointerException e) {
             // don't know why this happens
             throw new IllegalStateException(e);
@@ -201,6 +538,8 @@ abstract public class AbstractDatabase {
      * Close the database if it has been opened previously
      */
     public synchronized final void close() {
+        clearStatementCache();
+        walDatabase = null;
         if(database != null) {
             database.close();
         }
@@ -213,7 +552,13 @@ abstract public class AbstractDatabase {
      */
     public synchronized final void clear() {
         close();
-        ContextManager.getContext().deleteDatabase(getName());
+        Context context = ContextManager.getContext();
+        context.deleteDatabase(getName());
+
+        // older platforms leave write-ahead log files behind
+        String path = context.getDatabasePath(getName()).getPath();
+        new File(path + "-wal").delete();
+        new File(path + "-shm").delete();
     }
 
     /**
@@ -227,6 +572,99 @@ abstract public class AbstractDatabase {
         return database;
     }
 
+    /**
+     * Database to run a query on. In write-ahead logging mode, this doesn't
+     * wait for writes in progress: the platform runs the query on one of
+     * its read connections, or on the writer for a thread in a transaction,
+     * which has to see its own uncommitted changes.
+     *
+     * @return sql database for reading. opens database if not yet open
+     */
+    public final SQLiteDatabase getReadDatabase() {
+        SQLiteDatabase reader = walDatabase;
+        if(reader != null)
+            return reader;
+        return getDatabase();
+    }
+
+    /**
+     * Switch the database to write-ahead logging. Stays on a single
+     * connection if the platform's SQLite is too old or the switch fails
+     */
+    private void enableWriteAheadLogging() {
+        walDatabase = null;
+        if(!useWriteAheadLogging() || AndroidUtilities.getSdkVersion() < WAL_MIN_SDK ||
+                database == null || database.isReadOnly())
+            return;
+
+        try {
+            if(database.enableWriteAheadLogging())
+                walDatabase = database;
+        } catch (RuntimeException e) {
+            Log.e("database-" + getName(), "Error enabling write-ahead logging", e);
+        }
+    }
+
+    /**
+     * Bring the indexes of this database's tables in line with those
+     * declared by their models: missing indexes are created, indexes whose
+     * definition changed are rebuilt and indexes no longer declared are
+     * dropped. Indexes SQLite creates for constraints are left alone.
+     * <p>
+     * Called after the database is created or upgraded, so declaring a
+     * new index only requires a version bump.
+     */
+    public synchronized final void updateIndexes() {
+        HashMap<String, String> existingSql = new HashMap<String, String>();
+        HashMap<String, String> existingTable = new HashMap<String, String>();
+        Cursor cursor = database.rawQuery("SELECT name, tbl_name, sql FROM sqlite_master " +
+                "WHERE type = 'index' AND sql IS NOT NULL", null);
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                existingTable.put(cursor.getString(0), cursor.getString(1));
+                existingSql.put(cursor.getString(0), cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ArrayList<String> tables = new ArrayList<String>();
+        for(Table table : getTables()) {
+            tables.add(table.name);
+            for(Index index : table.getIndexes()) {
+                String sql = index.getCreateSql();
+                String current = existingSql.remove(index.name);
+                existingTable.remove(index.name);
+                if(current != null && current.replaceAll("\\s+", " ").equalsIgnoreCase(sql))
+                    continue;
+                if(current != null)
+                    execIndexSql("DROP INDEX " + index.name);
+                execIndexSql(sql);
+            }
+        }
+
+        for(Map.Entry<String, String> stale : existingTable.entrySet()) {
+            if(tables.contains(stale.getValue()))
+                execIndexSql("DROP INDEX " + stale.getKey());
+        }
+    }
+
+    private void execIndexSql(String sql) {
+        try {
+            database.execSQL(sql);
+        } catch (SQLiteException e) {
+            Log.e("database-" + getName(), "Error updating index: " + sql, e);
+        }
+    }
+
+    /**
+     * @return profiler collecting statement timings for this database.
+     * It is disabled until {@link QueryProfiler#setEnabled(boolean)} is called
+     */
+    public QueryProfiler getProfiler() {
+        return profiler;
+    }
+
     /**
      * @return human-readable database name for debugging
      */
@@ -240,23 +678,283 @@ abstract public class AbstractDatabase {
     /*
      * @see android.database.sqlite.SQLiteDatabase#rawQuery(String  sql, String[] selectionArgs)
      */
-    public synchronized Cursor rawQuery(String sql, String[] selectionArgs) {
-        return getDatabase().rawQuery(sql, selectionArgs);
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        return rawQuery(sql, selectionArgs, RAW_SOURCE);
+    }
+
+    /**
+     * Run a query, recording its timing under the given source when
+     * profiling
+     */
+    Cursor rawQuery(String sql, String[] selectionArgs, String source) {
+        if(!profiler.isEnabled())
+            return runQuery(sql, selectionArgs);
+
+        long start = System.nanoTime();
+        Cursor cursor = runQuery(sql, selectionArgs);
+        int rows = cursor.getCount(); // runs the query
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        if(profiler.record(source, sql, elapsed, rows, true))
+            profiler.recordPlan(source, sql, explain(sql, selectionArgs));
+        return cursor;
+    }
+
+    private Cursor runQuery(String sql, String[] selectionArgs) {
+        if(walDatabase == null) {
+            synchronized(this) {
+                return getDatabase().rawQuery(sql, selectionArgs);
+            }
+        }
+        return getReadDatabase().rawQuery(sql, selectionArgs);
+    }
+
+    /**
+     * Run a parameterized query. Queries of the same shape share their SQL,
+     * which lets SQLite reuse the compiled statement
+     */
+    public Cursor rawQuery(BoundQuery query) {
+        return rawQuery(query.sql, query.getStringArgs(), RAW_SOURCE);
+    }
+
+    Cursor rawQuery(BoundQuery query, String source) {
+        return rawQuery(query.sql, query.getStringArgs(), source);
+    }
+
+    /**
+     * @return the steps of the query plan, one per line
+     */
+    private String explain(String sql, String[] selectionArgs) {
+        StringBuilder plan = new StringBuilder();
+        try {
+            Cursor cursor = runQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+            try {
+                int detail = cursor.getColumnIndex("detail");
+                if(detail < 0)
+                    detail = cursor.getColumnCount() - 1;
+                for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                    if(plan.length() > 0)
+                        plan.append('\n');
+                    plan.append(cursor.getString(detail));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (Exception e) {
+            Log.e("database-" + getName(), "Error explaining " + sql, e);
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Run a single-value query through a cached compiled statement
+     *
+     * @param query parameterized query returning one column
+     * @param defaultValue value to return if there are no rows
+     * @return value from the first row, or defaultValue
+     */
+    public long simpleQueryForLong(BoundQuery query, long defaultValue) {
+        return simpleQueryForLong(query, defaultValue, RAW_SOURCE);
+    }
+
+    long simpleQueryForLong(BoundQuery query, long defaultValue, String source) {
+        long start = profiler.isEnabled() ? System.nanoTime() : NOT_PROFILED;
+        boolean found = true;
+        try {
+            SQLiteDatabase reader = walDatabase;
+            if(reader == null) {
+                synchronized(this) {
+                    return bindStatement(query).simpleQueryForLong();
+                }
+            }
+            return bindReadStatement(reader, query).simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            found = false;
+            return defaultValue;
+        } finally {
+            if(start != NOT_PROFILED)
+                recordSimpleQuery(query, source, start, found);
+        }
+    }
+
+    /**
+     * Run a single-value query through a cached compiled statement
+     *
+     * @param query parameterized query returning one column
+     * @param defaultValue value to return if there are no rows
+     * @return value from the first row, or defaultValue
+     */
+    public String simpleQueryForString(BoundQuery query, String defaultValue) {
+        return simpleQueryForString(query, defaultValue, RAW_SOURCE);
+    }
+
+    String simpleQueryForString(BoundQuery query, String defaultValue, String source) {
+        long start = profiler.isEnabled() ? System.nanoTime() : NOT_PROFILED;
+        boolean found = true;
+        try {
+            SQLiteDatabase reader = walDatabase;
+            if(reader == null) {
+                synchronized(this) {
+                    return bindStatement(query).simpleQueryForString();
+                }
+            }
+            return bindReadStatement(reader, query).simpleQueryForString();
+        } catch (SQLiteDoneException e) {
+            found = false;
+            return defaultValue;
+        } finally {
+            if(start != NOT_PROFILED)
+                recordSimpleQuery(query, source, start, found);
+        }
+    }
+
+    private void recordSimpleQuery(BoundQuery query, String source, long start, boolean found) {
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        if(profiler.record(source, query.sql, elapsed, found ? 1 : 0, true))
+            profiler.recordPlan(source, query.sql, explain(query.sql, query.getStringArgs()));
+    }
+
+    private static String where(String whereClause) {
+        return whereClause == null ? "" : " WHERE " + whereClause;
+    }
+
+    /**
+     * Record the timing of a write when profiling
+     */
+    private void recordWrite(String table, String shape, long start, int rows) {
+        if(start == NOT_PROFILED)
+            return;
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        profiler.record(table, shape, elapsed, rows, false);
+    }
+
+    /**
+     * Get the cached statement for this query shape, compiling it if
+     * needed, and bind the query's arguments to it
+     */
+    private SQLiteStatement bindStatement(BoundQuery query) {
+        SQLiteStatement statement = cachedStatement(query.sql);
+        statement.clearBindings();
+        for(int i = 0; i < query.args.length; i++)
+            bindArgument(statement, i + 1, query.args[i]);
+        return statement;
+    }
+
+    /**
+     * Get this thread's cached statement for this query shape on the
+     * write-ahead logging database, compiling it if needed, and bind the
+     * query's arguments to it. The shared statement cache is only used
+     * while holding this object's lock, which reads here don't take.
+     * Statements compiled against a database that was since reopened are
+     * dropped. Those of threads that stop querying are left to the
+     * garbage collector
+     */
+    private SQLiteStatement bindReadStatement(SQLiteDatabase reader, BoundQuery query) {
+        ReadStatements statements = readStatements.get();
+        if(statements.database != reader) {
+            statements.closeAll();
+            statements.database = reader;
+        }
+
+        SQLiteStatement statement = statements.get(query.sql);
+        if(statement == null) {
+            statement = reader.compileStatement(query.sql);
+            statements.put(query.sql, statement);
+        }
+        statement.clearBindings();
+        for(int i = 0; i < query.args.length; i++)
+            bindArgument(statement, i + 1, query.args[i]);
+        return statement;
+    }
+
+    /**
+     * Get the cached insert statement for this table and set of columns,
+     * compiling it if needed, and bind the values to it
+     */
+    private SQLiteStatement bindInsertStatement(String table, ContentValues values) {
+        String[] columns = new String[values.size()];
+        int i = 0;
+        for(Map.Entry<String, Object> entry : values.valueSet())
+            columns[i++] = entry.getKey();
+        Arrays.sort(columns);
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for(i = 0; i < columns.length; i++)
+            sql.append(i == 0 ? "" : ",").append(columns[i]);
+        sql.append(") VALUES (");
+        for(i = 0; i < columns.length; i++)
+            sql.append(i == 0 ? "?" : ",?");
+        sql.append(")");
+
+        SQLiteStatement statement = cachedStatement(sql.toString());
+        statement.clearBindings();
+        for(i = 0; i < columns.length; i++)
+            bindArgument(statement, i + 1, values.get(columns[i]));
+        return statement;
+    }
+
+    /**
+     * Get the cached statement for this SQL, compiling it if needed
+     */
+    private SQLiteStatement cachedStatement(String sql) {
+        SQLiteDatabase db = getDatabase();
+        if(db != statementCacheDatabase) {
+            clearStatementCache();
+            statementCacheDatabase = db;
+        }
+
+        SQLiteStatement statement = statementCache.get(sql);
+        if(statement == null) {
+            statement = db.compileStatement(sql);
+            statementCache.put(sql, statement);
+        }
+        return statement;
+    }
+
+    private static void bindArgument(SQLiteStatement statement, int index, Object arg) {
+        if(arg == null)
+            statement.bindNull(index);
+        else if(arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte)
+            statement.bindLong(index, ((Number) arg).longValue());
+        else if(arg instanceof Boolean)
+            statement.bindLong(index, ((Boolean) arg) ? 1 : 0);
+        else if(arg instanceof Double || arg instanceof Float)
+            statement.bindDouble(index, ((Number) arg).doubleValue());
+        else if(arg instanceof byte[])
+            statement.bindBlob(index, (byte[]) arg);
+        else
+            statement.bindString(index, arg.toString());
+    }
+
+    private void clearStatementCache() {
+        for(SQLiteStatement statement : statementCache.values())
+            statement.close();
+        statementCache.clear();
+        statementCacheDatabase = null;
     }
 
     /*
      * @see android.database.sqlite.SQLiteDatabase#insert(String  table, String  nullColumnHack, ContentValues  values)
+     *
+     * Inside a write batch, rows are inserted through a cached compiled
+     * statement for their set of columns.
      */
     public synchronized long insert(String table, String nullColumnHack, ContentValues values) {
+        long start = profiler.isEnabled() ? System.nanoTime() : NOT_PROFILED;
         long result = -1;
         try {
-            result = getDatabase().insertOrThrow(table, nullColumnHack, values);
+            if(batchDepth > 0 && values != null && values.size() > 0)
+                result = bindInsertStatement(table, values).executeInsert();
+            else
+                result = getDatabase().insertOrThrow(table, nullColumnHack, values);
         } catch (SQLiteConstraintException e) { // Throw these exceptions
             throw e;
         } catch (Exception e) { // Suppress others
             Log.e("SQLiteDatabase", "Error inserting " + values, e);
             result = -1;
         }
+        recordWrite(table, "INSERT INTO " + table, start, result == -1 ? 0 : 1);
+        if(result != -1)
+            onTableUpdated(table, null);
         onDatabaseUpdated();
         return result;
     }
@@ -265,7 +963,11 @@ abstract public class AbstractDatabase {
      * @see android.database.sqlite.SQLiteDatabase#delete(String  table, String  whereClause, String[] whereArgs)
      */
     public synchronized int delete(String table, String whereClause, String[] whereArgs) {
+        long start = profiler.isEnabled() ? System.nanoTime() : NOT_PROFILED;
         int result = getDatabase().delete(table, whereClause, whereArgs);
+        recordWrite(table, "DELETE FROM " + table + where(whereClause), start, result);
+        if(result > 0)
+            onTableUpdated(table, null);
         onDatabaseUpdated();
         return result;
     }
@@ -274,11 +976,39 @@ abstract public class AbstractDatabase {
      * @see android.database.sqlite.SQLiteDatabase#update(String  table, ContentValues  values, String  whereClause, String[] whereArgs)
      */
     public synchronized int update(String  table, ContentValues  values, String  whereClause, String[] whereArgs) {
+        long start = profiler.isEnabled() ? System.nanoTime() : NOT_PROFILED;
         int result = getDatabase().update(table, values, whereClause, whereArgs);
+        recordWrite(table, "UPDATE " + table + where(whereClause), start, result);
+        if(result > 0)
+            onTableUpdated(table, values);
         onDatabaseUpdated();
         return result;
     }
 
+    /**
+     * Run a statement writing to the given table, for writes that insert,
+     * update and delete can't express. Listeners are notified as for those
+     * writes, with no set values
+     */
+    public void execSQL(String table, String sql, Object[] bindArgs) {
+        execSQL(table, sql, bindArgs, null);
+    }
+
+    /**
+     * Run a statement updating rows of the given table, notifying listeners
+     * of the columns it sets
+     *
+     * @param values columns the statement sets, with any values, or null
+     *        if it may add or remove rows
+     */
+    public synchronized void execSQL(String table, String sql, Object[] bindArgs, ContentValues values) {
+        long start = profiler.isEnabled() ? System.nanoTime() : NOT_PROFILED;
+        getDatabase().execSQL(sql, bindArgs);
+        recordWrite(table, sql, start, 0);
+        onTableUpdated(table, values);
+        onDatabaseUpdated();
+    }
+
     // --- helper classes
 
     /**
@@ -316,6 +1046,7 @@ abstract public class AbstractDatabase {
             // post-table-creation
             database = db;
             onCreateTables();
+            updateIndexes();
         }
 
         /**
@@ -336,6 +1067,7 @@ abstract public class AbstractDatabase {
                     throw new IllegalStateException("Missing database migration " +
                             "from " + oldVersion + " to " + newVersion);
                 }
+                updateIndexes();
             } catch (Exception e) {
                 exceptionService.reportError(String.format("database-upgrade-%s-%d-%d",
                         getName(), oldVersion, newVersion), e);
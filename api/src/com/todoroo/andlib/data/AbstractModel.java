@@ -71,15 +71,45 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
     /** User set values */
     protected ContentValues setValues = null;
 
-    /** Values from database */
-    protected ContentValues values = null;
+    /**
+     * Values from database, indexed by {@link PropertySlots} slot. Empty
+     * slots are null, explicit nulls are {@link PropertySlots#NULL}
+     */
+    private Object[] values = null;
+
+    /**
+     * {@link #getDatabaseValues()} built from {@link #values}, or null if
+     * they changed since
+     */
+    private ContentValues databaseValues = null;
+
+    /** Slot layout for this model class */
+    final PropertySlots slots = PropertySlots.forClass(getClass());
 
     /** Transitory Metadata (not saved in database) */
     protected HashMap<String, Object> transitoryData = null;
 
-    /** Get database-read values for this object */
+    /**
+     * Get database-read values for this object. The result is built when
+     * first asked for and kept until the values change, so callers must
+     * not modify it
+     */
     public ContentValues getDatabaseValues() {
-        return values;
+        if(values == null)
+            return null;
+        ContentValues result = databaseValues;
+        if(result != null)
+            return result;
+        result = new ContentValues();
+        for(int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if(value == PropertySlots.NULL)
+                result.putNull(slots.columnName(i));
+            else if(value != null)
+                AndroidUtilities.putInto(result, slots.columnName(i), value, false);
+        }
+        databaseValues = result;
+        return result;
     }
 
     /** Get the user-set values for this object */
@@ -95,7 +125,7 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
         if(defaultValues != null)
             mergedValues.putAll(defaultValues);
         if(values != null)
-            mergedValues.putAll(values);
+            mergedValues.putAll(getDatabaseValues());
         if(setValues != null)
             mergedValues.putAll(setValues);
 
@@ -107,6 +137,18 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
      */
     public void clear() {
         values = null;
+        databaseValues = null;
+        setValues = null;
+    }
+
+    /**
+     * Clear all data on this model but keep the value storage, so a model
+     * that is read from row after row doesn't reallocate it
+     */
+    void clearForReuse() {
+        if(values != null)
+            Arrays.fill(values, null);
+        databaseValues = null;
         setValues = null;
     }
 
@@ -115,10 +157,12 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
      * saved - future saves will not need to write all the data as before.
      */
     public void markSaved() {
-        if(values == null)
-            values = setValues;
-        else if(setValues != null)
-            values.putAll(setValues);
+        if(setValues != null) {
+            if(values == null)
+                values = new Object[slots.size()];
+            for(Entry<String, Object> entry : setValues.valueSet())
+                putDatabaseValue(slots.slotOf(entry.getKey()), entry.getValue());
+        }
         setValues = null;
     }
 
@@ -147,7 +191,7 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
         .append("set values:\n")
         .append(setValues).append("\n")
         .append("values:\n")
-        .append(values).append("\n");
+        .append(getDatabaseValues()).append("\n");
         return builder.toString();
     }
 
@@ -162,7 +206,9 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
         if(setValues != null)
             clone.setValues = new ContentValues(setValues);
         if(values != null)
-            clone.values = new ContentValues(values);
+            clone.values = values.clone();
+        if(transitoryData != null)
+            clone.transitoryData = new HashMap<String, Object>(transitoryData);
         return clone;
     }
 
@@ -178,38 +224,93 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
      */
     public synchronized void readPropertiesFromCursor(TodorooCursor<? extends AbstractModel> cursor) {
         if (values == null)
-            values = new ContentValues();
+            values = new Object[slots.size()];
 
         // clears user-set values
         setValues = null;
         transitoryData = null;
 
-        for (Property<?> property : cursor.getProperties()) {
+        Property<?>[] properties = cursor.getProperties();
+        for (int i = 0; i < properties.length; i++) {
             try {
-                saver.save(property, values, cursor.get(property));
+                // null values indicate unset properties, as when saving
+                Object value = cursor.getAt(i);
+                if(value != null)
+                    putDatabaseValue(slots.slotOf(properties[i]), value);
             } catch (IllegalArgumentException e) {
                 // underlying cursor may have changed, suppress
             }
         }
     }
 
+    /**
+     * Store a database value in the given slot, growing storage if the
+     * slot was assigned after it was allocated
+     */
+    void putDatabaseValue(int slot, Object value) {
+        if(values == null)
+            values = new Object[Math.max(slots.size(), slot + 1)];
+        else if(slot >= values.length) {
+            Object[] newValues = new Object[Math.max(slots.size(), slot + 1)];
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            values = newValues;
+        }
+        values[slot] = (value == null) ? PropertySlots.NULL : value;
+        databaseValues = null;
+    }
+
+    /**
+     * @return database value in the given slot, {@link PropertySlots#NULL}
+     *         for an explicit null, or null if not read
+     */
+    Object getDatabaseValue(int slot) {
+        if(values == null || slot >= values.length)
+            return null;
+        return values[slot];
+    }
+
+    /**
+     * @return number of slots of database value storage, or -1 if no
+     *         values were read
+     */
+    int getDatabaseValueSlots() {
+        return values == null ? -1 : values.length;
+    }
+
+    /**
+     * @return true if a value for this property was read from the database
+     */
+    protected boolean containsDatabaseValue(Property<?> property) {
+        return getDatabaseValue(slots.slotOf(property)) != null;
+    }
+
+    /**
+     * @return database value for the given property, or null if not read
+     */
+    protected Object getDatabaseValue(Property<?> property) {
+        Object value = getDatabaseValue(slots.slotOf(property));
+        return value == PropertySlots.NULL ? null : value;
+    }
+
     /**
      * Reads the given property. Make sure this model has this property!
      */
     public synchronized <TYPE> TYPE getValue(Property<TYPE> property) {
         Object value;
-        if(setValues != null && setValues.containsKey(property.getColumnName()))
+        if(setValues != null && setValues.size() > 0 && setValues.containsKey(property.getColumnName()))
             value = setValues.get(property.getColumnName());
 
-        else if(values != null && values.containsKey(property.getColumnName()))
-            value = values.get(property.getColumnName());
-
-        else if(getDefaultValues().containsKey(property.getColumnName()))
-            value = getDefaultValues().get(property.getColumnName());
-
-        else
-            throw new UnsupportedOperationException(
-                "Model Error: Did not read property " + property.name); //$NON-NLS-1$
+        else {
+            int slot = slots.slotOf(property);
+            value = getDatabaseValue(slot);
+            if(value == null)
+                value = slots.defaultValue(this, slot);
+            if(value == null)
+                throw new UnsupportedOperationException(
+                    "Model Error: Did not read property " + property.name); //$NON-NLS-1$
+            if(value == PropertySlots.NULL)
+                return null;
+        }
 
         // resolve properties that were retrieved with a different type than accessed
         try {
@@ -221,6 +322,8 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
                 return (TYPE) Double.valueOf((String)value);
             else if(value instanceof Integer && property instanceof LongProperty)
                 return (TYPE) Long.valueOf(((Number)value).longValue());
+            else if(value instanceof Long && property instanceof IntegerProperty)
+                return (TYPE) Integer.valueOf(((Number)value).intValue());
             return (TYPE) value;
         } catch (NumberFormatException e) {
             return (TYPE) getDefaultValues().get(property.name);
@@ -237,8 +340,12 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
     protected long getIdHelper(LongProperty id) {
         if(setValues != null && setValues.containsKey(id.name))
             return setValues.getAsLong(id.name);
-        else if(values != null && values.containsKey(id.name))
-            return values.getAsLong(id.name);
+        int slot = slots.slotOf(id);
+        Object value = getDatabaseValue(slot);
+        if(value instanceof Number)
+            return ((Number) value).longValue();
+        else if(value instanceof String)
+            return Long.valueOf((String) value);
         else
             return NO_ID;
     }
@@ -267,9 +374,7 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
     public boolean containsValue(Property<?> property) {
         if(setValues != null && setValues.containsKey(property.getColumnName()))
             return true;
-        if(values != null && values.containsKey(property.getColumnName()))
-            return true;
-        return false;
+        return getDatabaseValue(slots.slotOf(property)) != null;
     }
 
     /**
@@ -280,9 +385,8 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
     public boolean containsNonNullValue(Property<?> property) {
         if(setValues != null && setValues.containsKey(property.getColumnName()))
             return setValues.get(property.getColumnName()) != null;
-        if(values != null && values.containsKey(property.getColumnName()))
-            return values.get(property.getColumnName()) != null;
-        return false;
+        Object value = getDatabaseValue(slots.slotOf(property));
+        return value != null && value != PropertySlots.NULL;
     }
 
     // --- data storage
@@ -299,7 +403,7 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
         	return true;
 
         // values contains this key, we should check it out
-        if(values != null && values.containsKey(property.getColumnName())) {
+        if(getDatabaseValue(slots.slotOf(property)) != null) {
             TYPE value = getValue(property);
             if (value == null) {
                 if (newValue == null)
@@ -355,8 +459,11 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
     public synchronized void clearValue(Property<?> property) {
         if(setValues != null && setValues.containsKey(property.getColumnName()))
             setValues.remove(property.getColumnName());
-        if(values != null && values.containsKey(property.getColumnName()))
-            values.remove(property.getColumnName());
+        int slot = slots.slotOf(property);
+        if(values != null && slot < values.length) {
+            values[slot] = null;
+            databaseValues = null;
+        }
     }
 
     /**
@@ -502,11 +609,10 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
     }
 
     /**
-     * {@inheritDoc}
+     * Writes the model with {@link ModelParcelCodec}
      */
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeParcelable(setValues, 0);
-        dest.writeParcelable(values, 0);
+        ModelParcelCodec.write(this, dest);
     }
 
     /**
@@ -541,8 +647,7 @@ public abstract class AbstractModel implements Parcelable, Cloneable {
             } catch (InstantiationException e) {
                 throw new RuntimeException(e);
             }
-            model.setValues = source.readParcelable(ContentValues.class.getClassLoader());
-            model.values = source.readParcelable(ContentValues.class.getClassLoader());
+            ModelParcelCodec.read(model, source);
             return model;
         }
 
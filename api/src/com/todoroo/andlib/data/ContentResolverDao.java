@@ -7,13 +7,19 @@ package com.todoroo.andlib.data;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.util.Log;
 
 import com.todoroo.andlib.service.Autowired;
@@ -32,6 +38,9 @@ import com.todoroo.andlib.utility.AndroidUtilities;
  */
 public class ContentResolverDao<TYPE extends AbstractModel> {
 
+    /** Number of rows written in one call to the content provider */
+    public static final int BATCH_SIZE = 250;
+
     /** class of model */
     private final Class<TYPE> modelClass;
 
@@ -113,6 +122,83 @@ public class ContentResolverDao<TYPE extends AbstractModel> {
         return true;
     }
 
+    /**
+     * Insert new models, {@link #BATCH_SIZE} at a time. Each batch is
+     * written in one transaction of the content provider. Ids of inserted
+     * models are not read back, use {@link #saveAll(List)} for that
+     *
+     * @return number of rows inserted
+     */
+    public int insertAll(List<TYPE> models) {
+        int inserted = 0;
+        for(int start = 0; start < models.size(); start += BATCH_SIZE) {
+            int end = Math.min(start + BATCH_SIZE, models.size());
+            ContentValues[] values = new ContentValues[end - start];
+            for(int i = start; i < end; i++) {
+                TYPE model = models.get(i);
+                writeTransitoriesToModelContentValues(model);
+                values[i - start] = model.getMergedValues();
+            }
+            inserted += cr.bulkInsert(baseUri, values);
+        }
+        return inserted;
+    }
+
+    /**
+     * Create new or save existing models, {@link #BATCH_SIZE} at a time.
+     * Each batch is written in one transaction of the content provider, and
+     * is either written completely or not at all. Saved models whose row no
+     * longer exists are not written
+     *
+     * @return number of models written
+     */
+    public int saveAll(List<TYPE> models) {
+        int saved = 0;
+        for(int start = 0; start < models.size(); start += BATCH_SIZE) {
+            int end = Math.min(start + BATCH_SIZE, models.size());
+            ArrayList<TYPE> written = new ArrayList<TYPE>(end - start);
+            ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(end - start);
+            for(int i = start; i < end; i++) {
+                TYPE model = models.get(i);
+                writeTransitoriesToModelContentValues(model);
+                if(model.isSaved()) {
+                    if(model.getSetValues() == null)
+                        continue;
+                    operations.add(ContentProviderOperation.newUpdate(uriWithId(model.getId())).
+                            withValues(model.getSetValues()).build());
+                } else {
+                    operations.add(ContentProviderOperation.newInsert(baseUri).
+                            withValues(model.getMergedValues()).build());
+                }
+                written.add(model);
+            }
+            if(operations.isEmpty())
+                continue;
+
+            ContentProviderResult[] results;
+            try {
+                results = cr.applyBatch(baseUri.getAuthority(), operations);
+            } catch (RemoteException e) {
+                throw new RuntimeException(e);
+            } catch (OperationApplicationException e) {
+                throw new RuntimeException(e);
+            }
+
+            for(int i = 0; i < results.length; i++) {
+                TYPE model = written.get(i);
+                if(results[i].uri != null) {
+                    model.setId(Long.parseLong(results[i].uri.getLastPathSegment()));
+                    model.markSaved();
+                    saved++;
+                } else if(results[i].count != null && results[i].count > 0) {
+                    model.markSaved();
+                    saved++;
+                }
+            }
+        }
+        return saved;
+    }
+
     private void writeTransitoriesToModelContentValues(AbstractModel model) {
         Set<String> keys = model.getAllTransitoryKeys();
         if (keys != null) {
@@ -5,21 +5,24 @@
  */
 package com.todoroo.andlib.data;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteTransactionListener;
 import android.util.Log;
 
+import com.todoroo.andlib.data.AbstractDatabase.BatchParticipant;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.sql.BoundQuery;
 import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.andlib.utility.DateUtilities;
@@ -44,8 +47,12 @@ public class DatabaseDao<TYPE extends AbstractModel> {
 
     private Table table;
 
+    private ModelFactory<TYPE> modelFactory;
+
     protected Table outstandingTable;
 
+    private ModelFactory<? extends AbstractModel> outstandingFactory;
+
     private AbstractDatabase database;
 
     @Autowired
@@ -72,6 +79,11 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         return modelClass;
     }
 
+    /** Gets factory for creating models of this DAO's type */
+    public ModelFactory<TYPE> getModelFactory() {
+        return modelFactory;
+    }
+
     /**
      * Sets database accessed by this DAO. Used for dependency-injected
      * initialization by child classes and unit tests
@@ -83,45 +95,166 @@ public class DatabaseDao<TYPE extends AbstractModel> {
             return;
         this.database = database;
         table = database.getTable(modelClass);
+        modelFactory = database.getModelFactory(modelClass);
         outstandingTable = database.getOutstandingTable(modelClass);
+        if(outstandingTable != null)
+            outstandingFactory = database.getModelFactory(outstandingTable.modelClass);
+        else
+            outstandingFactory = null;
     }
 
     // --- listeners
 
+    /**
+     * Listener for saved models. Listeners are called on a background
+     * thread shortly after the save, with a copy of the model; repeated
+     * saves of one model may arrive as a single call. See
+     * {@link ImmediateModelUpdateListener} for listeners that can't wait
+     */
     public interface ModelUpdateListener<MTYPE> {
         public void onModelUpdated(MTYPE model, boolean outstandingEntries);
     }
 
-    private final ArrayList<ModelUpdateListener<TYPE>> listeners =
-        new ArrayList<ModelUpdateListener<TYPE>>();
+    /**
+     * Listener that is told about all pending updates, such as the models
+     * saved in a write batch, in one call instead of one call per model
+     */
+    public interface BatchModelUpdateListener<MTYPE> extends ModelUpdateListener<MTYPE> {
+        public void onModelsUpdated(List<MTYPE> models, boolean[] outstandingEntries);
+    }
+
+    /**
+     * Listener that depends on state at the time of the save, such as
+     * whether a sync is running. It is called on the saving thread right
+     * after the save, or when a write batch is committed, while the writer
+     * may still hold the database, so it should return quickly
+     */
+    public interface ImmediateModelUpdateListener<MTYPE> extends ModelUpdateListener<MTYPE> {
+        //
+    }
+
+    private final CopyOnWriteArrayList<ModelUpdateListener<TYPE>> listeners =
+        new CopyOnWriteArrayList<ModelUpdateListener<TYPE>>();
+
+    private final CopyOnWriteArrayList<ModelUpdateListener<TYPE>> immediateListeners =
+        new CopyOnWriteArrayList<ModelUpdateListener<TYPE>>();
+
+    private final ModelUpdateDispatcher<TYPE> dispatcher =
+        new ModelUpdateDispatcher<TYPE>(listeners);
 
     public void addListener(ModelUpdateListener<TYPE> listener) {
-        listeners.add(listener);
+        if(listener instanceof ImmediateModelUpdateListener)
+            immediateListeners.add(listener);
+        else
+            listeners.add(listener);
+    }
+
+    /**
+     * Deliver pending model updates and wait until listeners have run
+     */
+    public void waitForListeners() {
+        dispatcher.flush();
     }
 
     protected void onModelUpdated(TYPE model, boolean outstandingEntries) {
-        TYPE modelCopy = (TYPE) model.clone();
-        for(ModelUpdateListener<TYPE> listener : listeners) {
-            listener.onModelUpdated(modelCopy, outstandingEntries);
+        if(!listeners.isEmpty())
+            dispatcher.enqueue((TYPE) model.clone(), outstandingEntries);
+        // listeners get a copy, so they can't change the caller's model
+        for(ModelUpdateListener<TYPE> listener : immediateListeners)
+            listener.onModelUpdated((TYPE) model.clone(), outstandingEntries);
+    }
+
+    /**
+     * @param models copies of the saved models
+     */
+    @SuppressWarnings("unchecked")
+    protected void onModelsUpdated(List<TYPE> models, boolean[] outstandingEntries) {
+        if(!listeners.isEmpty())
+            for(int i = 0; i < models.size(); i++)
+                dispatcher.enqueue(models.get(i), outstandingEntries[i]);
+        for(ModelUpdateListener<TYPE> listener : immediateListeners) {
+            if(listener instanceof BatchModelUpdateListener) {
+                ((BatchModelUpdateListener<TYPE>) listener).onModelsUpdated(models, outstandingEntries);
+            } else {
+                for(int i = 0; i < models.size(); i++)
+                    listener.onModelUpdated(models.get(i), outstandingEntries[i]);
+            }
         }
     }
 
     // --- dao methods
 
     /**
-     * Construct a query with SQL DSL objects
+     * Construct a query with SQL DSL objects. Column values are sent as
+     * bind arguments so that lookups of the same shape share a compiled
+     * statement
      *
      * @param query
      * @return
      */
     public TodorooCursor<TYPE> query(Query query) {
-        query.from(table);
+        query = query.from(table);
+        BoundQuery bound = query.toBoundQuery();
         if(debug)
-            Log.i("SQL-" + modelClass.getSimpleName(), query.toString()); //$NON-NLS-1$
-        Cursor cursor = database.rawQuery(query.toString(), null);
+            Log.i("SQL-" + modelClass.getSimpleName(), bound.toString()); //$NON-NLS-1$
+        Cursor cursor = database.rawQuery(bound, modelClass.getSimpleName());
         return new TodorooCursor<TYPE>(cursor, query.getFields());
     }
 
+    /**
+     * Stream the models matching a query, reading each row into one reused
+     * model. The cursor is closed when iteration ends
+     *
+     * @param query
+     * @return
+     */
+    public ModelStream<TYPE> stream(Query query) {
+        return new ModelStream<TYPE>(query(query), modelFactory);
+    }
+
+    /**
+     * Stream the models of a cursor returned by this dao. The cursor is
+     * closed when iteration ends
+     *
+     * @param cursor
+     * @return
+     */
+    public ModelStream<TYPE> stream(TodorooCursor<TYPE> cursor) {
+        return new ModelStream<TYPE>(cursor, modelFactory);
+    }
+
+    /**
+     * Run a query returning a single long value (e.g. an id) through a
+     * cached compiled statement
+     *
+     * @param query query selecting one column
+     * @param defaultValue value returned if no rows match
+     * @return
+     */
+    protected long queryForLong(Query query, long defaultValue) {
+        query = query.from(table);
+        BoundQuery bound = query.toBoundQuery();
+        if(debug)
+            Log.i("SQL-" + modelClass.getSimpleName(), bound.toString()); //$NON-NLS-1$
+        return database.simpleQueryForLong(bound, defaultValue, modelClass.getSimpleName());
+    }
+
+    /**
+     * Run a query returning a single string value (e.g. a uuid) through a
+     * cached compiled statement
+     *
+     * @param query query selecting one column
+     * @param defaultValue value returned if no rows match
+     * @return
+     */
+    protected String queryForString(Query query, String defaultValue) {
+        query = query.from(table);
+        BoundQuery bound = query.toBoundQuery();
+        if(debug)
+            Log.i("SQL-" + modelClass.getSimpleName(), bound.toString()); //$NON-NLS-1$
+        return database.simpleQueryForString(bound, defaultValue, modelClass.getSimpleName());
+    }
+
     /**
      * Construct a query with raw SQL
      *
@@ -134,7 +267,7 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         String[] fields = new String[properties.length];
         for(int i = 0; i < properties.length; i++)
             fields[i] = properties[i].name;
-        return new TodorooCursor<TYPE>(database.getDatabase().query(table.name,
+        return new TodorooCursor<TYPE>(database.getReadDatabase().query(table.name,
                 fields, selection, selectionArgs, null, null, null),
                 properties);
     }
@@ -160,20 +293,7 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         try {
             if (cursor.getCount() == 0)
                 return null;
-            Constructor<TYPE> constructor = modelClass.getConstructor(TodorooCursor.class);
-            return constructor.newInstance(cursor);
-        } catch (SecurityException e) {
-            throw new RuntimeException(e);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalArgumentException e) {
-            throw new RuntimeException(e);
-        } catch (InstantiationException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
+            return modelFactory.fromCursor(cursor);
         } finally {
             cursor.close();
         }
@@ -286,8 +406,87 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         }
     }
 
+    /**
+     * Save all of the given items in one write batch. Outstanding entries
+     * are written in groups and model listeners are notified once, after
+     * the batch is committed.
+     *
+     * @return number of items saved, or 0 if the batch was rolled back
+     */
+    public int persistAll(final Iterable<TYPE> items) {
+        final AtomicInteger count = new AtomicInteger(0);
+        boolean committed = database.runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                for(TYPE item : items) {
+                    if(persist(item))
+                        count.incrementAndGet();
+                }
+            }
+        });
+        return committed ? count.get() : 0;
+    }
+
+    /**
+     * Save changes to all of the given existing items in one write batch.
+     * Items that have not been created yet are skipped.
+     *
+     * @return number of items saved, or 0 if the batch was rolled back
+     */
+    public int updateAll(final Iterable<TYPE> items) {
+        final AtomicInteger count = new AtomicInteger(0);
+        boolean committed = database.runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                for(TYPE item : items) {
+                    if(item.getId() != AbstractModel.NO_ID && saveExisting(item))
+                        count.incrementAndGet();
+                }
+            }
+        });
+        return committed ? count.get() : 0;
+    }
+
+    /**
+     * Run a group of writes, possibly through several DAOs, in one write
+     * batch on this DAO's database
+     *
+     * @see AbstractDatabase#runInBatch(Runnable)
+     * @return true if the batch was committed
+     */
+    public boolean runInBatch(Runnable operation) {
+        return database.runInBatch(operation);
+    }
+
+    /**
+     * @return true if the calling thread is running a write batch, whose
+     *         changes may still be rolled back
+     */
+    protected boolean isInBatch() {
+        return database.isInBatch();
+    }
+
+    /**
+     * Register state to be written or published when the running batch ends
+     *
+     * @see AbstractDatabase#joinBatch(BatchParticipant)
+     */
+    protected void joinBatch(BatchParticipant participant) {
+        database.joinBatch(participant);
+    }
+
     private interface DatabaseChangeOp {
         public boolean makeChange();
+
+        /**
+         * Inside a write batch there is no per-item transaction to roll
+         * back, so a change whose outstanding entries could not be recorded
+         * is reverted by hand. Called before makeChange when that may happen
+         */
+        public void prepareUndo();
+
+        /** Revert the change made by makeChange */
+        public void undoChange();
     }
 
     protected boolean shouldRecordOutstanding(TYPE item) {
@@ -300,6 +499,9 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         final AtomicBoolean result = new AtomicBoolean(false);
 
         synchronized(database) {
+            if (database.isInBatch())
+                return insertOrUpdateInBatch(item, values, op, recordOutstanding);
+
             if (recordOutstanding) { // begin transaction
                 database.getDatabase().beginTransactionWithListener(new SQLiteTransactionListener() {
                     @Override
@@ -332,6 +534,26 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         return result.get();
     }
 
+    /**
+     * Batch version of {@link #insertOrUpdateAndRecordChanges}: the running
+     * batch provides the transaction, and listeners are notified when it ends
+     */
+    private boolean insertOrUpdateInBatch(TYPE item, ContentValues values, DatabaseChangeOp op, boolean recordOutstanding) {
+        batchState.join();
+        if (recordOutstanding && outstandingEntriesMayFail())
+            op.prepareUndo();
+        if (!op.makeChange())
+            return false;
+        int numOutstanding = 0;
+        if (recordOutstanding && (numOutstanding = createOutstandingEntries(item.getId(), values)) == -1) {
+            op.undoChange();
+            return false;
+        }
+        batchState.modelUpdated(item, recordOutstanding && numOutstanding > 0);
+        item.markSaved();
+        return true;
+    }
+
     /**
      * Creates the given item.
      *
@@ -355,6 +577,18 @@ public class DatabaseDao<TYPE extends AbstractModel> {
                     item.setId(newRow);
                 return result;
             }
+
+            @Override
+            public void prepareUndo() {
+                // nothing to remember, the new row is deleted
+            }
+
+            @Override
+            public void undoChange() {
+                database.delete(table.name,
+                        AbstractModel.ID_PROPERTY.eq(item.getId()).toString(), null);
+                item.clearValue(AbstractModel.ID_PROPERTY);
+            }
         };
         return insertOrUpdateAndRecordChanges(item, item.getMergedValues(), insert);
     }
@@ -374,34 +608,66 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         if(values == null || values.size() == 0) // nothing changed
             return true;
         DatabaseChangeOp update = new DatabaseChangeOp() {
+            private ContentValues previousValues = null;
+
             @Override
             public boolean makeChange() {
                 return database.update(table.name, values,
                         AbstractModel.ID_PROPERTY.eq(item.getId()).toString(), null) > 0;
             }
+
+            @Override
+            public void prepareUndo() {
+                String[] columns = new String[values.size()];
+                int i = 0;
+                for (Entry<String, Object> entry : values.valueSet())
+                    columns[i++] = entry.getKey();
+                Cursor cursor = database.getDatabase().query(table.name, columns,
+                        AbstractModel.ID_PROPERTY.eq(item.getId()).toString(), null, null, null, null);
+                try {
+                    if (cursor.moveToFirst()) {
+                        previousValues = new ContentValues();
+                        DatabaseUtils.cursorRowToContentValues(cursor, previousValues);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            @Override
+            public void undoChange() {
+                if (previousValues != null)
+                    database.update(table.name, previousValues,
+                            AbstractModel.ID_PROPERTY.eq(item.getId()).toString(), null);
+            }
         };
         return insertOrUpdateAndRecordChanges(item, values, update);
     }
 
+    /**
+     * @return true if {@link #createOutstandingEntries(long, ContentValues)}
+     *         may return -1. Changes made in a write batch are then read
+     *         before they are made, so that they can be reverted
+     */
+    protected boolean outstandingEntriesMayFail() {
+        return false;
+    }
+
     protected int createOutstandingEntries(long modelId, ContentValues modelSetValues) {
         Set<Entry<String, Object>> entries = modelSetValues.valueSet();
         long now = DateUtilities.now();
         int count = 0;
         for (Entry<String, Object> entry : entries) {
             if (entry.getValue() != null && shouldRecordOutstandingEntry(entry.getKey(), entry.getValue())) {
-                AbstractModel m;
-                try {
-                    m = outstandingTable.modelClass.newInstance();
-                } catch (IllegalAccessException e) {
-                    return -1;
-                } catch (InstantiationException e2) {
-                    return -1;
-                }
+                AbstractModel m = outstandingFactory.newInstance();
                 m.setValue(OutstandingEntry.ENTITY_ID_PROPERTY, modelId);
                 m.setValue(OutstandingEntry.COLUMN_STRING_PROPERTY, entry.getKey());
                 m.setValue(OutstandingEntry.VALUE_STRING_PROPERTY, entry.getValue().toString());
                 m.setValue(OutstandingEntry.CREATED_AT_PROPERTY, now);
-                database.insert(outstandingTable.name, null, m.getSetValues());
+                if (database.isInBatch())
+                    batchState.addOutstanding(m.getSetValues());
+                else
+                    database.insert(outstandingTable.name, null, m.getSetValues());
                 count++;
             }
         }
@@ -419,6 +685,79 @@ public class DatabaseDao<TYPE extends AbstractModel> {
         return true;
     }
 
+    // --- write batches
+
+    /** Number of buffered outstanding rows that triggers a write during a batch */
+    private static final int OUTSTANDING_FLUSH_SIZE = 200;
+
+    private final BatchState batchState = new BatchState();
+
+    /**
+     * Outstanding rows and model notifications collected while a write
+     * batch runs. Only touched while holding the database lock.
+     */
+    private class BatchState implements BatchParticipant {
+
+        private boolean joined = false;
+
+        private final ArrayList<ContentValues> outstanding = new ArrayList<ContentValues>();
+
+        private final ArrayList<TYPE> updated = new ArrayList<TYPE>();
+
+        private final ArrayList<Boolean> updatedOutstanding = new ArrayList<Boolean>();
+
+        void join() {
+            if(!joined) {
+                database.joinBatch(this);
+                joined = true;
+            }
+        }
+
+        void addOutstanding(ContentValues row) {
+            join();
+            outstanding.add(row);
+            if(outstanding.size() >= OUTSTANDING_FLUSH_SIZE)
+                flushOutstanding();
+        }
+
+        @SuppressWarnings("unchecked")
+        void modelUpdated(TYPE model, boolean outstandingEntries) {
+            if(listeners.isEmpty() && immediateListeners.isEmpty())
+                return;
+            updated.add((TYPE) model.clone());
+            updatedOutstanding.add(outstandingEntries);
+        }
+
+        private void flushOutstanding() {
+            for(ContentValues row : outstanding)
+                database.insert(outstandingTable.name, null, row);
+            outstanding.clear();
+        }
+
+        @Override
+        public boolean onBatchCommitting() {
+            flushOutstanding();
+            return true;
+        }
+
+        @Override
+        public void onBatchFinished(boolean committed) {
+            joined = false;
+            outstanding.clear();
+            if(updated.isEmpty())
+                return;
+
+            List<TYPE> models = new ArrayList<TYPE>(updated);
+            boolean[] outstandingEntries = new boolean[updatedOutstanding.size()];
+            for(int i = 0; i < outstandingEntries.length; i++)
+                outstandingEntries[i] = updatedOutstanding.get(i);
+            updated.clear();
+            updatedOutstanding.clear();
+            if(committed)
+                onModelsUpdated(models, outstandingEntries);
+        }
+    }
+
     // --- helper methods
 
 
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+/**
+ * Index on one or more columns of a table. Models declare their indexes in
+ * a public static <code>INDEXES</code> array next to their properties, and
+ * {@link AbstractDatabase} creates, updates and drops indexes to match.
+ */
+@SuppressWarnings("nls")
+public final class Index {
+
+    /** Index name, unique within the database */
+    public final String name;
+
+    public final Table table;
+
+    /** Indexed columns, most selective lookups first */
+    public final Property<?>[] columns;
+
+    public final boolean unique;
+
+    private Index(String name, Table table, boolean unique, Property<?>... columns) {
+        if(columns.length == 0)
+            throw new IllegalArgumentException("Index " + name + " has no columns");
+        this.name = name;
+        this.table = table;
+        this.unique = unique;
+        this.columns = columns;
+    }
+
+    /**
+     * Declare an index
+     */
+    public static Index on(String name, Table table, Property<?>... columns) {
+        return new Index(name, table, false, columns);
+    }
+
+    /**
+     * Declare an index that also enforces unique values
+     */
+    public static Index unique(String name, Table table, Property<?>... columns) {
+        return new Index(name, table, true, columns);
+    }
+
+    /**
+     * @return statement creating this index, in the form SQLite keeps in
+     * its schema table
+     */
+    public String getCreateSql() {
+        StringBuilder sql = new StringBuilder("CREATE ");
+        if(unique)
+            sql.append("UNIQUE ");
+        sql.append("INDEX ").append(name).append(" ON ").append(table.name).append('(');
+        for(int i = 0; i < columns.length; i++) {
+            if(i > 0)
+                sql.append(',');
+            sql.append(columns[i].name);
+        }
+        return sql.append(')').toString();
+    }
+
+    @Override
+    public String toString() {
+        return getCreateSql();
+    }
+
+}
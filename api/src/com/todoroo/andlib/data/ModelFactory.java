@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+/**
+ * Creates instances of one model class without reflection. The model's
+ * constructor is invoked once when the factory is built; after that new
+ * models are copied from an empty prototype.
+ * <p>
+ * Factories are registered by {@link AbstractDatabase} for each of its
+ * tables and handed out through {@link DatabaseDao#getModelFactory()}.
+ *
+ * @param <TYPE> model type
+ */
+public final class ModelFactory<TYPE extends AbstractModel> {
+
+    private final Class<TYPE> modelClass;
+
+    /** empty model, never modified or handed out */
+    private final TYPE prototype;
+
+    ModelFactory(Class<TYPE> modelClass) {
+        this.modelClass = modelClass;
+        try {
+            prototype = modelClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Class<TYPE> getModelClass() {
+        return modelClass;
+    }
+
+    /**
+     * @return a new, empty model
+     */
+    @SuppressWarnings("unchecked")
+    public TYPE newInstance() {
+        return (TYPE) prototype.clone();
+    }
+
+    /**
+     * @return a new model holding the properties of the current cursor row
+     */
+    public TYPE fromCursor(TodorooCursor<? extends AbstractModel> cursor) {
+        TYPE model = newInstance();
+        model.readPropertiesFromCursor(cursor);
+        return model;
+    }
+
+}
@@ -0,0 +1,378 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.content.ContentValues;
+import android.os.BadParcelableException;
+import android.os.Parcel;
+
+/**
+ * Writes models to parcels in a compact binary form. Instead of two
+ * {@link ContentValues} maps keyed by column name, each value is written as
+ * one int holding its column's position in the model's
+ * <code>PROPERTIES</code> array and its type, followed by the value itself.
+ * Zero and int-sized longs, which make up most of a model, take no or four
+ * bytes. Columns the model doesn't declare are written with their name.
+ * <p>
+ * Parcels start with a version tag and a hash of the column layout, so a
+ * parcel written in the previous format is still read, and one written
+ * against a different layout is rejected rather than misread.
+ */
+@SuppressWarnings("nls")
+final class ModelParcelCodec {
+
+    /** Marks parcels written by this codec, low byte holds the version */
+    static final int MAGIC = 0x4d504300;
+
+    static final int VERSION = 1;
+
+    static final int TAG = MAGIC | VERSION;
+
+    // --- value types, stored in the low bits of each entry's header
+
+    private static final int TYPE_BITS = 4;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_LONG_ZERO = 1;
+    private static final int TYPE_LONG_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_INT = 4;
+    private static final int TYPE_STRING = 5;
+    private static final int TYPE_DOUBLE = 6;
+    private static final int TYPE_FLOAT = 7;
+    private static final int TYPE_BOOLEAN = 8;
+    private static final int TYPE_SHORT = 9;
+    private static final int TYPE_BYTE = 10;
+    private static final int TYPE_BLOB = 11;
+
+    /** Column position written for columns not in the layout */
+    private static final int NAMED_COLUMN = -1;
+
+    /** Value count written in place of a missing set of values */
+    private static final int NO_VALUES = -1;
+
+    /**
+     * Column layout of one model class: its declared properties in order
+     */
+    static final class Schema {
+        final String[] columns;
+        final HashMap<String, Integer> positions;
+        final int hash;
+
+        /** Slot of each column position */
+        final int[] slotsByPosition;
+
+        /** Column position of each slot, or {@link #NAMED_COLUMN} */
+        private volatile int[] positionsBySlot = new int[0];
+
+        private final PropertySlots slots;
+
+        Schema(Class<? extends AbstractModel> cls) {
+            Property<?>[] properties = declaredProperties(cls);
+            slots = PropertySlots.forClass(cls);
+            columns = new String[properties.length];
+            positions = new HashMap<String, Integer>(properties.length * 2);
+            slotsByPosition = new int[properties.length];
+            int layoutHash = 17;
+            for(int i = 0; i < properties.length; i++) {
+                columns[i] = properties[i].name;
+                positions.put(columns[i], i);
+                slotsByPosition[i] = slots.slotOf(columns[i]);
+                layoutHash = 31 * layoutHash + columns[i].hashCode();
+            }
+            hash = layoutHash;
+        }
+
+        int positionOf(String column) {
+            Integer position = positions.get(column);
+            return position == null ? NAMED_COLUMN : position;
+        }
+
+        int positionOfSlot(int slot) {
+            int[] bySlot = positionsBySlot;
+            if(slot >= bySlot.length)
+                bySlot = growPositionsBySlot();
+            return bySlot[slot];
+        }
+
+        private synchronized int[] growPositionsBySlot() {
+            int[] bySlot = new int[slots.size()];
+            for(int i = 0; i < bySlot.length; i++)
+                bySlot[i] = positionOf(slots.columnName(i));
+            positionsBySlot = bySlot;
+            return bySlot;
+        }
+    }
+
+    private static final ConcurrentHashMap<Class<?>, Schema> schemas =
+        new ConcurrentHashMap<Class<?>, Schema>();
+
+    private ModelParcelCodec() {
+        // static helpers
+    }
+
+    static Schema schemaFor(Class<? extends AbstractModel> cls) {
+        Schema schema = schemas.get(cls);
+        if(schema == null) {
+            schemas.putIfAbsent(cls, new Schema(cls));
+            schema = schemas.get(cls);
+        }
+        return schema;
+    }
+
+    /**
+     * Write the set and database values of a model
+     */
+    static void write(AbstractModel model, Parcel dest) {
+        Schema schema = schemaFor(model.getClass());
+        dest.writeInt(TAG);
+        dest.writeInt(schema.hash);
+
+        ContentValues setValues = model.setValues;
+        if(setValues == null)
+            dest.writeInt(NO_VALUES);
+        else {
+            dest.writeInt(setValues.size());
+            for(Entry<String, Object> entry : setValues.valueSet()) {
+                String column = entry.getKey();
+                writeValue(dest, schema.positionOf(column), column, entry.getValue());
+            }
+        }
+
+        int slotCount = model.getDatabaseValueSlots();
+        if(slotCount < 0)
+            dest.writeInt(NO_VALUES);
+        else {
+            int countPosition = dest.dataPosition();
+            dest.writeInt(0);
+            int count = 0;
+            for(int slot = 0; slot < slotCount; slot++) {
+                Object value = model.getDatabaseValue(slot);
+                if(value == null)
+                    continue;
+                writeValue(dest, schema.positionOfSlot(slot), model.slots.columnName(slot),
+                        value == PropertySlots.NULL ? null : value);
+                count++;
+            }
+            int end = dest.dataPosition();
+            dest.setDataPosition(countPosition);
+            dest.writeInt(count);
+            dest.setDataPosition(end);
+        }
+    }
+
+    /**
+     * Read values written by {@link #write}, or by the previous
+     * {@link ContentValues} based format, into an empty model
+     */
+    static void read(AbstractModel model, Parcel source) {
+        int start = source.dataPosition();
+        int tag = source.readInt();
+        if(tag != TAG) {
+            if((tag & ~0xff) == MAGIC)
+                throw new BadParcelableException("Unsupported model parcel version " + (tag & 0xff));
+            source.setDataPosition(start);
+            readContentValues(model, source);
+            return;
+        }
+
+        Schema schema = schemaFor(model.getClass());
+        int hash = source.readInt();
+        if(hash != schema.hash)
+            throw new BadParcelableException("Model parcel written for another layout of " +
+                    model.getClass().getSimpleName());
+
+        int count = source.readInt();
+        if(count != NO_VALUES) {
+            ContentValues setValues = new ContentValues();
+            for(int i = 0; i < count; i++) {
+                int header = source.readInt();
+                String column = readColumn(source, schema, header);
+                putInto(setValues, column, readValue(source, header & TYPE_MASK));
+            }
+            model.setValues = setValues;
+        }
+
+        count = source.readInt();
+        for(int i = 0; i < count; i++) {
+            int header = source.readInt();
+            int position = header >> TYPE_BITS;
+            int slot;
+            if(position == NAMED_COLUMN)
+                slot = model.slots.slotOf(source.readString());
+            else
+                slot = schema.slotsByPosition[position];
+            model.putDatabaseValue(slot, readValue(source, header & TYPE_MASK));
+        }
+    }
+
+    // --- helpers
+
+    private static void writeValue(Parcel dest, int position, String column, Object value) {
+        int type = typeOf(value);
+        dest.writeInt((position << TYPE_BITS) | type);
+        if(position == NAMED_COLUMN)
+            dest.writeString(column);
+
+        switch(type) {
+        case TYPE_LONG_INT:
+            dest.writeInt(((Long) value).intValue());
+            break;
+        case TYPE_LONG:
+            dest.writeLong((Long) value);
+            break;
+        case TYPE_INT:
+            dest.writeInt((Integer) value);
+            break;
+        case TYPE_STRING:
+            dest.writeString((String) value);
+            break;
+        case TYPE_DOUBLE:
+            dest.writeDouble((Double) value);
+            break;
+        case TYPE_FLOAT:
+            dest.writeFloat((Float) value);
+            break;
+        case TYPE_BOOLEAN:
+            dest.writeInt(((Boolean) value) ? 1 : 0);
+            break;
+        case TYPE_SHORT:
+        case TYPE_BYTE:
+            dest.writeInt(((Number) value).intValue());
+            break;
+        case TYPE_BLOB:
+            dest.writeByteArray((byte[]) value);
+            break;
+        default:
+            // no payload
+        }
+    }
+
+    private static int typeOf(Object value) {
+        if(value == null)
+            return TYPE_NULL;
+        if(value instanceof Long) {
+            long number = (Long) value;
+            if(number == 0)
+                return TYPE_LONG_ZERO;
+            if(number == (int) number)
+                return TYPE_LONG_INT;
+            return TYPE_LONG;
+        }
+        if(value instanceof Integer)
+            return TYPE_INT;
+        if(value instanceof String)
+            return TYPE_STRING;
+        if(value instanceof Double)
+            return TYPE_DOUBLE;
+        if(value instanceof Float)
+            return TYPE_FLOAT;
+        if(value instanceof Boolean)
+            return TYPE_BOOLEAN;
+        if(value instanceof Short)
+            return TYPE_SHORT;
+        if(value instanceof Byte)
+            return TYPE_BYTE;
+        if(value instanceof byte[])
+            return TYPE_BLOB;
+        throw new UnsupportedOperationException("Can't parcel " + value.getClass());
+    }
+
+    private static String readColumn(Parcel source, Schema schema, int header) {
+        int position = header >> TYPE_BITS;
+        if(position == NAMED_COLUMN)
+            return source.readString();
+        return schema.columns[position];
+    }
+
+    private static Object readValue(Parcel source, int type) {
+        switch(type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_LONG_ZERO:
+            return 0L;
+        case TYPE_LONG_INT:
+            return (long) source.readInt();
+        case TYPE_LONG:
+            return source.readLong();
+        case TYPE_INT:
+            return source.readInt();
+        case TYPE_STRING:
+            return source.readString();
+        case TYPE_DOUBLE:
+            return source.readDouble();
+        case TYPE_FLOAT:
+            return source.readFloat();
+        case TYPE_BOOLEAN:
+            return source.readInt() != 0;
+        case TYPE_SHORT:
+            return (short) source.readInt();
+        case TYPE_BYTE:
+            return (byte) source.readInt();
+        case TYPE_BLOB:
+            return source.createByteArray();
+        default:
+            throw new BadParcelableException("Unknown model parcel value type " + type);
+        }
+    }
+
+    private static void putInto(ContentValues values, String column, Object value) {
+        if(value == null)
+            values.putNull(column);
+        else if(value instanceof Long)
+            values.put(column, (Long) value);
+        else if(value instanceof Integer)
+            values.put(column, (Integer) value);
+        else if(value instanceof String)
+            values.put(column, (String) value);
+        else if(value instanceof Double)
+            values.put(column, (Double) value);
+        else if(value instanceof Float)
+            values.put(column, (Float) value);
+        else if(value instanceof Boolean)
+            values.put(column, (Boolean) value);
+        else if(value instanceof Short)
+            values.put(column, (Short) value);
+        else if(value instanceof Byte)
+            values.put(column, (Byte) value);
+        else
+            values.put(column, (byte[]) value);
+    }
+
+    /**
+     * Previous format: set values and database values as two
+     * {@link ContentValues} parcelables
+     */
+    private static void readContentValues(AbstractModel model, Parcel source) {
+        model.setValues = source.readParcelable(ContentValues.class.getClassLoader());
+        ContentValues values = source.readParcelable(ContentValues.class.getClassLoader());
+        if(values != null) {
+            for(Entry<String, Object> entry : values.valueSet())
+                model.putDatabaseValue(model.slots.slotOf(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * @return properties the model class declares in its
+     * <code>PROPERTIES</code> field, or none if it has no such field
+     */
+    private static Property<?>[] declaredProperties(Class<? extends AbstractModel> cls) {
+        try {
+            Property<?>[] properties = (Property<?>[]) cls.getField("PROPERTIES").get(null);
+            return properties == null ? new Property<?>[0] : properties;
+        } catch (NoSuchFieldException e) {
+            return new Property<?>[0];
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
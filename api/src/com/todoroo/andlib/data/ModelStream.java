@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the rows of a {@link TodorooCursor} as models.
+ * <p>
+ * Rows are read into one reused model, so callbacks must
+ * {@link AbstractModel#clone()} a model they want to keep after returning.
+ * The cursor is closed when iteration finishes, is stopped by a callback or
+ * throws, so a stream can only be iterated once.
+ *
+ * @param <TYPE> model type
+ */
+public final class ModelStream<TYPE extends AbstractModel> {
+
+    /**
+     * Called for each model in the stream
+     */
+    public interface Callback<T> {
+        /**
+         * @param model reused model holding the current row
+         * @return false to stop iterating
+         */
+        public boolean process(T model);
+    }
+
+    /**
+     * Called for each chunk of models in the stream
+     */
+    public interface ChunkCallback<T> {
+        /**
+         * @param chunk reused models holding consecutive rows
+         * @return false to stop iterating
+         */
+        public boolean process(List<T> chunk);
+    }
+
+    /**
+     * Decides whether a model is passed on
+     */
+    public interface Predicate<T> {
+        public boolean matches(T model);
+    }
+
+    /**
+     * Turns a model into a value that is kept after iteration
+     */
+    public interface Mapper<T, RESULT> {
+        public RESULT map(T model);
+    }
+
+    private final TodorooCursor<TYPE> cursor;
+
+    private final ModelFactory<TYPE> factory;
+
+    private final ArrayList<Predicate<? super TYPE>> filters = new ArrayList<Predicate<? super TYPE>>();
+
+    public ModelStream(TodorooCursor<TYPE> cursor, ModelFactory<TYPE> factory) {
+        this.cursor = cursor;
+        this.factory = factory;
+    }
+
+    /**
+     * @return number of rows in the cursor, before filtering
+     */
+    public int getCount() {
+        return cursor.getCount();
+    }
+
+    /**
+     * Only pass on models matching the given predicate
+     * @return this stream
+     */
+    public ModelStream<TYPE> filter(Predicate<? super TYPE> predicate) {
+        filters.add(predicate);
+        return this;
+    }
+
+    /**
+     * Pass each model to the callback
+     *
+     * @return number of models passed to the callback
+     */
+    public int forEach(Callback<? super TYPE> callback) {
+        TYPE model = factory.newInstance();
+        int count = 0;
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                if(!read(model))
+                    continue;
+                count++;
+                if(!callback.process(model))
+                    break;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /**
+     * Pass the models to the callback in chunks of up to chunkSize models.
+     * The same chunkSize models are reused for every chunk, so memory use
+     * does not grow with the number of rows
+     *
+     * @return number of models passed to the callback
+     */
+    public int chunked(int chunkSize, ChunkCallback<TYPE> callback) {
+        if(chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive"); //$NON-NLS-1$
+        ArrayList<TYPE> pool = new ArrayList<TYPE>(chunkSize);
+        ArrayList<TYPE> chunk = new ArrayList<TYPE>(chunkSize);
+        int count = 0;
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                if(pool.size() == chunk.size())
+                    pool.add(factory.newInstance());
+                TYPE model = pool.get(chunk.size());
+                if(!read(model))
+                    continue;
+                chunk.add(model);
+                count++;
+                if(chunk.size() == chunkSize) {
+                    if(!callback.process(chunk))
+                        return count;
+                    chunk.clear();
+                }
+            }
+            if(!chunk.isEmpty())
+                callback.process(chunk);
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /**
+     * @return list of the mapped values of every model
+     */
+    public <RESULT> ArrayList<RESULT> map(final Mapper<? super TYPE, RESULT> mapper) {
+        final ArrayList<RESULT> results = new ArrayList<RESULT>(Math.max(0, getCount()));
+        forEach(new Callback<TYPE>() {
+            public boolean process(TYPE model) {
+                results.add(mapper.map(model));
+                return true;
+            }
+        });
+        return results;
+    }
+
+    /**
+     * @return a copy of the first model, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public TYPE first() {
+        final Object[] result = new Object[1];
+        forEach(new Callback<TYPE>() {
+            public boolean process(TYPE model) {
+                result[0] = model.clone();
+                return false;
+            }
+        });
+        return (TYPE) result[0];
+    }
+
+    /**
+     * Read the current row into the model
+     * @return true if the model passes all filters
+     */
+    private boolean read(TYPE model) {
+        model.clearForReuse();
+        model.readPropertiesFromCursor(cursor);
+        for(int i = 0; i < filters.size(); i++)
+            if(!filters.get(i).matches(model))
+                return false;
+        return true;
+    }
+
+}
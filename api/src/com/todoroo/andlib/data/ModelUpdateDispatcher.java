@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.todoroo.andlib.data.DatabaseDao.BatchModelUpdateListener;
+import com.todoroo.andlib.data.DatabaseDao.ModelUpdateListener;
+
+/**
+ * Delivers the model update notifications of one DAO to its listeners on a
+ * background thread, so listeners never run while writers hold the database.
+ * <p>
+ * Notifications are held for {@link #COALESCE_WINDOW} milliseconds. Updates
+ * to the same model within that window are merged into one notification
+ * carrying the union of the changed values, and batch listeners receive
+ * everything that is pending in a single call.
+ *
+ * @param <TYPE> model type
+ */
+final class ModelUpdateDispatcher<TYPE extends AbstractModel> {
+
+    /** How long notifications wait for further updates to merge with */
+    static final long COALESCE_WINDOW = 100L;
+
+    /** Thread shared by all DAOs, so notifications keep their order */
+    private static final ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "model-updates"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /** A notification waiting to be delivered */
+    private class PendingUpdate {
+        TYPE model;
+        boolean outstandingEntries;
+
+        PendingUpdate(TYPE model, boolean outstandingEntries) {
+            this.model = model;
+            this.outstandingEntries = outstandingEntries;
+        }
+
+        /**
+         * Updates can be merged if they carry the same transitory flags,
+         * since listeners act on those per save
+         */
+        boolean canMerge(TYPE newer) {
+            return transitoryKeys(model).equals(transitoryKeys(newer));
+        }
+
+        void merge(TYPE newer, boolean newerOutstanding) {
+            ContentValues olderValues = model.setValues;
+            if(olderValues != null) {
+                ContentValues merged = new ContentValues(olderValues);
+                if(newer.setValues != null)
+                    merged.putAll(newer.setValues);
+                newer.setValues = merged;
+            }
+            model = newer;
+            outstandingEntries |= newerOutstanding;
+        }
+    }
+
+    private final List<ModelUpdateListener<TYPE>> listeners;
+
+    /** Pending notifications in arrival order */
+    private ArrayList<PendingUpdate> pending = new ArrayList<PendingUpdate>();
+
+    /** Latest pending notification for each model id */
+    private final HashMap<Long, PendingUpdate> pendingById = new HashMap<Long, PendingUpdate>();
+
+    private boolean scheduled = false;
+
+    private final Runnable deliverTask = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    ModelUpdateDispatcher(List<ModelUpdateListener<TYPE>> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * Queue a notification
+     * @param model copy of the saved model, owned by the dispatcher
+     */
+    synchronized void enqueue(TYPE model, boolean outstandingEntries) {
+        long id = model.getId();
+        PendingUpdate previous = id == AbstractModel.NO_ID ? null : pendingById.get(id);
+        if(previous != null && previous.canMerge(model)) {
+            previous.merge(model, outstandingEntries);
+        } else {
+            PendingUpdate update = new PendingUpdate(model, outstandingEntries);
+            pending.add(update);
+            if(id != AbstractModel.NO_ID)
+                pendingById.put(id, update);
+        }
+
+        if(!scheduled) {
+            scheduled = true;
+            executor.schedule(deliverTask, COALESCE_WINDOW, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Deliver pending notifications now and wait until listeners have run.
+     * Must not be called from a listener
+     */
+    void flush() {
+        try {
+            executor.submit(deliverTask).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver() {
+        ArrayList<PendingUpdate> updates;
+        synchronized(this) {
+            scheduled = false;
+            if(pending.isEmpty())
+                return;
+            updates = pending;
+            pending = new ArrayList<PendingUpdate>();
+            pendingById.clear();
+        }
+
+        List<TYPE> models = new ArrayList<TYPE>(updates.size());
+        boolean[] outstandingEntries = new boolean[updates.size()];
+        for(int i = 0; i < updates.size(); i++) {
+            models.add(updates.get(i).model);
+            outstandingEntries[i] = updates.get(i).outstandingEntries;
+        }
+
+        for(ModelUpdateListener<TYPE> listener : listeners) {
+            try {
+                if(listener instanceof BatchModelUpdateListener) {
+                    ((BatchModelUpdateListener<TYPE>) listener).onModelsUpdated(models, outstandingEntries);
+                } else {
+                    for(int i = 0; i < models.size(); i++)
+                        listener.onModelUpdated(models.get(i), outstandingEntries[i]);
+                }
+            } catch (RuntimeException e) {
+                Log.e("model-updates", "Error in model update listener", e); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+    }
+
+    private static Set<String> transitoryKeys(AbstractModel model) {
+        if(model.transitoryData == null)
+            return Collections.emptySet();
+        return model.transitoryData.keySet();
+    }
+
+}
@@ -0,0 +1,694 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Cursor over a long query result that is read in pages on a background
+ * thread, so that lists can show the first rows without waiting for the
+ * whole result to be read and counted.
+ * <p>
+ * The count starts at zero and grows as pages arrive: the first page is
+ * read as soon as the cursor is created, and the next one once a row near
+ * the end of the rows read so far is visited. At most
+ * <code>maxPages</code> pages are kept, dropping those furthest from the
+ * rows visited; a page that was dropped is read again in the background
+ * when one of its rows is visited, and its rows are empty until it arrives,
+ * see {@link #isRowLoaded()}. Data set observers are told of
+ * new pages on the main thread. Changes can be held back, for example
+ * while the user drags a row, and are applied when released.
+ * <p>
+ * Requerying reads the pages that were kept again in the background and
+ * replaces them all at once, looking for the new end of the result if it
+ * shrank. Rows that changed without moving can instead
+ * be patched: rows read again are shown in place of the rows with the same
+ * id until the next requery.
+ * <p>
+ * Pages are read with <code>LIMIT</code> and <code>OFFSET</code>, so the
+ * query must order rows uniquely; see {@link #withUniqueOrder}.
+ */
+@SuppressWarnings("nls")
+public class PagedCursor extends AbstractCursor {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    public static final int DEFAULT_MAX_PAGES = 20;
+
+    private static final String TAG = "paged-cursor";
+
+    private static final String ORDER_BY = "ORDER BY";
+
+    /**
+     * Reads one page of the result
+     */
+    public interface PageSource {
+        /**
+         * Read up to <code>limit</code> rows starting at row
+         * <code>offset</code>. Called on a background thread
+         */
+        public Cursor fetch(int offset, int limit);
+    }
+
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final String[] columnNames;
+
+    private final PageSource source;
+
+    private final int pageSize;
+
+    private final int maxPages;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /** Pages read, by page index */
+    private HashMap<Integer, Cursor> pages = new HashMap<Integer, Cursor>();
+
+    /** Number of rows known to exist */
+    private int count = 0;
+
+    /** Whether the last page has been read */
+    private boolean complete = false;
+
+    /** Incremented on requery and close, so loads started before are dropped */
+    private int generation = 0;
+
+    /** Indexes of the pages being read in the background */
+    private final HashSet<Integer> loadingPages = new HashSet<Integer>();
+
+    /** Empty rows shown in place of a page that is being read again */
+    private Cursor placeholder = null;
+
+    private boolean reloading = false;
+
+    private boolean held = false;
+
+    /** Loads that arrived while changes were held */
+    private final ArrayList<Runnable> heldChanges = new ArrayList<Runnable>();
+
+    /** Page the cursor is positioned in, or the patch of its row */
+    private Cursor current = null;
+
+    /** Rows read again by {@link #patch}, by id */
+    private final HashMap<Long, PatchedRow> patches = new HashMap<Long, PatchedRow>();
+
+    /** Cursors holding patched rows */
+    private final ArrayList<Patch> patchCursors = new ArrayList<Patch>();
+
+    /** Column holding row ids, for finding patched rows */
+    private int idColumn = -1;
+
+    /** Rows read again by one call to {@link #patch} */
+    private static final class Patch {
+        final Cursor rows;
+        final int generation;
+
+        Patch(Cursor rows, int generation) {
+            this.rows = rows;
+            this.generation = generation;
+        }
+    }
+
+    private static final class PatchedRow {
+        final Patch patch;
+        final int position;
+
+        PatchedRow(Patch patch, int position) {
+            this.patch = patch;
+            this.position = position;
+        }
+    }
+
+    public PagedCursor(String[] columnNames, PageSource source) {
+        this(columnNames, source, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    public PagedCursor(String[] columnNames, PageSource source, int pageSize, int maxPages) {
+        if(pageSize < 1 || maxPages < 2)
+            throw new IllegalArgumentException("Page size " + pageSize + ", max pages " + maxPages);
+        this.columnNames = columnNames;
+        this.source = source;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        loadInBackground(0);
+    }
+
+    /**
+     * @return column names of the properties a query selects, in order
+     */
+    public static String[] columnNames(Property<?>[] properties) {
+        String[] names = new String[properties.length];
+        for(int i = 0; i < properties.length; i++)
+            names[i] = properties[i].getColumnName();
+        return names;
+    }
+
+    /**
+     * Make a query order its rows uniquely, by adding the id column as the
+     * last sort key. Without it, rows that sort equal may be read in a
+     * different order for each page, so that some show twice and others
+     * not at all
+     */
+    public static String withUniqueOrder(String query, String idColumn) {
+        if(findOrderBy(query) < 0)
+            return query + " ORDER BY " + idColumn;
+        return query + ", " + idColumn;
+    }
+
+    /**
+     * @return position of the order by clause of a query, outside of
+     *         parentheses and quotes, or -1 if it has none
+     */
+    private static int findOrderBy(String query) {
+        int depth = 0;
+        char quote = 0;
+        int found = -1;
+        int length = query.length();
+        for(int i = 0; i < length; i++) {
+            char c = query.charAt(i);
+            if(quote != 0) {
+                if(c == quote)
+                    quote = 0;
+            } else if(c == '\'' || c == '"') {
+                quote = c;
+            } else if(c == '(') {
+                depth++;
+            } else if(c == ')') {
+                depth--;
+            } else if(depth == 0 && query.regionMatches(true, i, ORDER_BY, 0, ORDER_BY.length()) &&
+                    (i == 0 || !Character.isLetterOrDigit(query.charAt(i - 1)))) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    // --- state
+
+    /**
+     * @return true if all rows of the result have been read
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return true while a page is being read, or pages read again after
+     *         a requery
+     */
+    public synchronized boolean isLoading() {
+        return !loadingPages.isEmpty() || reloading;
+    }
+
+    /**
+     * @return false if the cursor is positioned on a row whose page is
+     *         still being read. Such rows have null values, and data set
+     *         observers are told once the page arrives
+     */
+    public synchronized boolean isRowLoaded() {
+        return current == null || current != placeholder;
+    }
+
+    /**
+     * Hold back pages and requery results that arrive, so that the count
+     * and rows don't change, until changes are released
+     */
+    public void setHoldChanges(boolean hold) {
+        ArrayList<Runnable> changes;
+        synchronized(this) {
+            held = hold;
+            if(hold || heldChanges.isEmpty())
+                return;
+            changes = new ArrayList<Runnable>(heldChanges);
+            heldChanges.clear();
+        }
+        for(Runnable change : changes)
+            change.run();
+    }
+
+    // --- cursor
+
+    @Override
+    public synchronized int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public synchronized boolean onMove(int oldPosition, int newPosition) {
+        int index = newPosition / pageSize;
+        Cursor page = pages.get(index);
+        if(page == null) {
+            // jumped to a page that isn't kept. Read it in the background
+            // and show empty rows until it arrives
+            if(isClosed())
+                return false;
+            loadInBackground(index);
+            current = placeholder();
+            return current.moveToPosition(newPosition % pageSize);
+        }
+
+        current = page;
+        prefetch(newPosition);
+        if(!page.moveToPosition(newPosition % pageSize))
+            return false;
+        if(!patches.isEmpty()) {
+            PatchedRow row = patches.get(page.getLong(idColumn));
+            if(row != null) {
+                current = row.patch.rows;
+                return current.moveToPosition(row.position);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getString(int column) {
+        return current.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return current.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return current.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return current.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return current.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return current.getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return current.getBlob(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return current.isNull(column);
+    }
+
+    @Override
+    @Deprecated
+    public boolean requery() {
+        if(isClosed())
+            return false;
+        final ArrayList<Integer> indexes;
+        final int requeryGeneration;
+        synchronized(this) {
+            indexes = new ArrayList<Integer>(pages.keySet());
+            if(indexes.isEmpty())
+                indexes.add(0);
+            Collections.sort(indexes);
+            requeryGeneration = ++generation;
+            loadingPages.clear();
+            reloading = true;
+        }
+
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                HashMap<Integer, Cursor> reloaded = new HashMap<Integer, Cursor>();
+                int end = 0;
+                boolean last = false;
+                int lastFull = -1;
+                try {
+                    for(int index : indexes) {
+                        if(!isCurrent(requeryGeneration))
+                            break;
+                        Cursor page = source.fetch(index * pageSize, pageSize);
+                        int rows = page.getCount();
+                        if(rows == pageSize) {
+                            // every page before it is full too, even those not kept
+                            reloaded.put(index, page);
+                            lastFull = index;
+                            end = (index + 1) * pageSize;
+                        } else if(rows > 0 || index == 0) {
+                            reloaded.put(index, page);
+                            end = index * pageSize + rows;
+                            last = true;
+                            break;
+                        } else {
+                            // the result shrank: its end is between the last
+                            // full page and this one
+                            page.close();
+                            end = findEnd(reloaded, lastFull + 1, index - 1);
+                            last = true;
+                            break;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error reading pages", e);
+                    last = reloaded.isEmpty();
+                }
+                post(requeryGeneration, new Replace(requeryGeneration, reloaded, end, last));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Look for the last page with rows between two page indexes, when all
+     * pages before <code>from</code> are full and the page after
+     * <code>to</code> is empty. The page found is added to the pages read
+     *
+     * @return number of rows in the result
+     */
+    private int findEnd(HashMap<Integer, Cursor> reloaded, int from, int to) {
+        Cursor found = null;
+        int foundIndex = -1;
+        while(from <= to) {
+            int index = (from + to) >>> 1;
+            Cursor page = source.fetch(index * pageSize, pageSize);
+            if(page.getCount() > 0) {
+                if(found != null)
+                    found.close();
+                found = page;
+                foundIndex = index;
+                from = index + 1;
+            } else {
+                page.close();
+                to = index - 1;
+            }
+        }
+        if(found == null)
+            return from * pageSize;
+        reloaded.put(foundIndex, found);
+        return foundIndex * pageSize + found.getCount();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        synchronized(this) {
+            generation++;
+            for(Cursor page : pages.values())
+                page.close();
+            pages.clear();
+            dropPatches();
+            heldChanges.clear();
+            loadingPages.clear();
+            if(placeholder != null)
+                placeholder.close();
+            placeholder = null;
+            current = null;
+        }
+    }
+
+    // --- patching
+
+    /**
+     * Show rows read again in place of the rows with the same id, for rows
+     * whose changes don't move them. Call on the main thread; observers are
+     * told right away, or once changes are released. Patches last until
+     * the next requery, which is started instead if too many rows were
+     * patched
+     *
+     * @param column column holding row ids, in both this cursor and the
+     *        rows
+     * @param rows rows read with this cursor's columns. The cursor takes
+     *        ownership of them
+     */
+    public void patch(final int column, final Cursor rows) {
+        if(isClosed()) {
+            rows.close();
+            return;
+        }
+        Runnable change = new Runnable() {
+            @Override
+            public void run() {
+                synchronized(PagedCursor.this) {
+                    if(isClosed()) {
+                        rows.close();
+                        return;
+                    }
+                    idColumn = column;
+                    Patch patch = new Patch(rows, generation);
+                    patchCursors.add(patch);
+                    for(int i = 0; rows.moveToPosition(i); i++)
+                        patches.put(rows.getLong(column), new PatchedRow(patch, i));
+                    current = null;
+                    mPos = -1;
+                }
+                if(patches.size() > pageSize * maxPages)
+                    requery();
+                else
+                    mDataSetObservable.notifyChanged();
+            }
+        };
+        synchronized(this) {
+            if(held) {
+                heldChanges.add(change);
+                return;
+            }
+        }
+        change.run();
+    }
+
+    /**
+     * Drop patches, or only those made before the given generation
+     */
+    private void dropPatches(int before) {
+        Iterator<PatchedRow> rows = patches.values().iterator();
+        while(rows.hasNext())
+            if(rows.next().patch.generation < before)
+                rows.remove();
+        Iterator<Patch> cursors = patchCursors.iterator();
+        while(cursors.hasNext()) {
+            Patch patch = cursors.next();
+            if(patch.generation < before) {
+                patch.rows.close();
+                cursors.remove();
+            }
+        }
+    }
+
+    private void dropPatches() {
+        dropPatches(Integer.MAX_VALUE);
+    }
+
+    // --- loading
+
+    private Cursor placeholder() {
+        if(placeholder == null) {
+            MatrixCursor rows = new MatrixCursor(columnNames, pageSize);
+            for(int i = 0; i < pageSize; i++)
+                rows.addRow(new Object[columnNames.length]);
+            placeholder = rows;
+        }
+        return placeholder;
+    }
+
+    /**
+     * Start reading the pages next to a row's if it is close to them
+     */
+    private void prefetch(int position) {
+        int index = position / pageSize;
+        int offset = position % pageSize;
+        int distance = Math.max(1, pageSize / 2);
+        if(offset >= pageSize - distance) {
+            int next = index + 1;
+            if(!pages.containsKey(next) && (next * pageSize < count || !complete))
+                loadInBackground(next);
+        } else if(offset < distance && index > 0 && !pages.containsKey(index - 1)) {
+            loadInBackground(index - 1);
+        }
+    }
+
+    private synchronized void loadInBackground(final int index) {
+        if(reloading || isClosed() || loadingPages.contains(index))
+            return;
+        loadingPages.add(index);
+        final int loadGeneration = generation;
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(!isCurrent(loadGeneration))
+                    return;
+                Cursor page;
+                try {
+                    page = source.fetch(index * pageSize, pageSize);
+                    page.getCount(); // read the rows on this thread
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error reading page " + index, e);
+                    synchronized(PagedCursor.this) {
+                        if(generation == loadGeneration)
+                            loadingPages.remove(index);
+                    }
+                    return;
+                }
+                post(loadGeneration, new Append(loadGeneration, index, page));
+            }
+        });
+    }
+
+    private synchronized boolean isCurrent(int loadGeneration) {
+        return generation == loadGeneration && !isClosed();
+    }
+
+    /**
+     * Apply a load on the main thread, or keep it until changes are
+     * released
+     */
+    private void post(final int loadGeneration, final Runnable change) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(PagedCursor.this) {
+                    if(held && generation == loadGeneration) {
+                        heldChanges.add(change);
+                        return;
+                    }
+                }
+                change.run();
+            }
+        });
+    }
+
+    /** Adds a page read in the background */
+    private class Append implements Runnable {
+        private final int loadGeneration;
+        private final int index;
+        private final Cursor page;
+
+        public Append(int loadGeneration, int index, Cursor page) {
+            this.loadGeneration = loadGeneration;
+            this.index = index;
+            this.page = page;
+        }
+
+        @Override
+        public void run() {
+            synchronized(PagedCursor.this) {
+                if(generation != loadGeneration || isClosed()) {
+                    page.close();
+                    return;
+                }
+                loadingPages.remove(index);
+                int rows = page.getCount();
+                if(pages.containsKey(index))
+                    page.close();
+                else
+                    putPage(index, page, Math.max(0, mPos) / pageSize);
+                if(current != null && current == placeholder) {
+                    // move onto the rows that arrived on the next read
+                    current = null;
+                    mPos = -1;
+                }
+                int end = index * pageSize + rows;
+                if(rows < pageSize) {
+                    count = end;
+                    complete = true;
+                } else
+                    count = Math.max(count, end);
+            }
+            mDataSetObservable.notifyChanged();
+        }
+    }
+
+    /** Replaces all pages with ones read again on requery */
+    private class Replace implements Runnable {
+        private final int loadGeneration;
+        private final HashMap<Integer, Cursor> reloaded;
+        private final int end;
+        private final boolean last;
+
+        public Replace(int loadGeneration, HashMap<Integer, Cursor> reloaded,
+                int end, boolean last) {
+            this.loadGeneration = loadGeneration;
+            this.reloaded = reloaded;
+            this.end = end;
+            this.last = last;
+        }
+
+        @Override
+        public void run() {
+            synchronized(PagedCursor.this) {
+                if(generation != loadGeneration || isClosed()) {
+                    for(Cursor page : reloaded.values())
+                        page.close();
+                    return;
+                }
+                for(Cursor page : pages.values())
+                    page.close();
+                pages = reloaded;
+                // rows patched after the requery started may be newer
+                dropPatches(loadGeneration);
+                current = null;
+                count = end;
+                complete = last;
+                reloading = false;
+                // the cursor's position may now be past the end
+                mPos = -1;
+            }
+            mDataSetObservable.notifyChanged();
+        }
+    }
+
+    /**
+     * Keep a page, dropping the pages furthest from the page being visited
+     * if too many are kept
+     */
+    private void putPage(int index, Cursor page, int visited) {
+        pages.put(index, page);
+        while(pages.size() > maxPages) {
+            Map.Entry<Integer, Cursor> furthest = null;
+            for(Map.Entry<Integer, Cursor> entry : pages.entrySet()) {
+                if(entry.getValue() == current || entry.getValue() == page)
+                    continue;
+                if(furthest == null || Math.abs(entry.getKey() - visited) >
+                        Math.abs(furthest.getKey() - visited))
+                    furthest = entry;
+            }
+            if(furthest == null)
+                return;
+            furthest.getValue().close();
+            pages.remove(furthest.getKey());
+        }
+    }
+
+}
@@ -54,6 +54,9 @@ public abstract class Property<TYPE> extends Field implements Cloneable {
 
     public int flags = 0;
 
+    /** slot this property last resolved to, see {@link PropertySlots} */
+    PropertySlots.SlotRef slotRef = null;
+
     /**
      * Create a property by table and column name. Uses the default property
      * expression which is derived from default table name
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.content.ContentValues;
+
+/**
+ * Slot layout for the columns of one model class. Every column name read or
+ * written by the model gets a fixed slot index, so values can be stored in
+ * an array instead of a {@link ContentValues} map. Properties remember the
+ * slot they resolved to, so repeated reads skip the hash lookup.
+ */
+final class PropertySlots {
+
+    /** marks a slot that holds an explicit null */
+    static final Object NULL = new Object();
+
+    private static final ConcurrentHashMap<Class<?>, PropertySlots> layouts =
+        new ConcurrentHashMap<Class<?>, PropertySlots>();
+
+    /**
+     * @return slot layout for the given model class
+     */
+    static PropertySlots forClass(Class<? extends AbstractModel> cls) {
+        PropertySlots layout = layouts.get(cls);
+        if(layout == null) {
+            layouts.putIfAbsent(cls, new PropertySlots());
+            layout = layouts.get(cls);
+        }
+        return layout;
+    }
+
+    /**
+     * Slot cached on a property. Immutable so it can be swapped atomically
+     * when a property is shared between model classes
+     */
+    static final class SlotRef {
+        final PropertySlots layout;
+        final String column;
+        final int slot;
+
+        SlotRef(PropertySlots layout, String column, int slot) {
+            this.layout = layout;
+            this.column = column;
+            this.slot = slot;
+        }
+    }
+
+    private final HashMap<String, Integer> slotsByColumn = new HashMap<String, Integer>();
+
+    private volatile String[] columns = new String[0];
+
+    /** default values by slot, resolved the first time they are needed */
+    private volatile Object[] defaults = null;
+
+    private PropertySlots() {
+        // use forClass
+    }
+
+    /**
+     * @return slot index for the column of this property
+     */
+    int slotOf(Property<?> property) {
+        String column = property.getColumnName();
+        SlotRef ref = property.slotRef;
+        if(ref != null && ref.layout == this && ref.column == column)
+            return ref.slot;
+        int slot = slotOf(column);
+        property.slotRef = new SlotRef(this, column, slot);
+        return slot;
+    }
+
+    /**
+     * @return slot index for the given column, assigning one if needed
+     */
+    synchronized int slotOf(String column) {
+        Integer slot = slotsByColumn.get(column);
+        if(slot == null) {
+            slot = columns.length;
+            String[] newColumns = new String[slot + 1];
+            System.arraycopy(columns, 0, newColumns, 0, slot);
+            newColumns[slot] = column;
+            slotsByColumn.put(column, slot);
+            columns = newColumns;
+        }
+        return slot;
+    }
+
+    /**
+     * @return number of slots assigned so far
+     */
+    int size() {
+        return columns.length;
+    }
+
+    String columnName(int slot) {
+        return columns[slot];
+    }
+
+    /**
+     * @return default value for the slot, {@link #NULL} for an explicit
+     *         null default, or null if the model has no default
+     */
+    Object defaultValue(AbstractModel model, int slot) {
+        Object[] values = defaults;
+        if(values == null)
+            values = resolveDefaults(model);
+        if(slot >= values.length)
+            return null;
+        return values[slot];
+    }
+
+    private synchronized Object[] resolveDefaults(AbstractModel model) {
+        if(defaults != null)
+            return defaults;
+        ContentValues defaultValues = model.getDefaultValues();
+        Object[] values;
+        if(defaultValues == null)
+            values = new Object[0];
+        else {
+            for(Entry<String, Object> entry : defaultValues.valueSet())
+                slotOf(entry.getKey());
+            values = new Object[size()];
+            for(Entry<String, Object> entry : defaultValues.valueSet()) {
+                Object value = entry.getValue();
+                values[slotOf(entry.getKey())] = value == null ? NULL : value;
+            }
+        }
+        defaults = values;
+        return values;
+    }
+}
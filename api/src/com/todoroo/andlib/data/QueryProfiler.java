@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects timings of the statements run against one database, grouped by
+ * the DAO that issued them and the shape of their SQL (literals replaced by
+ * placeholders). Statements slower than the slow threshold get their query
+ * plan captured once per shape, and plans that scan a whole table are
+ * flagged.
+ * <p>
+ * Profiling is off by default. When it is on, queries are run to completion
+ * before their cursor is returned so that the time includes reading rows.
+ */
+@SuppressWarnings("nls")
+public final class QueryProfiler {
+
+    /** Upper bounds of the latency histogram buckets, in milliseconds */
+    static final long[] BUCKETS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000 };
+
+    public static final long DEFAULT_SLOW_THRESHOLD = 50;
+
+    /**
+     * Timings of one statement shape from one source
+     */
+    public static final class Stats {
+        private final String source;
+        private final String shape;
+        private int count = 0;
+        private long totalTime = 0;
+        private long maxTime = 0;
+        private long totalRows = 0;
+        private final int[] histogram = new int[BUCKETS.length + 1];
+        private boolean planRequested = false;
+        private String plan = null;
+        private boolean fullScan = false;
+
+        Stats(String source, String shape) {
+            this.source = source;
+            this.shape = shape;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getShape() {
+            return shape;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        public long getTotalRows() {
+            return totalRows;
+        }
+
+        /**
+         * @return number of statements per latency bucket, the last bucket
+         * holding those over the largest bound
+         */
+        public int[] getHistogram() {
+            return histogram.clone();
+        }
+
+        /**
+         * @return query plan of a slow run, or null if none was captured
+         */
+        public String getPlan() {
+            return plan;
+        }
+
+        public boolean isFullScan() {
+            return fullScan;
+        }
+
+        private Stats copy() {
+            Stats copy = new Stats(source, shape);
+            copy.count = count;
+            copy.totalTime = totalTime;
+            copy.maxTime = maxTime;
+            copy.totalRows = totalRows;
+            System.arraycopy(histogram, 0, copy.histogram, 0, histogram.length);
+            copy.planRequested = planRequested;
+            copy.plan = plan;
+            copy.fullScan = fullScan;
+            return copy;
+        }
+    }
+
+    private volatile boolean enabled = false;
+
+    private volatile long slowThreshold = DEFAULT_SLOW_THRESHOLD;
+
+    private final HashMap<String, Stats> stats = new HashMap<String, Stats>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    /**
+     * @param slowThreshold time in milliseconds above which a statement's
+     * query plan is captured
+     */
+    public void setSlowThreshold(long slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * Record a statement
+     *
+     * @param source DAO or table that issued the statement
+     * @param sql statement as run
+     * @param elapsed time taken, in milliseconds
+     * @param rows rows returned or changed
+     * @param explainable whether the statement is a query whose plan can
+     * be captured
+     * @return true if the caller should capture the plan with
+     * {@link #recordPlan}
+     */
+    synchronized boolean record(String source, String sql, long elapsed, int rows, boolean explainable) {
+        String shape = normalize(sql);
+        String key = source + '\0' + shape;
+        Stats entry = stats.get(key);
+        if(entry == null) {
+            entry = new Stats(source, shape);
+            stats.put(key, entry);
+        }
+
+        entry.count++;
+        entry.totalTime += elapsed;
+        entry.maxTime = Math.max(entry.maxTime, elapsed);
+        entry.totalRows += Math.max(rows, 0);
+        entry.histogram[bucket(elapsed)]++;
+
+        if(explainable && elapsed > slowThreshold && !entry.planRequested) {
+            entry.planRequested = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record the query plan of a slow statement
+     */
+    synchronized void recordPlan(String source, String sql, String plan) {
+        Stats entry = stats.get(source + '\0' + normalize(sql));
+        if(entry == null)
+            return;
+        entry.plan = plan;
+        entry.fullScan = isFullScan(plan);
+    }
+
+    /**
+     * @return copies of the collected timings, slowest total time first
+     */
+    public synchronized List<Stats> getStats() {
+        ArrayList<Stats> result = new ArrayList<Stats>(stats.size());
+        for(Stats entry : stats.values())
+            result.add(entry.copy());
+        Collections.sort(result, new Comparator<Stats>() {
+            public int compare(Stats a, Stats b) {
+                if(a.totalTime != b.totalTime)
+                    return a.totalTime > b.totalTime ? -1 : 1;
+                return b.count - a.count;
+            }
+        });
+        return result;
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Write a plain text report of the collected timings
+     */
+    public void writeReport(Writer writer) throws IOException {
+        List<Stats> list = getStats();
+        writer.write(String.format(Locale.US, "%d statement shapes, slow threshold %d ms\n",
+                list.size(), slowThreshold));
+        writer.write("histogram buckets (ms):");
+        for(long bound : BUCKETS)
+            writer.write(" <" + bound);
+        writer.write(" >=" + BUCKETS[BUCKETS.length - 1] + "\n");
+
+        for(Stats entry : list) {
+            writer.write("\n");
+            writer.write(String.format(Locale.US,
+                    "[%s] count %d, total %d ms, avg %.1f ms, max %d ms, rows %d%s\n",
+                    entry.source, entry.count, entry.totalTime,
+                    (double) entry.totalTime / entry.count, entry.maxTime,
+                    entry.totalRows, entry.fullScan ? ", FULL SCAN" : ""));
+            writer.write("  " + entry.shape + "\n");
+            StringBuilder histogram = new StringBuilder("  histogram:");
+            for(int count : entry.histogram)
+                histogram.append(' ').append(count);
+            writer.write(histogram.append('\n').toString());
+            if(entry.plan != null) {
+                for(String line : entry.plan.split("\n"))
+                    writer.write("  plan: " + line + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write a plain text report of the collected timings to a file
+     */
+    public void writeReport(File file) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writeReport(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    // --- helpers
+
+    private static int bucket(long elapsed) {
+        for(int i = 0; i < BUCKETS.length; i++)
+            if(elapsed < BUCKETS[i])
+                return i;
+        return BUCKETS.length;
+    }
+
+    /**
+     * @return true if a step of the plan reads a whole table without an index
+     */
+    static boolean isFullScan(String plan) {
+        if(plan == null)
+            return false;
+        for(String line : plan.split("\n")) {
+            String step = line.trim().toUpperCase(Locale.US);
+            if(!step.startsWith("SCAN "))
+                continue;
+            if(step.contains(" USING ") || step.startsWith("SCAN SUBQUERY") ||
+                    step.startsWith("SCAN CONSTANT ROW"))
+                continue;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reduce a statement to its shape: string and number literals become
+     * '?', lists of placeholders become a single one and whitespace is
+     * collapsed, so statements differing only in their values group together
+     */
+    static String normalize(String sql) {
+        StringBuilder shape = new StringBuilder(sql.length());
+        int length = sql.length();
+        for(int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if(c == '\'') {
+                // string literal, with '' as escaped quote
+                i++;
+                while(i < length) {
+                    if(sql.charAt(i) == '\'') {
+                        if(i + 1 < length && sql.charAt(i + 1) == '\'')
+                            i++;
+                        else
+                            break;
+                    }
+                    i++;
+                }
+                shape.append('?');
+            } else if(Character.isDigit(c) && !endsWithIdentifier(shape)) {
+                i++;
+                while(i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.'))
+                    i++;
+                i--;
+                shape.append('?');
+            } else if(Character.isWhitespace(c)) {
+                if(shape.length() > 0 && shape.charAt(shape.length() - 1) != ' ')
+                    shape.append(' ');
+            } else {
+                shape.append(c);
+            }
+        }
+
+        String result = shape.toString().trim();
+        return result.replaceAll("\\?( ?, ?\\?)+", "?");
+    }
+
+    private static boolean endsWithIdentifier(StringBuilder shape) {
+        if(shape.length() == 0)
+            return false;
+        char last = shape.charAt(shape.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '.';
+    }
+
+}
@@ -49,6 +49,26 @@ public final class Table extends SqlTable {
         }
     }
 
+    /**
+     * Reads the indexes declared in the model class's <code>INDEXES</code>
+     * field by reflection
+     * @return index array, empty if the model declares none
+     */
+    @SuppressWarnings("nls")
+    public Index[] getIndexes() {
+        try {
+            return (Index[])modelClass.getField("INDEXES").get(null);
+        } catch (NoSuchFieldException e) {
+            return new Index[0];
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException(e);
+        } catch (SecurityException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     // --- for sql-dsl
 
     /**
@@ -5,17 +5,25 @@
  */
 package com.todoroo.andlib.data;
 
-import java.util.WeakHashMap;
+import java.util.Arrays;
 
 import android.database.Cursor;
 import android.database.CursorWrapper;
 
+import com.todoroo.andlib.data.Property.DoubleProperty;
+import com.todoroo.andlib.data.Property.IntegerProperty;
+import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.PropertyVisitor;
+import com.todoroo.andlib.data.Property.StringProperty;
 
 /**
  * AstridCursor wraps a cursor and allows users to query for individual
  * {@link Property} types or read an entire {@link AbstractModel} from
  * a database row.
+ * <p>
+ * The column index and type of each property the cursor was built with are
+ * resolved once and found through the property's model slot, so reading
+ * those properties needs no map lookups.
  *
  * @author Tim Su <tim@todoroo.com>
  *
@@ -26,13 +34,38 @@ public class TodorooCursor<TYPE extends AbstractModel> extends CursorWrapper {
     /** Properties read by this cursor */
     private final Property<?>[] properties;
 
-    /** Weakly cache field name to column id references for this cursor.
-     * Because it's a weak hash map, entire keys can be discarded by GC */
-    private final WeakHashMap<String, Integer> columnIndexCache;
+    /** Column index of each property, or -1 if the column is missing */
+    private final int[] columnIndexes;
+
+    /** Value type of each property, one of the TYPE_ constants */
+    private final byte[] columnTypes;
+
+    /** Whether each property is nullable */
+    private final boolean[] nullable;
+
+    /** Model class whose slot layout {@link #positionsBySlot} uses */
+    private final Class<? extends AbstractModel> slotClass;
+
+    /** Slot layout of {@link #slotClass} */
+    private final PropertySlots slots;
+
+    /**
+     * Position in {@link #properties} of the first property of
+     * {@link #slotClass} using each slot, or -1
+     */
+    private final int[] positionsBySlot;
+
+    private static final byte TYPE_INTEGER = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
 
     /** Property reading visitor */
     private static final CursorReadingVisitor reader = new CursorReadingVisitor();
 
+    /** Property type visitor */
+    private static final ColumnTypeVisitor typer = new ColumnTypeVisitor();
+
     /** Wrapped cursor */
     private final Cursor cursor;
 
@@ -48,7 +81,44 @@ public class TodorooCursor<TYPE extends AbstractModel> extends CursorWrapper {
 
         this.cursor = cursor;
         this.properties = properties;
-        columnIndexCache = new WeakHashMap<String, Integer>();
+
+        columnIndexes = new int[properties.length];
+        columnTypes = new byte[properties.length];
+        nullable = new boolean[properties.length];
+        for(int i = 0; i < properties.length; i++) {
+            columnIndexes[i] = cursor.getColumnIndex(properties[i].getColumnName());
+            columnTypes[i] = properties[i].accept(typer, null);
+            nullable[i] = properties[i].checkFlag(Property.PROP_FLAG_NULLABLE);
+        }
+
+        // index positions by the slots of the first property's model, which
+        // is the model of the rows for all but joined columns
+        Class<? extends AbstractModel> modelClass = null;
+        for(int i = 0; i < properties.length && modelClass == null; i++)
+            modelClass = modelClassOf(properties[i]);
+        slotClass = modelClass;
+        if(modelClass == null) {
+            slots = null;
+            positionsBySlot = new int[0];
+        } else {
+            slots = PropertySlots.forClass(modelClass);
+            int[] propertySlots = new int[properties.length];
+            int size = 0;
+            for(int i = 0; i < properties.length; i++) {
+                propertySlots[i] = modelClassOf(properties[i]) == modelClass ?
+                        slots.slotOf(properties[i]) : -1;
+                size = Math.max(size, propertySlots[i] + 1);
+            }
+            positionsBySlot = new int[size];
+            Arrays.fill(positionsBySlot, -1);
+            for(int i = 0; i < properties.length; i++)
+                if(propertySlots[i] >= 0 && positionsBySlot[propertySlots[i]] < 0)
+                    positionsBySlot[propertySlots[i]] = i;
+        }
+    }
+
+    private static Class<? extends AbstractModel> modelClassOf(Property<?> property) {
+        return property.table == null ? null : property.table.modelClass;
     }
 
     /**
@@ -59,9 +129,108 @@ public class TodorooCursor<TYPE extends AbstractModel> extends CursorWrapper {
      * @return
      */
     public <PROPERTY_TYPE> PROPERTY_TYPE get(Property<PROPERTY_TYPE> property) {
+        int position = positionOf(property);
+        if(position >= 0)
+            return (PROPERTY_TYPE) getAt(position);
         return (PROPERTY_TYPE)property.accept(reader, this);
     }
 
+    /**
+     * Get the value of the property at the given position of
+     * {@link #getProperties()}
+     *
+     * @param position index into the property array
+     * @return value, or null if a nullable property is null
+     */
+    public Object getAt(int position) {
+        int column = columnIndexAt(position);
+        if(nullable[position] && cursor.isNull(column))
+            return null;
+        switch(columnTypes[position]) {
+        case TYPE_INTEGER:
+            return cursor.getInt(column);
+        case TYPE_LONG:
+            return cursor.getLong(column);
+        case TYPE_DOUBLE:
+            return cursor.getDouble(column);
+        default:
+            return cursor.getString(column);
+        }
+    }
+
+    /**
+     * @return column index of the property at the given position of
+     *         {@link #getProperties()}
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public int columnIndexAt(int position) {
+        int column = columnIndexes[position];
+        if(column < 0)
+            throw new IllegalArgumentException("column '" + //$NON-NLS-1$
+                    properties[position].getColumnName() + "' does not exist"); //$NON-NLS-1$
+        return column;
+    }
+
+    /**
+     * @return column index of the given property
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public int columnIndex(Property<?> property) {
+        int position = positionOf(property);
+        if(position >= 0)
+            return columnIndexAt(position);
+        return getColumnIndexOrThrow(property.getColumnName());
+    }
+
+    /**
+     * @return position of the property in {@link #getProperties()}, or -1
+     */
+    private int positionOf(Property<?> property) {
+        if(slotClass != null && modelClassOf(property) == slotClass) {
+            int slot = slots.slotOf(property);
+            if(slot < positionsBySlot.length) {
+                int position = positionsBySlot[slot];
+                if(position >= 0 && properties[position] == property)
+                    return position;
+            }
+        }
+        // joined columns, or another property object for the same column
+        for(int i = 0; i < properties.length; i++)
+            if(properties[i] == property)
+                return i;
+        return -1;
+    }
+
+    // --- typed getters that don't box values
+
+    /**
+     * @return value of the property in the current row, 0 if null
+     */
+    public long getLong(LongProperty property) {
+        return cursor.getLong(columnIndex(property));
+    }
+
+    /**
+     * @return value of the property in the current row, 0 if null
+     */
+    public int getInt(IntegerProperty property) {
+        return cursor.getInt(columnIndex(property));
+    }
+
+    /**
+     * @return value of the property in the current row, 0 if null
+     */
+    public double getDouble(DoubleProperty property) {
+        return cursor.getDouble(columnIndex(property));
+    }
+
+    /**
+     * @return value of the property in the current row
+     */
+    public String getString(StringProperty property) {
+        return cursor.getString(columnIndex(property));
+    }
+
     /**
      * @return underlying cursor
      */
@@ -77,19 +246,6 @@ public class TodorooCursor<TYPE extends AbstractModel> extends CursorWrapper {
         return properties;
     }
 
-    /**
-     * Use cache to get the column index for the given field name
-     */
-    public synchronized int getColumnIndexFromCache(String field) {
-        Integer index = columnIndexCache.get(field);
-        if(index == null) {
-            index = getColumnIndexOrThrow(field);
-            columnIndexCache.put(field, index);
-        }
-
-        return index;
-    }
-
     /**
      * Visitor that reads the given property from a cursor
      *
@@ -130,7 +286,30 @@ public class TodorooCursor<TYPE extends AbstractModel> extends CursorWrapper {
         }
 
         private int columnIndex(Property<?> property, TodorooCursor<?> cursor) {
-            return cursor.getColumnIndexFromCache(property.getColumnName());
+            return cursor.columnIndex(property);
+        }
+
+    }
+
+    /**
+     * Visitor that returns the TYPE_ constant for a property
+     */
+    private static class ColumnTypeVisitor implements PropertyVisitor<Byte, Void> {
+
+        public Byte visitInteger(Property<Integer> property, Void data) {
+            return TYPE_INTEGER;
+        }
+
+        public Byte visitLong(Property<Long> property, Void data) {
+            return TYPE_LONG;
+        }
+
+        public Byte visitDouble(Property<Double> property, Void data) {
+            return TYPE_DOUBLE;
+        }
+
+        public Byte visitString(Property<String> property, Void data) {
+            return TYPE_STRING;
         }
 
     }
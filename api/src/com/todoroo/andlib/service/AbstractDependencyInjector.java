@@ -7,7 +7,7 @@ package com.todoroo.andlib.service;
 
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.todoroo.andlib.service.ExceptionService.ErrorReporter;
 
@@ -42,13 +42,19 @@ abstract public class AbstractDependencyInjector {
     /**
      * Dependencies this class knows how to handle
      */
-    protected final HashMap<String, Object> injectables = new HashMap<String, Object>();
+    protected final ConcurrentHashMap<String, Object> injectables = new ConcurrentHashMap<String, Object>();
 
     /**
      * Cache of classes that were instantiated by the injector
      */
-    protected final HashMap<Class<?>, WeakReference<Object>> createdObjects =
-        new HashMap<Class<?>, WeakReference<Object>>();
+    protected final ConcurrentHashMap<Class<?>, WeakReference<Object>> createdObjects =
+        new ConcurrentHashMap<Class<?>, WeakReference<Object>>();
+
+    /**
+     * Held while instantiating injectables. Shared by all injectors, since
+     * constructing one injectable injects the ones it depends on
+     */
+    private static final Object creationLock = new Object();
 
     /**
      * Gets the injected object for this field. If implementing class does not
@@ -61,33 +67,46 @@ abstract public class AbstractDependencyInjector {
      * @return object to assign to this field, or null
      */
     public Object getInjection(Object object, Field field) {
-        if(injectables.containsKey(field.getName())) {
-            Object injection = injectables.get(field.getName());
-
-            // if it's a class, instantiate the class
-            if(injection instanceof Class<?>) {
-                if(createdObjects.containsKey(injection) &&
-                        createdObjects.get(injection).get() != null) {
-                    injection = createdObjects.get(injection).get();
-                } else {
-                    Class<?> cls = (Class<?>)injection;
-                    try {
-                        injection = cls.newInstance();
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    } catch (InstantiationException e) {
-                        throw new RuntimeException(e);
-                    }
-
-                    createdObjects.put(cls,
-                            new WeakReference<Object>(injection));
-                }
+        Object injection = injectables.get(field.getName());
+        if(injection == null)
+            return null;
+
+        // if it's a class, instantiate the class on first use
+        if(injection instanceof Class<?>)
+            return getCreatedObject((Class<?>) injection);
+
+        return injection;
+    }
+
+    /**
+     * @return the instance of the class created earlier, or a new one if
+     *         none is alive
+     */
+    private Object getCreatedObject(Class<?> cls) {
+        Object created = dereference(createdObjects.get(cls));
+        if(created != null)
+            return created;
+
+        synchronized(creationLock) {
+            created = dereference(createdObjects.get(cls));
+            if(created != null)
+                return created;
+
+            try {
+                created = cls.newInstance();
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            } catch (InstantiationException e) {
+                throw new RuntimeException(e);
             }
 
-            return injection;
+            createdObjects.put(cls, new WeakReference<Object>(created));
+            return created;
         }
+    }
 
-        return null;
+    private static Object dereference(WeakReference<Object> reference) {
+        return reference == null ? null : reference.get();
     }
 
     @Override
@@ -6,7 +6,9 @@
 package com.todoroo.andlib.service;
 
 import java.lang.reflect.Field;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.todoroo.andlib.service.ExceptionService.AndroidLogReporter;
 import com.todoroo.andlib.service.ExceptionService.ErrorReporter;
@@ -28,9 +30,17 @@ import com.todoroo.andlib.service.ExceptionService.ErrorReporter;
 public class DependencyInjectionService {
 
     /**
-     * Dependency injectors. Use getters and setters to modify this list
+     * Dependency injectors, first consulted first. Replaced as a whole when
+     * injectors are added or removed, so injection can read it unlocked
      */
-    private final LinkedList<AbstractDependencyInjector> injectors = new LinkedList<AbstractDependencyInjector>();
+    private volatile AbstractDependencyInjector[] injectors = new AbstractDependencyInjector[0];
+
+    /**
+     * Autowired fields of each class and its qualified superclasses, found
+     * the first time an instance of the class is injected
+     */
+    private final ConcurrentHashMap<Class<?>, Field[]> injectionPlans =
+        new ConcurrentHashMap<Class<?>, Field[]>();
 
     /**
      * Perform dependency injection in the caller object
@@ -40,36 +50,53 @@ public class DependencyInjectionService {
      */
     @SuppressWarnings("nls")
     public void inject(Object caller) {
-        // Traverse through class and all parent classes, looking for
-        // fields declared with the @Autowired annotation and using
-        // dependency injection to set them as appropriate
+        for(Field field : getInjectionPlan(caller.getClass())) {
+            try {
+                handleField(caller, field);
+            } catch (IllegalStateException e) {
+                throw new RuntimeException(String.format("Unable to set field '%s' of type '%s'",
+                        field.getName(), field.getType()), e);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException(String.format("Unable to set field '%s' of type '%s'",
+                                field.getName(), field.getType()), e);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(String.format("Unable to set field '%s' of type '%s'",
+                        field.getName(), field.getType()), e);
+            }
+        }
+    }
 
-        Class<?> cls = caller.getClass();
+    /**
+     * Traverse through class and all parent classes, looking for fields
+     * declared with the @Autowired annotation
+     *
+     * @return fields to inject, made accessible
+     */
+    private Field[] getInjectionPlan(Class<?> callerClass) {
+        Field[] plan = injectionPlans.get(callerClass);
+        if(plan != null)
+            return plan;
+
+        ArrayList<Field> fields = new ArrayList<Field>();
+        Class<?> cls = callerClass;
         while(cls != null) {
-            String packageName = cls.getPackage().getName();
-            if(!isQualifiedPackage(packageName))
+            Package classPackage = cls.getPackage();
+            if(classPackage == null || !isQualifiedPackage(classPackage.getName()))
                 break;
 
             for(Field field : cls.getDeclaredFields()) {
                 if(field.getAnnotation(Autowired.class) != null) {
                     field.setAccessible(true);
-                    try {
-                        handleField(caller, field);
-                    } catch (IllegalStateException e) {
-                        throw new RuntimeException(String.format("Unable to set field '%s' of type '%s'",
-                                field.getName(), field.getType()), e);
-                    } catch (IllegalArgumentException e) {
-                        throw new RuntimeException(String.format("Unable to set field '%s' of type '%s'",
-                                        field.getName(), field.getType()), e);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(String.format("Unable to set field '%s' of type '%s'",
-                                field.getName(), field.getType()), e);
-                    }
+                    fields.add(field);
                 }
             }
 
             cls = cls.getSuperclass();
         }
+
+        plan = fields.toArray(new Field[fields.size()]);
+        injectionPlans.putIfAbsent(callerClass, plan);
+        return plan;
     }
 
     @SuppressWarnings("nls")
@@ -93,7 +120,7 @@ public class DependencyInjectionService {
      *            field to inject
      */
     @SuppressWarnings("nls")
-    private synchronized void handleField(Object caller, Field field)
+    private void handleField(Object caller, Field field)
             throws IllegalStateException, IllegalArgumentException,
             IllegalAccessException {
 
@@ -107,7 +134,8 @@ public class DependencyInjectionService {
             return;
         }
 
-        for (AbstractDependencyInjector injector : injectors) {
+        AbstractDependencyInjector[] chain = injectors;
+        for (AbstractDependencyInjector injector : chain) {
             Object injection = injector.getInjection(caller, field);
             if (injection != null) {
                 field.set(caller, injection);
@@ -119,7 +147,7 @@ public class DependencyInjectionService {
                 String.format("No dependency injector found for autowired " +
                 		"field '%s' in class '%s'. Injectors: %s",
                         field.getName(), caller.getClass().getName(),
-                        injectors));
+                        Arrays.toString(chain)));
     }
 
     // --- default dependency injector
@@ -142,7 +170,7 @@ public class DependencyInjectionService {
 
     DependencyInjectionService() {
         // prevent instantiation
-        injectors.add(new DefaultDependencyInjector());
+        injectors = new AbstractDependencyInjector[] { new DefaultDependencyInjector() };
     }
 
     /**
@@ -160,7 +188,10 @@ public class DependencyInjectionService {
      * @return
      */
     public synchronized void removeInjector(AbstractDependencyInjector injector) {
-        injectors.remove(injector);
+        ArrayList<AbstractDependencyInjector> chain = new ArrayList<AbstractDependencyInjector>(
+                Arrays.asList(injectors));
+        if(chain.remove(injector))
+            injectors = chain.toArray(new AbstractDependencyInjector[chain.size()]);
     }
 
     /**
@@ -168,9 +199,11 @@ public class DependencyInjectionService {
      * @param injectors
      */
     public synchronized void addInjector(AbstractDependencyInjector injector) {
-        removeInjector(injector);
-
-        this.injectors.addFirst(injector);
+        ArrayList<AbstractDependencyInjector> chain = new ArrayList<AbstractDependencyInjector>(
+                Arrays.asList(injectors));
+        chain.remove(injector);
+        chain.add(0, injector);
+        injectors = chain.toArray(new AbstractDependencyInjector[chain.size()]);
     }
 
 }
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.sql;
+
+import java.util.Arrays;
+
+/**
+ * SQL with '?' placeholders and the arguments to bind to them, as produced
+ * by {@link Query#toBoundQuery()}. Two bound queries with the same
+ * {@link #sql} have the same shape and can share a compiled statement.
+ *
+ * @author Tim Su <tim@todoroo.com>
+ *
+ */
+public final class BoundQuery {
+
+    /** sql with placeholders */
+    public final String sql;
+
+    /** arguments, one per placeholder */
+    public final Object[] args;
+
+    public BoundQuery(String sql, Object[] args) {
+        this.sql = sql;
+        this.args = args;
+    }
+
+    /**
+     * @return arguments as strings, for {@link android.database.sqlite.SQLiteDatabase#rawQuery}
+     */
+    public String[] getStringArgs() {
+        String[] result = new String[args.length];
+        for(int i = 0; i < args.length; i++)
+            result[i] = args[i] == null ? null : args[i].toString();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return sql + " " + Arrays.toString(args); //$NON-NLS-1$
+    }
+}
@@ -13,6 +13,8 @@ import static com.todoroo.andlib.sql.SqlConstants.OR;
 import static com.todoroo.andlib.sql.SqlConstants.RIGHT_PARENTHESIS;
 import static com.todoroo.andlib.sql.SqlConstants.SPACE;
 
+import java.util.List;
+
 public abstract class Criterion {
     protected final Operator operator;
 
@@ -44,6 +46,15 @@ public abstract class Criterion {
                     sb.append(SPACE).append(AND).append(SPACE).append(c);
                 }
             }
+
+            @Override
+            protected void populate(StringBuilder sb, List<Object> args) {
+                criterion.appendTo(sb, args);
+                for (Criterion c : criterions) {
+                    sb.append(SPACE).append(AND).append(SPACE);
+                    c.appendTo(sb, args);
+                }
+            }
         };
     }
 
@@ -57,6 +68,15 @@ public abstract class Criterion {
                     sb.append(SPACE).append(OR).append(SPACE).append(c.toString());
                 }
             }
+
+            @Override
+            protected void populate(StringBuilder sb, List<Object> args) {
+                criterion.appendTo(sb, args);
+                for (Criterion c : criterions) {
+                    sb.append(SPACE).append(OR).append(SPACE);
+                    c.appendTo(sb, args);
+                }
+            }
         };
     }
 
@@ -78,11 +98,38 @@ public abstract class Criterion {
                 sb.append(NOT).append(SPACE);
                 criterion.populate(sb);
             }
+
+            @Override
+            protected void populate(StringBuilder sb, List<Object> args) {
+                sb.append(NOT).append(SPACE);
+                criterion.populate(sb, args);
+            }
         };
     }
 
     protected abstract void populate(StringBuilder sb);
 
+    /**
+     * Populate the builder, replacing bindable values with '?' and adding
+     * them to args. Criteria without bindable values write literal SQL.
+     */
+    protected void populate(StringBuilder sb, List<Object> args) {
+        populate(sb);
+    }
+
+    /**
+     * Append this criterion to the given builder. If args is null, values
+     * are written as literals, as in {@link #toString()}
+     */
+    public void appendTo(StringBuilder sb, List<Object> args) {
+        sb.append(LEFT_PARENTHESIS);
+        if(args == null)
+            populate(sb);
+        else
+            populate(sb, args);
+        sb.append(RIGHT_PARENTHESIS);
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder(LEFT_PARENTHESIS);
@@ -22,6 +22,7 @@ import static com.todoroo.andlib.sql.SqlTable.table;
 import static java.util.Arrays.asList;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,6 +47,17 @@ public final class Query {
     private int limits = -1;
     private boolean distinct = false;
 
+    /** frozen queries can no longer be modified, and cache their sql */
+    private boolean frozen = false;
+    private String sqlCache = null;
+    private BoundQuery boundCache = null;
+    private int hashCache;
+
+    /** rendered select, from and join clauses, shared with forked queries */
+    private String prefixCache = null;
+    private BoundQuery boundPrefixCache = null;
+    private Query prefixSource = null;
+
     private Query(Field... fields) {
         this.fields.addAll(asList(fields));
     }
@@ -60,46 +72,119 @@ public final class Query {
         return query;
     }
 
+    /**
+     * Set the table to select from. A frozen query is not modified; instead
+     * a frozen copy with the new table is returned
+     */
     public Query from(SqlTable fromTable) {
+        if(frozen) {
+            if(fromTable == null ? table == null : fromTable.equals(table))
+                return this;
+            Query copy = fork();
+            copy.from(fromTable);
+            copy.criterions.addAll(criterions);
+            copy.groupBies.addAll(groupBies);
+            copy.unions.addAll(unions);
+            copy.orders.addAll(orders);
+            copy.havings.addAll(havings);
+            copy.limits = limits;
+            copy.queryTemplate = queryTemplate;
+            return copy.freeze();
+        }
+        if(fromTable == null ? table != null : !fromTable.equals(table))
+            prefixSource = null;
         this.table = fromTable;
         return this;
     }
 
     public Query join(Join... join) {
+        checkNotFrozen();
         joins.addAll(asList(join));
+        prefixSource = null;
         return this;
     }
 
     public Query where(Criterion criterion) {
+        checkNotFrozen();
         criterions.add(criterion);
         return this;
     }
 
     public Query groupBy(Field... groupBy) {
+        checkNotFrozen();
         groupBies.addAll(asList(groupBy));
         return this;
     }
 
     public Query union(Query query) {
+        checkNotFrozen();
         unions.add(query);
         return this;
     }
 
     public Query orderBy(Order... order) {
+        checkNotFrozen();
         orders.addAll(asList(order));
         return this;
     }
 
     public Query limit(int limit) {
+        checkNotFrozen();
         limits = limit;
         return this;
     }
 
     public Query appendSelectFields(Property<?>... selectFields) {
+        checkNotFrozen();
         this.fields.addAll(asList(selectFields));
+        prefixSource = null;
         return this;
     }
 
+    /**
+     * Make this query immutable. A frozen query renders its SQL once and
+     * caches it along with its hash code, so it can be reused as a
+     * constant or a map key without rebuilding the string.
+     *
+     * @return this query
+     */
+    public Query freeze() {
+        if(!frozen) {
+            sqlCache = toString();
+            hashCache = sqlCache.hashCode();
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Start a new, modifiable query with this query's select list, table
+     * and joins. If this query is frozen, the rendered select, from and
+     * join clauses are shared with the new query instead of being rebuilt
+     * every time it is rendered.
+     *
+     * @return new query
+     */
+    public Query fork() {
+        Query query = new Query();
+        query.fields.addAll(fields);
+        query.joins.addAll(joins);
+        query.table = table;
+        query.distinct = distinct;
+        if(frozen)
+            query.prefixSource = this;
+        return query;
+    }
+
+    private void checkNotFrozen() {
+        if(frozen)
+            throw new IllegalStateException("Query is frozen"); //$NON-NLS-1$
+    }
+
     @Override
     public boolean equals(Object o) {
         return this == o || !(o == null || getClass() != o.getClass()) && this.toString().equals(o.toString());
@@ -107,18 +192,54 @@ public final class Query {
 
     @Override
     public int hashCode() {
+        if(frozen)
+            return hashCache;
         return toString().hashCode();
     }
 
     @Override
     public String toString() {
+        if(sqlCache != null)
+            return sqlCache;
         StringBuilder sql = new StringBuilder();
-        visitSelectClause(sql);
-        visitFromClause(sql);
+        buildSql(sql, null);
+        return sql.toString();
+    }
+
+    /**
+     * Build a parameterized form of this query: values compared against
+     * table columns in join and where clauses are replaced by '?'. Lookups
+     * that differ only in their values share the same SQL, so SQLite can
+     * reuse the compiled statement.
+     *
+     * @return bound query
+     */
+    public BoundQuery toBoundQuery() {
+        if(boundCache != null)
+            return boundCache;
+        StringBuilder sql = new StringBuilder();
+        ArrayList<Object> args = new ArrayList<Object>();
+        buildSql(sql, args);
+        BoundQuery result = new BoundQuery(sql.toString(), args.toArray());
+        if(frozen)
+            boundCache = result;
+        return result;
+    }
+
+    private void buildSql(StringBuilder sql, List<Object> args) {
+        Query source = prefixSource != null ? prefixSource : frozen ? this : null;
+        if(source == null) {
+            visitPrefix(sql, args);
+        } else if(args == null) {
+            sql.append(source.getPrefix());
+        } else {
+            BoundQuery prefix = source.getBoundPrefix();
+            sql.append(prefix.sql);
+            args.addAll(asList(prefix.args));
+        }
 
-        visitJoinClause(sql);
         if(queryTemplate == null) {
-            visitWhereClause(sql);
+            visitWhereClause(sql, args);
             visitGroupByClause(sql);
             visitUnionClause(sql);
             visitOrderByClause(sql);
@@ -129,8 +250,42 @@ public final class Query {
                 throw new IllegalStateException("Can't have extras AND query template"); //$NON-NLS-1$
             sql.append(queryTemplate);
         }
+    }
 
-        return sql.toString();
+    /**
+     * @return rendered select, from and join clauses. Cached once frozen
+     */
+    private String getPrefix() {
+        if(prefixCache != null)
+            return prefixCache;
+        StringBuilder sql = new StringBuilder();
+        visitPrefix(sql, null);
+        String prefix = sql.toString();
+        if(frozen)
+            prefixCache = prefix;
+        return prefix;
+    }
+
+    /**
+     * @return parameterized select, from and join clauses, with the values
+     *         bound by joins. Cached once frozen
+     */
+    private BoundQuery getBoundPrefix() {
+        if(boundPrefixCache != null)
+            return boundPrefixCache;
+        StringBuilder sql = new StringBuilder();
+        ArrayList<Object> args = new ArrayList<Object>();
+        visitPrefix(sql, args);
+        BoundQuery prefix = new BoundQuery(sql.toString(), args.toArray());
+        if(frozen)
+            boundPrefixCache = prefix;
+        return prefix;
+    }
+
+    private void visitPrefix(StringBuilder sql, List<Object> args) {
+        visitSelectClause(sql);
+        visitFromClause(sql);
+        visitJoinClause(sql, args);
     }
 
     private void visitOrderByClause(StringBuilder sql) {
@@ -173,19 +328,22 @@ public final class Query {
         }
     }
 
-    private void visitWhereClause(StringBuilder sql) {
+    private void visitWhereClause(StringBuilder sql, List<Object> args) {
         if (criterions.isEmpty()) {
             return;
         }
         sql.append(WHERE);
         for (Criterion criterion : criterions) {
-            sql.append(SPACE).append(criterion).append(SPACE);
+            sql.append(SPACE);
+            criterion.appendTo(sql, args);
+            sql.append(SPACE);
         }
     }
 
-    private void visitJoinClause(StringBuilder sql) {
+    private void visitJoinClause(StringBuilder sql, List<Object> args) {
         for (Join join : joins) {
-            sql.append(join).append(SPACE);
+            join.appendTo(sql, args);
+            sql.append(SPACE);
         }
     }
 
@@ -220,6 +378,7 @@ public final class Query {
     }
 
     public Query having(Criterion criterion) {
+        checkNotFrozen();
         this.havings.add(criterion);
         return this;
     }
@@ -238,6 +397,7 @@ public final class Query {
      * @return query
      */
     public Query withQueryTemplate(String template) {
+        checkNotFrozen();
         queryTemplate = template;
         return this;
     }
@@ -284,6 +444,13 @@ public final class Query {
         if(groupByClause.length() > 0)
             uri = Uri.withAppendedPath(baseUri, AstridApiConstants.GROUP_BY_URI +
                     groupByClause.toString().trim());
+
+        int limit = limits;
+        if(queryTemplate != null)
+            limit = QueryTemplateHelper.limitForContentResolver(queryTemplate);
+        if(limit > -1)
+            uri = uri.buildUpon().appendQueryParameter(AstridApiConstants.LIMIT_PARAMETER,
+                    Integer.toString(limit)).build();
         return cr.query(uri, projection, selectionClause.toString(), null,
                 orderClause.toString());
     }
@@ -313,6 +480,17 @@ public final class Query {
                 orderClause.append(orderMatcher.group(1).trim());
         }
 
+        /**
+         * @return row limit at the end of a query template, or -1 if it has none
+         */
+        @SuppressWarnings("nls")
+        public static int limitForContentResolver(String queryTemplate) {
+            Matcher limitMatcher = Pattern.compile("LIMIT (\\d+)\\s*\\Z").matcher(queryTemplate);
+            if(limitMatcher.find())
+                return Integer.parseInt(limitMatcher.group(1));
+            return -1;
+        }
+
     }
 
 }
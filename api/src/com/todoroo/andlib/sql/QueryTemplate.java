@@ -31,30 +31,100 @@ public final class QueryTemplate {
     private final ArrayList<Criterion> havings = new ArrayList<Criterion>();
     private Integer limit = null;
 
+    /** frozen templates can no longer be modified, and cache their sql */
+    private boolean frozen = false;
+    private String sqlCache = null;
+    private int hashCache;
+
+    /** rendered join clause, shared with forked templates */
+    private String joinCache = null;
+    private QueryTemplate joinSource = null;
+
     public QueryTemplate join(Join... join) {
+        checkNotFrozen();
         joins.addAll(asList(join));
+        joinSource = null;
         return this;
     }
 
     public QueryTemplate where(Criterion criterion) {
+        checkNotFrozen();
         criterions.add(criterion);
         return this;
     }
 
     public QueryTemplate groupBy(Field... groupBy) {
+        checkNotFrozen();
         groupBies.addAll(asList(groupBy));
         return this;
     }
 
     public QueryTemplate orderBy(Order... order) {
+        checkNotFrozen();
         orders.addAll(asList(order));
         return this;
     }
 
+    /**
+     * Make this template immutable. A frozen template renders its SQL once
+     * and caches it along with its hash code.
+     *
+     * @return this template
+     */
+    public QueryTemplate freeze() {
+        if(!frozen) {
+            sqlCache = toString();
+            hashCache = sqlCache.hashCode();
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Start a new, modifiable template with this template's joins. If this
+     * template is frozen, the rendered join clause is shared with the new
+     * template instead of being rebuilt every time it is rendered.
+     *
+     * @return new template
+     */
+    public QueryTemplate fork() {
+        QueryTemplate template = new QueryTemplate();
+        template.joins.addAll(joins);
+        if(frozen)
+            template.joinSource = this;
+        return template;
+    }
+
+    private void checkNotFrozen() {
+        if(frozen)
+            throw new IllegalStateException("Query template is frozen"); //$NON-NLS-1$
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || !(o == null || getClass() != o.getClass()) && this.toString().equals(o.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        if(frozen)
+            return hashCache;
+        return toString().hashCode();
+    }
+
     @Override
     public String toString() {
+        if(sqlCache != null)
+            return sqlCache;
         StringBuilder sql = new StringBuilder();
-        visitJoinClause(sql);
+        if(joinSource != null)
+            sql.append(joinSource.getJoinClause());
+        else
+            visitJoinClause(sql);
         visitWhereClause(sql);
         visitGroupByClause(sql);
         visitOrderByClause(sql);
@@ -104,6 +174,20 @@ public final class QueryTemplate {
         }
     }
 
+    /**
+     * @return rendered join clause. Cached once frozen
+     */
+    private String getJoinClause() {
+        if(joinCache != null)
+            return joinCache;
+        StringBuilder sql = new StringBuilder();
+        visitJoinClause(sql);
+        String result = sql.toString();
+        if(frozen)
+            joinCache = result;
+        return result;
+    }
+
     private void visitJoinClause(StringBuilder sql) {
         for (Join join : joins) {
             sql.append(join).append(SPACE);
@@ -111,11 +195,13 @@ public final class QueryTemplate {
     }
 
     public QueryTemplate having(Criterion criterion) {
+        checkNotFrozen();
         this.havings.add(criterion);
         return this;
     }
 
     public QueryTemplate limit(int limitValue) {
+        checkNotFrozen();
         this.limit = limitValue;
         return this;
     }
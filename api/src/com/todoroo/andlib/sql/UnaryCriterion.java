@@ -7,6 +7,10 @@ package com.todoroo.andlib.sql;
 
 import static com.todoroo.andlib.sql.SqlConstants.SPACE;
 
+import java.util.List;
+
+import com.todoroo.andlib.data.Property;
+
 public class UnaryCriterion extends Criterion {
     protected final Field expression;
     protected final Object value;
@@ -24,6 +28,33 @@ public class UnaryCriterion extends Criterion {
         afterPopulateOperator(sb);
     }
 
+    @Override
+    protected void populate(StringBuilder sb, List<Object> args) {
+        beforePopulateOperator(sb);
+        populateOperator(sb);
+        if(isBindable()) {
+            sb.append('?');
+            args.add(value);
+        } else
+            afterPopulateOperator(sb);
+    }
+
+    /**
+     * Values are only bound when compared against a plain table column, as
+     * SQLite converts bound text to the column's affinity. Expressions and
+     * aliases have no affinity, so those values stay literal.
+     */
+    protected boolean isBindable() {
+        if(!(value instanceof String || value instanceof Long || value instanceof Integer))
+            return false;
+        if(!(expression instanceof Property<?>))
+            return false;
+        Property<?> property = (Property<?>) expression;
+        if(property.hasAlias())
+            return false;
+        return property.table != null || property.name.equals(property.expression);
+    }
+
     public static Criterion eq(Field expression, Object value) {
         return new UnaryCriterion(expression, Operator.eq, value);
     }
@@ -115,6 +146,13 @@ public class UnaryCriterion extends Criterion {
                 super.afterPopulateOperator(sb);
                 sb.append(SPACE).append("ESCAPE").append(" '").append(sanitize(escape)).append("'");
             }
+            @SuppressWarnings("nls")
+            @Override
+            protected void populate(StringBuilder sb, List<Object> args) {
+                super.populate(sb, args);
+                if(isBindable())
+                    sb.append(SPACE).append("ESCAPE").append(" '").append(sanitize(escape)).append("'");
+            }
         };
     }
 }
@@ -50,6 +50,12 @@ public class AstridApiConstants {
      */
     public static final String GROUP_BY_URI = "/groupby/";
 
+    /**
+     * Query parameter limiting the number of rows a content provider query
+     * returns
+     */
+    public static final String LIMIT_PARAMETER = "limit";
+
     // --- Broadcast Extras
 
     /**
@@ -57,6 +63,11 @@ public class AstridApiConstants {
      */
     public static final String EXTRAS_TASK_ID = "task";
 
+    /**
+     * Extras name for an array of task ids
+     */
+    public static final String EXTRAS_TASK_IDS = "tasks";
+
     /**
      * Extras name for a response item broadcast to astrid
      */
@@ -159,6 +170,25 @@ public class AstridApiConstants {
      */
     public static final String BROADCAST_SEND_DETAILS = API_PACKAGE + ".SEND_DETAILS";
 
+    /**
+     * Action name for broadcast intent requesting details for several tasks
+     * at once. Add-ons should answer with one
+     * {@link #BROADCAST_SEND_DETAILS_BATCH}, reading the details of all
+     * tasks together. See {@link TaskDetailExposer}
+     *
+     * <li> EXTRAS_TASK_IDS ids of the tasks, a long[]
+     */
+    public static final String BROADCAST_REQUEST_DETAILS_BATCH = API_PACKAGE + ".REQUEST_DETAILS_BATCH";
+
+    /**
+     * Action name for broadcast intent sending details of several tasks back
+     * to Astrid
+     * <li> EXTRAS_ADDON your add-on identifier
+     * <li> EXTRAS_TASK_IDS ids of the tasks that have details, a long[]
+     * <li> EXTRAS_RESPONSE details of each of these tasks, a String[]
+     */
+    public static final String BROADCAST_SEND_DETAILS_BATCH = API_PACKAGE + ".SEND_DETAILS_BATCH";
+
     // --- Sync Action API
 
     /**
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.api;
+
+import java.util.Map;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.todoroo.andlib.service.ContextManager;
+
+/**
+ * Receiver exposing details displayed in the task list. Details of all
+ * tasks in a {@link AstridApiConstants#BROADCAST_REQUEST_DETAILS_BATCH}
+ * are read together and sent back in one broadcast. Requests for a single
+ * task, {@link AstridApiConstants#BROADCAST_REQUEST_DETAILS}, are still
+ * answered one task at a time.
+ */
+public abstract class TaskDetailExposer extends BroadcastReceiver {
+
+    /**
+     * Read the details of the given tasks
+     *
+     * @return details of each task that has any, by task id
+     */
+    public abstract Map<Long, String> getTaskDetails(Context context, long[] ids);
+
+    /**
+     * @return add-on identifier sent with details
+     */
+    public abstract String getAddon();
+
+    /**
+     * Whether details should be exposed at all, for example only if the
+     * user is logged in to a service
+     */
+    protected boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        ContextManager.setContext(context);
+        if(!isEnabled())
+            return;
+
+        if(AstridApiConstants.BROADCAST_REQUEST_DETAILS_BATCH.equals(intent.getAction())) {
+            long[] ids = intent.getLongArrayExtra(AstridApiConstants.EXTRAS_TASK_IDS);
+            if(ids == null || ids.length == 0)
+                return;
+            Map<Long, String> details = getTaskDetails(context, ids);
+            if(details.isEmpty())
+                return;
+
+            long[] detailIds = new long[details.size()];
+            String[] detailStrings = new String[details.size()];
+            int i = 0;
+            for(Map.Entry<Long, String> detail : details.entrySet()) {
+                detailIds[i] = detail.getKey();
+                detailStrings[i++] = detail.getValue();
+            }
+
+            Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_SEND_DETAILS_BATCH);
+            broadcastIntent.putExtra(AstridApiConstants.EXTRAS_ADDON, getAddon());
+            broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_IDS, detailIds);
+            broadcastIntent.putExtra(AstridApiConstants.EXTRAS_RESPONSE, detailStrings);
+            context.sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+            return;
+        }
+
+        long taskId = intent.getLongExtra(AstridApiConstants.EXTRAS_TASK_ID, -1);
+        if(taskId == -1)
+            return;
+        String taskDetail = getTaskDetails(context, new long[] { taskId }).get(taskId);
+        if(taskDetail == null)
+            return;
+
+        Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_SEND_DETAILS);
+        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_ADDON, getAddon());
+        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_RESPONSE, taskDetail);
+        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, taskId);
+        context.sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+    }
+
+    /**
+     * @return ids as objects, for use in {@code Field.in} criteria
+     */
+    protected static Long[] idArray(long[] ids) {
+        Long[] result = new Long[ids.length];
+        for(int i = 0; i < ids.length; i++)
+            result[i] = ids[i];
+        return result;
+    }
+
+}
@@ -91,9 +91,7 @@ public class SortHelper {
             order = Order.asc(Functions.upper(Task.TITLE));
             break;
         case SORT_DUE:
-            order = Order.asc(Functions.caseStatement(Task.DUE_DATE.eq(0),
-                    Functions.now()  + "*2", adjustedDueDateFunction()) + "+" + Task.IMPORTANCE +
-                    "+3*" + Task.COMPLETION_DATE);
+            order = Order.asc(Task.DUE_SORT_SCORE);
             break;
         case SORT_IMPORTANCE:
             order = Order.asc(Task.IMPORTANCE + "*" + (2*DateUtilities.now()) + //$NON-NLS-1$
@@ -117,12 +115,69 @@ public class SortHelper {
      * Returns SQL task ordering that is astrid's default algorithm
      * @return
      */
-    @SuppressWarnings("nls")
     public static Order defaultTaskOrder() {
-        return Order.asc(Functions.caseStatement(Task.DUE_DATE.eq(0),
-                Functions.now() + "*2",
+        return Order.asc(Task.SORT_SCORE);
+    }
+
+    // --- sort scores
+
+    /*
+     * The default and due date orderings rank tasks by a score computed
+     * from due date, importance and completion date, where tasks without a
+     * due date rank as if due at twice the current time. Scores are stored
+     * in the task table so the orderings can read an index; the current
+     * time is taken from the sort base, which TaskDao moves forward
+     * periodically. Using the base instead of the current time only moves
+     * a task if its score is within twice the base's age of twice the
+     * current time, which takes due or completion dates decades apart.
+     */
+
+    /**
+     * @return SQL computing {@link Task#SORT_SCORE} from a row
+     */
+    @SuppressWarnings("nls")
+    public static String sortScoreSql(long base) {
+        return Functions.caseStatement(Task.DUE_DATE.eq(0),
+                base + "*2",
                 adjustedDueDateFunction()) + " + " + (2 * DateUtilities.ONE_DAY) + " * " +
-                Task.IMPORTANCE + " + 2*" + Task.COMPLETION_DATE);
+                Task.IMPORTANCE + " + 2*" + Task.COMPLETION_DATE;
+    }
+
+    /**
+     * @return SQL computing {@link Task#DUE_SORT_SCORE} from a row
+     */
+    @SuppressWarnings("nls")
+    public static String dueSortScoreSql(long base) {
+        return Functions.caseStatement(Task.DUE_DATE.eq(0),
+                base + "*2", adjustedDueDateFunction()) + "+" + Task.IMPORTANCE +
+                "+3*" + Task.COMPLETION_DATE;
+    }
+
+    /**
+     * @return {@link Task#SORT_SCORE} for the given values, as computed by
+     *         {@link #sortScoreSql(long)}
+     */
+    public static long sortScore(long base, long dueDate, int importance, long completionDate) {
+        return (dueDate == 0 ? base * 2 : adjustedDueDate(dueDate)) +
+                2 * DateUtilities.ONE_DAY * importance + 2 * completionDate;
+    }
+
+    /**
+     * @return {@link Task#DUE_SORT_SCORE} for the given values, as computed
+     *         by {@link #dueSortScoreSql(long)}
+     */
+    public static long dueSortScore(long base, long dueDate, int importance, long completionDate) {
+        return (dueDate == 0 ? base * 2 : adjustedDueDate(dueDate)) +
+                importance + 3 * completionDate;
+    }
+
+    /**
+     * Due dates without a time sort at the end of their day
+     */
+    private static long adjustedDueDate(long dueDate) {
+        if((dueDate / 1000) % 60 > 0)
+            return dueDate;
+        return dueDate + DateUtilities.ONE_HOUR * 11 + DateUtilities.ONE_MINUTE * 59;
     }
 
     @SuppressWarnings("nls")
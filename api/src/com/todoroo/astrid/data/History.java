@@ -4,6 +4,7 @@ import android.content.ContentValues;
 import android.net.Uri;
 
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Index;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
@@ -107,6 +108,11 @@ public class History extends AbstractModel {
     /** List of all properties for this model */
     public static final Property<?>[] PROPERTIES = generateProperties(History.class);
 
+    /** Indexes on this table */
+    public static final Index[] INDEXES = new Index[] {
+        Index.on("hist_tag_id", TABLE, TAG_ID)
+    };
+
     private static final Creator<History> CREATOR = new ModelCreator<History>(History.class);
 
     @Override
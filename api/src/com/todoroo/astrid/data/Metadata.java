@@ -10,6 +10,7 @@ import android.content.ContentValues;
 import android.net.Uri;
 
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Index;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
@@ -78,6 +79,26 @@ public class Metadata extends AbstractModel {
     public static final StringProperty VALUE7 = new StringProperty(
             TABLE, "value7");
 
+    /** Metadata Numeric Value Column 1 */
+    public static final LongProperty NUM1 = new LongProperty(
+            TABLE, "num1");
+
+    /** Metadata Numeric Value Column 2 */
+    public static final LongProperty NUM2 = new LongProperty(
+            TABLE, "num2");
+
+    /** Metadata Numeric Value Column 3 */
+    public static final LongProperty NUM3 = new LongProperty(
+            TABLE, "num3");
+
+    /** Metadata Numeric Value Column 4 */
+    public static final LongProperty NUM4 = new LongProperty(
+            TABLE, "num4");
+
+    /** Metadata Numeric Value Column 5 */
+    public static final LongProperty NUM5 = new LongProperty(
+            TABLE, "num5");
+
     /** Unixtime Metadata was created */
     public static final LongProperty CREATION_DATE = new LongProperty(
             TABLE, "created");
@@ -89,6 +110,16 @@ public class Metadata extends AbstractModel {
     /** List of all properties for this model */
     public static final Property<?>[] PROPERTIES = generateProperties(Metadata.class);
 
+    /** Indexes on this table */
+    public static final Index[] INDEXES = new Index[] {
+        Index.on("md_tid", TABLE, TASK),
+        Index.on("md_tkid", TABLE, TASK, KEY),
+        Index.on("md_kv1", TABLE, KEY, VALUE1),
+        Index.on("md_kv2", TABLE, KEY, VALUE2),
+        Index.on("md_kv3", TABLE, KEY, VALUE3),
+        Index.on("md_kn1", TABLE, KEY, NUM1)
+    };
+
     // --- defaults
 
     /** Default values container */
@@ -1,6 +1,7 @@
 package com.todoroo.astrid.data;
 
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
 
@@ -23,4 +24,55 @@ public abstract class OutstandingEntry<TYPE extends RemoteModel> extends Abstrac
 
     public static final LongProperty CREATED_AT_PROPERTY = new LongProperty(null, CREATED_AT_PROPERTY_NAME);
 
+    // --- typed access to the value column, without merging all values
+
+    /**
+     * @return value as an integer, or null if missing or not a number
+     */
+    public Integer getValueAsInteger() {
+        Object value = getValueObject();
+        if(value instanceof Number)
+            return ((Number) value).intValue();
+        try {
+            return value == null ? null : Integer.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return value as a long, or null if missing or not a number
+     */
+    public Long getValueAsLong() {
+        Object value = getValueObject();
+        if(value instanceof Number)
+            return ((Number) value).longValue();
+        try {
+            return value == null ? null : Long.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return value as a double, or null if missing or not a number
+     */
+    public Double getValueAsDouble() {
+        Object value = getValueObject();
+        if(value instanceof Number)
+            return ((Number) value).doubleValue();
+        try {
+            return value == null ? null : Double.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Object getValueObject() {
+        if(!containsValue(VALUE_STRING_PROPERTY))
+            return null;
+        Property<?> property = VALUE_STRING_PROPERTY;
+        return getValue(property);
+    }
+
 }
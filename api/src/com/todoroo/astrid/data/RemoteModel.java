@@ -80,8 +80,10 @@ abstract public class RemoteModel extends AbstractModel {
     protected String getUuidHelper(StringProperty uuid) {
         if(setValues != null && setValues.containsKey(uuid.name))
             return setValues.getAsString(uuid.name);
-        else if(values != null && values.containsKey(uuid.name))
-            return values.getAsString(uuid.name);
+        else if(containsDatabaseValue(uuid)) {
+            Object value = getDatabaseValue(uuid);
+            return value == null ? null : value.toString();
+        }
         else
             return NO_UUID;
     }
@@ -10,6 +10,7 @@ import android.content.ContentValues;
 import android.net.Uri;
 
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Index;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
@@ -72,6 +73,11 @@ public class StoreObject extends AbstractModel {
     /** List of all properties for this model */
     public static final Property<?>[] PROPERTIES = generateProperties(StoreObject.class);
 
+    /** Indexes on this table */
+    public static final Index[] INDEXES = new Index[] {
+        Index.on("so_id", TABLE, TYPE, ITEM)
+    };
+
     // --- defaults
 
     /** Default values container */
@@ -3,6 +3,7 @@ package com.todoroo.astrid.data;
 import android.content.ContentValues;
 
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Index;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
@@ -43,6 +44,11 @@ public class TagOutstanding extends OutstandingEntry<TagData> {
     /** List of all properties for this model */
     public static final Property<?>[] PROPERTIES = generateProperties(TagOutstanding.class);
 
+    /** Indexes on this table */
+    public static final Index[] INDEXES = new Index[] {
+        Index.on("tgo_eid", TABLE, TAG_DATA_ID)
+    };
+
     @Override
     public ContentValues getDefaultValues() {
         return defaultValues;
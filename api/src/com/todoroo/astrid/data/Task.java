@@ -13,6 +13,7 @@ import android.content.res.Resources;
 import android.net.Uri;
 
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Index;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.IntegerProperty;
 import com.todoroo.andlib.data.Property.LongProperty;
@@ -195,9 +196,40 @@ public final class Task extends RemoteModel {
     public static final IntegerProperty HISTORY_HAS_MORE = new IntegerProperty(
             TABLE, "historyHasMore");
 
+    // --- sort keys
+
+    /** Position in the default ordering, see {@link com.todoroo.astrid.core.SortHelper#defaultTaskOrder()} */
+    public static final LongProperty SORT_SCORE = new LongProperty(
+            TABLE, "sortScore");
+
+    /** Position in the due date ordering, see {@link com.todoroo.astrid.core.SortHelper#SORT_DUE} */
+    public static final LongProperty DUE_SORT_SCORE = new LongProperty(
+            TABLE, "dueSortScore");
+
+    // --- list summary
+
+    /** Names of the task's tags, separated by {@link #TAG_NAMES_SEPARATOR}. Kept by MetadataDao */
+    public static final StringProperty TAG_NAMES = new StringProperty(
+            TABLE, "tagNames");
+
+    /** Separates names in {@link #TAG_NAMES} */
+    public static final String TAG_NAMES_SEPARATOR = "  |  ";
+
+    /** Number of attachments the task has. Kept by TaskAttachmentDao */
+    public static final IntegerProperty ATTACHMENT_COUNT = new IntegerProperty(
+            TABLE, "attachmentCount");
+
     /** List of all properties for this model */
     public static final Property<?>[] PROPERTIES = generateProperties(Task.class);
 
+    /** Indexes on this table */
+    public static final Index[] INDEXES = new Index[] {
+        Index.unique("t_rid", TABLE, UUID),
+        Index.on("t_active", TABLE, DELETION_DATE, COMPLETION_DATE, HIDE_UNTIL),
+        Index.on("t_sort", TABLE, SORT_SCORE),
+        Index.on("t_due_sort", TABLE, DUE_SORT_SCORE)
+    };
+
     // --- flags
 
     /** whether repeat occurs relative to completion date instead of due date */
@@ -317,6 +349,10 @@ public final class Task extends RemoteModel {
         defaultValues.put(CLASSIFICATION.name, "");
         defaultValues.put(HISTORY_FETCH_DATE.name, 0);
         defaultValues.put(HISTORY_HAS_MORE.name, 0);
+        defaultValues.put(SORT_SCORE.name, 0L);
+        defaultValues.put(DUE_SORT_SCORE.name, 0L);
+        defaultValues.put(TAG_NAMES.name, "");
+        defaultValues.put(ATTACHMENT_COUNT.name, 0);
 
         defaultValues.put(LAST_SYNC.name, 0);
         defaultValues.put(UUID.name, NO_UUID);
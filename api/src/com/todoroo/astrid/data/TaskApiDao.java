@@ -12,6 +12,7 @@ import android.database.SQLException;
 import com.todoroo.andlib.data.ContentResolverDao;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Field;
 import com.todoroo.andlib.sql.Functions;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.astrid.api.PermaSql;
@@ -117,9 +118,12 @@ public class TaskApiDao extends ContentResolverDao<Task> {
      * @return # of tasks matching
      */
     public int countTasks(Criterion criterion) {
-        TodorooCursor<Task> cursor = query(Query.select(Task.ID).where(criterion));
+        // counted by the provider, so that only one row is sent back
+        TodorooCursor<Task> cursor = query(Query.select(Field.field("COUNT(*)")).where(criterion)); //$NON-NLS-1$
         try {
-            return cursor.getCount();
+            if(!cursor.moveToFirst())
+                return 0;
+            return cursor.getInt(0);
         } finally {
             cursor.close();
         }
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.data;
+
+import android.content.ContentValues;
+
+import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Index;
+import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.Property.LongProperty;
+import com.todoroo.andlib.data.Property.StringProperty;
+import com.todoroo.andlib.data.Table;
+import com.todoroo.andlib.data.TodorooCursor;
+
+/**
+ * Details add-ons exposed for a task, kept so that task lists can show them
+ * without asking add-ons again. Details are current while they are newer
+ * than the task's last modification.
+ */
+@SuppressWarnings("nls")
+public class TaskDetail extends AbstractModel {
+
+    /** table for this model */
+    public static final Table TABLE = new Table("task_details", TaskDetail.class);
+
+    // --- properties
+
+    /** ID */
+    public static final LongProperty ID = new LongProperty(
+            TABLE, ID_PROPERTY_NAME);
+
+    /** Task the details are for */
+    public static final LongProperty TASK = new LongProperty(
+            TABLE, "task");
+
+    /** Details of all add-ons, separated by the task list's detail separator */
+    public static final StringProperty DETAILS = new StringProperty(
+            TABLE, "details");
+
+    /** When the details were requested */
+    public static final LongProperty DETAILS_DATE = new LongProperty(
+            TABLE, "detailsDate", Property.PROP_FLAG_DATE);
+
+    /** Default values container */
+    private static final ContentValues defaultValues = new ContentValues();
+
+    @Override
+    public ContentValues getDefaultValues() {
+        return defaultValues;
+    }
+
+    static {
+        defaultValues.put(DETAILS.name, "");
+        defaultValues.put(DETAILS_DATE.name, 0L);
+    }
+
+    @Override
+    public long getId() {
+        return getIdHelper(ID);
+    }
+
+    public TaskDetail() {
+        super();
+    }
+
+    public TaskDetail(TodorooCursor<TaskDetail> cursor) {
+        this();
+        readPropertiesFromCursor(cursor);
+    }
+
+    public void readFromCursor(TodorooCursor<TaskDetail> cursor) {
+        super.readPropertiesFromCursor(cursor);
+    }
+
+    /** List of all properties for this model */
+    public static final Property<?>[] PROPERTIES = generateProperties(TaskDetail.class);
+
+    /** Indexes on this table */
+    public static final Index[] INDEXES = new Index[] {
+        Index.unique("td_task", TABLE, TASK),
+        Index.on("td_date", TABLE, DETAILS_DATE)
+    };
+
+    private static final Creator<TaskDetail> CREATOR = new ModelCreator<TaskDetail>(TaskDetail.class);
+
+    @Override
+    protected Creator<? extends AbstractModel> getCreator() {
+        return CREATOR;
+    }
+
+}
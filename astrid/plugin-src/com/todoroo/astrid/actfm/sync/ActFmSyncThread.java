@@ -419,7 +419,7 @@ public class ActFmSyncThread {
         if (date == 0) {
             Context context = ContextManager.getContext();
             if (context != null) {
-                TasksWidget.updateWidgets(context);
+                TasksWidget.notifyTasksChanged(context);
             }
         }
     }
@@ -1,5 +1,6 @@
 package com.todoroo.astrid.actfm.sync;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -36,7 +37,6 @@ import com.todoroo.astrid.data.OutstandingEntry;
 import com.todoroo.astrid.data.RemoteModel;
 import com.todoroo.astrid.data.SyncFlags;
 import com.todoroo.astrid.data.TagData;
-import com.todoroo.astrid.data.TagOutstanding;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.data.TaskAttachment;
 import com.todoroo.astrid.data.TaskListMetadata;
@@ -152,7 +152,7 @@ public class AstridNewSyncMigrator {
         try {
             Query tagsQuery = Query.select(TagData.ID, TagData.UUID, TagData.MODIFICATION_DATE)
                     .where(Criterion.or(TagData.UUID.eq(RemoteModel.NO_UUID), TagData.UUID.isNull(), TagData.UUID.eq("")));
-            assertUUIDsExist(tagsQuery, new TagData(), tagDataDao, tagOutstandingDao, new TagOutstanding(), NameMaps.syncableProperties(NameMaps.TABLE_ID_TAGS), new UUIDAssertionExtras<TagData>() {
+            assertUUIDsExist(tagsQuery, new TagData(), tagDataDao, tagOutstandingDao, NameMaps.syncableProperties(NameMaps.TABLE_ID_TAGS), new UUIDAssertionExtras<TagData>() {
                 private static final String LAST_TAG_FETCH_TIME = "actfm_lastTag"; //$NON-NLS-1$
                 private final long lastFetchTime = Preferences.getInt(LAST_TAG_FETCH_TIME, 0) * 1000L;
 
@@ -168,7 +168,7 @@ public class AstridNewSyncMigrator {
 
             Query tasksQuery = Query.select(Task.ID, Task.UUID, Task.RECURRENCE, Task.FLAGS, Task.MODIFICATION_DATE, Task.LAST_SYNC)
                     .where(Criterion.or(Task.UUID.eq(RemoteModel.NO_UUID), Task.UUID.isNull(), Task.UUID.eq("")));
-            assertUUIDsExist(tasksQuery, new Task(), taskDao, taskOutstandingDao, new TaskOutstanding(), NameMaps.syncableProperties(NameMaps.TABLE_ID_TASKS), new UUIDAssertionExtras<Task>() {
+            assertUUIDsExist(tasksQuery, new Task(), taskDao, taskOutstandingDao, NameMaps.syncableProperties(NameMaps.TABLE_ID_TASKS), new UUIDAssertionExtras<Task>() {
                 @Override
                 public boolean shouldCreateOutstandingEntries(Task instance) {
                     if (!instance.containsNonNullValue(Task.MODIFICATION_DATE) || instance.getValue(Task.LAST_SYNC) == 0)
@@ -209,31 +209,32 @@ public class AstridNewSyncMigrator {
         TodorooCursor<Task> tasksWithRecurrence = null;
         try {
             tasksWithRecurrence = taskDao.query(Query.select(Task.ID, Task.FLAGS, Task.RECURRENCE).where(Criterion.or(Task.RECURRENCE.isNotNull(), Task.RECURRENCE.neq(""))));
+            ArrayList<Task> updatedTasks = new ArrayList<Task>();
             for (tasksWithRecurrence.moveToFirst(); !tasksWithRecurrence.isAfterLast(); tasksWithRecurrence.moveToNext()) {
                 try {
-                    template.clear();
-                    template.readFromCursor(tasksWithRecurrence);
-                    String recurrence = template.getValue(Task.RECURRENCE);
+                    Task task = new Task(tasksWithRecurrence);
+                    String recurrence = task.getValue(Task.RECURRENCE);
                     if (!TextUtils.isEmpty(recurrence)) {
                         String fromCompletion = ";FROM=COMPLETION";
-                        boolean repeatAfterCompletion = template.getFlag(Task.FLAGS, Task.FLAG_REPEAT_AFTER_COMPLETION);
-                        template.setFlag(Task.FLAGS, Task.FLAG_REPEAT_AFTER_COMPLETION, false);
+                        boolean repeatAfterCompletion = task.getFlag(Task.FLAGS, Task.FLAG_REPEAT_AFTER_COMPLETION);
+                        task.setFlag(Task.FLAGS, Task.FLAG_REPEAT_AFTER_COMPLETION, false);
 
                         recurrence = recurrence.replaceAll("BYDAY=;", "");
                         if (fromCompletion.equals(recurrence))
                             recurrence = "";
                         else if (repeatAfterCompletion)
                             recurrence = recurrence + fromCompletion;
-                        template.setValue(Task.RECURRENCE, recurrence);
+                        task.setValue(Task.RECURRENCE, recurrence);
 
-                        template.putTransitory(SyncFlags.GTASKS_SUPPRESS_SYNC, true);
-                        taskDao.saveExisting(template);
+                        task.putTransitory(SyncFlags.GTASKS_SUPPRESS_SYNC, true);
+                        updatedTasks.add(task);
                     }
                 } catch (Exception e) {
                     Log.e(LOG_TAG, "Error migrating recurrence", e);
                     Crittercism.logHandledException(e);
                 }
             }
+            taskDao.updateAll(updatedTasks);
         } catch (Exception e) {
             Log.e(LOG_TAG, "Error migrating recurrence", e);
             Crittercism.logHandledException(e);
@@ -499,6 +500,7 @@ public class AstridNewSyncMigrator {
             tagsAdded = metadataService.query(Query.select(Metadata.PROPERTIES)
                     .where(Criterion.and(MetadataCriteria.withKey(TaskToTagMetadata.KEY), Metadata.TASK.in(ids))).orderBy(Order.asc(Metadata.TASK)));
             Metadata m = new Metadata();
+            ArrayList<TaskOutstanding> entries = new ArrayList<TaskOutstanding>();
             for (tagsAdded.moveToFirst(); !tagsAdded.isAfterLast(); tagsAdded.moveToNext()) {
                 try {
                     m.clear();
@@ -517,12 +519,13 @@ public class AstridNewSyncMigrator {
 
                     to.setValue(OutstandingEntry.COLUMN_STRING_PROPERTY, addedOrRemoved);
                     to.setValue(OutstandingEntry.VALUE_STRING_PROPERTY, tagUuid);
-                    taskOutstandingDao.createNew(to);
+                    entries.add(to);
                 } catch (Exception e) {
                     Log.e(LOG_TAG, "Error creating tag_added outstanding entries", e);
                     Crittercism.logHandledException(e);
                 }
             }
+            taskOutstandingDao.persistAll(entries);
         } catch (Exception e) {
             Log.e(LOG_TAG, "Error creating tag_added outstanding entries", e);
             Crittercism.logHandledException(e);
@@ -543,7 +546,7 @@ public class AstridNewSyncMigrator {
         void afterSave(TYPE instance, boolean createdOutstanding);
     }
 
-    private <TYPE extends RemoteModel, OE extends OutstandingEntry<TYPE>> void assertUUIDsExist(Query query, TYPE instance, DatabaseDao<TYPE> dao, OutstandingEntryDao<OE> oeDao, OE oe, Property<?>[] propertiesForOutstanding, UUIDAssertionExtras<TYPE> extras) {
+    private <TYPE extends RemoteModel, OE extends OutstandingEntry<TYPE>> void assertUUIDsExist(Query query, TYPE instance, DatabaseDao<TYPE> dao, OutstandingEntryDao<OE> oeDao, Property<?>[] propertiesForOutstanding, UUIDAssertionExtras<TYPE> extras) {
         TodorooCursor<TYPE> cursor = null;
         try {
             cursor = dao.query(query);
@@ -565,7 +568,7 @@ public class AstridNewSyncMigrator {
                     boolean createdOutstanding = false;
                     if (propertiesForOutstanding != null && (unsyncedModel || (extras != null && extras.shouldCreateOutstandingEntries(instance)))) {
                         createdOutstanding = true;
-                        createOutstandingEntries(instance.getId(), dao, oeDao, oe, propertiesForOutstanding);
+                        createOutstandingEntries(instance.getId(), dao, oeDao, propertiesForOutstanding);
                     }
                     if (extras != null)
                         extras.afterSave(instance, createdOutstanding);
@@ -583,11 +586,12 @@ public class AstridNewSyncMigrator {
         }
     }
 
-    private <TYPE extends RemoteModel, OE extends OutstandingEntry<TYPE>> void createOutstandingEntries(long id, DatabaseDao<TYPE> dao, OutstandingEntryDao<OE> oeDao, OE oe, Property<?>[] propertiesForOutstanding) {
+    private <TYPE extends RemoteModel, OE extends OutstandingEntry<TYPE>> void createOutstandingEntries(long id, DatabaseDao<TYPE> dao, OutstandingEntryDao<OE> oeDao, Property<?>[] propertiesForOutstanding) {
         TYPE instance = dao.fetch(id, propertiesForOutstanding);
         long now = DateUtilities.now();
+        ArrayList<OE> entries = new ArrayList<OE>(propertiesForOutstanding.length);
         for (Property<?> property : propertiesForOutstanding) {
-            oe.clear();
+            OE oe = oeDao.getModelFactory().newInstance();
             oe.setValue(OutstandingEntry.ENTITY_ID_PROPERTY, id);
             oe.setValue(OutstandingEntry.COLUMN_STRING_PROPERTY, property.name);
             Object value = instance.getValue(property);
@@ -595,8 +599,9 @@ public class AstridNewSyncMigrator {
                 value = "";
             oe.setValue(OutstandingEntry.VALUE_STRING_PROPERTY, value.toString());
             oe.setValue(OutstandingEntry.CREATED_AT_PROPERTY, now);
-            oeDao.createNew(oe);
+            entries.add(oe);
         }
+        oeDao.persistAll(entries);
     }
 
     private void updateTaskUuid(Metadata m) {
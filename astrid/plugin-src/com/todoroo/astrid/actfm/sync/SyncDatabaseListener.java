@@ -1,13 +1,15 @@
 package com.todoroo.astrid.actfm.sync;
 
+import java.util.List;
+
 import com.todoroo.andlib.data.AbstractModel;
-import com.todoroo.andlib.data.DatabaseDao.ModelUpdateListener;
+import com.todoroo.andlib.data.DatabaseDao.BatchModelUpdateListener;
 import com.todoroo.astrid.actfm.sync.ActFmSyncThread.ModelType;
 import com.todoroo.astrid.actfm.sync.messages.ChangesHappened;
 import com.todoroo.astrid.actfm.sync.messages.ClientToServerMessage;
 import com.todoroo.astrid.dao.RemoteModelDao;
 
-public class SyncDatabaseListener<MTYPE extends AbstractModel> implements ModelUpdateListener<MTYPE> {
+public class SyncDatabaseListener<MTYPE extends AbstractModel> implements BatchModelUpdateListener<MTYPE> {
 
     private final ModelType modelType;
     protected final ActFmSyncThread actFmSyncThread;
@@ -24,6 +26,19 @@ public class SyncDatabaseListener<MTYPE extends AbstractModel> implements ModelU
         }
     }
 
+    @Override
+    public void onModelsUpdated(List<MTYPE> models, boolean[] outstandingEntries) {
+        if (!RemoteModelDao.getOutstandingEntryFlag(RemoteModelDao.OUTSTANDING_ENTRY_FLAG_ENQUEUE_MESSAGES))
+            return;
+        for (int i = 0; i < models.size(); i++) {
+            if (outstandingEntries[i]) {
+                MTYPE model = models.get(i);
+                ChangesHappened<?, ?> ch = ChangesHappened.instantiateChangesHappened(model.getId(), modelType);
+                enqueueMessage(model, ch);
+            }
+        }
+    }
+
     protected void enqueueMessage(MTYPE model, ClientToServerMessage<?> message) {
         actFmSyncThread.enqueueMessage(message, null);
     }
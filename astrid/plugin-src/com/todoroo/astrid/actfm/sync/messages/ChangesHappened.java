@@ -204,15 +204,7 @@ public class ChangesHappened<TYPE extends RemoteModel, OE extends OutstandingEnt
                .where(OutstandingEntry.ENTITY_ID_PROPERTY.eq(id)).orderBy(Order.asc(OutstandingEntry.CREATED_AT_PROPERTY)));
         try {
             for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                try {
-                    OE instance = outstandingClass.newInstance();
-                    instance.readPropertiesFromCursor(cursor);
-                    changes.add(instance);
-                } catch (IllegalAccessException e) {
-                    Log.e("ChangesHappened", "Error instantiating outstanding model class", e);
-                } catch (InstantiationException e2) {
-                    Log.e("ChangesHappened", "Error instantiating outstanding model class", e2);
-                }
+                changes.add(outstandingDao.getModelFactory().fromCursor(cursor));
             }
         } finally {
             cursor.close();
@@ -253,7 +245,7 @@ public class ChangesHappened<TYPE extends RemoteModel, OE extends OutstandingEnt
 
         @Override
         public Object visitInteger(Property<Integer> property, OE data) {
-            Integer i = data.getMergedValues().getAsInteger(OutstandingEntry.VALUE_STRING_PROPERTY.name);
+            Integer i = data.getValueAsInteger();
             if (i != null) {
                 if (property.checkFlag(Property.PROP_FLAG_BOOLEAN))
                     return i > 0;
@@ -265,7 +257,7 @@ public class ChangesHappened<TYPE extends RemoteModel, OE extends OutstandingEnt
 
         @Override
         public Object visitLong(Property<Long> property, OE data) {
-            Long l = data.getMergedValues().getAsLong(OutstandingEntry.VALUE_STRING_PROPERTY.name);
+            Long l = data.getValueAsLong();
             if (l != null) {
                 if (property.checkFlag(Property.PROP_FLAG_DATE)) {
                     boolean includeTime = true;
@@ -281,7 +273,7 @@ public class ChangesHappened<TYPE extends RemoteModel, OE extends OutstandingEnt
 
         @Override
         public Object visitDouble(Property<Double> property, OE data) {
-            Double d = data.getMergedValues().getAsDouble(OutstandingEntry.VALUE_STRING_PROPERTY.name);
+            Double d = data.getValueAsDouble();
             if (d != null) {
                 return d;
             } else {
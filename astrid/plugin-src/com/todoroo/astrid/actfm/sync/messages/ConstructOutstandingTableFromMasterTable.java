@@ -1,6 +1,6 @@
 package com.todoroo.astrid.actfm.sync.messages;
 
-import android.util.Log;
+import java.util.ArrayList;
 
 import com.todoroo.andlib.data.AbstractModel;
 import com.todoroo.andlib.data.Property;
@@ -18,6 +18,9 @@ import com.todoroo.astrid.data.RemoteModel;
 @SuppressWarnings("nls")
 public class ConstructOutstandingTableFromMasterTable<TYPE extends RemoteModel, OE extends OutstandingEntry<TYPE>> {
 
+    /** Number of outstanding entries written per batch */
+    private static final int BATCH_SIZE = 500;
+
     protected final String table;
     protected final RemoteModelDao<TYPE> dao;
     protected final OutstandingEntryDao<OE> outstandingDao;
@@ -43,7 +46,7 @@ public class ConstructOutstandingTableFromMasterTable<TYPE extends RemoteModel,
         Property<?>[] syncableProperties = NameMaps.syncableProperties(table);
         TodorooCursor<TYPE> items = dao.query(Query.select(AndroidUtilities.addToArray(Property.class, syncableProperties, AbstractModel.ID_PROPERTY, RemoteModel.UUID_PROPERTY)).where(criterion));
         try {
-            OE oe = outstandingDao.getModelClass().newInstance();
+            ArrayList<OE> entries = new ArrayList<OE>();
             for (items.moveToFirst(); !items.isAfterLast(); items.moveToNext()) {
                 long createdAt;
                 if (createdAtProperty != null)
@@ -52,23 +55,24 @@ public class ConstructOutstandingTableFromMasterTable<TYPE extends RemoteModel,
                     createdAt = DateUtilities.now();
                 long itemId = items.get(AbstractModel.ID_PROPERTY);
                 for (Property<?> p : syncableProperties) {
-                    oe.clear();
-                    oe.setValue(OutstandingEntry.ENTITY_ID_PROPERTY, itemId);
-                    oe.setValue(OutstandingEntry.COLUMN_STRING_PROPERTY, p.name);
                     Object value = items.get(p);
                     if (value == null)
                         continue;
 
+                    OE oe = outstandingDao.getModelFactory().newInstance();
+                    oe.setValue(OutstandingEntry.ENTITY_ID_PROPERTY, itemId);
+                    oe.setValue(OutstandingEntry.COLUMN_STRING_PROPERTY, p.name);
                     oe.setValue(OutstandingEntry.VALUE_STRING_PROPERTY, value.toString());
                     oe.setValue(OutstandingEntry.CREATED_AT_PROPERTY, createdAt);
-                    outstandingDao.createNew(oe);
+                    entries.add(oe);
+                }
+                if (entries.size() >= BATCH_SIZE) {
+                    outstandingDao.persistAll(entries);
+                    entries.clear();
                 }
                 extras(itemId, createdAt);
             }
-        } catch (IllegalAccessException e) {
-            Log.e("ConstructOutstanding", "Error instantiating outstanding model class", e);
-        } catch (InstantiationException e2) {
-            Log.e("ConstructOutstanding", "Error instantiating outstanding model class", e2);
+            outstandingDao.persistAll(entries);
         } finally {
             items.close();
         }
@@ -141,18 +141,11 @@ public class FetchHistory<TYPE extends RemoteModel> {
                             }
                         }
                         if (time > 0) {
-                            TYPE template;
-                            try {
-                                template = dao.getModelClass().newInstance();
-                                template.setValue(historyTimeProperty, time);
-                                if (modifiedAfter == 0 || hasMore)
-                                    template.setValue(historyHasMoreProperty, hasMore ? 1 : 0);
-                                dao.update(RemoteModel.UUID_PROPERTY.eq(uuid), template);
-                            } catch (InstantiationException e) {
-                                Log.e(ERROR_TAG, "Error instantiating model for recording time", e);
-                            } catch (IllegalAccessException e) {
-                                Log.e(ERROR_TAG, "Error instantiating model for recording time", e);
-                            }
+                            TYPE template = dao.getModelFactory().newInstance();
+                            template.setValue(historyTimeProperty, time);
+                            if (modifiedAfter == 0 || hasMore)
+                                template.setValue(historyHasMoreProperty, hasMore ? 1 : 0);
+                            dao.update(RemoteModel.UUID_PROPERTY.eq(uuid), template);
                         }
                     }
 
@@ -55,8 +55,8 @@ public class MakeChanges<TYPE extends RemoteModel> extends ServerToClientMessage
         this.dao = dao;
     }
 
-    public static <T extends RemoteModel> T changesToModel(RemoteModelDao<T> dao, JSONObject changes, String table) throws IllegalAccessException, InstantiationException {
-        T model = dao.getModelClass().newInstance();
+    public static <T extends RemoteModel> T changesToModel(RemoteModelDao<T> dao, JSONObject changes, String table) {
+        T model = dao.getModelFactory().newInstance();
         JSONChangeToPropertyVisitor visitor = new JSONChangeToPropertyVisitor(model, changes);
         Iterator<String> keys = changes.keys();
         while (keys.hasNext()) {
@@ -104,29 +104,22 @@ public class MakeChanges<TYPE extends RemoteModel> extends ServerToClientMessage
         String uuid = json.optString("uuid");
         if (changes != null && !TextUtils.isEmpty(uuid)) {
             if (dao != null) {
-                try {
-                    TYPE model = changesToModel(dao, changes, table);
-
-                    StringProperty uuidProperty = (StringProperty) NameMaps.serverColumnNameToLocalProperty(table, "uuid");
-                    String oldUuid = null; // For indicating that a uuid collision has occurred
-                    if (model.getSetValues() != null && model.getSetValues().containsKey(uuidProperty.name)) {
-                        oldUuid = uuid;
-                        uuid = model.getValue(uuidProperty);
-                    }
+                TYPE model = changesToModel(dao, changes, table);
 
-                    beforeSaveChanges(changes, model, uuid);
+                StringProperty uuidProperty = (StringProperty) NameMaps.serverColumnNameToLocalProperty(table, "uuid");
+                String oldUuid = null; // For indicating that a uuid collision has occurred
+                if (model.getSetValues() != null && model.getSetValues().containsKey(uuidProperty.name)) {
+                    oldUuid = uuid;
+                    uuid = model.getValue(uuidProperty);
+                }
 
-                    if (model.getSetValues() != null && !model.getSetValues().containsKey(uuidProperty.name))
-                        model.setValue(uuidProperty, uuid);
+                beforeSaveChanges(changes, model, uuid);
 
-                    saveOrUpdateModelAfterChanges(dao, model, oldUuid, uuid, serverTime, getMatchCriterion(model));
-                    afterSaveChanges(changes, model, uuid, oldUuid);
+                if (model.getSetValues() != null && !model.getSetValues().containsKey(uuidProperty.name))
+                    model.setValue(uuidProperty, uuid);
 
-                } catch (IllegalAccessException e) {
-                    Log.e(ERROR_TAG, "Error instantiating model for MakeChanges", e);
-                } catch (InstantiationException e) {
-                    Log.e(ERROR_TAG, "Error instantiating model for MakeChanges", e);
-                }
+                saveOrUpdateModelAfterChanges(dao, model, oldUuid, uuid, serverTime, getMatchCriterion(model));
+                afterSaveChanges(changes, model, uuid, oldUuid);
             }
         }
     }
@@ -5,7 +5,6 @@ import java.text.ParseException;
 import org.json.JSONObject;
 
 import android.text.TextUtils;
-import android.util.Log;
 
 import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.andlib.utility.Preferences;
@@ -19,8 +18,6 @@ import com.todoroo.astrid.data.User;
 @SuppressWarnings("nls")
 public class NowBriefed<TYPE extends RemoteModel> extends ServerToClientMessage {
 
-    private static final String ERROR_TAG = "actfm-now-briefed";
-
     private final RemoteModelDao<TYPE> dao;
     private final String table;
     private final String uuid;
@@ -96,15 +93,9 @@ public class NowBriefed<TYPE extends RemoteModel> extends ServerToClientMessage
                 }
 
             } else {
-                try {
-                    TYPE instance = dao.getModelClass().newInstance();
-                    instance.setValue(RemoteModel.PUSHED_AT_PROPERTY, pushedAt);
-                    dao.update(RemoteModel.UUID_PROPERTY.eq(uuid), instance);
-                } catch (IllegalAccessException e) {
-                    Log.e(ERROR_TAG, "Error instantiating model for NowBriefed", e);
-                } catch (InstantiationException e) {
-                    Log.e(ERROR_TAG, "Error instantiating model for NowBriefed", e);
-                }
+                TYPE instance = dao.getModelFactory().newInstance();
+                instance.setValue(RemoteModel.PUSHED_AT_PROPERTY, pushedAt);
+                dao.update(RemoteModel.UUID_PROPERTY.eq(uuid), instance);
             }
         }
     }
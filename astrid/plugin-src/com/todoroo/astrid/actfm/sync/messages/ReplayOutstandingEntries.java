@@ -2,9 +2,9 @@ package com.todoroo.astrid.actfm.sync.messages;
 
 import android.util.Log;
 
+import com.todoroo.andlib.data.ModelStream.Callback;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.PropertyVisitor;
-import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.sql.Order;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.astrid.actfm.sync.ActFmSyncThread;
@@ -37,19 +37,12 @@ public class ReplayOutstandingEntries<T extends RemoteModel, OE extends Outstand
     }
 
     public void execute() {
-        TodorooCursor<OE> outstanding = outstandingDao.query(Query.select(DaoReflectionHelpers.getModelProperties(outstandingClass))
-                .orderBy(Order.asc(OutstandingEntry.ENTITY_ID_PROPERTY), Order.asc(OutstandingEntry.CREATED_AT_PROPERTY)));
         try {
-            OE instance = outstandingClass.newInstance();
-            for (outstanding.moveToFirst(); !outstanding.isAfterLast(); outstanding.moveToNext()) {
-                instance.clear();
-                instance.readPropertiesFromCursor(outstanding);
-                processItem(instance.getValue(OutstandingEntry.ENTITY_ID_PROPERTY), instance, outstanding);
-            }
-        } catch (InstantiationException e) {
-            Log.e(ERROR_TAG, "Error instantiating outstanding entry", e);
-        } catch (IllegalAccessException e) {
-            Log.e(ERROR_TAG, "Error instantiating outstanding entry", e);
+            ModelReplayer replayer = new ModelReplayer();
+            outstandingDao.stream(Query.select(DaoReflectionHelpers.getModelProperties(outstandingClass))
+                    .orderBy(Order.asc(OutstandingEntry.ENTITY_ID_PROPERTY), Order.asc(OutstandingEntry.CREATED_AT_PROPERTY)))
+                    .forEach(replayer);
+            replayer.finishModel();
         } catch (Exception e) {
             Log.e(ERROR_TAG, "Unexpected exception in replay outstanding entries", e);
         }
@@ -63,39 +56,47 @@ public class ReplayOutstandingEntries<T extends RemoteModel, OE extends Outstand
         return true;
     }
 
-    private void processItem(long id, OE instance, TodorooCursor<OE> outstanding) {
-        try {
-            T model = modelClass.newInstance();
-            model.setId(id);
-            OutstandingToModelVisitor<T> visitor = new OutstandingToModelVisitor<T>(model);
-            int count = 0;
-            for (; !outstanding.isAfterLast(); outstanding.moveToNext()) {
-                instance.clear();
-                instance.readPropertiesFromCursor(outstanding);
-                if (instance.getValue(OutstandingEntry.ENTITY_ID_PROPERTY) != id)
-                    break;
-                count ++;
-                String column = instance.getValue(OutstandingEntry.COLUMN_STRING_PROPERTY);
-                Property<?> property = NameMaps.localColumnNameToProperty(table, column);
-                // set values to model
-                if (property != null)
-                    property.accept(visitor, instance);
+    /**
+     * Applies consecutive outstanding entries for the same entity to one
+     * model and saves it when the entries for the next entity begin
+     */
+    private class ModelReplayer implements Callback<OE> {
+
+        private T model = null;
+        private OutstandingToModelVisitor<T> visitor = null;
+        private int count = 0;
+
+        public boolean process(OE instance) {
+            long id = instance.getValue(OutstandingEntry.ENTITY_ID_PROPERTY);
+            if (model == null || model.getId() != id) {
+                finishModel();
+                model = dao.getModelFactory().newInstance();
+                model.setId(id);
+                visitor = new OutstandingToModelVisitor<T>(model);
+                count = 0;
             }
 
+            count ++;
+            String column = instance.getValue(OutstandingEntry.COLUMN_STRING_PROPERTY);
+            Property<?> property = NameMaps.localColumnNameToProperty(table, column);
+            // set values to model
+            if (property != null)
+                property.accept(visitor, instance);
+            return true;
+        }
+
+        public void finishModel() {
+            if (model == null)
+                return;
             model.putTransitory(SyncFlags.ACTFM_SUPPRESS_OUTSTANDING_ENTRIES, true);
             if (shouldSaveModel(model)) {
                 dao.saveExisting(model);
 
                 if (count > 0 && !afterErrors) {
-                    enqueueChangesHappenedMessage(id);
+                    enqueueChangesHappenedMessage(model.getId());
                 }
             }
-
-            outstanding.moveToPrevious(); // Move back one to undo the last iteration of the for loop
-        } catch (InstantiationException e) {
-            Log.e(ERROR_TAG, "Error instantiating model", e);
-        } catch (IllegalAccessException e) {
-            Log.e(ERROR_TAG, "Error instantiating model", e);
+            model = null;
         }
     }
 
@@ -109,7 +110,7 @@ public class ReplayOutstandingEntries<T extends RemoteModel, OE extends Outstand
 
         @Override
         public Void visitInteger(Property<Integer> property, OE data) {
-            Integer i = data.getMergedValues().getAsInteger(OutstandingEntry.VALUE_STRING_PROPERTY.name);
+            Integer i = data.getValueAsInteger();
             if (i != null)
                 model.setValue(property, i);
             return null;
@@ -117,7 +118,7 @@ public class ReplayOutstandingEntries<T extends RemoteModel, OE extends Outstand
 
         @Override
         public Void visitLong(Property<Long> property, OE data) {
-            Long l = data.getMergedValues().getAsLong(OutstandingEntry.VALUE_STRING_PROPERTY.name);
+            Long l = data.getValueAsLong();
             if (l != null)
                 model.setValue(property, l);
             return null;
@@ -125,7 +126,7 @@ public class ReplayOutstandingEntries<T extends RemoteModel, OE extends Outstand
 
         @Override
         public Void visitDouble(Property<Double> property, OE data) {
-            Double d = data.getMergedValues().getAsDouble(OutstandingEntry.VALUE_STRING_PROPERTY.name);
+            Double d = data.getValueAsDouble();
             if (d != null)
                 model.setValue(property, d);
             return null;
@@ -22,11 +22,11 @@ public class AlarmFields {
 
     /** time of alarm */
     public static final LongProperty TIME = new LongProperty(Metadata.TABLE,
-            Metadata.VALUE1.name);
+            Metadata.NUM1.name);
 
     /** alarm type */
     public static final IntegerProperty TYPE = new IntegerProperty(Metadata.TABLE,
-            Metadata.VALUE2.name);
+            Metadata.NUM2.name);
 
     // --- constants
 
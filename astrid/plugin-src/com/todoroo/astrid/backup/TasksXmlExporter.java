@@ -21,6 +21,8 @@ import android.widget.Toast;
 
 import com.timsu.astrid.R;
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.ModelStream;
+import com.todoroo.andlib.data.ModelStream.Callback;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.PropertyVisitor;
 import com.todoroo.andlib.data.TodorooCursor;
@@ -178,27 +180,30 @@ public class TasksXmlExporter {
     }
 
     private void serializeTasks() throws IOException {
-        TodorooCursor<Task> cursor;
-        cursor = taskService.query(Query.select(
+        ModelStream<Task> tasks = taskService.stream(Query.select(
                 Task.PROPERTIES).orderBy(Order.asc(Task.ID)));
-        try {
-            Task task = new Task();
-            int length = cursor.getCount();
-            for(int i = 0; i < length; i++) {
-                cursor.moveToNext();
-                task.readFromCursor(cursor);
-
-                setProgress(i, length);
-
-                xml.startTag(null, BackupConstants.TASK_TAG);
-                serializeModel(task, Task.PROPERTIES, Task.ID);
-                serializeMetadata(task);
-                xml.endTag(null, BackupConstants.TASK_TAG);
-                this.exportCount++;
+        final int length = tasks.getCount();
+        final IOException[] error = new IOException[1];
+        tasks.forEach(new Callback<Task>() {
+            private int i = 0;
+
+            public boolean process(Task task) {
+                setProgress(i++, length);
+                try {
+                    xml.startTag(null, BackupConstants.TASK_TAG);
+                    serializeModel(task, Task.PROPERTIES, Task.ID);
+                    serializeMetadata(task);
+                    xml.endTag(null, BackupConstants.TASK_TAG);
+                } catch (IOException e) {
+                    error[0] = e;
+                    return false;
+                }
+                exportCount++;
+                return true;
             }
-        } finally {
-            cursor.close();
-        }
+        });
+        if(error[0] != null)
+            throw error[0];
     }
 
     private synchronized void serializeMetadata(Task task) throws IOException {
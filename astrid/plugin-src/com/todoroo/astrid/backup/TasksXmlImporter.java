@@ -7,6 +7,7 @@ package com.todoroo.astrid.backup;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.StringTokenizer;
@@ -41,6 +42,7 @@ import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.andlib.utility.DialogUtilities;
 import com.todoroo.astrid.api.AstridApiConstants;
 import com.todoroo.astrid.core.PluginServices;
+import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.legacy.LegacyImportance;
@@ -203,10 +205,21 @@ public class TasksXmlImporter {
     private static final String FORMAT2 = "2"; //$NON-NLS-1$
     private class Format2TaskImporter {
 
+        /** number of tasks written per database batch */
+        private static final int BATCH_SIZE = 50;
+
         private int version;
         private final XmlPullParser xpp;
-        private final Task currentTask = new Task();
-        private final Metadata metadata = new Metadata();
+        private boolean finished = false;
+
+        /** true if the parser stopped on the start tag of the next task */
+        private boolean atTaskTag = false;
+
+        /** tasks read since the last batch was written */
+        private final ArrayList<ImportedTask> pending = new ArrayList<ImportedTask>();
+
+        /** task that metadata is read for, null if it was skipped */
+        private ImportedTask currentTask = null;
 
         public Format2TaskImporter(XmlPullParser xpp) throws XmlPullParserException, IOException {
             this.xpp = xpp;
@@ -218,13 +231,46 @@ public class TasksXmlImporter {
                 this.version = Integer.MAX_VALUE;
             }
 
-            while (xpp.next() != XmlPullParser.END_DOCUMENT) {
+            // read BATCH_SIZE tasks and their metadata, then write them in
+            // one batch, so the database is not held while parsing
+            while (!finished) {
+                try {
+                    finished = readTasks();
+                } finally {
+                    // keep what was read before a parse error
+                    PluginServices.getTaskDao().runInBatch(new Runnable() {
+                        @Override
+                        public void run() {
+                            writeTasks();
+                        }
+                    });
+                }
+            }
+        }
+
+        /**
+         * Read elements until the start of task number BATCH_SIZE + 1
+         * @return true if the end of the document was reached
+         */
+        private boolean readTasks() throws XmlPullParserException, IOException {
+            pending.clear();
+            currentTask = null;
+            boolean resume = atTaskTag;
+            atTaskTag = false;
+            while (resume || xpp.next() != XmlPullParser.END_DOCUMENT) {
+                resume = false;
                 String tag = xpp.getName();
                 if (tag == null || xpp.getEventType() == XmlPullParser.END_TAG)
                     continue;
 
                 try {
                     if (tag.equals(BackupConstants.TASK_TAG)) {
+                        // stop here so the metadata of the last task is
+                        // written in the same batch as the task
+                        if (pending.size() >= BATCH_SIZE) {
+                            atTaskTag = true;
+                            return false;
+                        }
                         // Parse <task ... >
                         parseTask();
                     } else if (tag.equals(BackupConstants.METADATA_TAG)) {
@@ -238,6 +284,33 @@ public class TasksXmlImporter {
                             xpp.getText(), e);
                 }
             }
+            return true;
+        }
+
+        /**
+         * Save the tasks read by {@link #readTasks()} and their metadata
+         */
+        private void writeTasks() {
+            for (ImportedTask imported : pending) {
+                try {
+                    taskService.save(imported.task);
+                    if (!imported.task.isSaved()) {
+                        errorCount++;
+                        continue;
+                    }
+                    importCount++;
+                    for (Metadata metadata : imported.metadata) {
+                        metadata.setValue(Metadata.TASK, imported.task.getId());
+                        metadataService.save(metadata);
+                    }
+                } catch (Exception e) {
+                    errorCount++;
+                    Log.e("astrid-importer", //$NON-NLS-1$
+                            "Caught exception while saving " + //$NON-NLS-1$
+                            imported.task.getValue(Task.TITLE), e);
+                }
+            }
+            pending.clear();
         }
 
         @SuppressWarnings("nls")
@@ -245,7 +318,7 @@ public class TasksXmlImporter {
             taskCount++;
             setProgressMessage(context.getString(R.string.import_progress_read,
                     taskCount));
-            currentTask.clear();
+            currentTask = null;
 
             String title = xpp.getAttributeValue(null, Task.TITLE.name);
             String created = xpp.getAttributeValue(null, Task.CREATION_DATE.name);
@@ -258,7 +331,15 @@ public class TasksXmlImporter {
                 return;
             }
 
-            // if the task's name and creation date match an existing task, skip
+            // if the task's name and creation date match an existing task
+            // or one read for this batch, skip
+            for (ImportedTask imported : pending) {
+                if (title.equals(imported.task.getValue(Task.TITLE)) &&
+                        created.equals(Long.toString(imported.task.getValue(Task.CREATION_DATE)))) {
+                    skipCount++;
+                    return;
+                }
+            }
             long existingTask = 0;
             TodorooCursor<Task> cursor = taskService.query(Query.select(Task.ID,
                         Task.COMPLETION_DATE, Task.DELETION_DATE).
@@ -288,18 +369,19 @@ public class TasksXmlImporter {
             }
 
             // else, make a new task model and add away.
-            deserializeModel(currentTask, Task.PROPERTIES);
+            Task task = new Task();
+            deserializeModel(task, Task.PROPERTIES);
             if(version < UpgradeService.V4_0_6)
-                adjustDueDateScheme(currentTask);
+                adjustDueDateScheme(task);
 
             if(existingTask > 0)
-                currentTask.setId(existingTask);
+                task.setId(existingTask);
             else
-                currentTask.setId(Task.NO_ID);
+                task.setId(Task.NO_ID);
 
-            // Save the task to the database.
-            taskService.save(currentTask);
-            importCount++;
+            // The task is saved when the batch is written
+            currentTask = new ImportedTask(task);
+            pending.add(currentTask);
         }
 
         private void adjustDueDateScheme(Task model) {
@@ -319,13 +401,13 @@ public class TasksXmlImporter {
         }
 
         private void parseMetadata() {
-            if(!currentTask.isSaved())
+            if(currentTask == null)
                 return;
-            metadata.clear();
+            Metadata metadata = new Metadata();
             deserializeModel(metadata, Metadata.PROPERTIES);
+            Database.migrateNumericValues(metadata);
             metadata.setId(Metadata.NO_ID);
-            metadata.setValue(Metadata.TASK, currentTask.getId());
-            metadataService.save(metadata);
+            currentTask.metadata.add(metadata);
         }
 
         /**
@@ -344,6 +426,16 @@ public class TasksXmlImporter {
             }
         }
 
+        /** A task read from the file and the metadata read after it */
+        private class ImportedTask {
+            final Task task;
+            final ArrayList<Metadata> metadata = new ArrayList<Metadata>();
+
+            ImportedTask(Task task) {
+                this.task = task;
+            }
+        }
+
         private final XmlReadingPropertyVisitor xmlReadingVisitor = new XmlReadingPropertyVisitor();
 
         private class XmlReadingPropertyVisitor implements PropertyVisitor<Void, AbstractModel> {
@@ -55,6 +55,7 @@ import com.todoroo.astrid.api.PermaSql;
 import com.todoroo.astrid.api.TextInputCriterion;
 import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
+import com.todoroo.astrid.dao.TaskSearchIndex;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.service.StatisticsService;
 import com.todoroo.astrid.service.ThemeService;
@@ -69,6 +70,7 @@ import com.todoroo.astrid.utility.AstridPreferences;
 public class CustomFilterActivity extends SherlockFragmentActivity {
 
     private static final String IDENTIFIER_TITLE = "title"; //$NON-NLS-1$
+    private static final String IDENTIFIER_SEARCH = "search"; //$NON-NLS-1$
     private static final String IDENTIFIER_IMPORTANCE = "importance"; //$NON-NLS-1$
     private static final String IDENTIFIER_DUEDATE = "dueDate"; //$NON-NLS-1$
     private static final String IDENTIFIER_UNIVERSE = "active"; //$NON-NLS-1$
@@ -264,6 +266,20 @@ public class CustomFilterActivity extends SherlockFragmentActivity {
                         getString(R.string.CFC_title_contains_name));
             criteria.put(IDENTIFIER_TITLE, criterion);
         }
+
+        // built in criteria: title, notes, lists or comments matching X
+        {
+            CustomFilterCriterion criterion = new TextInputCriterion(
+                    IDENTIFIER_SEARCH,
+                    getString(R.string.CFC_search_text),
+                    Query.select(Task.ID).from(Task.TABLE).where(
+                            Criterion.and(TaskCriteria.activeVisibleMine(),
+                                    TaskSearchIndex.matches("?"))).toString(),
+                        null, getString(R.string.CFC_search_name), "",
+                        ((BitmapDrawable)r.getDrawable(R.drawable.tango_alpha)).getBitmap(),
+                        getString(R.string.CFC_search_name));
+            criteria.put(IDENTIFIER_SEARCH, criterion);
+        }
     }
 
     @Override
@@ -395,6 +411,8 @@ public class CustomFilterActivity extends SherlockFragmentActivity {
             String value = instance.getValueFromCriterion();
             if(value == null && instance.criterion.sql != null && instance.criterion.sql.contains("?"))
                 value = "";
+            else if(IDENTIFIER_SEARCH.equals(instance.criterion.identifier))
+                value = TaskSearchIndex.matchQuery(value);
 
             String title = instance.getTitleFromCriterion();
 
@@ -465,6 +483,8 @@ public class CustomFilterActivity extends SherlockFragmentActivity {
             String value = instance.getValueFromCriterion();
             if(value == null && instance.criterion.sql != null && instance.criterion.sql.contains("?"))
                 value = "";
+            else if(IDENTIFIER_SEARCH.equals(instance.criterion.identifier))
+                value = TaskSearchIndex.matchQuery(value);
 
             switch(instance.type) {
             case CriterionInstance.TYPE_ADD:
@@ -488,7 +508,7 @@ public class CustomFilterActivity extends SherlockFragmentActivity {
                 sql.append(Task.ID).append(" IN (").append(subSql).append(") ");
             }
 
-            Cursor cursor = database.getDatabase().rawQuery(sql.toString(), null);
+            Cursor cursor = database.rawQuery(sql.toString(), null);
             try {
                 cursor.moveToNext();
                 instance.start = last == -1 ? cursor.getInt(0) : last;
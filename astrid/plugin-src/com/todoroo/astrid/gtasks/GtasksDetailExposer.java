@@ -5,15 +5,20 @@
  */
 package com.todoroo.astrid.gtasks;
 
-import android.content.BroadcastReceiver;
+import java.util.HashMap;
+import java.util.Map;
+
 import android.content.Context;
-import android.content.Intent;
 
+import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
-import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Query;
 import com.todoroo.andlib.utility.Preferences;
-import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.api.TaskDetailExposer;
+import com.todoroo.astrid.core.PluginServices;
+import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.service.AstridDependencyInjector;
 
@@ -24,11 +29,10 @@ import com.todoroo.astrid.service.AstridDependencyInjector;
  * @author Tim Su <tim@todoroo.com>
  *
  */
-public class GtasksDetailExposer extends BroadcastReceiver {
+public class GtasksDetailExposer extends TaskDetailExposer {
 
     public static final String DETAIL_SEPARATOR = " | "; //$NON-NLS-1$
 
-    @Autowired private GtasksMetadataService gtasksMetadataService;
     @Autowired private GtasksListService gtasksListService;
     @Autowired private GtasksPreferenceService gtasksPreferenceService;
 
@@ -41,45 +45,39 @@ public class GtasksDetailExposer extends BroadcastReceiver {
     }
 
     @Override
-    public void onReceive(Context context, Intent intent) {
-        ContextManager.setContext(context);
-
+    protected boolean isEnabled() {
         // if we aren't logged in, don't expose features
-        if(!gtasksPreferenceService.isLoggedIn())
-            return;
-
-        long taskId = intent.getLongExtra(AstridApiConstants.EXTRAS_TASK_ID, -1);
-        if(taskId == -1)
-            return;
-
-        String taskDetail = getTaskDetails(taskId);
-        if(taskDetail == null)
-            return;
-
-        Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_SEND_DETAILS);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_ADDON, GtasksPreferenceService.IDENTIFIER);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, taskId);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_RESPONSE, taskDetail);
-        context.sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+        return gtasksPreferenceService.isLoggedIn();
     }
 
-    public String getTaskDetails(long id) {
-        Metadata metadata = gtasksMetadataService.getTaskMetadata(id);
-        if(metadata == null)
-            return null;
-
-        StringBuilder builder = new StringBuilder();
-
-        String listId = metadata.getValue(GtasksMetadata.LIST_ID);
-        if(listId == null || listId.equals(Preferences.getStringValue(GtasksPreferenceService.PREF_DEFAULT_LIST)))
-            return null;
-        String listName = gtasksListService.getListName(listId);
-        if(listName == GtasksListService.LIST_NOT_FOUND)
-            return null;
-
-        builder.append("<img src='gtasks_detail'/> ").append(listName); //$NON-NLS-1$
+    @Override
+    public Map<Long, String> getTaskDetails(Context context, long[] ids) {
+        Map<Long, String> details = new HashMap<Long, String>();
+        String defaultList = Preferences.getStringValue(GtasksPreferenceService.PREF_DEFAULT_LIST);
+        TodorooCursor<Metadata> cursor = PluginServices.getMetadataService().query(Query.select(
+                Metadata.TASK, GtasksMetadata.LIST_ID).where(Criterion.and(
+                        MetadataCriteria.withKey(GtasksMetadata.METADATA_KEY),
+                        Metadata.TASK.in(idArray(ids)))));
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                String listId = cursor.get(GtasksMetadata.LIST_ID);
+                if(listId == null || listId.equals(defaultList))
+                    continue;
+                String listName = gtasksListService.getListName(listId);
+                if(listName == GtasksListService.LIST_NOT_FOUND)
+                    continue;
+
+                details.put(cursor.get(Metadata.TASK), "<img src='gtasks_detail'/> " + listName); //$NON-NLS-1$
+            }
+        } finally {
+            cursor.close();
+        }
+        return details;
+    }
 
-        return builder.toString();
+    @Override
+    public String getAddon() {
+        return GtasksPreferenceService.IDENTIFIER;
     }
 
 }
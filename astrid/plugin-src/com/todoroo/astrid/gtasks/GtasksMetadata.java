@@ -34,19 +34,19 @@ public class GtasksMetadata {
 
     /** parent task id, or 0 if top level task */
     public static final LongProperty PARENT_TASK = new LongProperty(Metadata.TABLE,
-            Metadata.VALUE3.name);
+            Metadata.NUM1.name);
 
     public static final IntegerProperty INDENT = new IntegerProperty(Metadata.TABLE,
-            Metadata.VALUE4.name);
+            Metadata.NUM2.name);
 
     public static final LongProperty ORDER = new LongProperty(Metadata.TABLE,
-            Metadata.VALUE5.name);
+            Metadata.NUM3.name);
 
     public static final LongProperty GTASKS_ORDER = new LongProperty(Metadata.TABLE,
-            Metadata.VALUE6.name);
+            Metadata.NUM4.name);
 
     public static final LongProperty LAST_SYNC = new LongProperty(Metadata.TABLE,
-            Metadata.VALUE7.name);
+            Metadata.NUM5.name);
 
     /**
      * Creates default GTasks metadata item
@@ -19,8 +19,6 @@ import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
 import com.todoroo.andlib.sql.Criterion;
-import com.todoroo.andlib.sql.Field;
-import com.todoroo.andlib.sql.Functions;
 import com.todoroo.andlib.sql.Order;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.astrid.core.PluginServices;
@@ -137,12 +135,10 @@ public final class GtasksMetadataService extends SyncMetadataService<GtasksTaskC
         iterateThroughList(listId, iterator, 0, false);
     }
 
-    @SuppressWarnings("nls")
     public void iterateThroughList(String listId, OrderedListIterator iterator, long startAtOrder, boolean reverse) {
-        Field orderField = Functions.cast(GtasksMetadata.ORDER, "LONG");
-        Order order = reverse ? Order.desc(orderField) : Order.asc(orderField);
-        Criterion startAtCriterion = reverse ?  Functions.cast(GtasksMetadata.ORDER, "LONG").lt(startAtOrder) :
-            Functions.cast(GtasksMetadata.ORDER, "LONG").gt(startAtOrder - 1);
+        Order order = reverse ? Order.desc(GtasksMetadata.ORDER) : Order.asc(GtasksMetadata.ORDER);
+        Criterion startAtCriterion = reverse ?  GtasksMetadata.ORDER.lt(startAtOrder) :
+            GtasksMetadata.ORDER.gt(startAtOrder - 1);
 
         Query query = Query.select(Metadata.PROPERTIES).where(Criterion.and(
                         MetadataCriteria.withKey(GtasksMetadata.METADATA_KEY),
@@ -6,6 +6,8 @@
 package com.todoroo.astrid.gtasks.sync;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 
@@ -13,7 +15,8 @@ import android.content.ContentValues;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.todoroo.andlib.data.DatabaseDao.ModelUpdateListener;
+import com.todoroo.andlib.data.DatabaseDao.BatchModelUpdateListener;
+import com.todoroo.andlib.data.DatabaseDao.ImmediateModelUpdateListener;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
@@ -102,24 +105,48 @@ public final class GtasksSyncService {
     public void initialize() {
         new OperationPushThread(operationQueue).start();
 
-        taskDao.addListener(new ModelUpdateListener<Task>() {
-            public void onModelUpdated(final Task model, boolean outstandingEntries) {
-                if(model.checkAndClearTransitory(SyncFlags.GTASKS_SUPPRESS_SYNC))
-                    return;
-                if (actFmPreferenceService.isLoggedIn())
-                    return;
-                if (gtasksPreferenceService.isOngoing() && !model.checkTransitory(TaskService.TRANS_REPEAT_COMPLETE)) //Don't try and sync changes that occur during a normal sync
-                    return;
-                final ContentValues setValues = model.getSetValues();
-                if(setValues == null || !checkForToken())
-                    return;
-                if (!checkValuesForProperties(setValues, TASK_PROPERTIES)) //None of the properties we sync were updated
-                    return;
-
-                Task toPush = taskDao.fetch(model.getId(), TASK_PROPERTIES);
-                operationQueue.offer(new TaskPushOp(toPush));
-            }
-        });
+        taskDao.addListener(new TaskSaveListener());
+    }
+
+    /**
+     * Pushes saved tasks. For a batch, the login and token are checked once
+     */
+    private class TaskSaveListener implements ImmediateModelUpdateListener<Task>,
+            BatchModelUpdateListener<Task> {
+
+        public void onModelUpdated(Task model, boolean outstandingEntries) {
+            if(!actFmPreferenceService.isLoggedIn() && shouldPush(model) && checkForToken())
+                push(model);
+        }
+
+        public void onModelsUpdated(List<Task> models, boolean[] outstandingEntries) {
+            if (actFmPreferenceService.isLoggedIn())
+                return;
+            ArrayList<Task> toPush = new ArrayList<Task>(models.size());
+            for(Task model : models)
+                if(shouldPush(model))
+                    toPush.add(model);
+            if(toPush.isEmpty() || !checkForToken())
+                return;
+            for(Task model : toPush)
+                push(model);
+        }
+
+        private boolean shouldPush(Task model) {
+            if(model.checkAndClearTransitory(SyncFlags.GTASKS_SUPPRESS_SYNC))
+                return false;
+            if (gtasksPreferenceService.isOngoing() && !model.checkTransitory(TaskService.TRANS_REPEAT_COMPLETE)) //Don't try and sync changes that occur during a normal sync
+                return false;
+            final ContentValues setValues = model.getSetValues();
+            if(setValues == null)
+                return false;
+            return checkValuesForProperties(setValues, TASK_PROPERTIES); //None of the properties we sync were updated
+        }
+
+        private void push(Task model) {
+            Task toPush = taskDao.fetch(model.getId(), TASK_PROPERTIES);
+            operationQueue.offer(new TaskPushOp(toPush));
+        }
     }
 
     private class OperationPushThread extends Thread {
@@ -20,6 +20,8 @@ import android.text.TextUtils;
 import com.google.api.services.tasks.model.Tasks;
 import com.timsu.astrid.R;
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.ModelStream;
+import com.todoroo.andlib.data.ModelStream.Callback;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
@@ -64,6 +66,9 @@ import com.todoroo.astrid.tags.TagService;
 
 public class GtasksSyncV2Provider extends SyncV2Provider {
 
+    /** number of remote tasks written per database batch */
+    private static final int WRITE_BATCH_SIZE = 50;
+
     @Autowired TaskService taskService;
     @Autowired MetadataService metadataService;
     @Autowired MetadataDao metadataDao;
@@ -194,17 +199,15 @@ public class GtasksSyncV2Provider extends SyncV2Provider {
         }).start();
     }
 
-    private synchronized void pushUpdated(GtasksInvoker invoker, SyncResultCallback callback) {
-        TodorooCursor<Task> queued = taskService.query(Query.select(Task.PROPERTIES).
+    private synchronized void pushUpdated(final GtasksInvoker invoker, final SyncResultCallback callback) {
+        ModelStream<Task> queued = taskService.stream(Query.select(Task.PROPERTIES).
                 join(Join.left(Metadata.TABLE, Criterion.and(MetadataCriteria.withKey(GtasksMetadata.METADATA_KEY), Task.ID.eq(Metadata.TASK)))).where(
                         Criterion.or(Task.MODIFICATION_DATE.gt(GtasksMetadata.LAST_SYNC),
                                     Criterion.and(Task.USER_ID.neq(Task.USER_ID_SELF), GtasksMetadata.ID.isNotNull()),
                                       Metadata.KEY.isNull())));
         callback.incrementMax(queued.getCount() * 10);
-        try {
-            Task task = new Task();
-            for (queued.moveToFirst(); !queued.isAfterLast(); queued.moveToNext()) {
-                task.readFromCursor(queued);
+        queued.forEach(new Callback<Task>() {
+            public boolean process(Task task) {
                 try {
                     gtasksSyncService.pushTaskOnSave(task, task.getMergedValues(), invoker, false);
                 } catch (GoogleTasksException e) {
@@ -214,11 +217,9 @@ public class GtasksSyncV2Provider extends SyncV2Provider {
                 } finally {
                     callback.incrementProgress(10);
                 }
+                return true;
             }
-        } finally {
-            queued.close();
-        }
-
+        });
     }
 
     @Override
@@ -266,8 +267,8 @@ public class GtasksSyncV2Provider extends SyncV2Provider {
 
 
     private synchronized void synchronizeListHelper(StoreObject list, GtasksInvoker invoker,
-            boolean manual, SyncExceptionHandler errorHandler, SyncResultCallback callback, boolean isImport) {
-        String listId = list.getValue(GtasksList.REMOTE_ID);
+            boolean manual, SyncExceptionHandler errorHandler, final SyncResultCallback callback, boolean isImport) {
+        final String listId = list.getValue(GtasksList.REMOTE_ID);
         long lastSyncDate;
         if (!manual && list.containsNonNullValue(GtasksList.LAST_SYNC)) {
             lastSyncDate = list.getValue(GtasksList.LAST_SYNC);
@@ -278,22 +279,42 @@ public class GtasksSyncV2Provider extends SyncV2Provider {
         try {
             Tasks taskList = invoker.getAllGtasksFromListId(listId, includeDeletedAndHidden,
                     includeDeletedAndHidden, lastSyncDate);
-            List<com.google.api.services.tasks.model.Task> tasks = taskList.getItems();
+            final List<com.google.api.services.tasks.model.Task> tasks = taskList.getItems();
             if (tasks != null) {
                 callback.incrementMax(tasks.size() * 10);
-                HashSet<Long> localIds = new HashSet<Long>(tasks.size());
+                final HashSet<Long> localIds = new HashSet<Long>(tasks.size());
+
+                // match remote tasks outside of the write batches
+                final ArrayList<GtasksTaskContainer> containers =
+                    new ArrayList<GtasksTaskContainer>(tasks.size());
                 for (com.google.api.services.tasks.model.Task t : tasks) {
                     GtasksTaskContainer container = parseRemoteTask(t, listId);
                     gtasksMetadataService.findLocalMatch(container);
                     container.gtaskMetadata.setValue(GtasksMetadata.GTASKS_ORDER,
                             Long.parseLong(t.getPosition()));
-                    container.gtaskMetadata.setValue(GtasksMetadata.PARENT_TASK,
-                            gtasksMetadataService.localIdForGtasksId(t.getParent()));
-                    container.gtaskMetadata.setValue(GtasksMetadata.LAST_SYNC,
-                            DateUtilities.now() + 1000L);
-                    write(container);
-                    localIds.add(container.task.getId());
-                    callback.incrementProgress(10);
+                    containers.add(container);
+                }
+
+                // write in bounded batches. Parents are looked up while
+                // writing, since they may be created earlier in the list
+                for (int start = 0; start < containers.size(); start += WRITE_BATCH_SIZE) {
+                    final int from = start;
+                    final int to = Math.min(start + WRITE_BATCH_SIZE, containers.size());
+                    metadataDao.runInBatch(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = from; i < to; i++) {
+                                GtasksTaskContainer container = containers.get(i);
+                                container.gtaskMetadata.setValue(GtasksMetadata.PARENT_TASK,
+                                        gtasksMetadataService.localIdForGtasksId(tasks.get(i).getParent()));
+                                container.gtaskMetadata.setValue(GtasksMetadata.LAST_SYNC,
+                                        DateUtilities.now() + 1000L);
+                                write(container);
+                                localIds.add(container.task.getId());
+                                callback.incrementProgress(10);
+                            }
+                        }
+                    });
                 }
                 list.setValue(GtasksList.LAST_SYNC, DateUtilities.now());
                 storeObjectDao.persist(list);
@@ -351,7 +372,7 @@ public class GtasksSyncV2Provider extends SyncV2Provider {
         return container;
     }
 
-    private void write(GtasksTaskContainer task) throws IOException {
+    private void write(GtasksTaskContainer task) {
         //  merge astrid dates with google dates
         if (!task.task.isSaved() && actFmPreferenceService.isLoggedIn())
             titleMatchWithActFm(task.task);
@@ -5,18 +5,19 @@
  */
 package com.todoroo.astrid.notes;
 
+import java.util.HashMap;
+import java.util.Map;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
 import android.text.TextUtils;
 
 import com.timsu.astrid.R;
 import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Order;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.andlib.utility.Preferences;
-import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.api.TaskDetailExposer;
 import com.todoroo.astrid.core.PluginServices;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.data.Metadata;
@@ -28,59 +29,53 @@ import com.todoroo.astrid.data.Task;
  * @author Tim Su <tim@todoroo.com>
  *
  */
-public class NotesDetailExposer extends BroadcastReceiver {
+public class NotesDetailExposer extends TaskDetailExposer {
 
     private static final int NOTE_MAX = 200;
 
     @Override
-    public void onReceive(Context context, Intent intent) {
-        // get tags associated with this task
-        long taskId = intent.getLongExtra(AstridApiConstants.EXTRAS_TASK_ID, -1);
-        if(taskId == -1)
-            return;
-
-        String taskDetail = getTaskDetails(taskId);
-        if(taskDetail == null)
-            return;
-
-        // transmit
-        Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_SEND_DETAILS);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_ADDON, NotesPlugin.IDENTIFIER);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_RESPONSE, taskDetail);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, taskId);
-        context.sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+    protected boolean isEnabled() {
+        return Preferences.getBoolean(R.string.p_showNotes, false);
     }
 
     @SuppressWarnings("nls")
-    public String getTaskDetails(long id) {
-        if(!Preferences.getBoolean(R.string.p_showNotes, false))
-            return null;
-
-        Task task = PluginServices.getTaskService().fetchById(id, Task.ID, Task.NOTES);
-        if(task == null)
-            return null;
-
-        StringBuilder notesBuilder = new StringBuilder();
+    @Override
+    public Map<Long, String> getTaskDetails(Context context, long[] ids) {
+        Map<Long, StringBuilder> builders = new HashMap<Long, StringBuilder>();
 
-        String notes = task.getValue(Task.NOTES);
-        if(!TextUtils.isEmpty(notes)) {
-            if(notes.length() > NOTE_MAX) {
-                int lastSpace = notes.lastIndexOf(' ', NOTE_MAX);
-                notes = notes.substring(0, Math.max(lastSpace, NOTE_MAX - 20)) + "...";
+        TodorooCursor<Task> tasks = PluginServices.getTaskService().query(
+                Query.select(Task.ID, Task.NOTES).where(Criterion.and(
+                        Task.ID.in(idArray(ids)), Task.NOTES.neq(""))));
+        try {
+            for(tasks.moveToFirst(); !tasks.isAfterLast(); tasks.moveToNext()) {
+                String notes = tasks.get(Task.NOTES);
+                if(TextUtils.isEmpty(notes))
+                    continue;
+                if(notes.length() > NOTE_MAX) {
+                    int lastSpace = notes.lastIndexOf(' ', NOTE_MAX);
+                    notes = notes.substring(0, Math.max(lastSpace, NOTE_MAX - 20)) + "...";
+                }
+                builders.put(tasks.get(Task.ID), new StringBuilder(notes));
             }
-            notesBuilder.append(notes);
+        } finally {
+            tasks.close();
         }
 
         TodorooCursor<Metadata> cursor = PluginServices.getMetadataService().query(
-                Query.select(Metadata.PROPERTIES).where(
-                        MetadataCriteria.byTaskAndwithKey(task.getId(),
-                                NoteMetadata.METADATA_KEY)).orderBy(Order.asc(Metadata.CREATION_DATE)));
+                Query.select(Metadata.PROPERTIES).where(Criterion.and(
+                        MetadataCriteria.withKey(NoteMetadata.METADATA_KEY),
+                        Metadata.TASK.in(idArray(ids)))).orderBy(Order.asc(Metadata.CREATION_DATE)));
         Metadata metadata = new Metadata();
         try {
             for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
                 metadata.readFromCursor(cursor);
 
-                if(notesBuilder.length() > 0)
+                long taskId = metadata.getValue(Metadata.TASK);
+                StringBuilder notesBuilder = builders.get(taskId);
+                if(notesBuilder == null) {
+                    notesBuilder = new StringBuilder();
+                    builders.put(taskId, notesBuilder);
+                } else
                     notesBuilder.append("\n");
                 notesBuilder.append("<b>").append(metadata.getValue(NoteMetadata.TITLE)).append("</b>\n");
                 notesBuilder.append(metadata.getValue(NoteMetadata.BODY));
@@ -89,10 +84,15 @@ public class NotesDetailExposer extends BroadcastReceiver {
             cursor.close();
         }
 
-        if(notesBuilder.length() == 0)
-            return null;
+        Map<Long, String> details = new HashMap<Long, String>();
+        for(Map.Entry<Long, StringBuilder> entry : builders.entrySet())
+            details.put(entry.getKey(), "<img src='silk_note'/> " + entry.getValue());
+        return details;
+    }
 
-        return "<img src='silk_note'/> " + notesBuilder; //$NON-NLS-1$
+    @Override
+    public String getAddon() {
+        return NotesPlugin.IDENTIFIER;
     }
 
 }
@@ -18,6 +18,7 @@ import android.content.res.Resources;
 import android.util.Log;
 
 import com.timsu.astrid.R;
+import com.todoroo.andlib.data.ModelStream.Callback;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
@@ -124,18 +125,17 @@ public final class ReminderService  {
      * Schedules all alarms
      */
     public void scheduleAllAlarms() {
-        TodorooCursor<Task> cursor = getTasksWithReminders(NOTIFICATION_PROPERTIES);
         try {
-            Task task = new Task();
             now = DateUtilities.now(); // Before mass scheduling, initialize now variable
-            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                task.readFromCursor(cursor);
-                scheduleAlarm(task, false);
-            }
+            taskDao.stream(getTasksWithReminders(NOTIFICATION_PROPERTIES)).forEach(new Callback<Task>() {
+                public boolean process(Task task) {
+                    scheduleAlarm(task, false);
+                    return true;
+                }
+            });
         } catch (Exception e) {
             // suppress
         } finally {
-            cursor.close();
             now = -1; // Signal done with now variable
         }
     }
@@ -7,18 +7,21 @@ package com.todoroo.astrid.repeats;
 
 import java.text.DateFormatSymbols;
 import java.text.ParseException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
 import android.content.res.Resources;
 
 import com.google.ical.values.Frequency;
 import com.google.ical.values.RRule;
 import com.google.ical.values.WeekdayNum;
 import com.timsu.astrid.R;
-import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.api.TaskDetailExposer;
 import com.todoroo.astrid.core.PluginServices;
 import com.todoroo.astrid.data.Task;
 
@@ -28,32 +31,29 @@ import com.todoroo.astrid.data.Task;
  * @author Tim Su <tim@todoroo.com>
  *
  */
-public class RepeatDetailExposer extends BroadcastReceiver {
+public class RepeatDetailExposer extends TaskDetailExposer {
 
     @Override
-    public void onReceive(Context context, Intent intent) {
-        // get tags associated with this task
-        long taskId = intent.getLongExtra(AstridApiConstants.EXTRAS_TASK_ID, -1);
-        if(taskId == -1)
-            return;
-
-        String taskDetail = getTaskDetails(context, taskId);
-        if(taskDetail == null)
-            return;
-
-        // transmit
-        Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_SEND_DETAILS);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_ADDON, RepeatsPlugin.IDENTIFIER);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_RESPONSE, taskDetail);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, taskId);
-        context.sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+    public Map<Long, String> getTaskDetails(Context context, long[] ids) {
+        Map<Long, String> details = new HashMap<Long, String>();
+        TodorooCursor<Task> cursor = PluginServices.getTaskService().query(
+                Query.select(Task.ID, Task.RECURRENCE).where(Criterion.and(
+                        Task.ID.in(idArray(ids)), Task.RECURRENCE.neq(""))));  //$NON-NLS-1$
+        try {
+            Task task = new Task();
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                task.readFromCursor(cursor);
+                String detail = getTaskDetails(context, task);
+                if(detail != null)
+                    details.put(task.getId(), detail);
+            }
+        } finally {
+            cursor.close();
+        }
+        return details;
     }
 
-    public String getTaskDetails(Context context, long id) {
-        Task task = PluginServices.getTaskService().fetchById(id, Task.RECURRENCE);
-        if(task == null)
-            return null;
-
+    public String getTaskDetails(Context context, Task task) {
         Resources r = context.getResources();
 
         String recurrence = task.sanitizedRecurrence();
@@ -119,7 +119,8 @@ public class RepeatDetailExposer extends BroadcastReceiver {
         return r.getQuantityString(plural, rrule.getInterval(), rrule.getInterval());
     }
 
-    public String getPluginIdentifier() {
+    @Override
+    public String getAddon() {
         return RepeatsPlugin.IDENTIFIER;
     }
 
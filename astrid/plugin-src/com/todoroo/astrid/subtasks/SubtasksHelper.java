@@ -7,11 +7,8 @@ import android.content.SharedPreferences;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.todoroo.andlib.data.Property;
-import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.sql.Criterion;
-import com.todoroo.andlib.sql.Query;
 import com.todoroo.astrid.actfm.TagViewFragment;
 import com.todoroo.astrid.api.Filter;
 import com.todoroo.astrid.api.FilterWithCustomIntent;
@@ -130,7 +127,7 @@ public class SubtasksHelper {
      */
     public static String convertTreeToRemoteIds(String localTree) {
         Long[] localIds = getIdArray(localTree);
-        HashMap<Long, String> idMap = getIdMap(localIds, Task.ID, Task.UUID);
+        HashMap<Long, String> idMap = PluginServices.getTaskDao().uuidsFromLocalIds(localIds);
         idMap.put(-1L, "-1"); //$NON-NLS-1$
 
         Node tree = AstridOrderedListUpdater.buildTreeModel(localTree, null);
@@ -171,19 +168,4 @@ public class SubtasksHelper {
         });
     }
 
-    private static <A, B> HashMap<A, B> getIdMap(A[] keys, Property<A> keyProperty, Property<B> valueProperty) {
-        HashMap<A, B> map = new HashMap<A, B>();
-        TodorooCursor<Task> tasks = PluginServices.getTaskService().query(Query.select(keyProperty, valueProperty).where(keyProperty.in(keys)));
-        try {
-            for (tasks.moveToFirst(); !tasks.isAfterLast(); tasks.moveToNext()) {
-                A key = tasks.get(keyProperty);
-                B value = tasks.get(valueProperty);
-                map.put(key, value);
-            }
-        } finally {
-            tasks.close();
-        }
-        return map;
-    }
-
 }
@@ -29,9 +29,9 @@ public class SubtasksMetadata {
             Metadata.VALUE1.name);
 
     public static final IntegerProperty INDENT = new IntegerProperty(Metadata.TABLE,
-            Metadata.VALUE2.name);
+            Metadata.NUM1.name);
 
     public static final LongProperty ORDER = new LongProperty(Metadata.TABLE,
-            Metadata.VALUE3.name);
+            Metadata.NUM2.name);
 
 }
@@ -5,11 +5,18 @@
  */
 package com.todoroo.astrid.tags;
 
-import android.content.BroadcastReceiver;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 import android.content.Context;
-import android.content.Intent;
+import android.text.TextUtils;
 
-import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.api.TaskDetailExposer;
+import com.todoroo.astrid.core.PluginServices;
+import com.todoroo.astrid.data.Task;
 
 /**
  * Exposes Task Detail for tags, i.e. "Tags: frogs, animals"
@@ -17,33 +24,32 @@ import com.todoroo.astrid.api.AstridApiConstants;
  * @author Tim Su <tim@todoroo.com>
  *
  */
-public class TagDetailExposer extends BroadcastReceiver {
+public class TagDetailExposer extends TaskDetailExposer {
 
     @Override
-    public void onReceive(Context context, Intent intent) {
-        // get tags associated with this task
-        long taskId = intent.getLongExtra(AstridApiConstants.EXTRAS_TASK_ID, -1);
-        if(taskId == -1)
-            return;
-
-        String taskDetail = getTaskDetails(taskId);
-        if(taskDetail == null)
-            return;
-
-        // transmit
-        Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_SEND_DETAILS);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_ADDON, TagsPlugin.IDENTIFIER);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_RESPONSE, taskDetail);
-        broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, taskId);
-        context.sendBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+    public Map<Long, String> getTaskDetails(Context context, long[] ids) {
+        Map<Long, String> details = new HashMap<Long, String>();
+        TodorooCursor<Task> cursor = PluginServices.getTaskService().query(
+                Query.select(Task.ID, Task.TAG_NAMES).where(
+                        Task.ID.in(idArray(ids))));
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                String tagNames = cursor.get(Task.TAG_NAMES);
+                if(TextUtils.isEmpty(tagNames))
+                    continue;
+                String tagList = TextUtils.join(", ", //$NON-NLS-1$
+                        tagNames.split(Pattern.quote(Task.TAG_NAMES_SEPARATOR)));
+                details.put(cursor.get(Task.ID), /*"<img src='silk_tag_pink'/> " +*/ tagList);
+            }
+        } finally {
+            cursor.close();
+        }
+        return details;
     }
 
-    public String getTaskDetails(long id) {
-        String tagList = TagService.getInstance().getTagsAsString(id);
-        if(tagList.length() == 0)
-            return null;
-
-        return /*"<img src='silk_tag_pink'/> " +*/ tagList;
+    @Override
+    public String getAddon() {
+        return TagsPlugin.IDENTIFIER;
     }
 
 }
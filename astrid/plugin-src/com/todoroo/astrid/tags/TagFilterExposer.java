@@ -47,6 +47,7 @@ import com.todoroo.astrid.data.TagData;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.gtasks.GtasksPreferenceService;
 import com.todoroo.astrid.service.AstridDependencyInjector;
+import com.todoroo.astrid.service.FilterCountService;
 import com.todoroo.astrid.service.TagDataService;
 import com.todoroo.astrid.service.ThemeService;
 import com.todoroo.astrid.tags.TagService.Tag;
@@ -82,7 +83,9 @@ public class TagFilterExposer extends BroadcastReceiver implements AstridFilterE
                 title, tagTemplate,
                 contentValues);
         if(!RemoteModel.NO_UUID.equals(tag.uuid)) {
-            filter.listingTitle += " (" + tag.count + ")";
+            // the stored task count can lag behind, prefer a maintained one
+            int count = FilterCountService.getInstance().getCount(filter);
+            filter.listingTitle += " (" + (count >= 0 ? count : tag.count) + ")";
         }
 
         int deleteIntentLabel;
@@ -5,6 +5,8 @@
  */
 package com.todoroo.astrid.activity;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -33,6 +35,7 @@ import android.widget.Toast;
 
 import com.crittercism.app.Crittercism;
 import com.timsu.astrid.R;
+import com.todoroo.andlib.data.QueryProfiler;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
@@ -45,6 +48,7 @@ import com.todoroo.astrid.actfm.ActFmLoginActivity;
 import com.todoroo.astrid.actfm.ActFmPreferences;
 import com.todoroo.astrid.actfm.sync.ActFmPreferenceService;
 import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.backup.BackupConstants;
 import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.data.TaskAttachment;
@@ -459,6 +463,39 @@ public class EditPreferences extends TodorooPreferenceActivity {
         });
         group.addPreference(preference);
 
+        preference = new Preference(this);
+        preference.setTitle("Toggle SQL profiling");
+        preference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+            public boolean onPreferenceClick(Preference p) {
+                QueryProfiler profiler = database.getProfiler();
+                profiler.setEnabled(!profiler.isEnabled());
+                Toast.makeText(EditPreferences.this, "profiling " + profiler.isEnabled(),
+                        Toast.LENGTH_LONG).show();
+                return false;
+            }
+        });
+        group.addPreference(preference);
+
+        preference = new Preference(this);
+        preference.setTitle("Export SQL profile");
+        preference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+            public boolean onPreferenceClick(Preference p) {
+                File directory = BackupConstants.defaultExportDirectory();
+                if(directory == null)
+                    return false;
+                directory.mkdirs();
+                File report = new File(directory, "sql-profile.txt");
+                try {
+                    database.getProfiler().writeReport(report);
+                    DialogUtilities.okDialog(EditPreferences.this, report.getAbsolutePath(), null);
+                } catch (IOException e) {
+                    DialogUtilities.okDialog(EditPreferences.this, e.toString(), null);
+                }
+                return false;
+            }
+        });
+        group.addPreference(preference);
+
         preference = new Preference(this);
         preference.setTitle("Make lots of contacts");
         preference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
@@ -60,6 +60,7 @@ import com.todoroo.astrid.people.PeopleFilterMode;
 import com.todoroo.astrid.people.PersonViewFragment;
 import com.todoroo.astrid.service.StatisticsConstants;
 import com.todoroo.astrid.service.StatisticsService;
+import com.todoroo.astrid.service.TaskService;
 import com.todoroo.astrid.service.ThemeService;
 import com.todoroo.astrid.service.abtesting.ABTestEventReportingService;
 import com.todoroo.astrid.tags.TagFilterExposer;
@@ -104,6 +105,8 @@ public class TaskListActivity extends AstridActivity implements MainMenuListener
 
     @Autowired private TagMetadataDao tagMetadataDao;
 
+    @Autowired private TaskService taskService;
+
     private View listsNav;
     private ImageView listsNavDisclosure;
     private TextView lists;
@@ -214,9 +217,8 @@ public class TaskListActivity extends AstridActivity implements MainMenuListener
             String query = getIntent().getStringExtra(SearchManager.QUERY).trim();
             String title = getString(R.string.FLA_search_filter, query);
             savedFilter = new Filter(title, title,
-                    new QueryTemplate().where(Task.TITLE.like(
-                            "%" + //$NON-NLS-1$
-                                    query + "%")), //$NON-NLS-1$
+                    new QueryTemplate().where(TaskService.searchCriterion(query)).
+                        orderBy(taskService.searchOrder(query)),
                     null);
         }
 
@@ -8,6 +8,9 @@ package com.todoroo.astrid.activity;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicReference;
 
 import android.app.Activity;
@@ -26,6 +29,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.text.TextUtils;
 import android.util.Log;
@@ -52,15 +56,14 @@ import com.actionbarsherlock.app.SherlockListFragment;
 import com.actionbarsherlock.view.Menu;
 import com.actionbarsherlock.view.MenuItem;
 import com.timsu.astrid.R;
+import com.todoroo.andlib.data.PagedCursor;
+import com.todoroo.andlib.data.PagedCursor.PageSource;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
 import com.todoroo.andlib.service.ExceptionService;
-import com.todoroo.andlib.sql.Criterion;
-import com.todoroo.andlib.sql.Field;
-import com.todoroo.andlib.sql.Join;
 import com.todoroo.andlib.utility.AndroidUtilities;
 import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.andlib.utility.Preferences;
@@ -75,6 +78,7 @@ import com.todoroo.astrid.adapter.TaskAdapter.ViewHolder;
 import com.todoroo.astrid.api.AstridApiConstants;
 import com.todoroo.astrid.api.Filter;
 import com.todoroo.astrid.api.FilterWithCustomIntent;
+import com.todoroo.astrid.api.PermaSql;
 import com.todoroo.astrid.api.TaskContextActionExposer;
 import com.todoroo.astrid.api.TaskDecoration;
 import com.todoroo.astrid.core.CoreFilterExposer;
@@ -82,13 +86,10 @@ import com.todoroo.astrid.core.CustomFilterActivity;
 import com.todoroo.astrid.core.SortHelper;
 import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.dao.TaskListMetadataDao;
-import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.RemoteModel;
 import com.todoroo.astrid.data.TagData;
 import com.todoroo.astrid.data.Task;
-import com.todoroo.astrid.data.TaskAttachment;
 import com.todoroo.astrid.data.TaskListMetadata;
-import com.todoroo.astrid.data.User;
 import com.todoroo.astrid.helper.SyncActionHelper;
 import com.todoroo.astrid.helper.TaskListContextMenuExtensionLoader;
 import com.todoroo.astrid.helper.TaskListContextMenuExtensionLoader.ContextMenuItem;
@@ -99,6 +100,7 @@ import com.todoroo.astrid.service.MetadataService;
 import com.todoroo.astrid.service.StatisticsConstants;
 import com.todoroo.astrid.service.StatisticsService;
 import com.todoroo.astrid.service.TagDataService;
+import com.todoroo.astrid.service.TaskListChangeTracker;
 import com.todoroo.astrid.service.TaskService;
 import com.todoroo.astrid.service.ThemeService;
 import com.todoroo.astrid.service.UpgradeService;
@@ -106,8 +108,9 @@ import com.todoroo.astrid.subtasks.SubtasksHelper;
 import com.todoroo.astrid.subtasks.SubtasksListFragment;
 import com.todoroo.astrid.subtasks.SubtasksUpdater;
 import com.todoroo.astrid.sync.SyncProviderPreferences;
-import com.todoroo.astrid.tags.TaskToTagMetadata;
 import com.todoroo.astrid.timers.TimerPlugin;
+import com.todoroo.astrid.ui.DraggableListView;
+import com.todoroo.astrid.ui.DraggableListView.DragStateListener;
 import com.todoroo.astrid.ui.FeedbackPromptDialogs;
 import com.todoroo.astrid.ui.QuickAddBar;
 import com.todoroo.astrid.utility.AstridPreferences;
@@ -134,6 +137,7 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
 
     public static final long AUTOSYNC_INTERVAL = 90000L;
     private static final long BACKGROUND_REFRESH_INTERVAL = 120000L;
+    private static final long MIN_REFRESH_INTERVAL = 1000L;
     private static final long WAIT_BEFORE_AUTOSYNC = 2000L;
     public static final int ACTIVITY_EDIT_TASK = 0;
     public static final int ACTIVITY_SETTINGS = 1;
@@ -198,6 +202,24 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
     protected DetailReceiver detailReceiver = new DetailReceiver();
     protected RefreshReceiver refreshReceiver = new RefreshReceiver();
     protected final AtomicReference<String> sqlQueryTemplate = new AtomicReference<String>();
+
+    /** Cursor the list is read through, or null if the list is read at once */
+    private PagedCursor pagedCursor;
+    private final TaskListChangeTracker changeTracker = new TaskListChangeTracker();
+    private final Handler refreshHandler = new Handler();
+
+    /** Reads rows of changed tasks for all lists, one refresh at a time */
+    private static final ExecutorService patchExecutor =
+        Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "task-list-refresh"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    private boolean refreshScheduled = false;
+    private long lastRefreshTime = 0;
     protected SyncActionHelper syncActionHelper;
     protected Filter filter;
     protected int sortFlags;
@@ -621,6 +643,7 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
             public void run() {
                 // refresh if conditions match
                 Flags.checkAndClear(Flags.REFRESH);
+                taskService.rebaseSortScoresIfStale();
                 getActivity().runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
@@ -668,11 +691,14 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
 
         getActivity().registerReceiver(detailReceiver,
                 new IntentFilter(AstridApiConstants.BROADCAST_SEND_DETAILS));
+        getActivity().registerReceiver(detailReceiver,
+                new IntentFilter(AstridApiConstants.BROADCAST_SEND_DETAILS_BATCH));
         getActivity().registerReceiver(detailReceiver,
                 new IntentFilter(AstridApiConstants.BROADCAST_SEND_DECORATIONS));
         getActivity().registerReceiver(refreshReceiver,
                 new IntentFilter(AstridApiConstants.BROADCAST_EVENT_REFRESH));
         syncActionHelper.register();
+        changeTracker.attach();
 
         if (Flags.checkAndClear(Flags.REFRESH)) {
             refresh();
@@ -761,18 +787,12 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
         } else {
             // In single fragment case, we're using swipe between lists,
             // so wait a couple seconds before initiating the autosync.
-            new Thread() {
+            refreshHandler.postDelayed(new Runnable() {
                 @Override
                 public void run() {
-                    AndroidUtilities.sleepDeep(WAIT_BEFORE_AUTOSYNC);
-                    activity.runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            initiateAutomaticSyncImpl();
-                        }
-                    });
+                    initiateAutomaticSyncImpl();
                 }
-            }.start();
+            }, WAIT_BEFORE_AUTOSYNC);
         }
     }
 
@@ -799,6 +819,9 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
         AndroidUtilities.tryUnregisterReceiver(getActivity(), detailReceiver);
         AndroidUtilities.tryUnregisterReceiver(getActivity(), refreshReceiver);
         syncActionHelper.unregister();
+        changeTracker.detach();
+        refreshHandler.removeCallbacks(refreshRunnable);
+        refreshScheduled = false;
 
         backgroundTimer.cancel();
     }
@@ -821,15 +844,53 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
                 activity.runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
-                        refresh();
-                        if (activity instanceof TaskListActivity)
-                            ((TaskListActivity) activity).refreshMainMenu();
+                        scheduleRefresh();
                     }
                 });
             }
         }
     }
 
+    /**
+     * Refresh the list for a refresh broadcast. Broadcasts arriving within
+     * MIN_REFRESH_INTERVAL of the last refresh are handled by one refresh
+     * once the interval is over
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled)
+            return;
+        refreshScheduled = true;
+        long delay = Math.max(0, lastRefreshTime + MIN_REFRESH_INTERVAL - DateUtilities.now());
+        refreshHandler.postDelayed(refreshRunnable, delay);
+    }
+
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refreshScheduled = false;
+            lastRefreshTime = DateUtilities.now();
+            Activity activity = getActivity();
+            if (activity == null)
+                return;
+            refreshChanges();
+            if (activity instanceof TaskListActivity)
+                ((TaskListActivity) activity).refreshMainMenu();
+        }
+    };
+
+    /**
+     * Bring the list up to date with the changes made since it was read.
+     * Tasks that changed without moving are read again and patched into
+     * the list; other changes read the whole list again
+     */
+    protected void refreshChanges() {
+        TaskListChangeTracker.Changes changes = changeTracker.takeChanges();
+        if (changes.requery || pagedCursor == null || taskAdapter == null)
+            refresh();
+        else if (!changes.isEmpty())
+            patchTasks(changes.ids);
+    }
+
     /**
      * Called by the RefreshReceiver when the task list receives a refresh
      * broadcast. Subclasses should override this.
@@ -841,6 +902,44 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
         loadTaskListContent(true);
     }
 
+    /**
+     * Read the given tasks again in the background and show them in place
+     * of their rows
+     */
+    @SuppressWarnings("nls")
+    private void patchTasks(final long[] ids) {
+        final PagedCursor cursor = pagedCursor;
+        final Property<?>[] properties = taskProperties();
+        patchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Long[] taskIds = new Long[ids.length];
+                for (int i = 0; i < ids.length; i++)
+                    taskIds[i] = ids[i];
+                final TodorooCursor<Task> rows = taskService.fetchFiltered(
+                        "WHERE " + Task.ID.in(taskIds), null, properties);
+                rows.getCount(); // read the rows on this thread
+
+                Activity activity = getActivity();
+                if (activity == null) {
+                    rows.close();
+                    return;
+                }
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cursor != pagedCursor || taskAdapter == null) {
+                            rows.close();
+                            return;
+                        }
+                        taskAdapter.flushCaches(ids);
+                        cursor.patch(rows.getColumnIndexOrThrow(Task.ID.name), rows);
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Receiver which receives detail or decoration intents
      *
@@ -862,6 +961,10 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
                 } else if (AstridApiConstants.BROADCAST_SEND_DETAILS.equals(intent.getAction())) {
                     String detail = receivedExtras.getString(AstridApiConstants.EXTRAS_RESPONSE);
                     taskAdapter.addDetails(taskId, detail);
+                } else if (AstridApiConstants.BROADCAST_SEND_DETAILS_BATCH.equals(intent.getAction())) {
+                    long[] taskIds = receivedExtras.getLongArray(AstridApiConstants.EXTRAS_TASK_IDS);
+                    String[] details = receivedExtras.getStringArray(AstridApiConstants.EXTRAS_RESPONSE);
+                    taskAdapter.addDetails(taskIds, details);
                 }
             } catch (Exception e) {
                 exceptionService.reportError("receive-detail-" + //$NON-NLS-1$
@@ -931,6 +1034,7 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
         Cursor taskCursor = taskAdapter.getCursor();
 
         if (requery) {
+            changeTracker.reset(sqlQueryTemplate.get());
             taskCursor.requery();
             taskAdapter.flushCaches();
             taskAdapter.notifyDataSetChanged();
@@ -973,12 +1077,6 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
                 });
     }
 
-    public static final String TAGS_METADATA_JOIN = "for_tags"; //$NON-NLS-1$
-
-    public static final String USER_IMAGE_JOIN = "for_images"; // //$NON-NLS-1$
-
-    public  static final String FILE_METADATA_JOIN = "for_actions"; //$NON-NLS-1$
-
 
     /**
      * Fill in the Task List with current items
@@ -999,6 +1097,16 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
 
         setListAdapter(taskAdapter);
         registerForContextMenu(getListView());
+        if (getListView() instanceof DraggableListView) {
+            ((DraggableListView) getListView()).setDragStateListener(new DragStateListener() {
+                @Override
+                public void onDragStateChanged(boolean dragging) {
+                    // keep rows where they are while one is dragged
+                    if (pagedCursor != null)
+                        pagedCursor.setHoldChanges(dragging);
+                }
+            });
+        }
 
         loadTaskListContent(true);
     }
@@ -1015,43 +1123,29 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
 
     @SuppressWarnings("nls")
     private TodorooCursor<Task> constructCursor() {
-        String tagName = null;
-        if (getActiveTagData() != null)
-            tagName = getActiveTagData().getValue(TagData.NAME);
-
-        Criterion tagsJoinCriterion = Criterion.and(
-                Field.field(TAGS_METADATA_JOIN + "." + Metadata.KEY.name).eq(TaskToTagMetadata.KEY), //$NON-NLS-1$
-                Field.field(TAGS_METADATA_JOIN + "." + Metadata.DELETION_DATE.name).eq(0),
-                Task.ID.eq(Field.field(TAGS_METADATA_JOIN + "." + Metadata.TASK.name)));
-        if (tagName != null)
-            tagsJoinCriterion = Criterion.and(tagsJoinCriterion, Field.field(TAGS_METADATA_JOIN + "." + TaskToTagMetadata.TAG_NAME.name).neq(tagName));
-
-        // TODO: For now, we'll modify the query to join and include the things like tag data here.
-        // Eventually, we might consider restructuring things so that this query is constructed elsewhere.
-        String joinedQuery =
-                Join.left(Metadata.TABLE.as(TAGS_METADATA_JOIN),
-                        tagsJoinCriterion).toString() //$NON-NLS-1$
-                + Join.left(User.TABLE.as(USER_IMAGE_JOIN),
-                        Task.USER_ID.eq(Field.field(USER_IMAGE_JOIN + "." + User.UUID.name))).toString()
-                + Join.left(TaskAttachment.TABLE.as(FILE_METADATA_JOIN), Task.UUID.eq(Field.field(FILE_METADATA_JOIN + "." + TaskAttachment.TASK_UUID.name)))
-                + filter.getSqlQuery();
-
+        // tags, attachments and notes are read from the task row, so lists
+        // only need grouping if their filter joins other tables
         sqlQueryTemplate.set(SortHelper.adjustQueryForFlagsAndSort(
-                joinedQuery, sortFlags, sortSort));
+                filter.getSqlQuery(), sortFlags, sortSort));
 
         String groupedQuery;
-        if (sqlQueryTemplate.get().contains("GROUP BY"))
+        if (sqlQueryTemplate.get().contains("GROUP BY") || !sqlQueryTemplate.get().contains("JOIN"))
             groupedQuery = sqlQueryTemplate.get();
         else if (sqlQueryTemplate.get().contains("ORDER BY")) //$NON-NLS-1$
             groupedQuery = sqlQueryTemplate.get().replace("ORDER BY", "GROUP BY " + Task.ID + " ORDER BY"); //$NON-NLS-1$
         else
             groupedQuery = sqlQueryTemplate.get() + " GROUP BY " + Task.ID;
         sqlQueryTemplate.set(groupedQuery);
+        changeTracker.reset(groupedQuery);
 
         // Peform query
         try {
-            return taskService.fetchFiltered(
-                sqlQueryTemplate.get(), null, taskProperties());
+            if (groupedQuery.toUpperCase().contains(" LIMIT ")) {
+                pagedCursor = null;
+                return taskService.fetchFiltered(
+                    sqlQueryTemplate.get(), null, taskProperties());
+            }
+            return constructPagedCursor(PermaSql.replacePlaceholders(groupedQuery), taskProperties());
         } catch (SQLiteException e) {
             // We don't show this error anymore--seems like this can get triggered
             // by a strange bug, but there seems to not be any negative side effect.
@@ -1061,6 +1155,23 @@ public class TaskListFragment extends SherlockListFragment implements OnSortSele
         }
     }
 
+    /**
+     * Read the list in pages in the background, so long lists show their
+     * first tasks right away
+     */
+    @SuppressWarnings("nls")
+    private TodorooCursor<Task> constructPagedCursor(String filterQuery, final Property<?>[] properties) {
+        final String query = PagedCursor.withUniqueOrder(filterQuery, Task.ID.toString());
+        pagedCursor = new PagedCursor(PagedCursor.columnNames(properties), new PageSource() {
+            @Override
+            public Cursor fetch(int offset, int limit) {
+                return taskService.fetchFiltered(query + " LIMIT " + limit + " OFFSET " + offset,
+                        null, properties);
+            }
+        });
+        return new TodorooCursor<Task>(pagedCursor, properties);
+    }
+
     public void reconstructCursor() {
         TodorooCursor<Task> cursor = constructCursor();
         if (cursor == null || taskAdapter == null)
@@ -5,11 +5,7 @@
  */
 package com.todoroo.astrid.adapter;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,7 +37,6 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.timsu.astrid.R;
-import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
 import com.todoroo.astrid.actfm.TagViewFragment;
@@ -59,8 +54,9 @@ import com.todoroo.astrid.api.FilterWithCustomIntent;
 import com.todoroo.astrid.api.FilterWithUpdate;
 import com.todoroo.astrid.data.RemoteModel;
 import com.todoroo.astrid.helper.AsyncImageView;
+import com.todoroo.astrid.service.FilterCountService;
+import com.todoroo.astrid.service.FilterCountService.FilterCountListener;
 import com.todoroo.astrid.service.MarketStrategy.NookMarketStrategy;
-import com.todoroo.astrid.service.TaskService;
 import com.todoroo.astrid.tags.TagService;
 import com.todoroo.astrid.utility.Constants;
 import com.todoroo.astrid.utility.ResourceDrawableCache;
@@ -78,8 +74,7 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
 
     // --- instance variables
 
-    @Autowired
-    private TaskService taskService;
+    private final FilterCountService filterCountService = FilterCountService.getInstance();
 
     /** parent activity */
     protected final Activity activity;
@@ -110,21 +105,22 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
     /** Pattern for matching filter counts in listing titles */
     private final Pattern countPattern = Pattern.compile(".* \\((\\d+)\\)$"); //$NON-NLS-1$
 
-    private final HashMap<Filter, Integer> filterCounts;
-
     private FilterDataSourceChangedListener listener;
 
     private final boolean nook;
 
 
-    // Previous solution involved a queue of filters and a filterSizeLoadingThread. The filterSizeLoadingThread had
-    // a few problems: how to make sure that the thread is resumed when the controlling activity is resumed, and
-    // how to make sure that the the filterQueue does not accumulate filters without being processed. I am replacing
-    // both the queue and a the thread with a thread pool, which will shut itself off after a second if it has
-    // nothing to do (corePoolSize == 0, which makes it available for garbage collection), and will wake itself up
-    // if new filters are queued (obviously it cannot be garbage collected if it is possible for new filters to
-    // be added).
-    private final ThreadPoolExecutor filterExecutor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    /** redraws the list when cached counts change */
+    private final FilterCountListener countListener = new FilterCountListener() {
+        @Override
+        public void onFilterCountsChanged() {
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    notifyDataSetChanged();
+                }
+            });
+        }
+    };
 
     public FilterAdapter(Activity activity, ListView listView,
             int rowLayout, boolean skipIntentFilters) {
@@ -143,7 +139,6 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
         this.layout = rowLayout;
         this.skipIntentFilters = skipIntentFilters;
         this.selectable = selectable;
-        this.filterCounts = new HashMap<Filter, Integer>();
 
         this.nook = (Constants.MARKET_STRATEGY instanceof NookMarketStrategy);
 
@@ -159,39 +154,8 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
     private void offerFilter(final Filter filter) {
         if(selectable && selection == null)
             setSelection(filter);
-        filterExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    int size = -1;
-                    Matcher m = countPattern.matcher(filter.listingTitle);
-                    if(m.find()) {
-                        String countString = m.group(1);
-                        try {
-                            size = Integer.parseInt(countString);
-                        } catch (NumberFormatException e) {
-                            // Count manually
-                            e.printStackTrace();
-                        }
-                    }
-
-                    if (size < 0) {
-                        size = taskService.countTasks(filter);
-                        filter.listingTitle = filter.listingTitle + (" (" + //$NON-NLS-1$
-                                size + ")"); //$NON-NLS-1$
-                    }
-
-                    filterCounts.put(filter, size);
-                    activity.runOnUiThread(new Runnable() {
-                        public void run() {
-                            notifyDataSetChanged();
-                        }
-                    });
-                } catch (Exception e) {
-                    Log.e("astrid-filter-adapter", "Error loading filter size", e); //$NON-NLS-1$ //$NON-NLS-2$
-                }
-            }
-        });
+        // counts filters that aren't cached yet in the background
+        filterCountService.getCount(filter);
     }
 
     @Override
@@ -228,12 +192,7 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
     }
 
     public int adjustFilterCount(Filter filter, int delta) {
-        int filterCount = 0;
-        if (filterCounts.containsKey(filter)) {
-            filterCount = filterCounts.get(filter);
-        }
-        int newCount = Math.max(filterCount + delta, 0);
-        filterCounts.put(filter, newCount);
+        int newCount = filterCountService.adjustCount(filter, delta);
         notifyDataSetChanged();
         return newCount;
     }
@@ -247,20 +206,7 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
     }
 
     public void refreshFilterCount(final Filter filter) {
-        filterExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                int size = taskService.countTasks(filter);
-                filterCounts.put(filter, size);
-                activity.runOnUiThread(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        notifyDataSetChanged();
-                    }
-                });
-            }
-        });
+        filterCountService.invalidate(filter);
     }
 
     public void setDataSourceChangedListener(FilterDataSourceChangedListener listener) {
@@ -464,6 +410,7 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
         IntentFilter regularFilter = new IntentFilter(AstridApiConstants.BROADCAST_SEND_FILTERS);
         regularFilter.setPriority(2);
         activity.registerReceiver(filterReceiver, regularFilter);
+        filterCountService.addListener(countListener);
         getLists();
     }
 
@@ -472,6 +419,7 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
      */
     public void unregisterRecevier() {
         activity.unregisterReceiver(filterReceiver);
+        filterCountService.removeListener(countListener);
     }
 
     /**
@@ -516,38 +464,26 @@ public class FilterAdapter extends ArrayAdapter<Filter> {
             viewHolder.icon.setImageBitmap(filter.listingIcon);
         }
 
-        // title / size
-        int countInt = -1;
-        if(filterCounts.containsKey(filter) || (!TextUtils.isEmpty(filter.listingTitle) && filter.listingTitle.matches(".* \\(\\d+\\)$"))) { //$NON-NLS-1$
-            viewHolder.size.setVisibility(View.VISIBLE);
-            String count;
-            if (filterCounts.containsKey(filter)) {
-                Integer c = filterCounts.get(filter);
-                countInt = c;
-                count = c.toString();
-            } else {
-                count = filter.listingTitle.substring(filter.listingTitle.lastIndexOf('(') + 1,
-                        filter.listingTitle.length() - 1);
+        // title / size, preferring the cached count over one in the title
+        int countInt = filter instanceof Filter ? filterCountService.getCount((Filter) filter) : -1;
+        String title = filter.listingTitle;
+        Matcher titleCount = TextUtils.isEmpty(title) ? null : countPattern.matcher(title);
+        if(titleCount != null && titleCount.matches()) {
+            title = title.substring(0, titleCount.start(1) - 2);
+            if(countInt < 0) {
                 try {
-                    countInt = Integer.parseInt(count);
+                    countInt = Integer.parseInt(titleCount.group(1));
                 } catch (NumberFormatException e) {
                     //
                 }
             }
-            viewHolder.size.setText(count);
-
-            String title;
-            int listingTitleSplit = filter.listingTitle.lastIndexOf(' ');
-            if (listingTitleSplit > 0) {
-                title = filter.listingTitle.substring(0, listingTitleSplit);
-            } else {
-                title = filter.listingTitle;
-            }
-            viewHolder.name.setText(title);
+        }
+        viewHolder.name.setText(title);
+        if(countInt >= 0) {
+            viewHolder.size.setVisibility(View.VISIBLE);
+            viewHolder.size.setText(Integer.toString(countInt));
         } else {
-            viewHolder.name.setText(filter.listingTitle);
             viewHolder.size.setVisibility(View.GONE);
-            countInt = -1;
         }
 
         if(countInt == 0 && filter instanceof FilterWithCustomIntent)
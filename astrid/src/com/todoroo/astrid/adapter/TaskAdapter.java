@@ -5,13 +5,19 @@
  */
 package com.todoroo.astrid.adapter;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -19,8 +25,11 @@ import org.json.JSONObject;
 import android.app.Activity;
 import android.app.Dialog;
 import android.app.PendingIntent.CanceledException;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.database.Cursor;
@@ -36,6 +45,7 @@ import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.TextUtils.TruncateAt;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -56,9 +66,9 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.timsu.astrid.R;
+import com.todoroo.andlib.data.PagedCursor;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.IntegerProperty;
-import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
@@ -74,9 +84,11 @@ import com.todoroo.astrid.api.TaskAction;
 import com.todoroo.astrid.api.TaskDecoration;
 import com.todoroo.astrid.api.TaskDecorationExposer;
 import com.todoroo.astrid.core.LinkActionExposer;
+import com.todoroo.astrid.dao.TaskDetailDao;
 import com.todoroo.astrid.data.RemoteModel;
+import com.todoroo.astrid.data.TagData;
 import com.todoroo.astrid.data.Task;
-import com.todoroo.astrid.data.TaskAttachment;
+import com.todoroo.astrid.data.TaskDetail;
 import com.todoroo.astrid.data.User;
 import com.todoroo.astrid.files.FilesAction;
 import com.todoroo.astrid.files.FilesControlSet;
@@ -86,7 +98,6 @@ import com.todoroo.astrid.notes.NotesAction;
 import com.todoroo.astrid.notes.NotesDecorationExposer;
 import com.todoroo.astrid.service.TaskService;
 import com.todoroo.astrid.service.ThemeService;
-import com.todoroo.astrid.tags.TaskToTagMetadata;
 import com.todoroo.astrid.timers.TimerDecorationExposer;
 import com.todoroo.astrid.ui.CheckableImageView;
 import com.todoroo.astrid.utility.Constants;
@@ -109,13 +120,35 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
     public static final String BROADCAST_EXTRA_TASK = "model"; //$NON-NLS-1$
 
     @SuppressWarnings("nls")
-    private static final StringProperty TAGS = new StringProperty(null, "group_concat(nullif(" + TaskListFragment.TAGS_METADATA_JOIN + "." + TaskToTagMetadata.TAG_NAME.name + ", '')"+ ", '  |  ')").as("tags");
+    private static final IntegerProperty HAS_NOTES_PROPERTY = new IntegerProperty(null, "length(" + Task.NOTES + ") > 0").as("hasNotes");
+
     @SuppressWarnings("nls")
-    private static final LongProperty FILE_ID_PROPERTY = TaskAttachment.ID.cloneAs(TaskListFragment.FILE_METADATA_JOIN, "fileId");
+    private static final StringProperty PICTURE = new StringProperty(null, "(SELECT " + User.PICTURE.name +
+            " FROM " + User.TABLE.name + " WHERE " + User.UUID.eq(Task.USER_ID) + " LIMIT 1)").as(User.PICTURE.name);
+
+    /** Cached details of the task, null unless current */
     @SuppressWarnings("nls")
-    private static final IntegerProperty HAS_NOTES_PROPERTY = new IntegerProperty(null, "length(" + Task.NOTES + ") > 0").as("hasNotes");
+    private static final StringProperty DETAILS = new StringProperty(null, "(SELECT " + TaskDetail.DETAILS +
+            " FROM " + TaskDetail.TABLE.name + " WHERE " + TaskDetail.TASK.eq(Task.ID) +
+            " AND " + TaskDetail.DETAILS_DATE.gte(Task.MODIFICATION_DATE) + ")").as(Task.DETAILS.name);
+
+    /** Number of rows past those shown whose details are requested too */
+    private static final int DETAIL_PREFETCH = 20;
+
+    /** Delay so that details of rows bound together are requested together */
+    private static final long DETAIL_DELAY = 300L;
+
+    private static final ScheduledExecutorService detailExecutor =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "task-details"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
-    private static final StringProperty PICTURE = User.PICTURE.cloneAs(TaskListFragment.USER_IMAGE_JOIN, null);
+    private static final Pattern TAG_NAMES_SPLITTER = Pattern.compile(Pattern.quote(Task.TAG_NAMES_SEPARATOR));
 
     // --- other constants
 
@@ -132,7 +165,7 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         Task.MODIFICATION_DATE,
         Task.HIDE_UNTIL,
         Task.DELETION_DATE,
-        Task.DETAILS,
+        DETAILS,
         Task.ELAPSED_SECONDS,
         Task.TIMER_START,
         Task.RECURRENCE,
@@ -142,8 +175,8 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         Task.SOCIAL_REMINDER,
         PICTURE,
         HAS_NOTES_PROPERTY, // Whether or not the task has notes
-        TAGS, // Concatenated list of tags
-        FILE_ID_PROPERTY // File id
+        Task.TAG_NAMES,
+        Task.ATTACHMENT_COUNT
     };
 
     public static final Property<?>[] BASIC_PROPERTIES = new Property<?>[] {
@@ -205,6 +238,9 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
     @Autowired
     protected TaskService taskService;
 
+    @Autowired
+    private TaskDetailDao taskDetailDao;
+
     public static int APPLY_LISTENERS_PARENT = 0;
     public static int APPLY_LISTENERS_ROW_BODY= 1;
     public static int APPLY_LISTENERS_NONE = 2;
@@ -216,7 +252,7 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
     protected OnCompletedTaskListener onCompletedTaskListener = null;
     protected final int resource;
     protected final LayoutInflater inflater;
-    private DetailLoaderThread detailLoader;
+    private volatile DetailLoader detailLoader;
     private int fontSize;
     protected int applyListeners = APPLY_LISTENERS_PARENT;
     private long mostRecentlyMade = -1;
@@ -276,7 +312,7 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         this.simpleLayout = (resource == R.layout.task_adapter_row_simple);
         this.minRowHeight = computeMinRowHeight();
 
-        startDetailThread();
+        startDetailLoader();
 
         decorationManager = new DecorationManager();
 
@@ -320,11 +356,11 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         }
     }
 
-    private void startDetailThread() {
-        if (Preferences.getBoolean(R.string.p_showNotes, false) && !simpleLayout && !titleOnlyLayout) {
-            detailLoader = new DetailLoaderThread();
-            detailLoader.start();
-        }
+    private void startDetailLoader() {
+        if (Preferences.getBoolean(R.string.p_showNotes, false) && !simpleLayout && !titleOnlyLayout)
+            detailLoader = new DetailLoader();
+        else
+            detailLoader = null;
     }
 
     /* ======================================================================
@@ -409,11 +445,19 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         TodorooCursor<Task> cursor = (TodorooCursor<Task>)c;
         ViewHolder viewHolder = ((ViewHolder)view.getTag());
 
+        // the row's page is being read again, it is bound once it arrives
+        if (cursor.getCursor() instanceof PagedCursor &&
+                !((PagedCursor) cursor.getCursor()).isRowLoaded()) {
+            view.setVisibility(View.INVISIBLE);
+            return;
+        }
+        view.setVisibility(View.VISIBLE);
+
         if (!titleOnlyLayout) {
-            viewHolder.tagsString = cursor.get(TAGS);
+            viewHolder.tagsString = tagNamesWithoutActiveTag(cursor.get(Task.TAG_NAMES));
             viewHolder.imageUrl = RemoteModel.PictureHelper.getPictureUrlFromCursor(cursor, PICTURE, RemoteModel.PICTURE_THUMB);
-            viewHolder.hasFiles = cursor.get(FILE_ID_PROPERTY) > 0;
-            viewHolder.hasNotes = cursor.get(HAS_NOTES_PROPERTY) > 0;
+            viewHolder.hasFiles = cursor.get(Task.ATTACHMENT_COUNT) > 0;
+            viewHolder.hasNotes = cursor.getInt(HAS_NOTES_PROPERTY) > 0;
         }
 
         Task task = viewHolder.task;
@@ -422,6 +466,9 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
 
         setFieldContentsAndVisibility(view);
         setTaskAppearance(viewHolder, task);
+
+        if (detailLoader != null && !task.isCompleted() && task.getValue(Task.DETAILS) == null)
+            detailLoader.request(cursor.getPosition());
     }
 
     public String getItemUuid(int position) {
@@ -541,6 +588,29 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
 
     }
 
+    /**
+     * @return tag names of a task without the tag whose list is shown, or
+     *         null if there are none
+     */
+    private String tagNamesWithoutActiveTag(String tagNames) {
+        if (TextUtils.isEmpty(tagNames))
+            return null;
+        TagData activeTag = fragment.getActiveTagData();
+        if (activeTag == null)
+            return tagNames;
+
+        String activeName = activeTag.getValue(TagData.NAME);
+        StringBuilder result = new StringBuilder();
+        for (String name : TAG_NAMES_SPLITTER.split(tagNames)) {
+            if (name.equals(activeName))
+                continue;
+            if (result.length() > 0)
+                result.append(Task.TAG_NAMES_SEPARATOR);
+            result.append(name);
+        }
+        return result.length() == 0 ? null : result.toString();
+    }
+
     private TaskAction getTaskAction(Task task, boolean hasFiles, boolean hasNotes) {
         if (titleOnlyLayout || task.isCompleted() || !task.isEditable())
             return null;
@@ -728,87 +798,129 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         return string;
     }
 
-    // implementation note: this map is really costly if users have
-    // a large number of tasks to load, since it all goes into memory.
-    // it's best to do this, though, in order to append details to each other
+    // details received since the rows were read, so they can be appended
+    // to each other. only tasks whose details were requested are kept
     private final Map<Long, StringBuilder> taskDetailLoader = Collections.synchronizedMap(new HashMap<Long, StringBuilder>(0));
 
-    public class DetailLoaderThread extends Thread {
+    /**
+     * Requests details of the rows being bound, and of the next
+     * {@link #DETAIL_PREFETCH} rows, from all add-ons in one broadcast.
+     * Rows bound within {@link #DETAIL_DELAY} of each other are requested
+     * together. Add-ons that only receive single task requests are sent
+     * one per task.
+     */
+    public class DetailLoader implements Runnable {
+        private int first = Integer.MAX_VALUE;
+        private int last = -1;
+        private boolean scheduled = false;
+
+        public synchronized void request(int position) {
+            first = Math.min(first, position);
+            last = Math.max(last, position);
+            if(!scheduled) {
+                scheduled = true;
+                detailExecutor.schedule(this, DETAIL_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+
         @Override
         public void run() {
-            // for all of the tasks returned by our cursor, verify details
-            AndroidUtilities.sleepDeep(500L);
-            TodorooCursor<Task> fetchCursor = taskService.fetchFiltered(
-                    query.get(), null, Task.ID, Task.TITLE, Task.DETAILS, Task.DETAILS_DATE,
-                    Task.MODIFICATION_DATE, Task.COMPLETION_DATE);
-            try {
-                Random random = new Random();
-
-                Task task = new Task();
-
-                for(fetchCursor.moveToFirst(); !fetchCursor.isAfterLast(); fetchCursor.moveToNext()) {
-                    task.clear();
-                    task.readFromCursor(fetchCursor);
-                    if(task.isCompleted())
-                        continue;
-
-                    if(detailsAreRecentAndUpToDate(task)) {
-                        // even if we are up to date, randomly load a fraction
-                        if(random.nextFloat() < 0.1) {
-                            taskDetailLoader.put(task.getId(),
-                                    new StringBuilder(task.getValue(Task.DETAILS)));
-                            requestNewDetails(task);
-                            if(Constants.DEBUG)
-                                System.err.println("Refreshing details: " + task.getId()); //$NON-NLS-1$
-                        }
-                        continue;
-                    } else if(Constants.DEBUG) {
-                        System.err.println("Forced loading of details: " + task.getId() + //$NON-NLS-1$
-                                "\n  details: " + new Date(task.getValue(Task.DETAILS_DATE)) + //$NON-NLS-1$
-                                "\n  modified: " + new Date(task.getValue(Task.MODIFICATION_DATE))); //$NON-NLS-1$
-                    }
-                    addTaskToLoadingArray(task);
+            int from, to;
+            synchronized(this) {
+                from = first;
+                to = last + DETAIL_PREFETCH;
+                first = Integer.MAX_VALUE;
+                last = -1;
+                scheduled = false;
+            }
+            if(detailLoader != this)
+                return;
 
-                    task.setValue(Task.DETAILS, DETAIL_SEPARATOR);
-                    task.setValue(Task.DETAILS_DATE, DateUtilities.now());
-                    taskService.save(task);
+            try {
+                long[] ids = readTasksWithoutDetails(from, to);
+                if(ids.length == 0)
+                    return;
+                taskDetailDao.markRequested(ids);
+
+                Activity activity = fragment.getActivity();
+                if (activity == null)
+                    return;
+                Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_REQUEST_DETAILS_BATCH);
+                broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_IDS, ids);
+                activity.sendOrderedBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
 
-                    requestNewDetails(task);
-                }
-                if(taskDetailLoader.size() > 0) {
-                    Activity activity = fragment.getActivity();
-                    if (activity != null) {
-                        activity.runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                notifyDataSetChanged();
-                            }
-                        });
+                // add-ons that don't answer batches are asked one task at a time
+                for(ComponentName receiver : getSingleTaskDetailReceivers(activity)) {
+                    for(long id : ids) {
+                        Intent singleIntent = new Intent(AstridApiConstants.BROADCAST_REQUEST_DETAILS);
+                        singleIntent.setComponent(receiver);
+                        singleIntent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, id);
+                        activity.sendOrderedBroadcast(singleIntent, AstridApiConstants.PERMISSION_READ);
                     }
                 }
+                if(Constants.DEBUG)
+                    Log.d("astrid-details", "Requested details: " + ids.length); //$NON-NLS-1$ //$NON-NLS-2$
             } catch (Exception e) {
                 // suppress silently
-            } finally {
-                fetchCursor.close();
             }
         }
 
-        private boolean detailsAreRecentAndUpToDate(Task task) {
-            return task.getValue(Task.DETAILS_DATE) >= task.getValue(Task.MODIFICATION_DATE) &&
-            !TextUtils.isEmpty(task.getValue(Task.DETAILS));
-        }
-
-        private void addTaskToLoadingArray(Task task) {
-            StringBuilder detailStringBuilder = new StringBuilder();
-            taskDetailLoader.put(task.getId(), detailStringBuilder);
+        /**
+         * @return receivers of single task detail requests that don't
+         *         also receive batch requests
+         */
+        private ArrayList<ComponentName> getSingleTaskDetailReceivers(Context context) {
+            PackageManager pm = context.getPackageManager();
+            HashSet<ComponentName> batchReceivers = new HashSet<ComponentName>();
+            for(ResolveInfo info : pm.queryBroadcastReceivers(
+                    new Intent(AstridApiConstants.BROADCAST_REQUEST_DETAILS_BATCH), 0))
+                batchReceivers.add(new ComponentName(info.activityInfo.packageName, info.activityInfo.name));
+
+            ArrayList<ComponentName> receivers = new ArrayList<ComponentName>();
+            for(ResolveInfo info : pm.queryBroadcastReceivers(
+                    new Intent(AstridApiConstants.BROADCAST_REQUEST_DETAILS), 0)) {
+                ComponentName receiver = new ComponentName(info.activityInfo.packageName, info.activityInfo.name);
+                if(!batchReceivers.contains(receiver))
+                    receivers.add(receiver);
+            }
+            return receivers;
         }
 
-        private void requestNewDetails(Task task) {
-            Intent broadcastIntent = new Intent(AstridApiConstants.BROADCAST_REQUEST_DETAILS);
-            broadcastIntent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, task.getId());
-            Activity activity = fragment.getActivity();
-            if (activity != null)
-                activity.sendOrderedBroadcast(broadcastIntent, AstridApiConstants.PERMISSION_READ);
+        /**
+         * @return ids of incomplete tasks between the given rows whose
+         *         details are neither current nor requested already
+         */
+        @SuppressWarnings("nls")
+        private long[] readTasksWithoutDetails(int from, int to) {
+            String sql = query.get();
+            boolean limited = sql.toUpperCase().contains(" LIMIT ");
+            if(!limited)
+                sql = sql + " LIMIT " + (to - from + 1) + " OFFSET " + from;
+            TodorooCursor<Task> cursor = taskService.fetchFiltered(sql, null,
+                    Task.ID, Task.COMPLETION_DATE, DETAILS);
+            try {
+                int start = limited ? from : 0;
+                int end = limited ? Math.min(to + 1, cursor.getCount()) : cursor.getCount();
+                long[] ids = new long[Math.max(end - start, 0)];
+                int count = 0;
+                for(int i = start; i < end; i++) {
+                    cursor.moveToPosition(i);
+                    long id = cursor.get(Task.ID);
+                    if(cursor.get(Task.COMPLETION_DATE) > 0 || cursor.get(DETAILS) != null)
+                        continue;
+                    synchronized(taskDetailLoader) {
+                        if(taskDetailLoader.containsKey(id))
+                            continue;
+                        taskDetailLoader.put(id, new StringBuilder());
+                    }
+                    ids[count++] = id;
+                }
+                long[] result = new long[count];
+                System.arraycopy(ids, 0, result, 0, count);
+                return result;
+            } finally {
+                cursor.close();
+            }
         }
     }
 
@@ -819,21 +931,50 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
      * @param detail
      */
     public void addDetails(long id, String detail) {
-        final StringBuilder details = taskDetailLoader.get(id);
-        if(details == null)
+        addDetails(new long[] { id }, new String[] { detail });
+    }
+
+    /**
+     * Add details to tasks, as sent by one add-on in a batch. Details are
+     * saved to the cache in the background and the list redrawn once
+     *
+     * @param ids
+     * @param details detail of each task, in the order of the ids
+     */
+    public void addDetails(long[] ids, String[] details) {
+        if(ids == null || details == null)
             return;
-        synchronized(details) {
-            if(details.toString().contains(detail))
-                return;
-            if(details.length() > 0)
-                details.append(DETAIL_SEPARATOR);
-            details.append(detail);
-            Task task = new Task();
-            task.setId(id);
-            task.setValue(Task.DETAILS, details.toString());
-            task.setValue(Task.DETAILS_DATE, DateUtilities.now());
-            taskService.save(task);
+
+        long[] changedIds = new long[ids.length];
+        String[] changedDetails = new String[ids.length];
+        int count = 0;
+        for(int i = 0; i < ids.length && i < details.length; i++) {
+            StringBuilder builder = taskDetailLoader.get(ids[i]);
+            if(builder == null || details[i] == null)
+                continue;
+            synchronized(builder) {
+                if(builder.toString().contains(details[i]))
+                    continue;
+                if(builder.length() > 0)
+                    builder.append(DETAIL_SEPARATOR);
+                builder.append(details[i]);
+                changedIds[count] = ids[i];
+                changedDetails[count++] = builder.toString();
+            }
         }
+        if(count == 0)
+            return;
+
+        final long[] saveIds = new long[count];
+        final String[] saveDetails = new String[count];
+        System.arraycopy(changedIds, 0, saveIds, 0, count);
+        System.arraycopy(changedDetails, 0, saveDetails, 0, count);
+        detailExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                taskDetailDao.saveDetails(saveIds, saveDetails);
+            }
+        });
 
         Activity activity = fragment.getActivity();
         if (activity != null) {
@@ -887,7 +1028,20 @@ public class TaskAdapter extends CursorAdapter implements Filterable {
         completedItems.clear();
         decorationManager.clearCache();
         taskDetailLoader.clear();
-        startDetailThread();
+        startDetailLoader();
+    }
+
+    /**
+     * Called to tell the cache to forget the given tasks, which were read
+     * again
+     */
+    public void flushCaches(long[] ids) {
+        for(long id : ids) {
+            completedItems.remove(id);
+            decorationManager.clearCache(id);
+            taskDetailLoader.remove(id);
+            taskActionLoader.remove(id);
+        }
     }
 
     public HashMap<Object, Boolean> getCompletedItems() {
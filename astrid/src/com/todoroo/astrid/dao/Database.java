@@ -13,8 +13,11 @@ import com.crittercism.app.Crittercism;
 import com.todoroo.andlib.data.AbstractDatabase;
 import com.todoroo.andlib.data.AbstractModel;
 import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.Property.LongProperty;
+import com.todoroo.andlib.data.Property.StringProperty;
 import com.todoroo.andlib.data.Table;
 import com.todoroo.andlib.service.ContextManager;
+import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.astrid.data.ABTestEvent;
 import com.todoroo.astrid.data.History;
 import com.todoroo.astrid.data.Metadata;
@@ -25,6 +28,7 @@ import com.todoroo.astrid.data.TagOutstanding;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.data.TaskAttachment;
 import com.todoroo.astrid.data.TaskAttachmentOutstanding;
+import com.todoroo.astrid.data.TaskDetail;
 import com.todoroo.astrid.data.TaskListMetadata;
 import com.todoroo.astrid.data.TaskListMetadataOutstanding;
 import com.todoroo.astrid.data.TaskOutstanding;
@@ -36,6 +40,7 @@ import com.todoroo.astrid.data.WaitingOnMe;
 import com.todoroo.astrid.data.WaitingOnMeOutstanding;
 import com.todoroo.astrid.provider.Astrid2TaskProvider;
 import com.todoroo.astrid.provider.Astrid3ContentProvider;
+import com.todoroo.astrid.utility.Constants;
 import com.todoroo.astrid.widget.TasksWidget;
 
 /**
@@ -53,7 +58,7 @@ public class Database extends AbstractDatabase {
      * Database version number. This variable must be updated when database
      * tables are updated, as it determines whether a database needs updating.
      */
-    public static final int VERSION = 35;
+    public static final int VERSION = 43;
 
     /**
      * Database name (must be unique)
@@ -78,6 +83,7 @@ public class Database extends AbstractDatabase {
         TaskAttachment.TABLE,
         TaskListMetadata.TABLE,
         WaitingOnMe.TABLE,
+        TaskDetail.TABLE,
 
         TaskOutstanding.TABLE,
         TagOutstanding.TABLE,
@@ -96,9 +102,10 @@ public class Database extends AbstractDatabase {
             public void onDatabaseUpdated() {
                 Astrid2TaskProvider.notifyDatabaseModification();
                 Astrid3ContentProvider.notifyDatabaseModification();
-                TasksWidget.updateWidgets(ContextManager.getContext());
+                TasksWidget.notifyTasksChanged(ContextManager.getContext());
             }
         });
+        getProfiler().setEnabled(Constants.DEBUG);
     }
 
     // --- implementation
@@ -113,53 +120,28 @@ public class Database extends AbstractDatabase {
         return VERSION;
     }
 
+    /**
+     * Lets list, widget and reminder queries run while sync is writing
+     */
+    @Override
+    protected boolean useWriteAheadLogging() {
+        return true;
+    }
+
     @Override
     public Table[] getTables() {
         return TABLES;
     }
 
     /**
-     * Create indices
+     * Indexes are declared by the models and created by
+     * {@link AbstractDatabase#updateIndexes()}. The search index is not a
+     * model table, so it is created here
      */
     @Override
     protected synchronized void onCreateTables() {
-        StringBuilder sql = new StringBuilder();
-        sql.append("CREATE INDEX IF NOT EXISTS md_tid ON ").
-        append(Metadata.TABLE).append('(').
-        append(Metadata.TASK.name).
-        append(')');
-        database.execSQL(sql.toString());
-        sql.setLength(0);
-
-        sql.append("CREATE INDEX IF NOT EXISTS md_tkid ON ").
-        append(Metadata.TABLE).append('(').
-        append(Metadata.TASK.name).append(',').
-        append(Metadata.KEY.name).
-        append(')');
-        database.execSQL(sql.toString());
-        sql.setLength(0);
-
-        sql.append("CREATE INDEX IF NOT EXISTS so_id ON ").
-        append(StoreObject.TABLE).append('(').
-        append(StoreObject.TYPE.name).append(',').
-        append(StoreObject.ITEM.name).
-        append(')');
-        database.execSQL(sql.toString());
-        sql.setLength(0);
-
-        sql.append("CREATE UNIQUE INDEX IF NOT EXISTS t_rid ON ").
-        append(Task.TABLE).append('(').
-        append(Task.UUID.name).
-        append(')');
-        database.execSQL(sql.toString());
-        sql.setLength(0);
-
-        sql.append("CREATE INDEX IF NOT EXISTS hist_tag_id ON ").
-        append(History.TABLE).append('(').
-        append(History.TAG_ID.name).
-        append(')');
-        database.execSQL(sql.toString());
-        sql.setLength(0);
+        database.execSQL(TaskSearchIndex.createTableSql());
+        database.execSQL(TaskSearchIndex.createDeleteTriggerSql());
     }
 
     @Override
@@ -402,12 +384,123 @@ public class Database extends AbstractDatabase {
         case 34:
             tryExecSQL(addColumnSql(TagData.TABLE, TagData.IS_FOLDER, visitor, null));
 
+        case 35:
+            // new indexes, created by updateIndexes
+
+        case 36:
+            for(Property<?> property : new Property<?>[] { Metadata.NUM1, Metadata.NUM2,
+                    Metadata.NUM3, Metadata.NUM4, Metadata.NUM5 })
+                tryExecSQL(addColumnSql(Metadata.TABLE, property, visitor, null));
+            for(String sql : migrateNumericValuesSql())
+                tryExecSQL(sql);
+
+        case 37:
+            tryExecSQL(addColumnSql(Task.TABLE, Task.SORT_SCORE, visitor, "0"));
+            tryExecSQL(addColumnSql(Task.TABLE, Task.DUE_SORT_SCORE, visitor, "0"));
+            long sortScoreBase = DateUtilities.now();
+            tryExecSQL(TaskDao.updateSortScoresSql(sortScoreBase, null));
+            TaskDao.setSortScoreBase(sortScoreBase);
+
+        case 38:
+            tryExecSQL(addColumnSql(Task.TABLE, Task.TAG_NAMES, visitor, null));
+            tryExecSQL(addColumnSql(Task.TABLE, Task.ATTACHMENT_COUNT, visitor, "0"));
+            tryExecSQL(TaskDao.updateTagNamesSql(null));
+            tryExecSQL(TaskDao.updateAttachmentCountSql(null));
+
+        case 39:
+            tryExecSQL(createTableSql(visitor, TaskDetail.TABLE.name, TaskDetail.PROPERTIES));
+
+        case 40:
+            tryExecSQL(TaskSearchIndex.createTableSql());
+            for(String sql : TaskSearchIndex.updateSql(null))
+                tryExecSQL(sql);
+
+        case 41:
+            tryExecSQL(TaskSearchIndex.createDeleteTriggerSql());
+            tryExecSQL("DELETE FROM " + TaskSearchIndex.TABLE + " WHERE docid NOT IN (SELECT " +
+                    Task.ID + " FROM " + Task.TABLE.name + ")");
+
+        case 42:
+            // new indexes, created by updateIndexes
+
         return true;
         }
 
         return false;
     }
 
+    // --- numeric metadata values
+
+    /**
+     * A numeric value that versions before 37 kept in a text column
+     */
+    private static final class MovedValue {
+        final String key;
+        final StringProperty from;
+        final LongProperty to;
+
+        MovedValue(String key, StringProperty from, LongProperty to) {
+            this.key = key;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /** Metadata keys of the plugins that stored these values in version 36 */
+    private static final String GTASKS_KEY = "gtasks";
+    private static final String ALARM_KEY = "alarm";
+    private static final String SUBTASKS_KEY = "subtasks";
+
+    private static final MovedValue[] MOVED_VALUES = new MovedValue[] {
+        new MovedValue(GTASKS_KEY, Metadata.VALUE3, Metadata.NUM1),
+        new MovedValue(GTASKS_KEY, Metadata.VALUE4, Metadata.NUM2),
+        new MovedValue(GTASKS_KEY, Metadata.VALUE5, Metadata.NUM3),
+        new MovedValue(GTASKS_KEY, Metadata.VALUE6, Metadata.NUM4),
+        new MovedValue(GTASKS_KEY, Metadata.VALUE7, Metadata.NUM5),
+        new MovedValue(ALARM_KEY, Metadata.VALUE1, Metadata.NUM1),
+        new MovedValue(ALARM_KEY, Metadata.VALUE2, Metadata.NUM2),
+        new MovedValue(SUBTASKS_KEY, Metadata.VALUE2, Metadata.NUM1),
+        new MovedValue(SUBTASKS_KEY, Metadata.VALUE3, Metadata.NUM2),
+    };
+
+    /**
+     * @return statements moving the numeric gtasks, alarm and subtasks
+     * values of existing rows from text to numeric columns
+     */
+    static String[] migrateNumericValuesSql() {
+        String[] sql = new String[MOVED_VALUES.length];
+        for(int i = 0; i < MOVED_VALUES.length; i++) {
+            MovedValue moved = MOVED_VALUES[i];
+            sql[i] = "UPDATE " + Metadata.TABLE.name + " SET " +
+                    moved.to.name + " = CAST(" + moved.from.name + " AS INTEGER), " +
+                    moved.from.name + " = NULL WHERE " + Metadata.KEY.name + " = '" + moved.key +
+                    "' AND " + moved.from.name + " IS NOT NULL";
+        }
+        return sql;
+    }
+
+    /**
+     * Move numeric values of metadata read from an old backup into their
+     * numeric columns
+     */
+    public static void migrateNumericValues(Metadata metadata) {
+        if(!metadata.containsNonNullValue(Metadata.KEY))
+            return;
+        String key = metadata.getValue(Metadata.KEY);
+        for(MovedValue moved : MOVED_VALUES) {
+            if(!moved.key.equals(key) || !metadata.containsNonNullValue(moved.from))
+                continue;
+            if(!metadata.containsNonNullValue(moved.to)) {
+                try {
+                    metadata.setValue(moved.to, Long.parseLong(metadata.getValue(moved.from).trim()));
+                } catch (NumberFormatException e) {
+                    metadata.setValue(moved.to, 0L);
+                }
+            }
+            metadata.setValue(moved.from, null);
+        }
+    }
+
     private void tryExecSQL(String sql) {
         try {
             database.execSQL(sql);
@@ -7,6 +7,7 @@ package com.todoroo.astrid.dao;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Map.Entry;
 
 import android.content.ContentValues;
 import android.database.Cursor;
@@ -31,6 +32,7 @@ import com.todoroo.astrid.data.OutstandingEntry;
 import com.todoroo.astrid.data.RemoteModel;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.data.TaskOutstanding;
+import com.todoroo.astrid.notes.NoteMetadata;
 import com.todoroo.astrid.provider.Astrid2TaskProvider;
 import com.todoroo.astrid.service.StatisticsConstants;
 import com.todoroo.astrid.service.StatisticsService;
@@ -90,6 +92,11 @@ public class MetadataDao extends DatabaseDao<Metadata> {
                 RemoteModelDao.getOutstandingEntryFlag(RemoteModelDao.OUTSTANDING_ENTRY_FLAG_RECORD_OUTSTANDING);
     }
 
+    @Override
+    protected boolean outstandingEntriesMayFail() {
+        return true;
+    }
+
     @Override
     protected int createOutstandingEntries(long modelId, ContentValues modelSetValues) {
         Long taskId = modelSetValues.getAsLong(Metadata.TASK.name);
@@ -129,7 +136,13 @@ public class MetadataDao extends DatabaseDao<Metadata> {
         for(Metadata metadatum : metadata) {
             metadatum.setValue(Metadata.TASK, taskId);
             metadatum.clearValue(Metadata.ID);
-            newMetadataValues.add(metadatum.getMergedValues());
+            ContentValues values = metadatum.getMergedValues();
+            // numeric columns are read back as longs
+            for(Entry<String, Object> entry : values.valueSet()) {
+                if(entry.getValue() instanceof Integer)
+                    values.put(entry.getKey(), ((Integer) entry.getValue()).longValue());
+            }
+            newMetadataValues.add(values);
         }
 
         Metadata item = new Metadata();
@@ -181,6 +194,135 @@ public class MetadataDao extends DatabaseDao<Metadata> {
         return state;
     }
 
+    // --- task tag names and search index
+
+    /*
+     * Tasks keep the names of their tags in Task.TAG_NAMES, so that task
+     * lists read them without joining metadata. Writes to tag links
+     * recompute the names of the tasks they touch, in the same batch, and
+     * tell task update listeners. Writes to tag links and notes also
+     * re-index the tasks for search, see TaskSearchIndex.
+     */
+
+    @Override
+    public boolean createNew(final Metadata item) {
+        if(!mayBeLink(item))
+            return super.createNew(item);
+        final boolean[] result = new boolean[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = MetadataDao.super.createNew(item);
+                if(result[0])
+                    updateLinkedTasks(linkedTasks(Metadata.ID.eq(item.getId())));
+            }
+        });
+        return committed && result[0];
+    }
+
+    @Override
+    public boolean saveExisting(final Metadata item) {
+        if(!mayBeLink(item))
+            return super.saveExisting(item);
+        final boolean[] result = new boolean[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                ContentValues values = item.getSetValues();
+                Long[] previousTasks = values != null && values.containsKey(Metadata.TASK.name) ?
+                        linkedTasks(Metadata.ID.eq(item.getId())) : new Long[0];
+                result[0] = MetadataDao.super.saveExisting(item);
+                if(result[0]) {
+                    updateLinkedTasks(linkedTasks(Metadata.ID.eq(item.getId())));
+                    updateLinkedTasks(previousTasks);
+                }
+            }
+        });
+        return committed && result[0];
+    }
+
+    @Override
+    public boolean delete(final long id) {
+        final boolean[] result = new boolean[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                Long[] tasks = linkedTasks(Metadata.ID.eq(id));
+                result[0] = MetadataDao.super.delete(id);
+                if(result[0])
+                    updateLinkedTasks(tasks);
+            }
+        });
+        return committed && result[0];
+    }
+
+    @Override
+    public int deleteWhere(final Criterion where) {
+        final int[] result = new int[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                Long[] tasks = linkedTasks(where);
+                result[0] = MetadataDao.super.deleteWhere(where);
+                if(result[0] > 0)
+                    updateLinkedTasks(tasks);
+            }
+        });
+        return committed ? result[0] : 0;
+    }
+
+    @Override
+    public int update(final Criterion where, final Metadata template) {
+        final int[] result = new int[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                Long[] tasks = linkedTasks(where);
+                result[0] = MetadataDao.super.update(where, template);
+                if(result[0] > 0)
+                    updateLinkedTasks(tasks);
+            }
+        });
+        return committed ? result[0] : 0;
+    }
+
+    private static boolean mayBeLink(Metadata item) {
+        if(!item.containsNonNullValue(Metadata.KEY))
+            return true;
+        String key = item.getValue(Metadata.KEY);
+        return TaskToTagMetadata.KEY.equals(key) || NoteMetadata.METADATA_KEY.equals(key);
+    }
+
+    private static Query linkedTasksQuery(Criterion where) {
+        return Query.select(Metadata.TASK).from(Metadata.TABLE).where(
+                Criterion.and(Criterion.or(MetadataCriteria.withKey(TaskToTagMetadata.KEY),
+                        MetadataCriteria.withKey(NoteMetadata.METADATA_KEY)), where));
+    }
+
+    /**
+     * @return ids of tasks with tag links or notes matching the criterion, read
+     *         before a write that may stop them from matching
+     */
+    private Long[] linkedTasks(Criterion where) {
+        TodorooCursor<Metadata> cursor = query(linkedTasksQuery(where));
+        try {
+            HashSet<Long> tasks = new HashSet<Long>();
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+                tasks.add(cursor.get(Metadata.TASK));
+            return tasks.toArray(new Long[tasks.size()]);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void updateLinkedTasks(Long[] tasks) {
+        if(tasks.length == 0)
+            return;
+        TaskDao taskDao = PluginServices.getTaskDao();
+        taskDao.updateTagNames(tasks);
+        taskDao.updateSearchIndex(Task.ID.in(tasks));
+    }
+
     /**
      * Fetch all metadata that are unattached to the task
      * @param database
@@ -1,9 +1,14 @@
 package com.todoroo.astrid.dao;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.todoroo.andlib.data.AbstractDatabase.BatchParticipant;
 import com.todoroo.andlib.data.AbstractModel;
 import com.todoroo.andlib.data.DatabaseDao;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.astrid.core.PluginServices;
 import com.todoroo.astrid.data.RemoteModel;
@@ -14,12 +19,34 @@ import com.todoroo.astrid.helper.UUIDHelper;
  * require UUID generation (i.e., most RemoteModels). The createNew
  * method takes care of automatically generating a new UUID for each newly
  * created model if one doesn't already exist.
+ * <p>
+ * Lookups between local ids and uuids go through a {@link UuidCache}. Writes
+ * that change a uuid and deletes drop the affected mappings once they are
+ * done, or once their write batch ends.
  * @author Sam
  *
  * @param <RTYPE>
  */
 public class RemoteModelDao<RTYPE extends RemoteModel> extends DatabaseDao<RTYPE> {
 
+    /** Number of id/uuid pairs cached per table */
+    private static final int UUID_CACHE_SIZE = 500;
+
+    private final UuidCache uuidCache = new UuidCache(UUID_CACHE_SIZE);
+
+    /** Drops all mappings when a batch that changed them ends */
+    private final BatchParticipant uuidBatchParticipant = new BatchParticipant() {
+        @Override
+        public boolean onBatchCommitting() {
+            return true;
+        }
+
+        @Override
+        public void onBatchFinished(boolean committed) {
+            uuidCache.clear();
+        }
+    };
+
     public RemoteModelDao(Class<RTYPE> modelClass) {
         super(modelClass);
     }
@@ -29,7 +56,77 @@ public class RemoteModelDao<RTYPE extends RemoteModel> extends DatabaseDao<RTYPE
         if (!item.containsValue(RemoteModel.UUID_PROPERTY) || RemoteModel.isUuidEmpty(item.getValue(RemoteModel.UUID_PROPERTY))) {
             item.setValue(RemoteModel.UUID_PROPERTY, UUIDHelper.newUUID());
         }
-        return super.createNew(item);
+        boolean result = super.createNew(item);
+        // rows written in a batch may still be rolled back
+        if (result && !isInBatch())
+            cacheUuid(item.getId(), item.getValue(RemoteModel.UUID_PROPERTY));
+        return result;
+    }
+
+    @Override
+    public boolean saveExisting(RTYPE item) {
+        boolean uuidChanged = item.getSetValues() != null &&
+                item.getSetValues().containsKey(RemoteModel.UUID_PROPERTY.name);
+        boolean result = super.saveExisting(item);
+        if (uuidChanged)
+            uuidsChanged(item.getId());
+        return result;
+    }
+
+    @Override
+    public int update(Criterion where, RTYPE template) {
+        boolean uuidChanged = template.getSetValues() != null &&
+                template.getSetValues().containsKey(RemoteModel.UUID_PROPERTY.name);
+        int result = super.update(where, template);
+        if (uuidChanged)
+            uuidsChanged(AbstractModel.NO_ID);
+        return result;
+    }
+
+    @Override
+    public boolean delete(long id) {
+        boolean result = super.delete(id);
+        uuidsChanged(id);
+        return result;
+    }
+
+    @Override
+    public int deleteWhere(Criterion where) {
+        int result = super.deleteWhere(where);
+        uuidsChanged(AbstractModel.NO_ID);
+        return result;
+    }
+
+    /**
+     * Drop mappings after a write, so that lookups that read them before
+     * aren't cached. In a batch, readers only see the write once it ends
+     *
+     * @param id row written, or NO_ID for any row
+     */
+    private void uuidsChanged(long id) {
+        if (id == AbstractModel.NO_ID)
+            uuidCache.clear();
+        else
+            uuidCache.removeId(id);
+        if (isInBatch())
+            joinBatch(uuidBatchParticipant);
+    }
+
+    /**
+     * @return cache of id/uuid mappings for this table
+     */
+    public UuidCache getUuidCache() {
+        return uuidCache;
+    }
+
+    private void cacheUuid(long id, String uuid) {
+        if (id != AbstractModel.NO_ID && !RemoteModel.isUuidEmpty(uuid))
+            uuidCache.put(id, uuid);
+    }
+
+    private void cacheUuid(long id, String uuid, long readVersion) {
+        if (id != AbstractModel.NO_ID && !RemoteModel.isUuidEmpty(uuid))
+            uuidCache.put(id, uuid, readVersion);
     }
 
     private static int outstandingEntryFlag = -1;
@@ -71,8 +168,20 @@ public class RemoteModelDao<RTYPE extends RemoteModel> extends DatabaseDao<RTYPE
      * @return
      */
     public RTYPE fetch(String uuid, Property<?>... properties) {
+        Long id = uuidCache.getId(uuid);
+        if (id != null) {
+            RTYPE result = fetch(id, properties);
+            if (result == null)
+                uuidCache.removeId(id);
+            return result;
+        }
+
+        long version = uuidCache.getVersion();
         TodorooCursor<RTYPE> cursor = fetchItem(uuid, properties);
-        return returnFetchResult(cursor);
+        RTYPE result = returnFetchResult(cursor);
+        if (result != null && result.containsNonNullValue(AbstractModel.ID_PROPERTY))
+            cacheUuid(result.getId(), uuid, version);
+        return result;
     }
 
     /**
@@ -100,27 +209,60 @@ public class RemoteModelDao<RTYPE extends RemoteModel> extends DatabaseDao<RTYPE
      * @return
      */
     public long localIdFromUuid(String uuid) {
-        TodorooCursor<RTYPE> cursor = query(Query.select(AbstractModel.ID_PROPERTY).where(RemoteModel.UUID_PROPERTY.eq(uuid)));
-        try {
-            if (cursor.getCount() == 0)
-                return AbstractModel.NO_ID;
-            cursor.moveToFirst();
-            return cursor.get(AbstractModel.ID_PROPERTY);
-        } finally {
-            cursor.close();
-        }
+        Long id = uuidCache.getId(uuid);
+        if (id != null)
+            return id;
+        long version = uuidCache.getVersion();
+        long localId = queryForLong(Query.select(AbstractModel.ID_PROPERTY).where(RemoteModel.UUID_PROPERTY.eq(uuid)),
+                AbstractModel.NO_ID);
+        cacheUuid(localId, uuid, version);
+        return localId;
     }
 
     public String uuidFromLocalId(long localId) {
-        TodorooCursor<RTYPE> cursor = query(Query.select(RemoteModel.UUID_PROPERTY).where(AbstractModel.ID_PROPERTY.eq(localId)));
+        String uuid = uuidCache.getUuid(localId);
+        if (uuid != null)
+            return uuid;
+        long version = uuidCache.getVersion();
+        uuid = queryForString(Query.select(RemoteModel.UUID_PROPERTY).where(AbstractModel.ID_PROPERTY.eq(localId)),
+                RemoteModel.NO_UUID);
+        cacheUuid(localId, uuid, version);
+        return uuid;
+    }
+
+    /**
+     * Look up the uuids of several rows, querying only for the ones that
+     * aren't cached
+     * @param localIds
+     * @return map from local id to uuid, missing rows are left out
+     */
+    public HashMap<Long, String> uuidsFromLocalIds(Long[] localIds) {
+        HashMap<Long, String> result = new HashMap<Long, String>(localIds.length);
+        ArrayList<Long> missing = new ArrayList<Long>();
+        for (Long id : localIds) {
+            String uuid = uuidCache.getUuid(id);
+            if (uuid != null)
+                result.put(id, uuid);
+            else
+                missing.add(id);
+        }
+        if (missing.isEmpty())
+            return result;
+
+        long version = uuidCache.getVersion();
+        TodorooCursor<RTYPE> cursor = query(Query.select(AbstractModel.ID_PROPERTY, RemoteModel.UUID_PROPERTY)
+                .where(AbstractModel.ID_PROPERTY.in(missing.toArray(new Long[missing.size()]))));
         try {
-            if (cursor.getCount() == 0)
-                return RemoteModel.NO_UUID;
-            cursor.moveToFirst();
-            return cursor.get(RemoteModel.UUID_PROPERTY);
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                long id = cursor.get(AbstractModel.ID_PROPERTY);
+                String uuid = cursor.get(RemoteModel.UUID_PROPERTY);
+                result.put(id, uuid);
+                cacheUuid(id, uuid, version);
+            }
         } finally {
             cursor.close();
         }
+        return result;
     }
 
 
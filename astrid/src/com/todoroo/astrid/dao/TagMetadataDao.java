@@ -83,6 +83,11 @@ public class TagMetadataDao extends DatabaseDao<TagMetadata> {
                 RemoteModelDao.getOutstandingEntryFlag(RemoteModelDao.OUTSTANDING_ENTRY_FLAG_RECORD_OUTSTANDING);
     }
 
+    @Override
+    protected boolean outstandingEntriesMayFail() {
+        return true;
+    }
+
     @Override
     protected int createOutstandingEntries(long modelId, ContentValues modelSetValues) {
         Long tagDataId = modelSetValues.getAsLong(TagMetadata.TAG_ID.name);
@@ -11,6 +11,7 @@ import org.json.JSONObject;
 import android.content.ContentValues;
 import android.text.TextUtils;
 
+import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
@@ -18,8 +19,10 @@ import com.todoroo.andlib.sql.Criterion;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.astrid.actfm.sync.messages.NameMaps;
+import com.todoroo.astrid.core.PluginServices;
 import com.todoroo.astrid.data.OutstandingEntry;
 import com.todoroo.astrid.data.TagData;
+import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.data.TaskAttachment;
 import com.todoroo.astrid.data.TaskAttachmentOutstanding;
 
@@ -45,6 +48,11 @@ public class TaskAttachmentDao extends RemoteModelDao<TaskAttachment> {
         return NameMaps.shouldRecordOutstandingColumnForTable(NameMaps.TABLE_ID_ATTACHMENTS, columnName);
     }
 
+    @Override
+    protected boolean outstandingEntriesMayFail() {
+        return true;
+    }
+
     @Override
     protected int createOutstandingEntries(long modelId, ContentValues modelSetValues) {
         // new attachment case -- only set by us when creating new attachments; when setting during sync outstanding entries suppressed
@@ -74,6 +82,119 @@ public class TaskAttachmentDao extends RemoteModelDao<TaskAttachment> {
         return 1 + result;
     }
 
+    // --- task attachment counts
+
+    /*
+     * Tasks keep their number of attachments in Task.ATTACHMENT_COUNT, so
+     * that task lists read it without joining attachments. Writes to
+     * attachments recompute the counts of the tasks they touch, in the
+     * same batch, and tell task update listeners.
+     */
+
+    @Override
+    public boolean createNew(final TaskAttachment item) {
+        final boolean[] result = new boolean[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = TaskAttachmentDao.super.createNew(item);
+                if(result[0])
+                    updateAttachmentCounts(attachedTaskIds(TaskAttachment.ID.eq(item.getId())));
+            }
+        });
+        return committed && result[0];
+    }
+
+    @Override
+    public boolean saveExisting(final TaskAttachment item) {
+        final boolean[] result = new boolean[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                ContentValues values = item.getSetValues();
+                Long[] previousTasks = values != null && values.containsKey(TaskAttachment.TASK_UUID.name) ?
+                        attachedTaskIds(TaskAttachment.ID.eq(item.getId())) : new Long[0];
+                result[0] = TaskAttachmentDao.super.saveExisting(item);
+                if(result[0]) {
+                    updateAttachmentCounts(attachedTaskIds(TaskAttachment.ID.eq(item.getId())));
+                    updateAttachmentCounts(previousTasks);
+                }
+            }
+        });
+        return committed && result[0];
+    }
+
+    @Override
+    public boolean delete(final long id) {
+        final boolean[] result = new boolean[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                Long[] tasks = attachedTaskIds(TaskAttachment.ID.eq(id));
+                result[0] = TaskAttachmentDao.super.delete(id);
+                if(result[0])
+                    updateAttachmentCounts(tasks);
+            }
+        });
+        return committed && result[0];
+    }
+
+    @Override
+    public int deleteWhere(final Criterion where) {
+        final int[] result = new int[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                Long[] tasks = attachedTaskIds(where);
+                result[0] = TaskAttachmentDao.super.deleteWhere(where);
+                if(result[0] > 0)
+                    updateAttachmentCounts(tasks);
+            }
+        });
+        return committed ? result[0] : 0;
+    }
+
+    @Override
+    public int update(final Criterion where, final TaskAttachment template) {
+        final int[] result = new int[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                Long[] tasks = attachedTaskIds(where);
+                result[0] = TaskAttachmentDao.super.update(where, template);
+                if(result[0] > 0)
+                    updateAttachmentCounts(tasks);
+            }
+        });
+        return committed ? result[0] : 0;
+    }
+
+    private static Criterion attachedTasks(Criterion where) {
+        return Task.UUID.in(Query.select(TaskAttachment.TASK_UUID).from(TaskAttachment.TABLE).where(where));
+    }
+
+    /**
+     * @return ids of tasks with attachments matching the criterion, read
+     *         before a write that may stop them from matching
+     */
+    private Long[] attachedTaskIds(Criterion where) {
+        Query query = Query.select(Task.ID).from(Task.TABLE).where(attachedTasks(where));
+        TodorooCursor<Task> cursor = new TodorooCursor<Task>(
+                database.rawQuery(query.toString(), null), new Property<?>[] { Task.ID });
+        try {
+            Long[] tasks = new Long[cursor.getCount()];
+            for(int i = 0; cursor.moveToNext(); i++)
+                tasks[i] = cursor.get(Task.ID);
+            return tasks;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void updateAttachmentCounts(Long[] tasks) {
+        PluginServices.getTaskDao().updateAttachmentCounts(tasks);
+    }
+
     public boolean taskHasAttachments(String taskUuid) {
         TodorooCursor<TaskAttachment> files = query(Query.select(TaskAttachment.TASK_UUID).where(
                         Criterion.and(TaskAttachment.TASK_UUID.eq(taskUuid),
@@ -5,9 +5,14 @@
  */
 package com.todoroo.astrid.dao;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteConstraintException;
 
 import com.timsu.astrid.R;
@@ -23,11 +28,17 @@ import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.andlib.utility.Preferences;
 import com.todoroo.astrid.actfm.sync.messages.NameMaps;
 import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.core.SortHelper;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.RemoteModel;
+import com.todoroo.astrid.data.SyncFlags;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.data.TaskApiDao;
+import com.todoroo.astrid.data.TaskAttachment;
 import com.todoroo.astrid.reminders.Notifications;
 import com.todoroo.astrid.reminders.ReminderService;
+import com.todoroo.astrid.tags.TaskToTagMetadata;
 
 /**
  * Data Access layer for {@link Task}-related operations.
@@ -148,6 +159,300 @@ public class TaskDao extends RemoteModelDao<Task> {
 
     }
 
+    // --- update listeners
+
+    /**
+     * Listener for updates to existing tasks. Unlike model update
+     * listeners, it is told right away, while the database is locked, and
+     * about bulk updates too, so it must return quickly
+     */
+    public interface TaskUpdateListener {
+        /**
+         * @param ids tasks that were updated
+         * @param values columns set on them
+         */
+        public void onTasksUpdated(long[] ids, ContentValues values);
+    }
+
+    private final CopyOnWriteArrayList<TaskUpdateListener> updateListeners =
+        new CopyOnWriteArrayList<TaskUpdateListener>();
+
+    public void addUpdateListener(TaskUpdateListener listener) {
+        updateListeners.add(listener);
+    }
+
+    public void removeUpdateListener(TaskUpdateListener listener) {
+        updateListeners.remove(listener);
+    }
+
+    private void onTasksUpdated(long[] ids, ContentValues values) {
+        for(TaskUpdateListener listener : updateListeners)
+            listener.onTasksUpdated(ids, values);
+    }
+
+    // --- sort scores
+
+    /** Preference holding the time sort scores of tasks without due date were computed for */
+    private static final String PREF_SORT_SCORE_BASE = "sort_score_base"; //$NON-NLS-1$
+
+    /** How old the sort base may get before scores are moved forward */
+    static final long SORT_SCORE_REBASE_INTERVAL = DateUtilities.ONE_DAY;
+
+    private static volatile long sortScoreBase = 0;
+
+    private static final Property<?>[] SORT_SCORE_INPUTS = new Property<?>[] {
+        Task.DUE_DATE, Task.IMPORTANCE, Task.COMPLETION_DATE
+    };
+
+    /**
+     * @return true if setting the given values changes the sort scores of
+     *         a task
+     */
+    public static boolean changesSortScores(ContentValues values) {
+        if(values == null)
+            return false;
+        for(Property<?> property : SORT_SCORE_INPUTS)
+            if(values.containsKey(property.name))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return time the stored sort scores of tasks without due date were
+     *         computed for, see {@link SortHelper#sortScoreSql(long)}
+     */
+    public static long getSortScoreBase() {
+        long base = sortScoreBase;
+        if(base == 0) {
+            base = Preferences.getLong(PREF_SORT_SCORE_BASE, 0);
+            if(base == 0) {
+                base = DateUtilities.now();
+                Preferences.setLong(PREF_SORT_SCORE_BASE, base);
+            }
+            sortScoreBase = base;
+        }
+        return base;
+    }
+
+    /**
+     * Record the base the stored sort scores were computed for
+     */
+    public static void setSortScoreBase(long base) {
+        Preferences.setLong(PREF_SORT_SCORE_BASE, base);
+        sortScoreBase = base;
+    }
+
+    /**
+     * @return statement computing the sort scores of tasks matching the
+     *         given criterion, or of all tasks if it is null
+     */
+    @SuppressWarnings("nls")
+    public static String updateSortScoresSql(long base, Criterion where) {
+        return "UPDATE " + Task.TABLE.name + " SET " +
+                Task.SORT_SCORE.name + " = " + SortHelper.sortScoreSql(base) + ", " +
+                Task.DUE_SORT_SCORE.name + " = " + SortHelper.dueSortScoreSql(base) +
+                (where == null ? "" : " WHERE " + where);
+    }
+
+    /**
+     * Recompute the scores of tasks without due date for a new base. Other
+     * tasks' scores don't depend on it. Scores are computed while holding
+     * the database lock, so no task is saved with the previous base after
+     * this
+     */
+    public void rebaseSortScores(final long base) {
+        synchronized(database) {
+            boolean committed = database.runInBatch(new Runnable() {
+                @Override
+                public void run() {
+                    ContentValues scores = new ContentValues();
+                    scores.putNull(Task.SORT_SCORE.name);
+                    scores.putNull(Task.DUE_SORT_SCORE.name);
+                    database.execSQL(Task.TABLE.name, updateSortScoresSql(base,
+                            Task.DUE_DATE.eq(0)), new Object[0], scores);
+                }
+            });
+            if(committed)
+                setSortScoreBase(base);
+        }
+    }
+
+    /**
+     * Move the sort base to the current time if it is older than
+     * {@link #SORT_SCORE_REBASE_INTERVAL}. Call from a background thread
+     *
+     * @return true if scores were recomputed
+     */
+    public boolean rebaseSortScoresIfStale() {
+        long now = DateUtilities.now();
+        if(now - getSortScoreBase() < SORT_SCORE_REBASE_INTERVAL)
+            return false;
+        rebaseSortScores(now);
+        return true;
+    }
+
+    /**
+     * Set the sort scores of a task about to be saved, if its due date,
+     * importance or completion date changed. Inputs the task wasn't read
+     * with are read from the database, so that the scores are written
+     * along with the change
+     */
+    private void updateSortScores(Task item, ContentValues values) {
+        if(!changesSortScores(values))
+            return;
+        Task stored = null;
+        for(Property<?> property : SORT_SCORE_INPUTS) {
+            if(!item.containsNonNullValue(property)) {
+                stored = fetch(item.getId(), SORT_SCORE_INPUTS);
+                break;
+            }
+        }
+        setSortScores(item, stored);
+    }
+
+    /**
+     * Set the sort scores of a task from its values, or defaults for
+     * values it doesn't have
+     */
+    private static void setSortScores(Task item) {
+        setSortScores(item, null);
+    }
+
+    /**
+     * Set the sort scores of a task from its values, falling back to the
+     * stored task's for values it doesn't have
+     */
+    private static void setSortScores(Task item, Task stored) {
+        long base = getSortScoreBase();
+        long dueDate = valueOf(item, stored, Task.DUE_DATE);
+        int importance = (int) valueOf(item, stored, Task.IMPORTANCE);
+        long completionDate = valueOf(item, stored, Task.COMPLETION_DATE);
+        item.setValue(Task.SORT_SCORE, SortHelper.sortScore(base, dueDate,
+                importance, completionDate));
+        item.setValue(Task.DUE_SORT_SCORE, SortHelper.dueSortScore(base, dueDate,
+                importance, completionDate));
+    }
+
+    private static long valueOf(Task item, Task stored, Property<? extends Number> property) {
+        Number value = item.getValue(property);
+        if(value == null && stored != null)
+            value = stored.getValue(property);
+        return value == null ? 0 : value.longValue();
+    }
+
+    // --- list summary
+
+    /**
+     * @return statement recomputing {@link Task#TAG_NAMES} of tasks matching
+     *         the given criterion
+     */
+    @SuppressWarnings("nls")
+    public static String updateTagNamesSql(Criterion where) {
+        return "UPDATE " + Task.TABLE.name + " SET " + Task.TAG_NAMES.name +
+                " = (SELECT group_concat(nullif(" + TaskToTagMetadata.TAG_NAME + ", ''), '" +
+                Task.TAG_NAMES_SEPARATOR + "') FROM " + Metadata.TABLE.name + " WHERE " +
+                Criterion.and(Metadata.TASK.eq(Task.ID), MetadataCriteria.withKey(TaskToTagMetadata.KEY),
+                        Metadata.DELETION_DATE.eq(0)) + ")" +
+                (where == null ? "" : " WHERE " + where);
+    }
+
+    /**
+     * @return statement recomputing {@link Task#ATTACHMENT_COUNT} of tasks
+     *         matching the given criterion
+     */
+    @SuppressWarnings("nls")
+    public static String updateAttachmentCountSql(Criterion where) {
+        return "UPDATE " + Task.TABLE.name + " SET " + Task.ATTACHMENT_COUNT.name +
+                " = (SELECT COUNT(*) FROM " + TaskAttachment.TABLE.name + " WHERE " +
+                Criterion.and(TaskAttachment.TASK_UUID.eq(Task.UUID),
+                        TaskAttachment.DELETED_AT.eq(0)) + ")" +
+                (where == null ? "" : " WHERE " + where);
+    }
+
+    /**
+     * Recompute {@link Task#TAG_NAMES} of tasks whose tag links changed,
+     * telling update listeners which tasks changed
+     */
+    public void updateTagNames(Long[] ids) {
+        updateSummary(ids, updateTagNamesSql(Task.ID.in(ids)), Task.TAG_NAMES);
+    }
+
+    /**
+     * Recompute {@link Task#ATTACHMENT_COUNT} of tasks whose attachments
+     * changed, telling update listeners which tasks changed
+     */
+    public void updateAttachmentCounts(Long[] ids) {
+        updateSummary(ids, updateAttachmentCountSql(Task.ID.in(ids)), Task.ATTACHMENT_COUNT);
+    }
+
+    private void updateSummary(Long[] ids, String sql, Property<?> column) {
+        if(ids.length == 0)
+            return;
+        ContentValues values = new ContentValues();
+        values.putNull(column.name);
+        long[] updated = new long[ids.length];
+        for(int i = 0; i < ids.length; i++)
+            updated[i] = ids[i];
+        synchronized(database) {
+            database.execSQL(Task.TABLE.name, sql, new Object[0], values);
+            onTasksUpdated(updated, values);
+        }
+    }
+
+    // --- search
+
+    /**
+     * Search titles, notes, tag names and comments of tasks that are not
+     * deleted for words starting with each word of the given text
+     *
+     * @return ids of matching tasks, best matches first
+     */
+    public long[] search(String text, int limit) {
+        String matchQuery = TaskSearchIndex.matchQuery(text);
+        if(matchQuery.length() == 0)
+            return new long[0];
+
+        Cursor cursor = database.rawQuery(TaskSearchIndex.searchSql(matchQuery), null);
+        final long[] ids;
+        final int[] scores;
+        Integer[] order;
+        try {
+            int count = cursor.getCount();
+            ids = new long[count];
+            scores = new int[count];
+            order = new Integer[count];
+            for(int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                scores[i] = TaskSearchIndex.rank(cursor.getString(1));
+                order[i] = i;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // best score first, then newest task
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if(scores[a] != scores[b])
+                    return scores[a] > scores[b] ? -1 : 1;
+                return ids[a] == ids[b] ? 0 : (ids[a] > ids[b] ? -1 : 1);
+            }
+        });
+        long[] result = new long[Math.min(limit, order.length)];
+        for(int i = 0; i < result.length; i++)
+            result[i] = ids[order[i]];
+        return result;
+    }
+
+    /**
+     * Re-index tasks matching a criterion for search
+     */
+    public void updateSearchIndex(Criterion where) {
+        for(String sql : TaskSearchIndex.updateSql(where))
+            database.execSQL(TaskSearchIndex.TABLE, sql, new Object[0]);
+    }
+
     // --- custom operations
 
 
@@ -228,8 +533,27 @@ public class TaskDao extends RemoteModelDao<Task> {
 
         setDefaultReminders(item);
 
+        // a new task has no tags yet, but synchronized tasks may have
+        // attachments that arrived first
+        item.setValue(Task.TAG_NAMES, ""); //$NON-NLS-1$
+        item.setValue(Task.ATTACHMENT_COUNT, 0);
+        boolean hasUuid = item.containsNonNullValue(Task.UUID) &&
+                !RemoteModel.isUuidEmpty(item.getValue(Task.UUID));
+
         ContentValues values = item.getSetValues();
-        boolean result = super.createNew(item);
+        boolean result;
+        synchronized(database) {
+            setSortScores(item);
+            result = super.createNew(item);
+            if(result && hasUuid) {
+                ContentValues counts = new ContentValues();
+                counts.putNull(Task.ATTACHMENT_COUNT.name);
+                database.execSQL(Task.TABLE.name, updateAttachmentCountSql(Task.ID.eq(item.getId())),
+                        new Object[0], counts);
+            }
+            if(result)
+                updateSearchIndex(Task.ID.eq(item.getId()));
+        }
         if(result) {
             afterSave(item, values);
         }
@@ -273,12 +597,77 @@ public class TaskDao extends RemoteModelDao<Task> {
             if(!values.containsKey(Task.MODIFICATION_DATE.name))
                 item.setValue(Task.MODIFICATION_DATE, DateUtilities.now());
         }
-        boolean result = super.saveExisting(item);
+        boolean result;
+        synchronized(database) {
+            updateSortScores(item, values);
+            result = super.saveExisting(item);
+            if(result && TaskSearchIndex.changesIndex(values))
+                updateSearchIndex(Task.ID.eq(item.getId()));
+            if(result)
+                onTasksUpdated(new long[] { item.getId() }, values);
+        }
         if(result)
             afterSave(item, values);
         return result;
     }
 
+    /**
+     * Update tasks matching a criterion, recomputing the sort scores and
+     * search index of updated tasks if the template changes values they
+     * depend on, and telling update listeners which tasks changed. The
+     * update and the recomputation run in one batch, so table listeners
+     * only hear of the update once scores are current
+     */
+    @Override
+    public int update(Criterion where, final Task template) {
+        ContentValues values = template.getSetValues();
+        final boolean changesScores = changesSortScores(values);
+        final boolean changesIndex = TaskSearchIndex.changesIndex(values);
+        if(!changesScores && !changesIndex && updateListeners.isEmpty())
+            return super.update(where, template);
+
+        // the criterion may no longer match once updated, so keep the ids
+        TodorooCursor<Task> cursor = query(Query.select(Task.ID).where(where));
+        final Long[] ids;
+        try {
+            ids = new Long[cursor.getCount()];
+            for(int i = 0; cursor.moveToNext(); i++)
+                ids[i] = cursor.get(Task.ID);
+        } finally {
+            cursor.close();
+        }
+        if(ids.length == 0)
+            return 0;
+
+        synchronized(database) {
+            final int[] result = new int[1];
+            boolean committed = database.runInBatch(new Runnable() {
+                @Override
+                public void run() {
+                    result[0] = TaskDao.super.update(Task.ID.in(ids), template);
+                    if(result[0] == 0)
+                        return;
+                    if(changesScores) {
+                        ContentValues scores = new ContentValues();
+                        scores.putNull(Task.SORT_SCORE.name);
+                        scores.putNull(Task.DUE_SORT_SCORE.name);
+                        database.execSQL(Task.TABLE.name, updateSortScoresSql(getSortScoreBase(),
+                                Task.ID.in(ids)), new Object[0], scores);
+                    }
+                    if(changesIndex)
+                        updateSearchIndex(Task.ID.in(ids));
+                }
+            });
+            if(!committed || result[0] == 0)
+                return 0;
+            long[] updated = new long[ids.length];
+            for(int i = 0; i < ids.length; i++)
+                updated[i] = ids[i];
+            onTasksUpdated(updated, values);
+            return result[0];
+        }
+    }
+
     private static final Property<?>[] SQL_CONSTRAINT_MERGE_PROPERTIES = new Property<?>[] {
         Task.ID,
         Task.UUID,
@@ -361,6 +750,8 @@ public class TaskDao extends RemoteModelDao<Task> {
             return;
 
         task.markSaved();
+        // listeners got their own copy, so the flag only applies to this save
+        task.checkAndClearTransitory(SyncFlags.GTASKS_SUPPRESS_SYNC);
         if(values.containsKey(Task.COMPLETION_DATE.name) && task.isCompleted())
             afterComplete(task, values);
         else {
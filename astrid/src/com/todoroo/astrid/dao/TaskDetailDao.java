@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import com.todoroo.andlib.data.DatabaseDao;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.TaskDetail;
+
+/**
+ * Data Access layer for the task detail cache. The cache keeps at most
+ * {@link #MAX_ENTRIES} tasks' details, dropping those requested longest
+ * ago.
+ */
+@SuppressWarnings("nls")
+public class TaskDetailDao extends DatabaseDao<TaskDetail> {
+
+    /** Number of tasks whose details are kept */
+    public static final int MAX_ENTRIES = 1000;
+
+    @Autowired
+    private Database database;
+
+    public TaskDetailDao() {
+        super(TaskDetail.class);
+        DependencyInjectionService.getInstance().inject(this);
+        setDatabase(database);
+    }
+
+    /**
+     * Record that details of the given tasks were requested, with none
+     * received yet. Their details count as current from now on
+     */
+    public void markRequested(final long[] ids) {
+        final long now = DateUtilities.now();
+        synchronized(database) {
+            database.runInBatch(new Runnable() {
+                @Override
+                public void run() {
+                    String sql = "INSERT OR REPLACE INTO " + TaskDetail.TABLE.name + " (" +
+                            TaskDetail.TASK.name + ", " + TaskDetail.DETAILS.name + ", " +
+                            TaskDetail.DETAILS_DATE.name + ") VALUES (?, '', ?)";
+                    for(long id : ids)
+                        database.execSQL(TaskDetail.TABLE.name, sql, new Object[] { id, now });
+                    trim();
+                }
+            });
+        }
+    }
+
+    /**
+     * Store details received for tasks whose details were requested. The
+     * time of the request is kept, so that details of tasks changed since
+     * are requested again
+     *
+     * @param details details of each task, in the order of the ids
+     */
+    public void saveDetails(final long[] ids, final String[] details) {
+        synchronized(database) {
+            database.runInBatch(new Runnable() {
+                @Override
+                public void run() {
+                    String sql = "UPDATE " + TaskDetail.TABLE.name + " SET " +
+                            TaskDetail.DETAILS.name + " = ? WHERE " +
+                            TaskDetail.TASK.name + " = ?";
+                    for(int i = 0; i < ids.length; i++)
+                        database.execSQL(TaskDetail.TABLE.name, sql, new Object[] { details[i], ids[i] });
+                }
+            });
+        }
+    }
+
+    /**
+     * Forget details of tasks matching a criterion, so they are requested
+     * again
+     *
+     * @return number of tasks whose details were forgotten
+     */
+    public int clear(Criterion taskCriterion) {
+        return deleteWhere(TaskDetail.TASK.in(Query.select(Task.ID).from(Task.TABLE).where(
+                taskCriterion)));
+    }
+
+    /**
+     * Drop the details requested longest ago beyond {@link #MAX_ENTRIES}
+     */
+    private void trim() {
+        database.execSQL(TaskDetail.TABLE.name, "DELETE FROM " + TaskDetail.TABLE.name + " WHERE " +
+                TaskDetail.DETAILS_DATE.name + " < (SELECT " + TaskDetail.DETAILS_DATE.name +
+                " FROM " + TaskDetail.TABLE.name + " ORDER BY " + TaskDetail.DETAILS_DATE.name +
+                " DESC LIMIT 1 OFFSET " + (MAX_ENTRIES - 1) + ")", new Object[0]);
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import android.content.ContentValues;
+
+import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Field;
+import com.todoroo.andlib.sql.Operator;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.sql.UnaryCriterion;
+import com.todoroo.andlib.utility.AndroidUtilities;
+import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.UserActivity;
+import com.todoroo.astrid.notes.NoteMetadata;
+
+/**
+ * Full-text index of task titles, notes, tag names and comments, kept in an
+ * FTS table whose docids are task ids. Writes to tasks, note metadata, tag
+ * links and comments re-index the tasks they touch, see
+ * {@link #updateSql(Criterion)}. Rows of deleted tasks are removed by a
+ * trigger, however the tasks are deleted.
+ */
+@SuppressWarnings("nls")
+public final class TaskSearchIndex {
+
+    /** Name of the index table */
+    public static final String TABLE = "task_search";
+
+    // --- columns, in table order
+
+    static final String TITLE = "title";
+    static final String NOTES = "notes";
+    static final String TAGS = "tags";
+    static final String COMMENTS = "comments";
+
+    /** Weight of a match in each column when ranking results */
+    private static final int[] COLUMN_WEIGHTS = new int[] { 8, 2, 4, 1 };
+
+    /** Task columns whose values are indexed */
+    private static final Property<?>[] INDEXED_COLUMNS = new Property<?>[] {
+        Task.TITLE, Task.NOTES, Task.TAG_NAMES, Task.UUID
+    };
+
+    private TaskSearchIndex() {
+        // static helpers
+    }
+
+    /**
+     * @return statement creating the index table. Platforms before
+     *         Honeycomb only ship FTS3, which answers the same queries
+     */
+    public static String createTableSql() {
+        String module = AndroidUtilities.getSdkVersion() >= 11 ? "fts4" : "fts3";
+        return "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE + " USING " + module + "(" +
+                TITLE + ", " + NOTES + ", " + TAGS + ", " + COMMENTS + ")";
+    }
+
+    /**
+     * @return true if setting the given values on a task changes what is
+     *         indexed for it
+     */
+    public static boolean changesIndex(ContentValues values) {
+        if(values == null)
+            return false;
+        for(Property<?> property : INDEXED_COLUMNS)
+            if(values.containsKey(property.name))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return statements re-indexing tasks matching the given criterion,
+     *         or all tasks if it is null
+     */
+    public static String[] updateSql(Criterion where) {
+        String tasks = where == null ? "" : " WHERE " + where;
+        Query notes = Query.select(groupConcat("ifnull(" + NoteMetadata.TITLE + ", '') || ' ' || ifnull(" +
+                NoteMetadata.BODY + ", '')")).
+                from(Metadata.TABLE).where(Criterion.and(Metadata.TASK.eq(Task.ID),
+                        MetadataCriteria.withKey(NoteMetadata.METADATA_KEY),
+                        Metadata.DELETION_DATE.eq(0)));
+        Query comments = Query.select(groupConcat(UserActivity.MESSAGE.toString())).
+                from(UserActivity.TABLE).where(Criterion.and(UserActivity.TARGET_ID.eq(Task.UUID),
+                        UserActivity.ACTION.eq(UserActivity.ACTION_TASK_COMMENT),
+                        UserActivity.DELETED_AT.eq(0)));
+        return new String[] {
+            "DELETE FROM " + TABLE + " WHERE docid IN (SELECT " + Task.ID + " FROM " +
+                    Task.TABLE.name + tasks + ")",
+            "INSERT INTO " + TABLE + " (docid, " + TITLE + ", " + NOTES + ", " + TAGS + ", " +
+                    COMMENTS + ") SELECT " + Task.ID + ", " + Task.TITLE + ", " +
+                    "ifnull(" + Task.NOTES + ", '') || ' ' || ifnull((" + notes + "), ''), " +
+                    "replace(" + Task.TAG_NAMES + ", '" + Task.TAG_NAMES_SEPARATOR + "', ' '), " +
+                    "(" + comments + ") FROM " + Task.TABLE.name + tasks
+        };
+    }
+
+    /**
+     * @return statement creating the trigger that removes deleted tasks
+     *         from the index
+     */
+    public static String createDeleteTriggerSql() {
+        return "CREATE TRIGGER IF NOT EXISTS " + TABLE + "_delete AFTER DELETE ON " +
+                Task.TABLE.name + " BEGIN DELETE FROM " + TABLE + " WHERE docid = old." +
+                Task.ID.name + "; END";
+    }
+
+    private static Field groupConcat(String value) {
+        return Field.field("group_concat(" + value + ", ' ')");
+    }
+
+    // --- queries
+
+    /**
+     * Turn text typed by the user into an index query matching tasks that
+     * contain words starting with each word of the text. Only letters and
+     * digits are kept, so the query is safe to put in SQL
+     *
+     * @return query, empty if the text has no words
+     */
+    public static String matchQuery(String text) {
+        StringBuilder query = new StringBuilder();
+        if(text == null)
+            return "";
+        int length = text.length();
+        for(int i = 0; i < length; ) {
+            while(i < length && !Character.isLetterOrDigit(text.charAt(i)))
+                i++;
+            int start = i;
+            while(i < length && Character.isLetterOrDigit(text.charAt(i)))
+                i++;
+            if(i > start) {
+                if(query.length() > 0)
+                    query.append(' ');
+                query.append(text, start, i).append('*');
+            }
+        }
+        return query.toString();
+    }
+
+    /**
+     * @return criterion for tasks matching an index query, see
+     *         {@link #matchQuery(String)}
+     */
+    public static Criterion matches(final String matchQuery) {
+        return new Criterion(Operator.in) {
+            @Override
+            protected void populate(StringBuilder sb) {
+                sb.append(Task.ID).append(" IN (SELECT docid FROM ").append(TABLE).
+                    append(" WHERE ").append(TABLE).append(" MATCH '").
+                    append(UnaryCriterion.sanitize(matchQuery)).append("')");
+            }
+        };
+    }
+
+    /**
+     * @return query reading the docid and match offsets of index rows
+     *         matching an index query, see {@link #rank(String)}
+     */
+    static String searchSql(String matchQuery) {
+        return "SELECT docid, offsets(" + TABLE + ") FROM " + TABLE + " WHERE " + TABLE +
+                " MATCH '" + UnaryCriterion.sanitize(matchQuery) + "' AND docid IN (SELECT " +
+                Task.ID + " FROM " + Task.TABLE.name + " WHERE " + Task.DELETION_DATE.eq(0) + ")";
+    }
+
+    /**
+     * Score a match from the result of the FTS offsets() function, a list
+     * of (column, term, offset, size) numbers for each matching word.
+     * Words matched in the title count most, then tags, notes and comments
+     */
+    static int rank(String offsets) {
+        if(offsets == null)
+            return 0;
+        int score = 0;
+        int field = 0;
+        int value = 0;
+        boolean inNumber = false;
+        int length = offsets.length();
+        for(int i = 0; i <= length; i++) {
+            char c = i < length ? offsets.charAt(i) : ' ';
+            if(c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                inNumber = true;
+            } else if(inNumber) {
+                if(field % 4 == 0 && value < COLUMN_WEIGHTS.length)
+                    score += COLUMN_WEIGHTS[value];
+                field++;
+                value = 0;
+                inNumber = false;
+            }
+        }
+        return score;
+    }
+
+}
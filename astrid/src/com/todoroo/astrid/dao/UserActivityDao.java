@@ -4,8 +4,11 @@ import android.content.ContentValues;
 
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Query;
 import com.todoroo.andlib.utility.DateUtilities;
 import com.todoroo.astrid.actfm.sync.messages.NameMaps;
+import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.data.UserActivity;
 
 public class UserActivityDao extends RemoteModelDao<UserActivity> {
@@ -23,7 +26,10 @@ public class UserActivityDao extends RemoteModelDao<UserActivity> {
     public boolean createNew(UserActivity item) {
         if (!item.containsValue(UserActivity.CREATED_AT))
             item.setValue(UserActivity.CREATED_AT, DateUtilities.now());
-        return super.createNew(item);
+        boolean result = super.createNew(item);
+        if(result && mayBeTaskComment(item))
+            updateSearchIndex(item.getId());
+        return result;
     }
 
     @Override
@@ -31,7 +37,26 @@ public class UserActivityDao extends RemoteModelDao<UserActivity> {
         ContentValues values = item.getSetValues();
         if(values == null || values.size() == 0)
             return false;
-        return super.saveExisting(item);
+        boolean result = super.saveExisting(item);
+        if(result && mayBeTaskComment(item))
+            updateSearchIndex(item.getId());
+        return result;
+    }
+
+    private static boolean mayBeTaskComment(UserActivity item) {
+        return !item.containsNonNullValue(UserActivity.ACTION) ||
+                UserActivity.ACTION_TASK_COMMENT.equals(item.getValue(UserActivity.ACTION));
+    }
+
+    /**
+     * Re-index the task the given comment is on, see {@link TaskSearchIndex}
+     */
+    private void updateSearchIndex(long id) {
+        Criterion task = Task.UUID.in(Query.select(UserActivity.TARGET_ID).from(UserActivity.TABLE).where(
+                Criterion.and(UserActivity.ID.eq(id),
+                        UserActivity.ACTION.eq(UserActivity.ACTION_TASK_COMMENT))));
+        for(String sql : TaskSearchIndex.updateSql(task))
+            database.getDatabase().execSQL(sql);
     }
 
     @Override
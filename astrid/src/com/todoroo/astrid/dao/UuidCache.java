@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded two-way cache of local id to uuid mappings for one table. Entries
+ * are evicted least-recently-used, whichever direction they were read in.
+ * Only existing rows are cached, never misses.
+ * <p>
+ * Mappings read from the database should be cached with the version the
+ * cache had before the read, so that a mapping read before a write that
+ * dropped it is not cached again.
+ */
+public class UuidCache {
+
+    private final int capacity;
+
+    /** id to uuid, in access order */
+    private final LinkedHashMap<Long, String> uuids;
+
+    /** uuid to id, kept in sync with uuids */
+    private final HashMap<String, Long> ids;
+
+    /** Incremented whenever mappings are dropped */
+    private long version = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public UuidCache(int capacity) {
+        this.capacity = capacity;
+        ids = new HashMap<String, Long>(capacity);
+        uuids = new LinkedHashMap<Long, String>(capacity, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                if(size() <= UuidCache.this.capacity)
+                    return false;
+                ids.remove(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return uuid for the given id, or null if not cached
+     */
+    public synchronized String getUuid(long id) {
+        String uuid = uuids.get(id);
+        if(uuid == null)
+            misses++;
+        else
+            hits++;
+        return uuid;
+    }
+
+    /**
+     * @return id for the given uuid, or null if not cached
+     */
+    public synchronized Long getId(String uuid) {
+        Long id = ids.get(uuid);
+        if(id == null) {
+            misses++;
+        } else {
+            hits++;
+            uuids.get(id); // mark as recently used
+        }
+        return id;
+    }
+
+    /**
+     * Remember that the row with this id has this uuid
+     */
+    public synchronized void put(long id, String uuid) {
+        String oldUuid = uuids.remove(id);
+        if(oldUuid != null)
+            ids.remove(oldUuid);
+        Long oldId = ids.remove(uuid);
+        if(oldId != null)
+            uuids.remove(oldId);
+        uuids.put(id, uuid);
+        ids.put(uuid, id);
+    }
+
+    /**
+     * Remember a mapping read from the database, unless mappings were
+     * dropped since the read started
+     *
+     * @param readVersion {@link #getVersion()} before the read
+     */
+    public synchronized void put(long id, String uuid, long readVersion) {
+        if(readVersion == version)
+            put(id, uuid);
+    }
+
+    /**
+     * @return version to pass to {@link #put(long, String, long)}
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Forget the mapping for the row with this id
+     */
+    public synchronized void removeId(long id) {
+        version++;
+        String uuid = uuids.remove(id);
+        if(uuid != null)
+            ids.remove(uuid);
+    }
+
+    public synchronized void clear() {
+        version++;
+        uuids.clear();
+        ids.clear();
+    }
+
+    public synchronized int size() {
+        return uuids.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
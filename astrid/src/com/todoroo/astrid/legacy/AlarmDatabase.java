@@ -64,12 +64,7 @@ public class AlarmDatabase extends AbstractDatabase {
 
     @Override
     protected synchronized void onCreateTables() {
-        StringBuilder sql = new StringBuilder();
-        sql.append("CREATE INDEX IF NOT EXISTS a_task ON ").
-            append(TransitionalAlarm.TABLE).append('(').
-                append(TransitionalAlarm.TASK.name).
-            append(')');
-        database.execSQL(sql.toString());
+        // indexes are declared by TransitionalAlarm
     }
 
     @Override
@@ -9,6 +9,7 @@ package com.todoroo.astrid.legacy;
 import android.content.ContentValues;
 
 import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.Index;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.Property.LongProperty;
 import com.todoroo.andlib.data.Table;
@@ -46,6 +47,11 @@ public class TransitionalAlarm extends AbstractModel {
     /** List of all properties for this model */
     public static final Property<?>[] PROPERTIES = generateProperties(TransitionalAlarm.class);
 
+    /** Indexes on this table */
+    public static final Index[] INDEXES = new Index[] {
+        Index.on("a_task", TABLE, TASK)
+    };
+
     // --- constants
 
     /** this alarm was already triggered */
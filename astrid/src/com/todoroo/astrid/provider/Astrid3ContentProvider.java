@@ -5,14 +5,18 @@
  */
 package com.todoroo.astrid.provider;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.Set;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -30,6 +34,7 @@ import com.todoroo.andlib.service.ExceptionService;
 import com.todoroo.astrid.api.AstridApiConstants;
 import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.dao.MetadataDao;
+import com.todoroo.astrid.dao.RemoteModelDao;
 import com.todoroo.astrid.dao.StoreObjectDao;
 import com.todoroo.astrid.dao.TaskDao;
 import com.todoroo.astrid.dao.UserActivityDao;
@@ -61,6 +66,11 @@ import com.todoroo.astrid.service.AstridDependencyInjector;
  * <li>/groupby/title - query with SQL "group by" (query)
  * </ul>
  * <p>
+ * Queries may add a {@link AstridApiConstants#LIMIT_PARAMETER} parameter to
+ * limit the number of rows returned. {@link #bulkInsert} and
+ * {@link #applyBatch} run all their writes in one transaction and notify
+ * observers once per URI when it is committed.
+ * <p>
  * If you are writing a third-party application to access this data, you may
  * also consider using one of the Api DAO objects like {@link TaskApiDao}.
  *
@@ -87,6 +97,9 @@ public class Astrid3ContentProvider extends ContentProvider {
 
     private static AbstractDatabase databaseOverride;
 
+    /** URIs changed by the batch running on each thread, notified when it ends */
+    private static final ThreadLocal<HashSet<Uri>> batchChanges = new ThreadLocal<HashSet<Uri>>();
+
     // --- instance variables
 
 
@@ -219,6 +232,46 @@ public class Astrid3ContentProvider extends ContentProvider {
         return database;
     }
 
+    /**
+     * Notify observers of a change, or collect it to be notified when the
+     * running batch is committed
+     */
+    private void notifyChange(Uri uri) {
+        HashSet<Uri> changes = batchChanges.get();
+        if(changes != null)
+            changes.add(uri);
+        else
+            getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Run writes in one database transaction, notifying observers of the
+     * changed URIs once after it is committed
+     *
+     * @return true if the writes were committed
+     */
+    private boolean runInBatch(Runnable operation) {
+        if(batchChanges.get() != null) {
+            operation.run();
+            return true;
+        }
+
+        HashSet<Uri> changes = new HashSet<Uri>();
+        batchChanges.set(changes);
+        boolean committed;
+        try {
+            committed = getDatabase().runInBatch(operation);
+        } finally {
+            batchChanges.set(null);
+        }
+        if(committed) {
+            ContentResolver cr = getContext().getContentResolver();
+            for(Uri uri : changes)
+                cr.notifyChange(uri, null);
+        }
+        return committed;
+    }
+
     /* ======================================================================
      * =========================================================== delete ===
      * ====================================================================== */
@@ -257,7 +310,12 @@ public class Astrid3ContentProvider extends ContentProvider {
             throw new IllegalArgumentException("Unknown URI " + uri + " (" + uriMatcher.match(uri) + ")");
         }
 
-        return getDatabase().delete(helper.dao.getTable().name, selection, selectionArgs);
+        int count = getDatabase().delete(helper.dao.getTable().name, selection, selectionArgs);
+
+        // rows were deleted behind the dao, so drop its cached uuids
+        if(count > 0 && helper.dao instanceof RemoteModelDao)
+            ((RemoteModelDao<?>) helper.dao).getUuidCache().clear();
+        return count;
     }
 
     /* ======================================================================
@@ -288,7 +346,8 @@ public class Astrid3ContentProvider extends ContentProvider {
                 throw new SQLException("Could not insert row into database (constraint failed?)");
 
             Uri newUri = ContentUris.withAppendedId(uri, helper.model.getId());
-            getContext().getContentResolver().notifyChange(newUri, null);
+            // in a batch, observers of the table are told once
+            notifyChange(batchChanges.get() == null ? newUri : uri);
             return newUri;
         }
 
@@ -297,14 +356,72 @@ public class Astrid3ContentProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Insert rows into given table in one transaction. Observers are
+     * notified once, after all rows were inserted
+     *
+     * @return number of rows inserted
+     */
+    @Override
+    public int bulkInsert(final Uri uri, final ContentValues[] values) {
+        if(uriMatcher.match(uri) != URI_DIR)
+            throw new IllegalArgumentException("Only the / URI is valid"
+                    + " for insertion.");
+
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                for(ContentValues row : values) {
+                    UriHelper<?> helper = generateHelper(uri, true);
+                    helper.model.mergeWith(row);
+                    readTransitoriesFromModelContentValues(helper.model);
+                    if(!helper.create())
+                        throw new SQLException("Could not insert row into database (constraint failed?)");
+                }
+                if(values.length > 0)
+                    notifyChange(uri);
+            }
+        });
+        if(!committed)
+            throw new SQLException("Could not insert rows into database");
+        return values.length;
+    }
+
+    /**
+     * Apply operations in one transaction. If any operation fails, none of
+     * them are kept. Observers are notified once per changed URI
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final ContentProviderResult[][] results = new ContentProviderResult[1][];
+        final OperationApplicationException[] failure = new OperationApplicationException[1];
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results[0] = Astrid3ContentProvider.super.applyBatch(operations);
+                } catch (OperationApplicationException e) {
+                    failure[0] = e;
+                    getDatabase().failBatch();
+                }
+            }
+        });
+        if(failure[0] != null)
+            throw failure[0];
+        if(!committed)
+            throw new OperationApplicationException("Batch was rolled back");
+        return results[0];
+    }
+
     /* ======================================================================
      * =========================================================== update ===
      * ====================================================================== */
 
     @Override
-    public int update(Uri uri, ContentValues values, String selection,
+    public int update(final Uri uri, final ContentValues values, String selection,
             String[] selectionArgs) {
-        UriHelper<?> helper = generateHelper(uri, true);
+        final UriHelper<?> helper = generateHelper(uri, true);
 
         switch (uriMatcher.match(uri)) {
 
@@ -333,23 +450,35 @@ public class Astrid3ContentProvider extends ContentProvider {
             throw new IllegalArgumentException("Unknown URI " + uri + " (" + uriMatcher.match(uri) + ")");
         }
 
+        final long[] ids;
         Cursor cursor = query(uri, new String[] { AbstractModel.ID_PROPERTY.name },
                 selection, selectionArgs, null);
         try {
-            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                long id = cursor.getLong(0);
-                helper.model.mergeWith(values);
-                readTransitoriesFromModelContentValues(helper.model);
-                helper.model.setId(id);
-                helper.update();
-                helper.model.clear();
-            }
-
-            getContext().getContentResolver().notifyChange(uri, null);
-            return cursor.getCount();
+            ids = new long[cursor.getCount()];
+            for(int i = 0; cursor.moveToNext(); i++)
+                ids[i] = cursor.getLong(0);
         } finally {
             cursor.close();
         }
+
+        // rows are saved one by one, so that DAO hooks run for each
+        boolean committed = runInBatch(new Runnable() {
+            @Override
+            public void run() {
+                for(long id : ids) {
+                    helper.model.mergeWith(values);
+                    readTransitoriesFromModelContentValues(helper.model);
+                    helper.model.setId(id);
+                    helper.update();
+                    helper.model.clear();
+                }
+                if(ids.length > 0)
+                    notifyChange(uri);
+            }
+        });
+        if(!committed)
+            throw new SQLException("Could not update rows in database");
+        return ids.length;
     }
 
     private void readTransitoriesFromModelContentValues(AbstractModel model) {
@@ -382,7 +511,9 @@ public class Astrid3ContentProvider extends ContentProvider {
      * <p>
      * Note that the "sortOrder" field actually can be used to append any
      * sort of clause to your SQL query as long as it is not also the
-     * name of a column
+     * name of a column. Only the columns in the projection are read, and
+     * the {@link AstridApiConstants#LIMIT_PARAMETER} of the URI is applied
+     * in the database
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection,
@@ -408,7 +539,11 @@ public class Astrid3ContentProvider extends ContentProvider {
             throw new IllegalArgumentException("Unknown URI " + uri + " (" + uriMatcher.match(uri) + ")");
         }
 
-        Cursor cursor = builder.query(getDatabase().getDatabase(), projection, selection, selectionArgs, groupBy, null, sortOrder);
+        String limit = uri.getQueryParameter(AstridApiConstants.LIMIT_PARAMETER);
+        if(limit != null && !TextUtils.isDigitsOnly(limit))
+            throw new IllegalArgumentException("Invalid limit " + limit);
+
+        Cursor cursor = builder.query(getDatabase().getReadDatabase(), projection, selection, selectionArgs, groupBy, null, sortOrder, limit);
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
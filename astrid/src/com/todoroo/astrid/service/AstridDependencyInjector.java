@@ -24,6 +24,7 @@ import com.todoroo.astrid.dao.TagOutstandingDao;
 import com.todoroo.astrid.dao.TaskAttachmentDao;
 import com.todoroo.astrid.dao.TaskAttachmentOutstandingDao;
 import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.dao.TaskDetailDao;
 import com.todoroo.astrid.dao.TaskListMetadataDao;
 import com.todoroo.astrid.dao.TaskListMetadataOutstandingDao;
 import com.todoroo.astrid.dao.TaskOutstandingDao;
@@ -95,6 +96,7 @@ public class AstridDependencyInjector extends AbstractDependencyInjector {
         injectables.put("taskListMetadataOutstandingDao", TaskListMetadataOutstandingDao.class);
         injectables.put("waitingOnMeDao", WaitingOnMeDao.class);
         injectables.put("waitingOnMeOutstandingDao", WaitingOnMeOutstandingDao.class);
+        injectables.put("taskDetailDao", TaskDetailDao.class);
 
         // com.todoroo.astrid.service
         injectables.put("taskService", TaskService.class);
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.todoroo.astrid.data.Task;
+
+/**
+ * Plans counting many filters with few queries. Filters are grouped by
+ * their join clause, so that tag filters share one scan of tasks joined
+ * with tag metadata, and each group is counted in one scan with a
+ * <code>SUM(CASE WHEN ... THEN 1 ELSE 0 END)</code> column per filter.
+ * Groups are split into statements of at most {@link #MAX_COLUMNS}
+ * columns. Filters that group, limit or otherwise can't be merged are
+ * left to be counted on their own.
+ */
+@SuppressWarnings("nls")
+final class FilterCountPlanner {
+
+    /** Number of filters counted by one statement */
+    static final int MAX_COLUMNS = 50;
+
+    /** Keywords after which a filter no longer counts plain rows */
+    private static final String[] UNMERGEABLE = new String[] {
+        "GROUP", "HAVING", "LIMIT", "UNION"
+    };
+
+    /** Statement counting several filters, one result column per filter */
+    static final class Batch {
+        final String sql;
+
+        /** Index of the filter counted by each column */
+        final int[] filters;
+
+        Batch(String sql, int[] filters) {
+            this.sql = sql;
+            this.filters = filters;
+        }
+    }
+
+    /** Statements counting the filters that could be merged */
+    final ArrayList<Batch> batches = new ArrayList<Batch>();
+
+    /** Indexes of filters to count on their own */
+    final ArrayList<Integer> separate = new ArrayList<Integer>();
+
+    /**
+     * @param queryTemplates filter query templates, with placeholders
+     *        already replaced
+     */
+    FilterCountPlanner(List<String> queryTemplates) {
+        Map<String, List<Integer>> byJoin = new LinkedHashMap<String, List<Integer>>();
+        String[] conditions = new String[queryTemplates.size()];
+        for(int i = 0; i < queryTemplates.size(); i++) {
+            String[] parts = split(queryTemplates.get(i));
+            if(parts == null) {
+                separate.add(i);
+                continue;
+            }
+            List<Integer> group = byJoin.get(parts[0]);
+            if(group == null) {
+                group = new ArrayList<Integer>();
+                byJoin.put(parts[0], group);
+            }
+            group.add(i);
+            conditions[i] = parts[1];
+        }
+
+        for(Map.Entry<String, List<Integer>> group : byJoin.entrySet()) {
+            List<Integer> filters = group.getValue();
+            for(int start = 0; start < filters.size(); start += MAX_COLUMNS) {
+                int end = Math.min(start + MAX_COLUMNS, filters.size());
+                int[] columns = new int[end - start];
+                StringBuilder sql = new StringBuilder("SELECT ");
+                for(int i = start; i < end; i++) {
+                    columns[i - start] = filters.get(i);
+                    if(i > start)
+                        sql.append(", ");
+                    sql.append("SUM(CASE WHEN (").append(conditions[filters.get(i)]).
+                        append(") THEN 1 ELSE 0 END)");
+                }
+                sql.append(" FROM ").append(Task.TABLE.name);
+                if(group.getKey().length() > 0)
+                    sql.append(' ').append(group.getKey());
+                batches.add(new Batch(sql.toString(), columns));
+            }
+        }
+    }
+
+    /**
+     * Split a filter's query template into its join clause and the
+     * condition of its where clause. An order by clause is dropped, as it
+     * doesn't change the count
+     *
+     * @return join clause (empty if none) and condition, or null if the
+     *         filter can't be counted together with others
+     */
+    static String[] split(String queryTemplate) {
+        String sql = queryTemplate.trim();
+        for(String keyword : UNMERGEABLE)
+            if(find(sql, keyword) >= 0)
+                return null;
+
+        int end = find(sql, "ORDER");
+        if(end < 0)
+            end = sql.length();
+        int where = find(sql, "WHERE");
+        if(where > end)
+            return null;
+
+        String join = (where < 0 ? sql.substring(0, end) : sql.substring(0, where)).trim();
+        if(join.length() > 0 && find(join, "JOIN") < 0)
+            return null;
+        String condition = where < 0 ? "" : sql.substring(where + "WHERE".length(), end).trim();
+        if(condition.length() == 0)
+            condition = "1";
+        return new String[] { join, condition };
+    }
+
+    /**
+     * @return position of a keyword in a statement, outside of parentheses
+     *         and quotes, or -1 if it doesn't appear there
+     */
+    static int find(String sql, String keyword) {
+        int depth = 0;
+        char quote = 0;
+        int length = sql.length();
+        for(int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if(quote != 0) {
+                if(c == quote)
+                    quote = 0;
+            } else if(c == '\'' || c == '"') {
+                quote = c;
+            } else if(c == '(') {
+                depth++;
+            } else if(c == ')') {
+                depth--;
+            } else if(depth == 0 && sql.regionMatches(true, i, keyword, 0, keyword.length()) &&
+                    (i == 0 || !isWordChar(sql.charAt(i - 1))) &&
+                    (i + keyword.length() == length || !isWordChar(sql.charAt(i + keyword.length())))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+}
@@ -0,0 +1,384 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.todoroo.andlib.data.AbstractDatabase.TableUpdateListener;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.api.Filter;
+import com.todoroo.astrid.api.PermaSql;
+import com.todoroo.astrid.dao.Database;
+import com.todoroo.astrid.data.Task;
+
+/**
+ * Keeps the number of tasks in each filter, so that filter lists can show
+ * counts without running every filter's query each time they are shown.
+ * <p>
+ * Counts are cached by filter SQL. Writes to the tasks table, or to another
+ * table a filter refers to, mark that filter's count dirty; an update only
+ * dirties filters that mention one of the updated columns. Dirty counts are
+ * still served until they have been recomputed on a background thread,
+ * shortly after the last change, and listeners are told when counts change.
+ * Counts of filters that depend on the current time are also recomputed
+ * once they are older than {@link #TIME_DEPENDENT_MAX_AGE}. All stale
+ * counts are recomputed together, merged into a few scans of the tasks
+ * table by {@link FilterCountPlanner}, and listeners are told once.
+ */
+@SuppressWarnings("nls")
+public class FilterCountService {
+
+    /** How long after a change dirty counts are recomputed */
+    static final long RECOMPUTE_DELAY = 250L;
+
+    /** How long counts of time-dependent filters stay current */
+    static final long TIME_DEPENDENT_MAX_AGE = DateUtilities.ONE_MINUTE;
+
+    /** Number of filters whose counts are kept */
+    static final int MAX_ENTRIES = 200;
+
+    /**
+     * Listener for changed counts
+     */
+    public interface FilterCountListener {
+        /**
+         * Called on a background thread after recomputed counts differed
+         * from the cached ones
+         */
+        public void onFilterCountsChanged();
+    }
+
+    /** Cached count of one filter */
+    private static final class Entry {
+        final String sql;
+
+        /** Lower-cased table and column names the filter refers to */
+        final HashSet<String> identifiers;
+
+        final boolean timeDependent;
+
+        int count = -1;
+
+        long computedAt = 0;
+
+        boolean dirty = true;
+
+        /** Incremented when the entry is made dirty, so that a count read before a change is not taken as current */
+        int generation = 0;
+
+        Entry(String sql) {
+            this.sql = sql;
+            this.identifiers = identifiers(sql);
+            this.timeDependent = identifiers.contains("now") ||
+                    !sql.equals(PermaSql.replacePlaceholders(sql));
+        }
+
+        void invalidate() {
+            dirty = true;
+            generation++;
+        }
+
+        boolean isStale(long now) {
+            return dirty || (timeDependent && now - computedAt > TIME_DEPENDENT_MAX_AGE);
+        }
+
+        /**
+         * @return true if a write to the table may change this count. Every
+         * filter reads the tasks table, other tables only matter if named
+         */
+        boolean isAffectedBy(String table, boolean tasksTable, ContentValues values) {
+            if(!tasksTable && !identifiers.contains(table))
+                return false;
+            if(values == null)
+                return true;
+            for(Map.Entry<String, Object> value : values.valueSet()) {
+                if(identifiers.contains(value.getKey().toLowerCase(Locale.US)))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static FilterCountService instance = null;
+
+    public static synchronized FilterCountService getInstance() {
+        if(instance == null)
+            instance = new FilterCountService();
+        return instance;
+    }
+
+    @Autowired Database database;
+
+    @Autowired TaskService taskService;
+
+    /** Cached counts by filter SQL, least recently used first */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final CopyOnWriteArrayList<FilterCountListener> listeners =
+        new CopyOnWriteArrayList<FilterCountListener>();
+
+    private final ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "filter-counts");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private boolean scheduled = false;
+
+    /** Held while counting, so counts are never computed concurrently */
+    private final Object countLock = new Object();
+
+    private final Runnable recomputeTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized(FilterCountService.this) {
+                scheduled = false;
+            }
+            if(recomputeStale()) {
+                for(FilterCountListener listener : listeners)
+                    listener.onFilterCountsChanged();
+            }
+        }
+    };
+
+    private final TableUpdateListener tableListener = new TableUpdateListener() {
+        @Override
+        public void onTableUpdated(String table, ContentValues values) {
+            invalidate(table, values);
+        }
+    };
+
+    public FilterCountService() {
+        DependencyInjectionService.getInstance().inject(this);
+        database.addTableListener(tableListener);
+    }
+
+    /**
+     * Stop following database changes. Cached counts are no longer kept
+     * current after this
+     */
+    public void detach() {
+        database.removeTableListener(tableListener);
+    }
+
+    public void addListener(FilterCountListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(FilterCountListener listener) {
+        listeners.remove(listener);
+    }
+
+    // --- counts
+
+    /**
+     * Read the cached count of a filter. Missing or stale counts are
+     * recomputed in the background and listeners told when they change.
+     *
+     * @return number of tasks in the filter as last counted, or -1 if it
+     *         has not been counted yet
+     */
+    public synchronized int getCount(Filter filter) {
+        String sql = filter.getSqlQuery();
+        if(sql == null)
+            return -1;
+        Entry entry = entries.get(sql);
+        if(entry == null) {
+            entry = new Entry(sql);
+            entries.put(sql, entry);
+        }
+        if(entry.isStale(DateUtilities.now()))
+            scheduleRecompute();
+        return entry.count;
+    }
+
+    /**
+     * Adjust the cached count of a filter right away, for changes the caller
+     * knows the effect of. The count is still recomputed after the write
+     *
+     * @return new count, or -1 if the filter has not been counted
+     */
+    public synchronized int adjustCount(Filter filter, int delta) {
+        String sql = filter.getSqlQuery();
+        Entry entry = sql == null ? null : entries.get(sql);
+        if(entry == null || entry.count < 0)
+            return -1;
+        entry.count = Math.max(entry.count + delta, 0);
+        return entry.count;
+    }
+
+    /**
+     * Mark the count of a filter dirty and recompute it in the background
+     */
+    public synchronized void invalidate(Filter filter) {
+        String sql = filter.getSqlQuery();
+        Entry entry = sql == null ? null : entries.get(sql);
+        if(entry == null)
+            return;
+        entry.invalidate();
+        scheduleRecompute();
+    }
+
+    /**
+     * Mark all counts dirty, for changes made without going through the
+     * database's write methods
+     */
+    public synchronized void invalidateAll() {
+        for(Entry entry : entries.values())
+            entry.invalidate();
+        if(!entries.isEmpty() && !listeners.isEmpty())
+            scheduleRecompute();
+    }
+
+    /**
+     * Mark the counts a write may have changed dirty. Recomputing is only
+     * scheduled if someone is listening; otherwise it waits for the next
+     * read
+     */
+    synchronized void invalidate(String table, ContentValues values) {
+        String name = table.toLowerCase(Locale.US);
+        boolean tasksTable = Task.TABLE.name.equals(name);
+        boolean changed = false;
+        for(Entry entry : entries.values()) {
+            if(entry.isAffectedBy(name, tasksTable, values)) {
+                entry.invalidate();
+                changed = true;
+            }
+        }
+        if(changed && !listeners.isEmpty())
+            scheduleRecompute();
+    }
+
+    /**
+     * Recompute stale counts on the calling thread
+     *
+     * @return true if any count changed
+     */
+    public boolean recomputeStale() {
+        synchronized(countLock) {
+            ArrayList<Entry> stale = new ArrayList<Entry>();
+            int[] generations;
+            synchronized(this) {
+                long now = DateUtilities.now();
+                for(Entry entry : entries.values())
+                    if(entry.isStale(now))
+                        stale.add(entry);
+                generations = new int[stale.size()];
+                for(int i = 0; i < stale.size(); i++)
+                    generations[i] = stale.get(i).generation;
+            }
+
+            int[] counts = countAll(stale);
+
+            boolean changed = false;
+            synchronized(this) {
+                long now = DateUtilities.now();
+                for(int i = 0; i < stale.size(); i++) {
+                    Entry entry = stale.get(i);
+                    changed |= counts[i] != entry.count;
+                    entry.count = counts[i];
+                    entry.computedAt = now;
+                    if(entry.generation == generations[i])
+                        entry.dirty = false;
+                }
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Count the given filters with as few queries as possible, see
+     * {@link FilterCountPlanner}. A statement that fails is retried one
+     * filter at a time, so one broken filter doesn't lose the others' counts
+     *
+     * @return count of each filter, its previous count if it couldn't be
+     *         counted
+     */
+    private int[] countAll(ArrayList<Entry> stale) {
+        ArrayList<String> templates = new ArrayList<String>(stale.size());
+        for(Entry entry : stale)
+            templates.add(PermaSql.replacePlaceholders(entry.sql));
+        FilterCountPlanner plan = new FilterCountPlanner(templates);
+
+        int[] counts = new int[stale.size()];
+        for(FilterCountPlanner.Batch batch : plan.batches) {
+            try {
+                Cursor cursor = database.rawQuery(batch.sql, null);
+                try {
+                    cursor.moveToFirst();
+                    for(int i = 0; i < batch.filters.length; i++)
+                        counts[batch.filters[i]] = cursor.getInt(i);
+                } finally {
+                    cursor.close();
+                }
+            } catch (RuntimeException e) {
+                Log.e("filter-counts", "Error counting filters together", e);
+                for(int filter : batch.filters)
+                    counts[filter] = countOne(stale.get(filter));
+            }
+        }
+        for(int filter : plan.separate)
+            counts[filter] = countOne(stale.get(filter));
+        return counts;
+    }
+
+    private int countOne(Entry entry) {
+        try {
+            return taskService.countTasks(entry.sql);
+        } catch (RuntimeException e) {
+            Log.e("filter-counts", "Error counting filter " + entry.sql, e);
+            return entry.count;
+        }
+    }
+
+    // --- helpers
+
+    private void scheduleRecompute() {
+        if(scheduled)
+            return;
+        scheduled = true;
+        executor.schedule(recomputeTask, RECOMPUTE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the lower-cased words of a statement, which include the
+     * names of all tables and columns it refers to
+     */
+    static HashSet<String> identifiers(String sql) {
+        HashSet<String> result = new HashSet<String>();
+        for(String word : sql.toLowerCase(Locale.US).split("[^a-z0-9_]+"))
+            if(word.length() > 0)
+                result.add(word);
+        return result;
+    }
+
+}
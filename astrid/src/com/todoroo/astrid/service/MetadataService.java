@@ -118,6 +118,8 @@ public class MetadataService {
             for(Entry<String, Object> entry : values.valueSet()) {
                 if(entry.getKey().startsWith("value")) //$NON-NLS-1$
                     values.put(entry.getKey(), entry.getValue().toString());
+                else if(entry.getKey().startsWith("num") && entry.getValue() instanceof Number) //$NON-NLS-1$
+                    values.put(entry.getKey(), ((Number) entry.getValue()).longValue());
             }
             newMetadataValues.add(values);
         }
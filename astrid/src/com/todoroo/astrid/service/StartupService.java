@@ -27,7 +27,7 @@ import android.widget.Toast;
 
 import com.crittercism.app.Crittercism;
 import com.timsu.astrid.R;
-import com.todoroo.andlib.data.DatabaseDao.ModelUpdateListener;
+import com.todoroo.andlib.data.DatabaseDao.BatchModelUpdateListener;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
@@ -240,6 +240,7 @@ public class StartupService {
 
                 ReengagementService.scheduleReengagementAlarm(context);
                 taskService.cleanup();
+                taskService.rebaseSortScoresIfStale();
 
                 // if sync ongoing flag was set, clear it
                 gtasksPreferenceService.stopOngoing();
@@ -278,20 +279,41 @@ public class StartupService {
     private void initializeDatabaseListeners() {
         // This listener makes sure that when a tag's name is created or changed,
         // the corresponding metadata will also update
-        tagDataDao.addListener(new ModelUpdateListener<TagData>() {
-            @Override
-            public void onModelUpdated(TagData model, boolean outstandingEntries) {
-                ContentValues values = model.getSetValues();
-                Metadata m = new Metadata();
-                if (values != null) {
-                    if (values.containsKey(TagData.NAME.name)) {
-                        m.setValue(TaskToTagMetadata.TAG_NAME, model.getValue(TagData.NAME));
-                        PluginServices.getMetadataService().update(Criterion.and(MetadataCriteria.withKey(TaskToTagMetadata.KEY),
-                                TaskToTagMetadata.TAG_UUID.eq(model.getValue(TagData.UUID))), m);
-                    }
+        tagDataDao.addListener(new TagNameListener());
+    }
+
+    /**
+     * Copies the name of a created or renamed tag to its metadata. The
+     * metadata of all tags saved in a batch is updated in one transaction
+     */
+    private class TagNameListener implements BatchModelUpdateListener<TagData> {
+        @Override
+        public void onModelUpdated(TagData model, boolean outstandingEntries) {
+            updateTagName(model);
+        }
+
+        @Override
+        public void onModelsUpdated(final List<TagData> models, boolean[] outstandingEntries) {
+            tagDataDao.runInBatch(new Runnable() {
+                @Override
+                public void run() {
+                    for (TagData model : models)
+                        updateTagName(model);
+                }
+            });
+        }
+
+        private void updateTagName(TagData model) {
+            ContentValues values = model.getSetValues();
+            Metadata m = new Metadata();
+            if (values != null) {
+                if (values.containsKey(TagData.NAME.name)) {
+                    m.setValue(TaskToTagMetadata.TAG_NAME, model.getValue(TagData.NAME));
+                    PluginServices.getMetadataService().update(Criterion.and(MetadataCriteria.withKey(TaskToTagMetadata.KEY),
+                            TaskToTagMetadata.TAG_UUID.eq(model.getValue(TagData.UUID))), m);
                 }
             }
-        });
+        }
     }
 
     /**
@@ -43,7 +43,7 @@ public class SyncResultCallbackWrapper implements SyncResultCallback {
         public void finished() {
             super.finished();
             TasksWidget.suppressUpdateFlag = 0L;
-            TasksWidget.updateWidgets(ContextManager.getContext());
+            TasksWidget.notifyTasksChanged(ContextManager.getContext());
         }
 
     }
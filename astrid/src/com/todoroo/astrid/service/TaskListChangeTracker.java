@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+
+import android.content.ContentValues;
+
+import com.todoroo.andlib.data.AbstractDatabase.TableUpdateListener;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.astrid.dao.Database;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.dao.TaskDao.TaskUpdateListener;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.User;
+
+/**
+ * Follows database writes on behalf of a task list, so the list can tell
+ * whether it must run its query again or only read the tasks that changed.
+ * <p>
+ * A list must be read again if tasks were added or removed, if a column
+ * its query mentions was set, if its tasks' sort scores changed while it
+ * is ordered by them, or if users whose pictures are shown in task rows
+ * changed. Other updates only change how the updated tasks look, and their
+ * ids are kept so that just those rows can be read again. Tag names and
+ * attachment counts are kept in the tasks table and their changes are
+ * reported with the ids of the tasks, so writes to tag links and
+ * attachments are patched like other task updates.
+ */
+@SuppressWarnings("nls")
+public class TaskListChangeTracker {
+
+    /**
+     * Changes since the list was last read
+     */
+    public static final class Changes {
+        /** Whether the list must be read again */
+        public final boolean requery;
+
+        /** Tasks whose rows changed, if the list needn't be read again */
+        public final long[] ids;
+
+        Changes(boolean requery, long[] ids) {
+            this.requery = requery;
+            this.ids = ids;
+        }
+
+        public boolean isEmpty() {
+            return !requery && ids.length == 0;
+        }
+    }
+
+    @Autowired Database database;
+
+    @Autowired TaskDao taskDao;
+
+    /** Lower-cased words of the list query */
+    private HashSet<String> identifiers = new HashSet<String>();
+
+    private boolean sortedByScores = false;
+
+    private boolean requery = true;
+
+    private final HashSet<Long> ids = new HashSet<Long>();
+
+    /** Updates to the tasks table reported by the database */
+    private int tableUpdates = 0;
+
+    /** Updates to the tasks table reported with their ids */
+    private int taskUpdates = 0;
+
+    private boolean attached = false;
+
+    private final TableUpdateListener tableListener = new TableUpdateListener() {
+        @Override
+        public void onTableUpdated(String table, ContentValues values) {
+            tableUpdated(table.toLowerCase(Locale.US), values);
+        }
+    };
+
+    private final TaskUpdateListener taskListener = new TaskUpdateListener() {
+        @Override
+        public void onTasksUpdated(long[] updated, ContentValues values) {
+            tasksUpdated(updated, values);
+        }
+    };
+
+    public TaskListChangeTracker() {
+        DependencyInjectionService.getInstance().inject(this);
+    }
+
+    /**
+     * Start following writes. Writes made while detached are not known, so
+     * the list is read again the first time changes are taken
+     */
+    public synchronized void attach() {
+        if(attached)
+            return;
+        attached = true;
+        requery = true;
+        database.addTableListener(tableListener);
+        taskDao.addUpdateListener(taskListener);
+    }
+
+    public synchronized void detach() {
+        if(!attached)
+            return;
+        attached = false;
+        database.removeTableListener(tableListener);
+        taskDao.removeUpdateListener(taskListener);
+    }
+
+    /**
+     * Forget changes, because the list is being read with the given query
+     */
+    public synchronized void reset(String query) {
+        identifiers = FilterCountService.identifiers(query);
+        sortedByScores = identifiers.contains(Task.SORT_SCORE.name.toLowerCase(Locale.US)) ||
+                identifiers.contains(Task.DUE_SORT_SCORE.name.toLowerCase(Locale.US));
+        clear();
+    }
+
+    /**
+     * Take the changes made since the list was last read or changes were
+     * last taken
+     */
+    public synchronized Changes takeChanges() {
+        Changes changes;
+        if(requery || tableUpdates > taskUpdates)
+            changes = new Changes(true, new long[0]);
+        else {
+            long[] changed = new long[ids.size()];
+            int i = 0;
+            for(long id : ids)
+                changed[i++] = id;
+            changes = new Changes(false, changed);
+        }
+        clear();
+        return changes;
+    }
+
+    // --- helpers
+
+    private void clear() {
+        requery = false;
+        ids.clear();
+        tableUpdates = 0;
+        taskUpdates = 0;
+    }
+
+    synchronized void tableUpdated(String table, ContentValues values) {
+        if(requery)
+            return;
+        if(!Task.TABLE.name.equals(table)) {
+            if(identifiers.contains(table))
+                requery = true;
+            else if(User.TABLE.name.equals(table) &&
+                    (values == null || values.containsKey(User.PICTURE.name)))
+                requery = true;
+            return;
+        }
+
+        if(values == null || movesRows(values))
+            requery = true;
+        else
+            tableUpdates++;
+    }
+
+    synchronized void tasksUpdated(long[] updated, ContentValues values) {
+        if(requery)
+            return;
+        if(movesRows(values)) {
+            requery = true;
+            return;
+        }
+        taskUpdates++;
+        for(long id : updated)
+            ids.add(id);
+    }
+
+    /**
+     * @return true if setting the values may add tasks to the list, remove
+     *         them or change their order
+     */
+    private boolean movesRows(ContentValues values) {
+        if(sortedByScores && TaskDao.changesSortScores(values))
+            return true;
+        for(Map.Entry<String, Object> value : values.valueSet())
+            if(identifiers.contains(value.getKey().toLowerCase(Locale.US)))
+                return true;
+        return false;
+    }
+
+}
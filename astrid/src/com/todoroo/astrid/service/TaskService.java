@@ -12,6 +12,7 @@ import java.util.Map.Entry;
 import android.content.ContentValues;
 import android.text.TextUtils;
 
+import com.todoroo.andlib.data.ModelStream;
 import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
@@ -35,7 +36,9 @@ import com.todoroo.astrid.dao.MetadataDao;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.dao.TaskDao;
 import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
+import com.todoroo.astrid.dao.TaskDetailDao;
 import com.todoroo.astrid.dao.TaskOutstandingDao;
+import com.todoroo.astrid.dao.TaskSearchIndex;
 import com.todoroo.astrid.dao.UserActivityDao;
 import com.todoroo.astrid.data.History;
 import com.todoroo.astrid.data.Metadata;
@@ -75,6 +78,9 @@ public class TaskService {
 
     private static final int TOTAL_TASKS_FOR_ACTIVATION = 3;
     private static final int COMPLETED_TASKS_FOR_ACTIVATION = 1;
+
+    /** Number of search matches that are ordered by rank */
+    public static final int RANKED_SEARCH_RESULTS = 100;
     private static final String PREF_USER_ACTVATED = "user-activated"; //$NON-NLS-1$
 
     @Autowired
@@ -89,6 +95,9 @@ public class TaskService {
     @Autowired
     private UserActivityDao userActivityDao;
 
+    @Autowired
+    private TaskDetailDao taskDetailDao;
+
     public TaskService() {
         DependencyInjectionService.getInstance().inject(this);
     }
@@ -104,6 +113,16 @@ public class TaskService {
         return taskDao.query(query);
     }
 
+    /**
+     * Stream tasks matching the given query
+     *
+     * @param query
+     * @return
+     */
+    public ModelStream<Task> stream(Query query) {
+        return taskDao.stream(query);
+    }
+
     /**
      *
      * @param properties
@@ -268,6 +287,16 @@ public class TaskService {
         taskDao.delete(taskId);
     }
 
+    /**
+     * Recompute sort scores of tasks without due date if they were computed
+     * for a time long past. Call from a background thread
+     *
+     * @see TaskDao#rebaseSortScoresIfStale()
+     */
+    public void rebaseSortScoresIfStale() {
+        taskDao.rebaseSortScoresIfStale();
+    }
+
     /**
      * Clean up tasks. Typically called on startup
      */
@@ -299,8 +328,7 @@ public class TaskService {
             Property<?>... properties) {
         Criterion whereConstraint = null;
         if(constraint != null)
-            whereConstraint = Functions.upper(Task.TITLE).like("%" +
-                    constraint.toString().toUpperCase() + "%");
+            whereConstraint = searchCriterion(constraint.toString());
 
         if(queryTemplate == null) {
             if(whereConstraint == null)
@@ -323,6 +351,46 @@ public class TaskService {
         return taskDao.query(Query.select(properties).withQueryTemplate(sql));
     }
 
+    /**
+     * @return criterion for tasks whose title, notes, tags or comments have
+     *         words starting with each word of the given text. Text without
+     *         any words is looked for in titles
+     */
+    @SuppressWarnings("nls")
+    public static Criterion searchCriterion(String text) {
+        String matchQuery = TaskSearchIndex.matchQuery(text);
+        if(matchQuery.length() == 0)
+            return Functions.upper(Task.TITLE).like("%" + text.toUpperCase() + "%");
+        return TaskSearchIndex.matches(matchQuery);
+    }
+
+    /**
+     * Search tasks that are not deleted, see {@link TaskDao#search(String, int)}
+     *
+     * @return ids of at most limit matching tasks, best matches first
+     */
+    public long[] search(String text, int limit) {
+        return taskDao.search(text, limit);
+    }
+
+    /**
+     * @return order listing the best {@link #RANKED_SEARCH_RESULTS} matches
+     *         of a search first, by rank, then other tasks newest first
+     */
+    @SuppressWarnings("nls")
+    public Order searchOrder(String text) {
+        long[] ranked = search(text, RANKED_SEARCH_RESULTS);
+        if(ranked.length == 0)
+            return Order.desc(Task.ID);
+        StringBuilder rank = new StringBuilder("(CASE ").append(Task.ID);
+        for(int i = 0; i < ranked.length; i++)
+            rank.append(" WHEN ").append(ranked[i]).append(" THEN ").append(i);
+        rank.append(" ELSE ").append(ranked.length).append(" END)");
+        Order order = Order.asc(Field.field(rank.toString()));
+        order.addSecondaryExpression(Order.desc(Task.ID));
+        return order;
+    }
+
     public boolean getUserActivationStatus() {
         if (Preferences.getBoolean(PREF_USER_ACTVATED, false))
             return true;
@@ -360,12 +428,10 @@ public class TaskService {
      * affects details
      * @param criterion
      *
-     * @return # of affected rows
+     * @return # of tasks whose details were cleared
      */
     public int clearDetails(Criterion criterion) {
-        Task template = new Task();
-        template.setValue(Task.DETAILS_DATE, 0L);
-        return taskDao.update(criterion, template);
+        return taskDetailDao.clear(criterion);
     }
 
     /**
@@ -420,10 +486,18 @@ public class TaskService {
         }
     }
 
+    /** shared select clause for counting filters */
+    private static final Query COUNT_QUERY = Query.select(Task.ID).from(Task.TABLE).freeze();
+
     /** count tasks in a given filter */
     public int countTasks(Filter filter) {
-        String queryTemplate = PermaSql.replacePlaceholders(filter.getSqlQuery());
-        TodorooCursor<Task> cursor = query(Query.select(Task.ID).withQueryTemplate(
+        return countTasks(filter.getSqlQuery());
+    }
+
+    /** count tasks matching a filter's query template */
+    public int countTasks(String sqlQuery) {
+        String queryTemplate = PermaSql.replacePlaceholders(sqlQuery);
+        TodorooCursor<Task> cursor = query(COUNT_QUERY.fork().withQueryTemplate(
                 queryTemplate));
         try {
             return cursor.getCount();
@@ -45,6 +45,13 @@ import com.todoroo.astrid.utility.Flags;
 
 public class DraggableListView extends ListView {
 
+    /**
+     * Told when a row starts and stops being dragged
+     */
+    public interface DragStateListener {
+        void onDragStateChanged(boolean dragging);
+    }
+
     private static final int SWIPE_THRESHOLD = 40;
 
     private static final int MOVEMENT_THRESHOLD = 30;
@@ -75,6 +82,7 @@ public class DraggableListView extends ListView {
     private DropListener mDropListener;
     private SwipeListener mSwipeListener;
     private GrabberClickListener mClickListener;
+    private DragStateListener mDragStateListener;
     private GestureDetector mGestureDetector;
 
     // --- other instance variables
@@ -428,6 +436,8 @@ public class DraggableListView extends ListView {
         mDragView = v;
         mDragging = true;
         Flags.set(Flags.TLFP_NO_INTERCEPT_TOUCH);
+        if (mDragStateListener != null)
+            mDragStateListener.onDragStateChanged(true);
     }
 
     private void dragView(MotionEvent ev) {
@@ -510,8 +520,11 @@ public class DraggableListView extends ListView {
             }
         }
 
+        boolean wasDragging = mDragging;
         mDragging = false;
         Flags.checkAndClear(Flags.TLFP_NO_INTERCEPT_TOUCH);
+        if (wasDragging && mDragStateListener != null)
+            mDragStateListener.onDragStateChanged(false);
     }
 
     // --- getters and setters
@@ -532,6 +545,10 @@ public class DraggableListView extends ListView {
         this.mClickListener = listener;
     }
 
+    public void setDragStateListener(DragStateListener listener) {
+        this.mDragStateListener = listener;
+    }
+
     public void setDragndropBackgroundColor(int color) {
         this.dragndropBackgroundColor = color;
     }
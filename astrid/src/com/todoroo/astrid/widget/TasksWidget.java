@@ -5,6 +5,13 @@
  */
 package com.todoroo.astrid.widget;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import android.app.PendingIntent;
 import android.app.Service;
 import android.appwidget.AppWidgetManager;
@@ -15,6 +22,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.util.DisplayMetrics;
@@ -23,9 +31,9 @@ import android.view.Display;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
 
 import com.timsu.astrid.R;
-import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.service.ContextManager;
 import com.todoroo.andlib.service.DependencyInjectionService;
@@ -42,12 +50,10 @@ import com.todoroo.astrid.api.FilterWithCustomIntent;
 import com.todoroo.astrid.api.PermaSql;
 import com.todoroo.astrid.core.CoreFilterExposer;
 import com.todoroo.astrid.core.SortHelper;
-import com.todoroo.astrid.dao.Database;
 import com.todoroo.astrid.data.TagData;
 import com.todoroo.astrid.data.Task;
 import com.todoroo.astrid.service.AstridDependencyInjector;
 import com.todoroo.astrid.service.TagDataService;
-import com.todoroo.astrid.service.TaskService;
 import com.todoroo.astrid.service.ThemeService;
 import com.todoroo.astrid.subtasks.SubtasksHelper;
 import com.todoroo.astrid.tags.TagFilterExposer;
@@ -61,6 +67,26 @@ public class TasksWidget extends AppWidgetProvider {
     public static long suppressUpdateFlag = 0; // Timestamp--don't update widgets if this flag is non-zero and now() is within 5 minutes
     private static final long SUPPRESS_TIME = DateUtilities.ONE_MINUTE * 5;
 
+    /** Delay before widgets are updated, so that a burst of writes updates them once */
+    private static final long UPDATE_DELAY = 500L;
+
+    /** Number of tasks loaded into scrolling widget lists */
+    private static final int LIST_LIMIT = 50;
+
+    private static final ScheduledExecutorService updateExecutor =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "widget-updates"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private static boolean updateScheduled = false;
+
+    private static boolean fullUpdatePending = false;
+
     static {
         AstridDependencyInjector.initialize();
     }
@@ -81,15 +107,55 @@ public class TasksWidget extends AppWidgetProvider {
     }
 
     /**
-     * Update all widgets
-     * @param id
+     * Rebuild all widgets, for changes to their settings or appearance
      */
     public static void updateWidgets(Context context) {
+        scheduleUpdate(context, true);
+    }
+
+    /**
+     * Refresh the tasks shown in all widgets, for changes to tasks. Where
+     * widgets show a scrolling list, only its rows are reloaded
+     */
+    public static void notifyTasksChanged(Context context) {
+        scheduleUpdate(context, false);
+    }
+
+    /**
+     * Update widgets shortly, once for all requests made until then
+     */
+    private static synchronized void scheduleUpdate(Context context, boolean full) {
+        if (context == null)
+            return;
         if (suppressUpdateFlag > 0 && DateUtilities.now() - suppressUpdateFlag < SUPPRESS_TIME)
             return;
         suppressUpdateFlag = 0;
-        context.startService(new Intent(context,
-                TasksWidget.WidgetUpdateService.class));
+        fullUpdatePending |= full;
+        if (updateScheduled)
+            return;
+        updateScheduled = true;
+
+        final Context appContext = context.getApplicationContext();
+        updateExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                boolean full;
+                synchronized(TasksWidget.class) {
+                    full = fullUpdatePending;
+                    fullUpdatePending = false;
+                    updateScheduled = false;
+                }
+                try {
+                    if (full || !supportsLists())
+                        appContext.startService(new Intent(appContext,
+                                TasksWidget.WidgetUpdateService.class));
+                    else
+                        notifyListsChanged(appContext);
+                } catch (RuntimeException e) {
+                    Log.e("astrid-update-widget", "widget update error", e); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+        }, UPDATE_DELAY, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -103,6 +169,141 @@ public class TasksWidget extends AppWidgetProvider {
         context.startService(intent);
     }
 
+    /**
+     * @return true if widgets show a scrolling list backed by
+     *         {@link WidgetListService}, available since Honeycomb
+     */
+    static boolean supportsLists() {
+        return AndroidUtilities.getSdkVersion() >= 11;
+    }
+
+    /**
+     * Back the list of a widget with the given service. The two argument
+     * form only exists since Ice Cream Sandwich
+     */
+    @SuppressWarnings("deprecation")
+    static void setRemoteAdapter(RemoteViews list, int widgetId, Intent adapterIntent) {
+        if (AndroidUtilities.getSdkVersion() >= 14)
+            list.setRemoteAdapter(R.id.widget_list, adapterIntent);
+        else
+            list.setRemoteAdapter(widgetId, R.id.widget_list, adapterIntent);
+    }
+
+    private static void notifyListsChanged(Context context) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, TasksWidget.class));
+        if (ids.length > 0)
+            manager.notifyAppWidgetViewDataChanged(ids, R.id.widget_list);
+    }
+
+    /**
+     * @return query for the first tasks of a widget's filter, in the sort
+     *         order chosen in the task list
+     */
+    @SuppressWarnings("nls")
+    static String getQuery(Context context, Filter filter, int widgetId, int limit) {
+        SharedPreferences publicPrefs = AstridPreferences.getPublicPrefs(context);
+        int flags = publicPrefs.getInt(SortHelper.PREF_SORT_FLAGS, 0);
+        int sort = publicPrefs.getInt(SortHelper.PREF_SORT_SORT, 0);
+        String query = SortHelper.adjustQueryForFlagsAndSort(
+                filter.getSqlQuery(), flags, sort).replaceAll("LIMIT \\d+", "") + " LIMIT " + limit;
+
+        String tagName = Preferences.getStringValue(WidgetConfigActivity.PREF_TITLE + widgetId);
+        return SubtasksHelper.applySubtasksToWidgetFilter(filter, query, tagName, limit);
+    }
+
+    /**
+     * @return widget row showing a task's title, colored by its state
+     */
+    static RemoteViews buildRow(Resources r, Task task) {
+        int textColor = r
+                .getColor(isDarkTheme() ? R.color.widget_text_color_dark : R.color.widget_text_color_light);
+        if (isLegacyTheme())
+            textColor = r.getColor(android.R.color.white);
+
+        if(task.isCompleted())
+            textColor = r.getColor(R.color.task_list_done);
+        else if(task.hasDueDate() && task.isOverdue())
+            textColor = r.getColor(R.color.task_list_overdue);
+
+        RemoteViews row = new RemoteViews(Constants.PACKAGE, R.layout.widget_row);
+
+        row.setTextViewText(R.id.text, task.getValue(Task.TITLE));
+        row.setTextColor(R.id.text, textColor);
+        return row;
+    }
+
+    private static boolean isDarkTheme() {
+        int theme = ThemeService.getWidgetTheme();
+        return (theme == R.style.Theme || theme == R.style.Theme_Transparent);
+    }
+
+    private static boolean isLegacyTheme() {
+        int theme = ThemeService.getWidgetTheme();
+        return theme == THEME_LEGACY;
+    }
+
+    /**
+     * Read the filter shown by a widget, rebuilding it if its tag was renamed
+     */
+    static Filter getFilter(Context context, int widgetId, TagDataService tagDataService) {
+
+        // base our filter off the inbox filter, replace stuff if we have it
+        Filter filter = CoreFilterExposer.buildInboxFilter(context.getResources());
+        String sql = Preferences.getStringValue(WidgetConfigActivity.PREF_SQL + widgetId);
+        if(sql != null)
+            filter.setSqlQuery(sql);
+        String title = Preferences.getStringValue(WidgetConfigActivity.PREF_TITLE + widgetId);
+        if(title != null)
+            filter.title = title;
+        String contentValues = Preferences.getStringValue(WidgetConfigActivity.PREF_VALUES + widgetId);
+        if(contentValues != null)
+            filter.valuesForNewTasks = AndroidUtilities.contentValuesFromSerializedString(contentValues);
+
+        String customComponent = Preferences.getStringValue(WidgetConfigActivity.PREF_CUSTOM_INTENT
+                + widgetId);
+        if (customComponent != null) {
+            ComponentName component = ComponentName.unflattenFromString(customComponent);
+            filter = new FilterWithCustomIntent(filter.title, filter.title, filter.getSqlQuery(), filter.valuesForNewTasks);
+            ((FilterWithCustomIntent) filter).customTaskList = component;
+            String serializedExtras = Preferences.getStringValue(WidgetConfigActivity.PREF_CUSTOM_EXTRAS
+                    + widgetId);
+            Bundle extras = AndroidUtilities.bundleFromSerializedString(serializedExtras);
+            ((FilterWithCustomIntent) filter).customExtras = extras;
+        }
+
+        // Validate tagData
+        long id = Preferences.getLong(WidgetConfigActivity.PREF_TAG_ID + widgetId, 0);
+        TagData tagData = null;
+        if (id > 0) {
+            tagData = tagDataService.fetchById(id, TagData.ID, TagData.NAME, TagData.TASK_COUNT, TagData.UUID, TagData.PICTURE, TagData.USER_ID, TagData.MEMBER_COUNT);
+            if (tagData != null && !tagData.getValue(TagData.NAME).equals(filter.title)) { // Tag has been renamed; rebuild filter
+                filter = TagFilterExposer.filterFromTagData(context, tagData);
+                Preferences.setString(WidgetConfigActivity.PREF_SQL + widgetId, filter.getSqlQuery());
+                Preferences.setString(WidgetConfigActivity.PREF_TITLE + widgetId, filter.title);
+                ContentValues newTaskValues = filter.valuesForNewTasks;
+                String contentValuesString = null;
+                if(newTaskValues != null)
+                    contentValuesString = AndroidUtilities.contentValuesToSerializedString(newTaskValues);
+                Preferences.setString(WidgetConfigActivity.PREF_VALUES + widgetId, contentValuesString);
+                if (filter instanceof FilterWithCustomIntent) {
+                    String flattenedExtras = AndroidUtilities.bundleToSerializedString(((FilterWithCustomIntent) filter).customExtras);
+                    if (flattenedExtras != null)
+                        Preferences.setString(WidgetConfigActivity.PREF_CUSTOM_EXTRAS + widgetId,
+                                flattenedExtras);
+                }
+            }
+        } else {
+            tagData = tagDataService.getTagByName(filter.title, TagData.ID);
+            if (tagData != null)
+                Preferences.setLong(WidgetConfigActivity.PREF_TAG_ID + widgetId, tagData.getId());
+        }
+
+        if (SubtasksHelper.isTagFilter(filter))
+            ((FilterWithCustomIntent) filter).customTaskList = new ComponentName(context, TagViewFragment.class); // In case legacy widget was created with subtasks fragment
+        return filter;
+    }
+
     public static class ConfigActivity extends WidgetConfigActivity {
         @Override
         public void updateWidget() {
@@ -114,12 +315,6 @@ public class TasksWidget extends AppWidgetProvider {
 
         public static final String EXTRA_WIDGET_ID = "widget_id"; //$NON-NLS-1$
 
-        @Autowired
-        Database database;
-
-        @Autowired
-        TaskService taskService;
-
         @Autowired
         TagDataService tagDataService;
 
@@ -175,70 +370,43 @@ public class TasksWidget extends AppWidgetProvider {
 
             int numberOfTasks = getNumberOfTasks();
 
-            TodorooCursor<Task> cursor = null;
+            RemoteViews list = null;
             Filter filter = null;
             try {
-                filter = getFilter(context, widgetId);
-                if (SubtasksHelper.isTagFilter(filter))
-                    ((FilterWithCustomIntent) filter).customTaskList = new ComponentName(context, TagViewFragment.class); // In case legacy widget was created with subtasks fragment
+                filter = getFilter(context, widgetId, tagDataService);
                 views.setTextViewText(R.id.widget_title, filter.title);
                 views.removeAllViews(R.id.taskbody);
 
-                SharedPreferences publicPrefs = AstridPreferences.getPublicPrefs(this);
-                int flags = publicPrefs.getInt(SortHelper.PREF_SORT_FLAGS, 0);
-                int sort = publicPrefs.getInt(SortHelper.PREF_SORT_SORT, 0);
-                String query = SortHelper.adjustQueryForFlagsAndSort(
-                        filter.getSqlQuery(), flags, sort).replaceAll("LIMIT \\d+", "") + " LIMIT " + numberOfTasks;
-
-                String tagName = Preferences.getStringValue(WidgetConfigActivity.PREF_TITLE + widgetId);
-                query = SubtasksHelper.applySubtasksToWidgetFilter(filter, query, tagName, numberOfTasks);
-
-                database.openForReading();
-                cursor = taskService.fetchFiltered(query, null, Task.ID, Task.TITLE, Task.DUE_DATE, Task.COMPLETION_DATE);
-                Task task = new Task();
-                int i = 0;
-                for (i = 0; i < cursor.getCount() && i < numberOfTasks; i++) {
-                    cursor.moveToPosition(i);
-                    task.readFromCursor(cursor);
-
-                    String textContent = "";
+                if (supportsLists()) {
+                    // rows are loaded by the list service and refreshed on their own
+                    Intent adapterIntent = new Intent(context, WidgetListService.class);
+                    adapterIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, widgetId);
+                    adapterIntent.setData(Uri.parse(adapterIntent.toUri(Intent.URI_INTENT_SCHEME)));
+                    list = new RemoteViews(Constants.PACKAGE, R.layout.widget_list);
+                    setRemoteAdapter(list, widgetId, adapterIntent);
+                } else {
+                    String query = getQuery(context, filter, widgetId, numberOfTasks);
+                    List<Task> tasks = WidgetTaskCache.getInstance().getTasks(query);
                     Resources r = context.getResources();
-                    int textColor = r
-                            .getColor(isDarkTheme() ? R.color.widget_text_color_dark : R.color.widget_text_color_light);
-                    if (isLegacyTheme())
-                        textColor = r.getColor(android.R.color.white);
-
-                    textContent = task.getValue(Task.TITLE);
-
-                    if(task.isCompleted())
-                        textColor = r.getColor(R.color.task_list_done);
-                    else if(task.hasDueDate() && task.isOverdue())
-                        textColor = r.getColor(R.color.task_list_overdue);
-
-                    RemoteViews row = new RemoteViews(Constants.PACKAGE, R.layout.widget_row);
-
-                    row.setTextViewText(R.id.text, textContent);
-                    row.setTextColor(R.id.text, textColor);
-
-                    views.addView(R.id.taskbody, row);
-
-                    RemoteViews separator = new RemoteViews(Constants.PACKAGE, R.layout.widget_separator);
-                    boolean isLastRow = (i == cursor.getCount() - 1) || (i == numberOfTasks - 1);
-                    if (!isLastRow)
-                        views.addView(R.id.taskbody, separator);
-                }
-                for (; i < numberOfTasks; i++) {
-                    RemoteViews row = new RemoteViews(Constants.PACKAGE, R.layout.widget_row);
-                    row.setViewVisibility(R.id.text, View.INVISIBLE);
-                    views.addView(R.id.taskbody, row);
+                    int i = 0;
+                    for (i = 0; i < tasks.size() && i < numberOfTasks; i++) {
+                        views.addView(R.id.taskbody, buildRow(r, tasks.get(i)));
+
+                        RemoteViews separator = new RemoteViews(Constants.PACKAGE, R.layout.widget_separator);
+                        boolean isLastRow = (i == tasks.size() - 1) || (i == numberOfTasks - 1);
+                        if (!isLastRow)
+                            views.addView(R.id.taskbody, separator);
+                    }
+                    for (; i < numberOfTasks; i++) {
+                        RemoteViews row = new RemoteViews(Constants.PACKAGE, R.layout.widget_row);
+                        row.setViewVisibility(R.id.text, View.INVISIBLE);
+                        views.addView(R.id.taskbody, row);
+                    }
                 }
 
             } catch (Exception e) {
                 // can happen if database is not ready
                 Log.e("WIDGET-UPDATE", "Error updating widget", e);
-            } finally {
-                if(cursor != null)
-                    cursor.close();
             }
 
             Intent listIntent = new Intent(context, TaskListActivity.class);
@@ -266,6 +434,11 @@ public class TasksWidget extends AppWidgetProvider {
                     listIntent, PendingIntent.FLAG_CANCEL_CURRENT);
             if (pListIntent != null)
                 views.setOnClickPendingIntent(R.id.taskbody, pListIntent);
+            if (list != null) {
+                if (pListIntent != null)
+                    list.setPendingIntentTemplate(R.id.widget_list, pListIntent);
+                views.addView(R.id.taskbody, list);
+            }
 
 
             Intent editIntent;
@@ -307,17 +480,6 @@ public class TasksWidget extends AppWidgetProvider {
             return views;
         }
 
-        private boolean isDarkTheme() {
-            int theme = ThemeService.getWidgetTheme();
-            return (theme == R.style.Theme || theme == R.style.Theme_Transparent);
-        }
-
-        private boolean isLegacyTheme() {
-            int theme = ThemeService.getWidgetTheme();
-            return theme == THEME_LEGACY;
-        }
-
-
         /**
          * The reason we use a bunch of different but almost identical layouts is that there is a bug with
          * Android 2.1 (level 7) that doesn't allow setting backgrounds on remote views. I know it's lame,
@@ -380,60 +542,96 @@ public class TasksWidget extends AppWidgetProvider {
                 return 5;
         }
 
-        private Filter getFilter(Context context, int widgetId) {
-
-            // base our filter off the inbox filter, replace stuff if we have it
-            Filter filter = CoreFilterExposer.buildInboxFilter(getResources());
-            String sql = Preferences.getStringValue(WidgetConfigActivity.PREF_SQL + widgetId);
-            if(sql != null)
-                filter.setSqlQuery(sql);
-            String title = Preferences.getStringValue(WidgetConfigActivity.PREF_TITLE + widgetId);
-            if(title != null)
-                filter.title = title;
-            String contentValues = Preferences.getStringValue(WidgetConfigActivity.PREF_VALUES + widgetId);
-            if(contentValues != null)
-                filter.valuesForNewTasks = AndroidUtilities.contentValuesFromSerializedString(contentValues);
-
-            String customComponent = Preferences.getStringValue(WidgetConfigActivity.PREF_CUSTOM_INTENT
-                    + widgetId);
-            if (customComponent != null) {
-                ComponentName component = ComponentName.unflattenFromString(customComponent);
-                filter = new FilterWithCustomIntent(filter.title, filter.title, filter.getSqlQuery(), filter.valuesForNewTasks);
-                ((FilterWithCustomIntent) filter).customTaskList = component;
-                String serializedExtras = Preferences.getStringValue(WidgetConfigActivity.PREF_CUSTOM_EXTRAS
-                        + widgetId);
-                Bundle extras = AndroidUtilities.bundleFromSerializedString(serializedExtras);
-                ((FilterWithCustomIntent) filter).customExtras = extras;
-            }
+    }
 
-            // Validate tagData
-            long id = Preferences.getLong(WidgetConfigActivity.PREF_TAG_ID + widgetId, 0);
-            TagData tagData = null;
-            if (id > 0) {
-                tagData = tagDataService.fetchById(id, TagData.ID, TagData.NAME, TagData.TASK_COUNT, TagData.UUID, TagData.PICTURE, TagData.USER_ID, TagData.MEMBER_COUNT);
-                if (tagData != null && !tagData.getValue(TagData.NAME).equals(filter.title)) { // Tag has been renamed; rebuild filter
-                    filter = TagFilterExposer.filterFromTagData(context, tagData);
-                    Preferences.setString(WidgetConfigActivity.PREF_SQL + widgetId, filter.getSqlQuery());
-                    Preferences.setString(WidgetConfigActivity.PREF_TITLE + widgetId, filter.title);
-                    ContentValues newTaskValues = filter.valuesForNewTasks;
-                    String contentValuesString = null;
-                    if(newTaskValues != null)
-                        contentValuesString = AndroidUtilities.contentValuesToSerializedString(newTaskValues);
-                    Preferences.setString(WidgetConfigActivity.PREF_VALUES + widgetId, contentValuesString);
-                    if (filter instanceof FilterWithCustomIntent) {
-                        String flattenedExtras = AndroidUtilities.bundleToSerializedString(((FilterWithCustomIntent) filter).customExtras);
-                        if (flattenedExtras != null)
-                            Preferences.setString(WidgetConfigActivity.PREF_CUSTOM_EXTRAS + widgetId,
-                                    flattenedExtras);
-                    }
-                }
-            } else {
-                tagData = tagDataService.getTagByName(filter.title, TagData.ID);
-                if (tagData != null)
-                    Preferences.setLong(WidgetConfigActivity.PREF_TAG_ID + widgetId, tagData.getId());
+    /**
+     * Supplies the rows of scrolling widget lists. Tasks are read through
+     * {@link WidgetTaskCache}, so widgets showing the same filter share one
+     * query, and rows keep task ids so that only changed rows are redrawn
+     */
+    public static class WidgetListService extends RemoteViewsService {
+
+        @Override
+        public RemoteViewsFactory onGetViewFactory(Intent intent) {
+            ContextManager.setContext(this);
+            int widgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                    AppWidgetManager.INVALID_APPWIDGET_ID);
+            return new WidgetListFactory(getApplicationContext(), widgetId);
+        }
+
+    }
+
+    private static class WidgetListFactory implements RemoteViewsService.RemoteViewsFactory {
+
+        @Autowired
+        TagDataService tagDataService;
+
+        private final Context context;
+
+        private final int widgetId;
+
+        private List<Task> tasks = Collections.emptyList();
+
+        public WidgetListFactory(Context context, int widgetId) {
+            DependencyInjectionService.getInstance().inject(this);
+            this.context = context;
+            this.widgetId = widgetId;
+        }
+
+        @Override
+        public void onCreate() {
+            // tasks are loaded in onDataSetChanged
+        }
+
+        @Override
+        public void onDataSetChanged() {
+            try {
+                Filter filter = getFilter(context, widgetId, tagDataService);
+                tasks = WidgetTaskCache.getInstance().getTasks(getQuery(context, filter, widgetId, LIST_LIMIT));
+            } catch (Exception e) {
+                // can happen if database is not ready
+                Log.e("WIDGET-UPDATE", "Error loading widget tasks", e); //$NON-NLS-1$ //$NON-NLS-2$
             }
+        }
+
+        @Override
+        public void onDestroy() {
+            tasks = Collections.emptyList();
+        }
 
-            return filter;
+        @Override
+        public int getCount() {
+            return tasks.size();
+        }
+
+        @Override
+        public RemoteViews getViewAt(int position) {
+            if (position >= tasks.size())
+                return null;
+            RemoteViews row = buildRow(context.getResources(), tasks.get(position));
+            // opens the list through the template set on the widget
+            row.setOnClickFillInIntent(R.id.text, new Intent());
+            return row;
+        }
+
+        @Override
+        public RemoteViews getLoadingView() {
+            return null;
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return 1;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position < tasks.size() ? tasks.get(position).getId() : position;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
         }
 
     }
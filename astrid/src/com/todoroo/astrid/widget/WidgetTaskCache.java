@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.widget;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.content.ContentValues;
+
+import com.todoroo.andlib.data.AbstractDatabase.TableUpdateListener;
+import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.service.DependencyInjectionService;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.dao.Database;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.service.TaskService;
+
+/**
+ * Tasks shown in widgets, by widget query. Widgets showing the same filter
+ * with the same sort share one query. Results are dropped when a table the
+ * query reads is written to, and after {@link #MAX_AGE}, since filters may
+ * depend on the current time.
+ */
+public class WidgetTaskCache {
+
+    /** How long results stay current without writes */
+    static final long MAX_AGE = DateUtilities.ONE_MINUTE;
+
+    /** Number of queries whose results are kept */
+    static final int MAX_ENTRIES = 8;
+
+    /** Task properties shown in widget rows */
+    public static final Property<?>[] PROPERTIES = new Property<?>[] {
+        Task.ID, Task.TITLE, Task.DUE_DATE, Task.COMPLETION_DATE
+    };
+
+    private static final class Entry {
+        final List<Task> tasks;
+
+        final long loadedAt;
+
+        Entry(List<Task> tasks, long loadedAt) {
+            this.tasks = tasks;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static WidgetTaskCache instance = null;
+
+    public static synchronized WidgetTaskCache getInstance() {
+        if(instance == null)
+            instance = new WidgetTaskCache();
+        return instance;
+    }
+
+    @Autowired Database database;
+
+    @Autowired TaskService taskService;
+
+    /** Results by query, least recently used first */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /** Incremented on every invalidation, so that a result read before a write is not kept */
+    private int generation = 0;
+
+    private final TableUpdateListener tableListener = new TableUpdateListener() {
+        @Override
+        public void onTableUpdated(String table, ContentValues values) {
+            invalidate(table);
+        }
+    };
+
+    public WidgetTaskCache() {
+        DependencyInjectionService.getInstance().inject(this);
+        database.addTableListener(tableListener);
+    }
+
+    /**
+     * Stop following database changes
+     */
+    public void detach() {
+        database.removeTableListener(tableListener);
+    }
+
+    /**
+     * Read the tasks of a widget query, running it only if no current
+     * result is cached
+     *
+     * @return tasks with {@link #PROPERTIES} read
+     */
+    public List<Task> getTasks(String query) {
+        int queryGeneration;
+        synchronized(this) {
+            Entry entry = entries.get(query);
+            if(entry != null && DateUtilities.now() - entry.loadedAt < MAX_AGE)
+                return entry.tasks;
+            queryGeneration = generation;
+        }
+
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        database.openForReading();
+        TodorooCursor<Task> cursor = taskService.fetchFiltered(query, null, PROPERTIES);
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+                tasks.add(new Task(cursor));
+        } finally {
+            cursor.close();
+        }
+
+        List<Task> result = Collections.unmodifiableList(tasks);
+        synchronized(this) {
+            if(generation == queryGeneration)
+                entries.put(query, new Entry(result, DateUtilities.now()));
+        }
+        return result;
+    }
+
+    /**
+     * Drop results of queries that may read the given table. Every query
+     * reads tasks
+     */
+    synchronized void invalidate(String table) {
+        generation++;
+        String name = table.toLowerCase(Locale.US);
+        if(Task.TABLE.name.equals(name)) {
+            entries.clear();
+            return;
+        }
+        for(String query : new ArrayList<String>(entries.keySet()))
+            if(query.toLowerCase(Locale.US).contains(name))
+                entries.remove(query);
+    }
+
+    /**
+     * Drop all results
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.HashMap;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class IndexTests extends DatabaseTestCase {
+
+    public void testCreateSql() {
+        assertEquals("CREATE INDEX md_kv1 ON metadata(key,value)",
+                Index.on("md_kv1", Metadata.TABLE, Metadata.KEY, Metadata.VALUE1).getCreateSql());
+        assertEquals("CREATE UNIQUE INDEX t_rid ON tasks(remoteId)",
+                Index.unique("t_rid", Task.TABLE, Task.UUID).getCreateSql());
+    }
+
+    public void testDeclaredIndexesAreCreated() {
+        HashMap<String, String> indexes = readIndexes();
+        for(Table table : database.getTables()) {
+            for(Index index : table.getIndexes())
+                assertEquals(index.getCreateSql(), indexes.get(index.name));
+        }
+        assertTrue(indexes.containsKey("t_active"));
+        assertTrue(indexes.containsKey("to_eid"));
+    }
+
+    public void testUpdateIndexesRepairsDrift() {
+        SQLiteDatabase db = database.getDatabase();
+        db.execSQL("DROP INDEX md_kv1");
+        db.execSQL("DROP INDEX t_active");
+        db.execSQL("CREATE INDEX t_active ON tasks(deleted)");
+        db.execSQL("CREATE INDEX stray ON tasks(title)");
+
+        database.updateIndexes();
+
+        HashMap<String, String> indexes = readIndexes();
+        assertEquals(Metadata.INDEXES[2].getCreateSql(), indexes.get("md_kv1"));
+        assertEquals(Task.INDEXES[1].getCreateSql(), indexes.get("t_active"));
+        assertFalse(indexes.containsKey("stray"));
+    }
+
+    private HashMap<String, String> readIndexes() {
+        HashMap<String, String> indexes = new HashMap<String, String>();
+        Cursor cursor = database.getDatabase().rawQuery("SELECT name, sql FROM sqlite_master " +
+                "WHERE type = 'index' AND sql IS NOT NULL", null);
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+                indexes.put(cursor.getString(0), cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+        return indexes;
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import android.content.ContentValues;
+import android.os.BadParcelableException;
+import android.os.Parcel;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class ModelParcelCodecTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    private Task savedTask() {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "parcel me");
+        task.setValue(Task.DUE_DATE, 1357000000000L);
+        task.setValue(Task.IMPORTANCE, Task.IMPORTANCE_MUST_DO);
+        task.setValue(Task.NOTES, "");
+        taskDao.createNew(task);
+
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.PROPERTIES).where(Task.ID.eq(task.getId())));
+        try {
+            cursor.moveToFirst();
+            return new Task(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Task roundTrip(Task task) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            task.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return Task.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public void testRoundTrip() {
+        Task task = savedTask();
+        task.setValue(Task.TITLE, "changed");
+        task.setValue(Task.COMPLETION_DATE, 5L);
+
+        Task copy = roundTrip(task);
+        assertEquals(task.getDatabaseValues(), copy.getDatabaseValues());
+        assertEquals(task.getSetValues(), copy.getSetValues());
+        assertEquals("changed", copy.getValue(Task.TITLE));
+        assertEquals(Long.valueOf(1357000000000L), copy.getValue(Task.DUE_DATE));
+        assertEquals(Integer.valueOf(Task.IMPORTANCE_MUST_DO), copy.getValue(Task.IMPORTANCE));
+        assertEquals(task.getId(), copy.getId());
+    }
+
+    public void testEmptyAndUndeclaredValues() {
+        Task empty = roundTrip(new Task());
+        assertNull(empty.getSetValues());
+        assertNull(empty.getDatabaseValues());
+
+        ContentValues values = new ContentValues();
+        values.put("not_a_column", 7L);
+        values.putNull(Task.RECURRENCE.name);
+        values.put(Task.FLAGS.name, 3);
+        Task task = new Task();
+        task.mergeWith(values);
+
+        Task copy = roundTrip(task);
+        assertEquals(values, copy.getSetValues());
+    }
+
+    public void testReadsPreviousFormat() {
+        Task task = savedTask();
+        task.setValue(Task.TITLE, "old format");
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(task.getSetValues(), 0);
+            parcel.writeParcelable(task.getDatabaseValues(), 0);
+            parcel.setDataPosition(0);
+            Task copy = Task.CREATOR.createFromParcel(parcel);
+            assertEquals(task.getSetValues(), copy.getSetValues());
+            assertEquals(task.getDatabaseValues(), copy.getDatabaseValues());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public void testRejectsNewerVersions() {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeInt(ModelParcelCodec.MAGIC | (ModelParcelCodec.VERSION + 1));
+            parcel.writeInt(0);
+            parcel.setDataPosition(0);
+            Task.CREATOR.createFromParcel(parcel);
+            fail("read parcel of unknown version");
+        } catch (BadParcelableException e) {
+            // expected
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.todoroo.andlib.data.ModelStream.Callback;
+import com.todoroo.andlib.data.ModelStream.ChunkCallback;
+import com.todoroo.andlib.data.ModelStream.Mapper;
+import com.todoroo.andlib.data.ModelStream.Predicate;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Order;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+public class ModelStreamTests extends DatabaseTestCase {
+
+    private static final int TASKS = 25;
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        for(int i = 0; i < TASKS; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, "task " + i);
+            task.setValue(Task.IMPORTANCE, i % 2);
+            taskDao.createNew(task);
+        }
+    }
+
+    private ModelStream<Task> stream() {
+        return taskDao.stream(Query.select(Task.ID, Task.TITLE, Task.IMPORTANCE).
+                orderBy(Order.asc(Task.ID)));
+    }
+
+    public void testForEachReusesModelAndCloses() {
+        final ArrayList<Task> seen = new ArrayList<Task>();
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID, Task.TITLE));
+        int count = taskDao.stream(cursor).forEach(new Callback<Task>() {
+            public boolean process(Task task) {
+                if(!seen.isEmpty())
+                    assertSame(seen.get(0), task);
+                seen.add(task);
+                return true;
+            }
+        });
+        assertEquals(TASKS, count);
+        assertTrue(cursor.isClosed());
+    }
+
+    public void testEarlyTermination() {
+        int count = stream().forEach(new Callback<Task>() {
+            public boolean process(Task task) {
+                return !task.getValue(Task.TITLE).equals("task 4");
+            }
+        });
+        assertEquals(5, count);
+    }
+
+    public void testFilterAndMap() {
+        List<String> titles = stream().filter(new Predicate<Task>() {
+            public boolean matches(Task task) {
+                return task.getValue(Task.IMPORTANCE) == 0;
+            }
+        }).map(new Mapper<Task, String>() {
+            public String map(Task task) {
+                return task.getValue(Task.TITLE);
+            }
+        });
+        assertEquals((TASKS + 1) / 2, titles.size());
+        assertEquals("task 0", titles.get(0));
+        assertEquals("task 2", titles.get(1));
+    }
+
+    public void testChunked() {
+        final ArrayList<Integer> sizes = new ArrayList<Integer>();
+        int count = stream().chunked(10, new ChunkCallback<Task>() {
+            public boolean process(List<Task> chunk) {
+                sizes.add(chunk.size());
+                return true;
+            }
+        });
+        assertEquals(TASKS, count);
+        assertEquals(3, sizes.size());
+        assertEquals(10, sizes.get(0).intValue());
+        assertEquals(5, sizes.get(2).intValue());
+    }
+
+    public void testFirst() {
+        Task first = stream().first();
+        assertEquals("task 0", first.getValue(Task.TITLE));
+    }
+
+}
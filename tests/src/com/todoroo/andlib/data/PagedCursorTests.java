@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.util.ArrayList;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.todoroo.andlib.data.PagedCursor.PageSource;
+import com.todoroo.andlib.test.TestUtilities;
+import com.todoroo.andlib.test.TodorooTestCase;
+
+public class PagedCursorTests extends TodorooTestCase {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final int MAX_PAGES = 3;
+
+    private static final String[] COLUMNS = new String[] { "_id" };
+
+    /** Rows of the result, read by the page source */
+    private final ArrayList<Long> rows = new ArrayList<Long>();
+
+    private int fetches = 0;
+
+    private final PageSource source = new PageSource() {
+        @Override
+        public Cursor fetch(int offset, int limit) {
+            MatrixCursor page = new MatrixCursor(COLUMNS);
+            synchronized(rows) {
+                fetches++;
+                for(int i = offset; i < rows.size() && i < offset + limit; i++)
+                    page.addRow(new Object[] { rows.get(i) });
+            }
+            return page;
+        }
+    };
+
+    private void setRows(int number) {
+        synchronized(rows) {
+            rows.clear();
+            for(int i = 0; i < number; i++)
+                rows.add(1000L + i);
+        }
+    }
+
+    private int fetches() {
+        synchronized(rows) {
+            return fetches;
+        }
+    }
+
+    private PagedCursor newCursor() {
+        PagedCursor cursor = new PagedCursor(COLUMNS, source, PAGE_SIZE, MAX_PAGES);
+        waitForLoads(cursor);
+        return cursor;
+    }
+
+    private void waitForLoads(PagedCursor cursor) {
+        for(int i = 0; i < 500 && cursor.isLoading(); i++)
+            TestUtilities.sleepDeep(10);
+        assertFalse(cursor.isLoading());
+    }
+
+    /** Visit every row, letting pages load as the end is approached */
+    private void scrollToEnd(PagedCursor cursor) {
+        for(int i = 0; i < cursor.getCount(); i++) {
+            assertTrue(cursor.moveToPosition(i));
+            assertEquals(1000L + i, cursor.getLong(0));
+            waitForLoads(cursor);
+        }
+    }
+
+    public void testPagesLoadAsRowsAreVisited() {
+        setRows(125);
+        PagedCursor cursor = newCursor();
+        try {
+            assertEquals(PAGE_SIZE, cursor.getCount());
+            assertFalse(cursor.isComplete());
+
+            scrollToEnd(cursor);
+            assertEquals(125, cursor.getCount());
+            assertTrue(cursor.isComplete());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testDroppedPagesAreReadAgain() {
+        setRows(100);
+        PagedCursor cursor = newCursor();
+        try {
+            scrollToEnd(cursor);
+
+            // the last page is kept
+            int before = fetches();
+            assertTrue(cursor.moveToPosition(95));
+            assertEquals(1095L, cursor.getLong(0));
+            assertEquals(before, fetches());
+
+            // the first was dropped to keep at most MAX_PAGES, and is read
+            // again in the background
+            assertTrue(cursor.moveToPosition(5));
+            assertFalse(cursor.isRowLoaded());
+            assertTrue(cursor.isNull(0));
+            waitForLoads(cursor);
+            assertTrue(fetches() > before);
+            assertTrue(cursor.moveToPosition(5));
+            assertTrue(cursor.isRowLoaded());
+            assertEquals(1005L, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRequeryAfterShrink() {
+        setRows(100);
+        PagedCursor cursor = newCursor();
+        try {
+            scrollToEnd(cursor);
+
+            // kept pages are all past the new end
+            setRows(35);
+            cursor.requery();
+            waitForLoads(cursor);
+            assertEquals(35, cursor.getCount());
+            assertTrue(cursor.isComplete());
+            assertTrue(cursor.moveToPosition(34));
+            assertEquals(1034L, cursor.getLong(0));
+            assertTrue(cursor.moveToPosition(0));
+            assertEquals(1000L, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRequeryAfterShrinkToPageBoundary() {
+        setRows(100);
+        PagedCursor cursor = newCursor();
+        try {
+            scrollToEnd(cursor);
+
+            setRows(30);
+            cursor.requery();
+            waitForLoads(cursor);
+            assertEquals(30, cursor.getCount());
+            assertTrue(cursor.isComplete());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRequeryAfterShrinkToNothing() {
+        setRows(100);
+        PagedCursor cursor = newCursor();
+        try {
+            scrollToEnd(cursor);
+
+            setRows(0);
+            cursor.requery();
+            waitForLoads(cursor);
+            assertEquals(0, cursor.getCount());
+            assertTrue(cursor.isComplete());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRequeryAfterGrow() {
+        setRows(25);
+        PagedCursor cursor = newCursor();
+        try {
+            scrollToEnd(cursor);
+            assertEquals(25, cursor.getCount());
+            assertTrue(cursor.isComplete());
+
+            setRows(65);
+            cursor.requery();
+            waitForLoads(cursor);
+            assertFalse(cursor.isComplete());
+
+            scrollToEnd(cursor);
+            assertEquals(65, cursor.getCount());
+            assertTrue(cursor.isComplete());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testWithUniqueOrder() {
+        assertEquals("WHERE a = 1 ORDER BY tasks._id",
+                PagedCursor.withUniqueOrder("WHERE a = 1", "tasks._id"));
+        assertEquals("WHERE a = 1 ORDER BY b DESC, tasks._id",
+                PagedCursor.withUniqueOrder("WHERE a = 1 ORDER BY b DESC", "tasks._id"));
+        assertEquals("WHERE a = 1 order by b, tasks._id",
+                PagedCursor.withUniqueOrder("WHERE a = 1 order by b", "tasks._id"));
+        assertEquals("WHERE a IN (SELECT a FROM b ORDER BY c) ORDER BY tasks._id",
+                PagedCursor.withUniqueOrder("WHERE a IN (SELECT a FROM b ORDER BY c)", "tasks._id"));
+        assertEquals("WHERE a = 1 ORDER BY UPPER(tasks.title) ASC, tasks._id",
+                PagedCursor.withUniqueOrder("WHERE a = 1 ORDER BY UPPER(tasks.title) ASC", "tasks._id"));
+        assertEquals("WHERE a = 1 ORDER BY (CASE WHEN (b > 0) THEN 1 ELSE 2 END), tasks._id",
+                PagedCursor.withUniqueOrder("WHERE a = 1 ORDER BY (CASE WHEN (b > 0) THEN 1 ELSE 2 END)",
+                        "tasks._id"));
+        assertEquals("WHERE a = ') ORDER BY b' ORDER BY tasks._id",
+                PagedCursor.withUniqueOrder("WHERE a = ') ORDER BY b'", "tasks._id"));
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import com.todoroo.andlib.data.QueryProfiler.Stats;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+public class QueryProfilerTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    private QueryProfiler profiler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        profiler = database.getProfiler();
+        profiler.reset();
+        profiler.setEnabled(true);
+        profiler.setSlowThreshold(-1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        profiler.setEnabled(false);
+        profiler.setSlowThreshold(QueryProfiler.DEFAULT_SLOW_THRESHOLD);
+        profiler.reset();
+        super.tearDown();
+    }
+
+    public void testNormalize() {
+        assertEquals("SELECT * FROM tasks WHERE title = ? AND importance>?",
+                QueryProfiler.normalize("SELECT *  FROM tasks\n WHERE title = 'it''s' AND importance>2"));
+        assertEquals("SELECT col1 FROM t WHERE _id IN (?) LIMIT -?",
+                QueryProfiler.normalize("SELECT col1 FROM t WHERE _id IN (1, 2,3) LIMIT -1"));
+        assertEquals(QueryProfiler.normalize("SELECT a FROM t WHERE b=5"),
+                QueryProfiler.normalize("SELECT a FROM t WHERE b=1234"));
+    }
+
+    public void testFullScanDetection() {
+        assertTrue(QueryProfiler.isFullScan("SCAN TABLE tasks (~100000 rows)"));
+        assertTrue(QueryProfiler.isFullScan("SEARCH TABLE metadata USING INDEX md_tid (task=?)\nSCAN TABLE tasks"));
+        assertFalse(QueryProfiler.isFullScan("SEARCH TABLE tasks USING INTEGER PRIMARY KEY (rowid=?)"));
+        assertFalse(QueryProfiler.isFullScan("SCAN TABLE tasks USING COVERING INDEX t_rid"));
+        assertFalse(QueryProfiler.isFullScan(null));
+    }
+
+    public void testQueriesAreGroupedAndExplained() {
+        for(int i = 0; i < 3; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, "task " + i);
+            taskDao.createNew(task);
+        }
+        profiler.reset();
+
+        for(int i = 0; i < 3; i++) {
+            TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID).where(
+                    Task.TITLE.eq("task " + i)));
+            cursor.close();
+        }
+
+        List<Stats> stats = profiler.getStats();
+        assertEquals(1, stats.size());
+        Stats entry = stats.get(0);
+        assertEquals("Task", entry.getSource());
+        assertEquals(3, entry.getCount());
+        assertEquals(3, entry.getTotalRows());
+        assertNotNull(entry.getPlan());
+        assertTrue(entry.isFullScan());
+
+        StringWriter report = new StringWriter();
+        try {
+            profiler.writeReport(report);
+        } catch (Exception e) {
+            fail(e.toString());
+        }
+        assertTrue(report.toString().contains("FULL SCAN"));
+        assertTrue(report.toString().contains(entry.getShape()));
+    }
+
+    public void testDisabledProfilerRecordsNothing() {
+        profiler.setEnabled(false);
+        taskDao.query(Query.select(Task.ID)).close();
+        assertTrue(profiler.getStats().isEmpty());
+    }
+
+}
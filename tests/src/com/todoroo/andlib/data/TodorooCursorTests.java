@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.data;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Join;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+public class TodorooCursorTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Task task = new Task();
+        task.setValue(Task.TITLE, "cursor");
+        task.setValue(Task.IMPORTANCE, Task.IMPORTANCE_SHOULD_DO);
+        task.setValue(Task.DUE_DATE, 1234L);
+        taskDao.createNew(task);
+    }
+
+    public void testTypedGettersMatchGet() {
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID, Task.TITLE,
+                Task.IMPORTANCE, Task.DUE_DATE));
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("cursor", cursor.getString(Task.TITLE));
+            assertEquals(Task.IMPORTANCE_SHOULD_DO, cursor.getInt(Task.IMPORTANCE));
+            assertEquals(1234L, cursor.getLong(Task.DUE_DATE));
+            for(int i = 0; i < cursor.getProperties().length; i++)
+                assertEquals(cursor.get(cursor.getProperties()[i]), cursor.getAt(i));
+            assertEquals(cursor.getColumnIndexOrThrow(Task.DUE_DATE.name),
+                    cursor.columnIndex(Task.DUE_DATE));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testJoinedProperties() {
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID, Metadata.TASK,
+                Task.TITLE).join(Join.left(Metadata.TABLE, Metadata.TASK.eq(Task.ID))));
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("cursor", cursor.get(Task.TITLE));
+            assertEquals(cursor.getAt(1), cursor.get(Metadata.TASK));
+            assertEquals(cursor.getColumnIndexOrThrow(Task.TITLE.name),
+                    cursor.columnIndex(Task.TITLE));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testNullableProperty() {
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID, Task.UUID));
+        try {
+            assertTrue(cursor.moveToFirst());
+            if(cursor.isNull(cursor.columnIndex(Task.UUID)))
+                assertNull(cursor.get(Task.UUID));
+            else
+                assertNotNull(cursor.get(Task.UUID));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testMissingColumnThrows() {
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID));
+        try {
+            assertTrue(cursor.moveToFirst());
+            cursor.get(Task.TITLE);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.service;
+
+import java.lang.reflect.Field;
+import java.util.LinkedList;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Compares injection with cached per-class plans against the previous
+ * approach of walking every field of the class on each injection
+ */
+@SuppressWarnings("nls")
+public class DependencyInjectionBenchmarkTests extends AndroidTestCase {
+
+    private static final String TAG = "injection-benchmark";
+
+    private static final int OBJECTS = 20000;
+
+    public static class Injectable {
+        // an injectable with no dependencies of its own
+    }
+
+    public static class BaseInjectee {
+        @Autowired protected Injectable first;
+        @Autowired protected Injectable second;
+        protected int unrelated;
+        protected String other;
+    }
+
+    public static class Injectee extends BaseInjectee {
+        @Autowired Injectable third;
+        @Autowired Injectable fourth;
+        @Autowired Injectable fifth;
+        @Autowired Injectable sixth;
+        private long count;
+        private String name;
+        private Object lock;
+    }
+
+    // classes injected once each, so that neither path finds them warm
+
+    public static class ColdBaseInjectee {
+        @Autowired protected Injectable first;
+        @Autowired protected Injectable second;
+        protected int unrelated;
+    }
+
+    public static class ColdInjectee extends ColdBaseInjectee {
+        @Autowired Injectable third;
+        @Autowired Injectable fourth;
+        private long count;
+    }
+
+    public static class LegacyColdBaseInjectee {
+        @Autowired protected Injectable first;
+        @Autowired protected Injectable second;
+        protected int unrelated;
+    }
+
+    public static class LegacyColdInjectee extends LegacyColdBaseInjectee {
+        @Autowired Injectable third;
+        @Autowired Injectable fourth;
+        private long count;
+    }
+
+    private AbstractDependencyInjector injector;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        injector = newInjector();
+    }
+
+    private static AbstractDependencyInjector newInjector() {
+        return new AbstractDependencyInjector() {
+            @Override
+            protected void addInjectables() {
+                injectables.put("first", Injectable.class);
+                injectables.put("second", Injectable.class);
+                injectables.put("third", Injectable.class);
+                injectables.put("fourth", Injectable.class);
+                injectables.put("fifth", Injectable.class);
+                injectables.put("sixth", Injectable.class);
+            }
+        };
+    }
+
+    public void testColdInjection() {
+        // each path gets its own injector, so both create the injectables
+        LinkedList<AbstractDependencyInjector> chain = new LinkedList<AbstractDependencyInjector>();
+        chain.add(newInjector());
+        LegacyInjector legacy = new LegacyInjector(chain);
+
+        long start = System.nanoTime();
+        legacy.inject(new LegacyColdInjectee());
+        long legacyCold = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        legacy.inject(new LegacyColdInjectee());
+        long legacyWarm = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        DependencyInjectionService service = new DependencyInjectionService();
+        service.addInjector(newInjector());
+        service.inject(new ColdInjectee());
+        long cold = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        ColdInjectee check = new ColdInjectee();
+        service.inject(check);
+        long warm = System.nanoTime() - start;
+        assertNotNull(check.first);
+        assertNotNull(check.fourth);
+
+        Log.i(TAG, String.format("field walk: first injection %d us, second %d us; " +
+                "cached plan: first injection %d us, second %d us",
+                legacyCold / 1000, legacyWarm / 1000, cold / 1000, warm / 1000));
+    }
+
+    public void testObjectCreation() {
+        LinkedList<AbstractDependencyInjector> chain = new LinkedList<AbstractDependencyInjector>();
+        chain.add(injector);
+        LegacyInjector legacy = new LegacyInjector(chain);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < OBJECTS; i++)
+            legacy.inject(new Injectee());
+        long before = System.nanoTime() - start;
+
+        DependencyInjectionService service = new DependencyInjectionService();
+        service.addInjector(injector);
+        start = System.nanoTime();
+        for(int i = 0; i < OBJECTS; i++)
+            service.inject(new Injectee());
+        long after = System.nanoTime() - start;
+
+        Injectee check = new Injectee();
+        service.inject(check);
+        assertNotNull(check.first);
+        assertNotNull(check.sixth);
+
+        Log.i(TAG, String.format("create and inject: field walk %d ns/object, cached plan %d ns/object",
+                before / OBJECTS, after / OBJECTS));
+    }
+
+    /**
+     * Previous injection: walk the class hierarchy and look at every
+     * declared field on each call, resolving fields under one lock
+     */
+    private static class LegacyInjector {
+        private final LinkedList<AbstractDependencyInjector> injectors;
+
+        LegacyInjector(LinkedList<AbstractDependencyInjector> injectors) {
+            this.injectors = injectors;
+        }
+
+        void inject(Object caller) {
+            Class<?> cls = caller.getClass();
+            while(cls != null) {
+                if(!cls.getPackage().getName().startsWith("com.todoroo"))
+                    break;
+                for(Field field : cls.getDeclaredFields()) {
+                    if(field.getAnnotation(Autowired.class) != null) {
+                        field.setAccessible(true);
+                        try {
+                            handleField(caller, field);
+                        } catch (IllegalAccessException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+                cls = cls.getSuperclass();
+            }
+        }
+
+        private synchronized void handleField(Object caller, Field field) throws IllegalAccessException {
+            if(field.get(caller) != null)
+                return;
+            for(AbstractDependencyInjector injector : injectors) {
+                Object injection = injector.getInjection(caller, field);
+                if(injection != null) {
+                    field.set(caller, injection);
+                    return;
+                }
+            }
+        }
+    }
+
+}
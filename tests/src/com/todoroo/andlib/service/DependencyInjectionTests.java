@@ -244,4 +244,31 @@ public class DependencyInjectionTests extends AndroidTestCase {
         assertEquals("gotfoo", child.foo);
         assertEquals("hasbar", child.bar);
     }
+
+    public void testInjectorChangesAfterFirstInjection() {
+        DependencyInjectionService service = new DependencyInjectionService();
+        AbstractDependencyInjector first = new AbstractDependencyInjector() {
+            @Override
+            public Object getInjection(Object object, Field field) {
+                return "first";
+            }
+        };
+        service.addInjector(first);
+
+        ChildInjectee child = new ChildInjectee();
+        service.inject(child);
+        assertEquals("first", child.foo);
+
+        // the cached plan must still consult the current injectors
+        service.addInjector(new AbstractDependencyInjector() {
+            @Override
+            public Object getInjection(Object object, Field field) {
+                return "second";
+            }
+        });
+        child = new ChildInjectee();
+        service.inject(child);
+        assertEquals("second", child.foo);
+        assertEquals("second", child.bar);
+    }
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.andlib.sql;
+
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+
+import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+
+public class QueryTest extends AndroidTestCase {
+
+    public void testFrozenQueryRendersSameSql() {
+        Query query = Query.select(Task.ID, Task.TITLE).from(Task.TABLE).
+            where(TaskCriteria.isActive()).orderBy(Order.asc(Task.DUE_DATE));
+        String sql = query.toString();
+        int hash = query.hashCode();
+        query.freeze();
+        assertTrue(query.isFrozen());
+        assertEquals(sql, query.toString());
+        assertEquals(hash, query.hashCode());
+        assertSame(query.toString(), query.toString());
+    }
+
+    public void testFrozenQueryCannotBeModified() {
+        Query query = Query.select(Task.ID).freeze();
+        try {
+            query.where(TaskCriteria.isActive());
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testFromOnFrozenQueryReturnsCopy() {
+        Query query = Query.select(Task.ID).where(TaskCriteria.isActive()).freeze();
+        Query withTable = query.from(Task.TABLE);
+        assertNotSame(query, withTable);
+        assertTrue(withTable.isFrozen());
+        assertEquals(Query.select(Task.ID).from(Task.TABLE).where(TaskCriteria.isActive()).toString(),
+                withTable.toString());
+        assertSame(withTable, withTable.from(Task.TABLE));
+    }
+
+    public void testForkSharesPrefix() {
+        Query base = Query.select(Task.ID, Task.TITLE).from(Task.TABLE).
+            join(Join.inner(Metadata.TABLE, Task.ID.eq(Metadata.TASK))).freeze();
+        Query forked = base.fork().where(Metadata.KEY.eq("tags-tag")).limit(5);
+        Query expected = Query.select(Task.ID, Task.TITLE).from(Task.TABLE).
+            join(Join.inner(Metadata.TABLE, Task.ID.eq(Metadata.TASK))).
+            where(Metadata.KEY.eq("tags-tag")).limit(5);
+        assertEquals(expected.toString(), forked.toString());
+        assertEquals(expected.toBoundQuery().sql, forked.toBoundQuery().sql);
+        assertFalse(forked.isFrozen());
+    }
+
+    public void testForkSharesBoundPrefix() {
+        Query base = Query.select(Task.ID).from(Task.TABLE).
+            join(Join.left(Metadata.TABLE, Criterion.and(Task.ID.eq(Metadata.TASK),
+                    Metadata.KEY.eq("alarm")))).freeze();
+        Query expected = Query.select(Task.ID).from(Task.TABLE).
+            join(Join.left(Metadata.TABLE, Criterion.and(Task.ID.eq(Metadata.TASK),
+                    Metadata.KEY.eq("alarm")))).where(Task.TITLE.eq("title"));
+
+        for(int i = 0; i < 2; i++) {
+            BoundQuery bound = base.fork().where(Task.TITLE.eq("title")).toBoundQuery();
+            assertEquals(expected.toBoundQuery().sql, bound.sql);
+            assertEquals(Arrays.asList(expected.toBoundQuery().args), Arrays.asList(bound.args));
+        }
+        assertEquals(Arrays.asList(Query.select(Task.ID).from(Task.TABLE).
+                join(Join.left(Metadata.TABLE, Criterion.and(Task.ID.eq(Metadata.TASK),
+                        Metadata.KEY.eq("alarm")))).toBoundQuery().args),
+                Arrays.asList(base.toBoundQuery().args));
+    }
+
+    public void testFrozenQueryTemplate() {
+        QueryTemplate template = new QueryTemplate().where(TaskCriteria.completed()).
+            orderBy(Order.asc(Task.DUE_DATE));
+        String sql = template.toString();
+        template.freeze();
+        assertEquals(sql, template.toString());
+        assertEquals(new QueryTemplate().where(TaskCriteria.completed()).
+                orderBy(Order.asc(Task.DUE_DATE)), template);
+        assertEquals(sql + "LIMIT 3", template.fork().where(TaskCriteria.completed()).
+                orderBy(Order.asc(Task.DUE_DATE)).limit(3).toString());
+    }
+
+}
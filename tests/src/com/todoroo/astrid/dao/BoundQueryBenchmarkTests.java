@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.BoundQuery;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Compares per-lookup cost of literal SQL against bound queries that reuse
+ * a compiled statement
+ */
+@SuppressWarnings("nls")
+public class BoundQueryBenchmarkTests extends DatabaseTestCase {
+
+    private static final String TAG = "bound-query-benchmark";
+
+    private static final int TASKS = 500;
+    private static final int ROUNDS = 4;
+
+    @Autowired
+    TaskDao taskDao;
+
+    private long[] ids;
+    private String[] uuids;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ids = new long[TASKS];
+        uuids = new String[TASKS];
+        for(int i = 0; i < TASKS; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, "task " + i);
+            taskDao.createNew(task);
+            ids[i] = task.getId();
+            uuids[i] = task.getUuid();
+        }
+    }
+
+    public void testBoundQueryShape() {
+        BoundQuery first = Query.select(Task.ID).from(Task.TABLE).where(Task.ID.eq(ids[0])).toBoundQuery();
+        BoundQuery second = Query.select(Task.ID).from(Task.TABLE).where(Task.ID.eq(ids[1])).toBoundQuery();
+        assertEquals(first.sql, second.sql);
+        assertEquals(1, first.args.length);
+        assertEquals(ids[0], first.args[0]);
+    }
+
+    public void testFetchById() {
+        long literal = 0, bound = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for(long id : ids) {
+                Query query = Query.select(Task.ID, Task.TITLE).from(Task.TABLE).where(Task.ID.eq(id));
+                Cursor cursor = database.rawQuery(query.toString(), null);
+                try {
+                    assertTrue(cursor.moveToFirst());
+                } finally {
+                    cursor.close();
+                }
+            }
+            literal += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(long id : ids) {
+                TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID, Task.TITLE).where(Task.ID.eq(id)));
+                try {
+                    assertTrue(cursor.moveToFirst());
+                } finally {
+                    cursor.close();
+                }
+            }
+            bound += System.nanoTime() - start;
+        }
+        report("fetch(id)", literal, bound);
+    }
+
+    public void testLocalIdFromUuid() {
+        long literal = 0, bound = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < TASKS; i++) {
+                Query query = Query.select(Task.ID).from(Task.TABLE).where(Task.UUID.eq(uuids[i]));
+                Cursor cursor = database.rawQuery(query.toString(), null);
+                try {
+                    assertTrue(cursor.moveToFirst());
+                    assertEquals(ids[i], cursor.getLong(0));
+                } finally {
+                    cursor.close();
+                }
+            }
+            literal += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(int i = 0; i < TASKS; i++)
+                assertEquals(ids[i], taskDao.localIdFromUuid(uuids[i]));
+            bound += System.nanoTime() - start;
+        }
+        report("localIdFromUuid", literal, bound);
+    }
+
+    public void testUuidFromLocalId() {
+        long literal = 0, bound = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < TASKS; i++) {
+                Query query = Query.select(Task.UUID).from(Task.TABLE).where(Task.ID.eq(ids[i]));
+                Cursor cursor = database.rawQuery(query.toString(), null);
+                try {
+                    assertTrue(cursor.moveToFirst());
+                    assertEquals(uuids[i], cursor.getString(0));
+                } finally {
+                    cursor.close();
+                }
+            }
+            literal += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(int i = 0; i < TASKS; i++)
+                assertEquals(uuids[i], taskDao.uuidFromLocalId(ids[i]));
+            bound += System.nanoTime() - start;
+        }
+        report("uuidFromLocalId", literal, bound);
+    }
+
+    private void report(String name, long literalNanos, long boundNanos) {
+        int lookups = TASKS * ROUNDS;
+        Log.i(TAG, String.format("%s: literal %d us/lookup, bound %d us/lookup",
+                name, literalNanos / lookups / 1000, boundNanos / lookups / 1000));
+    }
+
+}
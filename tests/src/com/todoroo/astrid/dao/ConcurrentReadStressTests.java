@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.util.Log;
+
+import com.todoroo.andlib.data.AbstractDatabase;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Runs sync-style batch writes on one thread while another thread issues
+ * list queries, once against a single connection and once with the read
+ * connection pool, and compares read latency
+ */
+@SuppressWarnings("nls")
+public class ConcurrentReadStressTests extends DatabaseTestCase {
+
+    private static final String TAG = "concurrent-read-stress";
+
+    private static final int BATCH_SIZE = 50;
+
+    private static final int READS = 200;
+
+    public void testReadLatencyWhileWriting() throws Exception {
+        SingleConnectionDatabase single = new SingleConnectionDatabase();
+        single.clear();
+        single.openForWriting();
+        try {
+            long[] before = runStress(single);
+            long[] after = runStress(database);
+            Log.i(TAG, String.format("read latency single connection: median %d us, max %d us; " +
+                    "read pool: median %d us, max %d us",
+                    before[READS / 2] / 1000, before[READS - 1] / 1000,
+                    after[READS / 2] / 1000, after[READS - 1] / 1000));
+        } finally {
+            single.clear();
+        }
+    }
+
+    /**
+     * @return sorted read latencies in nanoseconds
+     */
+    private long[] runStress(AbstractDatabase db) throws Exception {
+        final TaskDao dao = new TaskDao();
+        dao.setDatabase(db);
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final Throwable[] failure = new Throwable[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for(int batch = 0; !stop.get(); batch++) {
+                        ArrayList<Task> tasks = new ArrayList<Task>(BATCH_SIZE);
+                        for(int i = 0; i < BATCH_SIZE; i++) {
+                            Task task = new Task();
+                            task.setValue(Task.TITLE, "sync " + batch + "-" + i);
+                            tasks.add(task);
+                        }
+                        dao.persistAll(tasks);
+                    }
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        });
+        writer.start();
+
+        long[] latencies = new long[READS];
+        try {
+            for(int i = 0; i < READS; i++) {
+                long start = System.nanoTime();
+                TodorooCursor<Task> cursor = dao.query(Query.select(Task.ID, Task.TITLE).
+                        where(TaskCriteria.isActive()));
+                try {
+                    // readers only see whole batches
+                    assertEquals(0, cursor.getCount() % BATCH_SIZE);
+                } finally {
+                    cursor.close();
+                }
+                latencies[i] = System.nanoTime() - start;
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+
+        if(failure[0] != null)
+            throw new RuntimeException(failure[0]);
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static class SingleConnectionDatabase extends TestDatabase {
+        @Override
+        public String getName() {
+            return "databasetest-single";
+        }
+
+        @Override
+        protected boolean useWriteAheadLogging() {
+            return false;
+        }
+    }
+
+}
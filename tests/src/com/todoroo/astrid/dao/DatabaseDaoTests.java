@@ -1,7 +1,14 @@
 package com.todoroo.astrid.dao;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.content.ContentValues;
 
+import com.todoroo.andlib.data.DatabaseDao.BatchModelUpdateListener;
+import com.todoroo.andlib.data.DatabaseDao.ImmediateModelUpdateListener;
+import com.todoroo.andlib.data.DatabaseDao.ModelUpdateListener;
+import com.todoroo.andlib.data.ModelFactory;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.sql.Query;
 import com.todoroo.astrid.data.Task;
@@ -51,4 +58,162 @@ public class DatabaseDaoTests extends DatabaseTestCase {
         }
     }
 
+    public void testModelFactoryCreatesIndependentModels() {
+        dao = new TaskDao();
+        dao.setDatabase(database);
+        ModelFactory<Task> factory = dao.getModelFactory();
+
+        Task first = factory.newInstance();
+        first.setValue(Task.TITLE, "first");
+        Task second = factory.newInstance();
+        assertNotSame(first, second);
+        assertFalse(second.containsValue(Task.TITLE));
+        assertEquals(Task.NO_ID, second.getId());
+
+        dao.createNew(first);
+        Task fetched = dao.fetch(first.getId(), Task.ID, Task.TITLE);
+        assertEquals("first", fetched.getValue(Task.TITLE));
+        assertSame(factory, database.getModelFactory(Task.class));
+    }
+
+    public void testPersistAllCreatesRowsAndOutstandingEntries() {
+        dao = new TaskDao();
+        dao.setDatabase(database);
+        outstandingDao = new TaskOutstandingDao();
+        outstandingDao.setDatabase(database);
+
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        for(int i = 0; i < 10; i++) {
+            Task t = new Task();
+            t.setValue(Task.TITLE, "task " + i);
+            tasks.add(t);
+        }
+        assertEquals(10, dao.persistAll(tasks));
+        for(Task t : tasks)
+            assertTrue(t.isSaved());
+
+        TodorooCursor<Task> cursor = dao.query(Query.select(Task.ID));
+        try {
+            assertEquals(10, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+
+        TodorooCursor<TaskOutstanding> outstanding = outstandingDao.query(Query.select(TaskOutstanding.ID));
+        try {
+            assertTrue(outstanding.getCount() >= 10);
+        } finally {
+            outstanding.close();
+        }
+
+        for(Task t : tasks)
+            t.setValue(Task.TITLE, "renamed");
+        assertEquals(10, dao.updateAll(tasks));
+        cursor = dao.query(Query.select(Task.ID).where(Task.TITLE.eq("renamed")));
+        try {
+            assertEquals(10, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testBatchListenerCalledOnce() {
+        dao = new TaskDao();
+        dao.setDatabase(database);
+
+        final int[] calls = new int[1];
+        final List<Task> updated = new ArrayList<Task>();
+        dao.addListener(new BatchModelUpdateListener<Task>() {
+            @Override
+            public void onModelUpdated(Task model, boolean outstandingEntries) {
+                fail("expected a single batch callback");
+            }
+
+            @Override
+            public void onModelsUpdated(List<Task> models, boolean[] outstandingEntries) {
+                calls[0]++;
+                updated.addAll(models);
+            }
+        });
+
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        for(int i = 0; i < 5; i++) {
+            Task t = new Task();
+            t.setValue(Task.TITLE, "task " + i);
+            tasks.add(t);
+        }
+        dao.persistAll(tasks);
+        dao.waitForListeners();
+        assertEquals(1, calls[0]);
+        assertEquals(5, updated.size());
+    }
+
+    public void testRepeatedSavesAreCoalesced() {
+        dao = new TaskDao();
+        dao.setDatabase(database);
+
+        final List<Task> updated = new ArrayList<Task>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        dao.addListener(new ModelUpdateListener<Task>() {
+            @Override
+            public void onModelUpdated(Task model, boolean outstandingEntries) {
+                updated.add(model);
+                threads.add(Thread.currentThread());
+            }
+        });
+
+        Task t = new Task();
+        t.setValue(Task.TITLE, "first");
+        dao.createNew(t);
+        t.setValue(Task.IMPORTANCE, Task.IMPORTANCE_MUST_DO);
+        dao.saveExisting(t);
+        t.setValue(Task.TITLE, "second");
+        dao.saveExisting(t);
+        dao.waitForListeners();
+
+        assertEquals(1, updated.size());
+        assertNotSame(Thread.currentThread(), threads.get(0));
+        Task model = updated.get(0);
+        assertEquals(t.getId(), model.getId());
+        assertEquals("second", model.getSetValues().getAsString(Task.TITLE.name));
+        assertTrue(model.getSetValues().containsKey(Task.IMPORTANCE.name));
+    }
+
+    public void testImmediateListenersRunOnSave() {
+        dao = new TaskDao();
+        dao.setDatabase(database);
+
+        final List<String> titles = new ArrayList<String>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        final List<Task> models = new ArrayList<Task>();
+        dao.addListener(new ImmediateModelUpdateListener<Task>() {
+            @Override
+            public void onModelUpdated(Task model, boolean outstandingEntries) {
+                titles.add(model.getValue(Task.TITLE));
+                threads.add(Thread.currentThread());
+                models.add(model);
+            }
+        });
+
+        Task t = new Task();
+        t.setValue(Task.TITLE, "first");
+        dao.createNew(t);
+        assertEquals(1, titles.size());
+        t.setValue(Task.TITLE, "second");
+        dao.saveExisting(t);
+        assertEquals(2, titles.size());
+        assertEquals("second", titles.get(1));
+        assertSame(Thread.currentThread(), threads.get(0));
+        assertNotSame(t, models.get(1));
+
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        for(int i = 0; i < 3; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, "task " + i);
+            tasks.add(task);
+        }
+        dao.persistAll(tasks);
+        assertEquals(5, titles.size());
+    }
+
 }
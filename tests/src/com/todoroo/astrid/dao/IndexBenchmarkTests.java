@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.ArrayList;
+
+import android.util.Log;
+
+import com.todoroo.andlib.data.Index;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Field;
+import com.todoroo.andlib.sql.Join;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.dao.TaskDao.TaskCriteria;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.tags.TaskToTagMetadata;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Times the task list and tag list queries on a large database with and
+ * without the declared indexes
+ */
+@SuppressWarnings("nls")
+public class IndexBenchmarkTests extends DatabaseTestCase {
+
+    private static final String TAG = "index-benchmark";
+
+    private static final int TASKS = 50000;
+    private static final int CHUNK = 1000;
+    private static final int TAGS = 50;
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Autowired
+    MetadataDao metadataDao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RemoteModelDao.setOutstandingEntryFlags(0);
+
+        long now = DateUtilities.now();
+        ArrayList<Task> tasks = new ArrayList<Task>(CHUNK);
+        ArrayList<Metadata> links = new ArrayList<Metadata>(CHUNK);
+        for(int i = 0; i < TASKS; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, "task " + i);
+            task.setValue(Task.UUID, "uuid" + i);
+            // most tasks are done, as in long-lived databases
+            if(i % 10 != 0)
+                task.setValue(Task.COMPLETION_DATE, now - i);
+            if(i % 97 == 0)
+                task.setValue(Task.DELETION_DATE, now - i);
+            tasks.add(task);
+
+            Metadata link = TaskToTagMetadata.newTagMetadata(0, "uuid" + i,
+                    "tag " + (i % TAGS), "taguuid" + (i % TAGS));
+            links.add(link);
+
+            if(tasks.size() == CHUNK) {
+                taskDao.persistAll(tasks);
+                for(int j = 0; j < CHUNK; j++)
+                    links.get(j).setValue(Metadata.TASK, tasks.get(j).getId());
+                metadataDao.persistAll(links);
+                tasks.clear();
+                links.clear();
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RemoteModelDao.setOutstandingEntryFlags(RemoteModelDao.OUTSTANDING_FLAG_UNINITIALIZED);
+        super.tearDown();
+    }
+
+    private Query activeTasks() {
+        return Query.select(Task.ID, Task.TITLE).where(TaskCriteria.activeAndVisible());
+    }
+
+    private Query taggedTasks() {
+        return Query.select(Task.ID, Task.TITLE).join(Join.inner(Metadata.TABLE.as("mtags"),
+                Task.UUID.eq(Field.field("mtags." + TaskToTagMetadata.TASK_UUID.name)))).
+                where(Criterion.and(
+                        Field.field("mtags." + Metadata.KEY.name).eq(TaskToTagMetadata.KEY),
+                        Field.field("mtags." + TaskToTagMetadata.TAG_UUID.name).eq("taguuid7"),
+                        Field.field("mtags." + Metadata.DELETION_DATE.name).eq(0),
+                        TaskCriteria.activeAndVisible()));
+    }
+
+    public void testActiveTaskList() {
+        compare("active tasks", activeTasks(), Task.INDEXES[1]);
+    }
+
+    public void testTagTaskList() {
+        compare("tag tasks", taggedTasks(), Metadata.INDEXES[3]);
+    }
+
+    private void compare(String name, Query query, Index index) {
+        int expected = count(query);
+        long indexed = time(query, expected);
+
+        database.getDatabase().execSQL("DROP INDEX " + index.name);
+        try {
+            long scanned = time(query, expected);
+            Log.i(TAG, String.format("%s (%d rows): with %s %d ms/query, without %d ms/query",
+                    name, expected, index.name, indexed / ROUNDS, scanned / ROUNDS));
+        } finally {
+            database.updateIndexes();
+        }
+    }
+
+    private long time(Query query, int expected) {
+        long start = System.currentTimeMillis();
+        for(int i = 0; i < ROUNDS; i++)
+            assertEquals(expected, count(query));
+        return System.currentTimeMillis() - start;
+    }
+
+    private int count(Query query) {
+        TodorooCursor<Task> cursor = taskDao.query(query);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
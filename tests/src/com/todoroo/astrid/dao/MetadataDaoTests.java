@@ -9,9 +9,12 @@ import com.todoroo.andlib.data.Property;
 import com.todoroo.andlib.data.TodorooCursor;
 import com.todoroo.andlib.service.Autowired;
 import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.alarms.AlarmFields;
 import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.gtasks.GtasksMetadata;
+import com.todoroo.astrid.subtasks.SubtasksMetadata;
 import com.todoroo.astrid.test.DatabaseTestCase;
 
 public class MetadataDaoTests extends DatabaseTestCase {
@@ -192,4 +195,74 @@ public class MetadataDaoTests extends DatabaseTestCase {
         cursor.close();
     }
 
-}
\ No newline at end of file
+    /**
+     * Test moving numeric values of existing rows out of text columns
+     */
+    public void testNumericValueMigrationSql() throws Exception {
+        database.getDatabase().execSQL("INSERT INTO metadata (key, task, value, value2, value3, value4) " +
+                "VALUES ('gtasks', 1, 'gid', 'list', '12', '3')");
+        database.getDatabase().execSQL("INSERT INTO metadata (key, task, value, value2) " +
+                "VALUES ('alarm', 1, '1234567890123', '2')");
+        database.getDatabase().execSQL("INSERT INTO metadata (key, task, value, value2) " +
+                "VALUES ('tags-tag', 1, 'tag', '7')");
+        for(String sql : Database.migrateNumericValuesSql())
+            database.getDatabase().execSQL(sql);
+
+        TodorooCursor<Metadata> cursor = metadataDao.query(Query.select(Metadata.PROPERTIES).
+                where(MetadataCriteria.withKey(GtasksMetadata.METADATA_KEY)));
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            Metadata metadata = new Metadata(cursor);
+            assertEquals("gid", metadata.getValue(GtasksMetadata.ID));
+            assertEquals("list", metadata.getValue(GtasksMetadata.LIST_ID));
+            assertEquals(12L, metadata.getValue(GtasksMetadata.PARENT_TASK).longValue());
+            assertEquals(3, metadata.getValue(GtasksMetadata.INDENT).intValue());
+            assertNull(metadata.getValue(Metadata.VALUE3));
+        } finally {
+            cursor.close();
+        }
+
+        cursor = metadataDao.query(Query.select(Metadata.PROPERTIES).
+                where(MetadataCriteria.withKey(AlarmFields.METADATA_KEY)));
+        try {
+            cursor.moveToFirst();
+            Metadata metadata = new Metadata(cursor);
+            assertEquals(1234567890123L, metadata.getValue(AlarmFields.TIME).longValue());
+            assertEquals(AlarmFields.TYPE_REPEATING, metadata.getValue(AlarmFields.TYPE).intValue());
+        } finally {
+            cursor.close();
+        }
+
+        // other keys keep their text values
+        cursor = metadataDao.query(Query.select(Metadata.PROPERTIES).
+                where(MetadataCriteria.withKey("tags-tag")));
+        try {
+            cursor.moveToFirst();
+            Metadata metadata = new Metadata(cursor);
+            assertEquals("7", metadata.getValue(Metadata.VALUE2));
+            assertEquals(0L, metadata.getValue(Metadata.NUM2).longValue());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Test moving numeric values of metadata read from an old backup
+     */
+    public void testNumericValueMigrationForModel() throws Exception {
+        Metadata metadata = new Metadata();
+        metadata.setValue(Metadata.KEY, SubtasksMetadata.METADATA_KEY);
+        metadata.setValue(Metadata.VALUE1, "[AT]");
+        metadata.setValue(Metadata.VALUE2, "2");
+        metadata.setValue(Metadata.VALUE3, "40");
+        Database.migrateNumericValues(metadata);
+
+        assertEquals("[AT]", metadata.getValue(SubtasksMetadata.TAG));
+        assertEquals(2, metadata.getValue(SubtasksMetadata.INDENT).intValue());
+        assertEquals(40L, metadata.getValue(SubtasksMetadata.ORDER).longValue());
+        assertNull(metadata.getValue(Metadata.VALUE2));
+        assertNull(metadata.getValue(Metadata.VALUE3));
+    }
+
+}
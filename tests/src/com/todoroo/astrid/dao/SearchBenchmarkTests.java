@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.ArrayList;
+
+import android.util.Log;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Functions;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Times searching a large database through the search index against the
+ * title scan it replaces
+ */
+@SuppressWarnings("nls")
+public class SearchBenchmarkTests extends DatabaseTestCase {
+
+    private static final String TAG = "search-benchmark";
+
+    private static final int TASKS = 100000;
+    private static final int CHUNK = 1000;
+    private static final int ROUNDS = 5;
+
+    private static final String[] WORDS = new String[] {
+        "call", "email", "buy", "review", "plan", "fix", "write", "book", "pay", "clean"
+    };
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RemoteModelDao.setOutstandingEntryFlags(0);
+
+        ArrayList<Task> tasks = new ArrayList<Task>(CHUNK);
+        for(int i = 0; i < TASKS; i++) {
+            Task task = new Task();
+            task.setValue(Task.TITLE, WORDS[i % WORDS.length] + " item" + i);
+            task.setValue(Task.NOTES, "notes for " + WORDS[(i / 7) % WORDS.length]);
+            tasks.add(task);
+            if(tasks.size() == CHUNK) {
+                taskDao.persistAll(tasks);
+                tasks.clear();
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RemoteModelDao.setOutstandingEntryFlags(RemoteModelDao.OUTSTANDING_FLAG_UNINITIALIZED);
+        super.tearDown();
+    }
+
+    public void testRareWord() {
+        compare("item4242");
+    }
+
+    public void testCommonWord() {
+        compare("review");
+    }
+
+    private void compare(String text) {
+        Criterion like = Functions.upper(Task.TITLE).like("%" + text.toUpperCase() + "%");
+        Criterion indexed = TaskSearchIndex.matches(TaskSearchIndex.matchQuery(text));
+        int scanned = count(like);
+        int found = count(indexed);
+        assertTrue(found >= scanned);
+
+        long likeTime = time(like, scanned);
+        long indexTime = time(indexed, found);
+        long start = System.currentTimeMillis();
+        for(int i = 0; i < ROUNDS; i++)
+            assertEquals(Math.min(found, 50), taskDao.search(text, 50).length);
+        long rankedTime = System.currentTimeMillis() - start;
+
+        Log.i(TAG, String.format("'%s' in %d tasks: like %d ms/query (%d rows), " +
+                "index %d ms/query (%d rows), ranked search %d ms/query",
+                text, TASKS, likeTime / ROUNDS, scanned, indexTime / ROUNDS, found,
+                rankedTime / ROUNDS));
+    }
+
+    private long time(Criterion criterion, int expected) {
+        long start = System.currentTimeMillis();
+        for(int i = 0; i < ROUNDS; i++)
+            assertEquals(expected, count(criterion));
+        return System.currentTimeMillis() - start;
+    }
+
+    private int count(Criterion criterion) {
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID).where(criterion));
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.AndroidUtilities;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.TaskDetail;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class TaskDetailDaoTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Autowired
+    TaskDetailDao taskDetailDao;
+
+    private Task createTask(String title) {
+        Task task = new Task();
+        task.setValue(Task.TITLE, title);
+        taskDao.createNew(task);
+        return task;
+    }
+
+    private TaskDetail fetchDetail(long taskId) {
+        TodorooCursor<TaskDetail> cursor = taskDetailDao.query(Query.select(
+                TaskDetail.PROPERTIES).where(TaskDetail.TASK.eq(taskId)));
+        try {
+            if(cursor.getCount() == 0)
+                return null;
+            cursor.moveToFirst();
+            return new TaskDetail(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRequestAndSave() {
+        Task task = createTask("task");
+        taskDetailDao.markRequested(new long[] { task.getId() });
+
+        TaskDetail detail = fetchDetail(task.getId());
+        assertNotNull(detail);
+        assertEquals("", detail.getValue(TaskDetail.DETAILS));
+        long requested = detail.getValue(TaskDetail.DETAILS_DATE);
+        assertTrue(requested > 0);
+
+        taskDetailDao.saveDetails(new long[] { task.getId() }, new String[] { "frogs | animals" });
+        detail = fetchDetail(task.getId());
+        assertEquals("frogs | animals", detail.getValue(TaskDetail.DETAILS));
+        assertEquals(requested, (long) detail.getValue(TaskDetail.DETAILS_DATE));
+    }
+
+    public void testRequestAgainReplaces() {
+        Task task = createTask("task");
+        taskDetailDao.markRequested(new long[] { task.getId() });
+        taskDetailDao.saveDetails(new long[] { task.getId() }, new String[] { "old" });
+        taskDetailDao.markRequested(new long[] { task.getId() });
+
+        assertEquals(1, taskDetailDao.count(Query.select(TaskDetail.ID)));
+        assertEquals("", fetchDetail(task.getId()).getValue(TaskDetail.DETAILS));
+    }
+
+    public void testClear() {
+        Task first = createTask("first");
+        Task second = createTask("second");
+        taskDetailDao.markRequested(new long[] { first.getId(), second.getId() });
+
+        assertEquals(1, taskDetailDao.clear(Task.TITLE.eq("first")));
+        assertNull(fetchDetail(first.getId()));
+        assertNotNull(fetchDetail(second.getId()));
+    }
+
+    public void testOldestRequestsAreDropped() {
+        long[] old = new long[TaskDetailDao.MAX_ENTRIES];
+        long[] recent = new long[TaskDetailDao.MAX_ENTRIES];
+        for(int i = 0; i < old.length; i++) {
+            old[i] = i + 1;
+            recent[i] = old.length + i + 1;
+        }
+
+        taskDetailDao.markRequested(old);
+        AndroidUtilities.sleepDeep(10L);
+        taskDetailDao.markRequested(recent);
+
+        assertEquals(TaskDetailDao.MAX_ENTRIES, taskDetailDao.count(Query.select(TaskDetail.ID)));
+        assertNull(fetchDetail(old[0]));
+        assertNotNull(fetchDetail(recent[0]));
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.dao.MetadataDao.MetadataCriteria;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.TaskAttachment;
+import com.todoroo.astrid.tags.TaskToTagMetadata;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class TaskListSummaryTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Autowired
+    MetadataDao metadataDao;
+
+    @Autowired
+    TaskAttachmentDao taskAttachmentDao;
+
+    private Task createTask() {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "task");
+        taskDao.createNew(task);
+        return task;
+    }
+
+    private Metadata link(Task task, String tagName) {
+        Metadata link = TaskToTagMetadata.newTagMetadata(task.getId(), task.getUuid(),
+                tagName, tagName + "-uuid");
+        metadataDao.createNew(link);
+        return link;
+    }
+
+    private HashSet<String> tagNames(Task task) {
+        String names = taskDao.fetch(task.getId(), Task.TAG_NAMES).getValue(Task.TAG_NAMES);
+        HashSet<String> result = new HashSet<String>();
+        if(names != null && names.length() > 0)
+            result.addAll(Arrays.asList(names.split("\\Q" + Task.TAG_NAMES_SEPARATOR + "\\E")));
+        return result;
+    }
+
+    private int attachmentCount(Task task) {
+        return taskDao.fetch(task.getId(), Task.ATTACHMENT_COUNT).getValue(Task.ATTACHMENT_COUNT);
+    }
+
+    public void testTagLinksKeepNames() {
+        Task task = createTask();
+        Task other = createTask();
+        assertEquals(0, tagNames(task).size());
+
+        link(task, "home");
+        Metadata work = link(task, "work");
+        link(other, "home");
+        assertEquals(new HashSet<String>(Arrays.asList("home", "work")), tagNames(task));
+
+        // tag links are removed by marking them deleted
+        Metadata deleted = new Metadata();
+        deleted.setValue(Metadata.DELETION_DATE, DateUtilities.now());
+        metadataDao.update(Criterion.and(MetadataCriteria.withKey(TaskToTagMetadata.KEY),
+                Metadata.DELETION_DATE.eq(0), TaskToTagMetadata.TAG_NAME.eq("home")), deleted);
+        assertEquals(new HashSet<String>(Arrays.asList("work")), tagNames(task));
+        assertEquals(0, tagNames(other).size());
+
+        work.setValue(TaskToTagMetadata.TAG_NAME, "office");
+        metadataDao.saveExisting(work);
+        assertEquals(new HashSet<String>(Arrays.asList("office")), tagNames(task));
+
+        metadataDao.delete(work.getId());
+        assertEquals(0, tagNames(task).size());
+    }
+
+    public void testSynchronizedMetadataKeepsNames() {
+        Task task = createTask();
+        link(task, "home");
+
+        ArrayList<Metadata> links = new ArrayList<Metadata>();
+        links.add(TaskToTagMetadata.newTagMetadata(task.getId(), task.getUuid(), "work", "work-uuid"));
+        metadataDao.synchronizeMetadata(task.getId(), links,
+                MetadataCriteria.withKey(TaskToTagMetadata.KEY));
+        assertEquals(new HashSet<String>(Arrays.asList("work")), tagNames(task));
+    }
+
+    public void testOtherMetadataLeavesNames() {
+        Task task = createTask();
+        link(task, "home");
+
+        Metadata other = new Metadata();
+        other.setValue(Metadata.KEY, "other");
+        other.setValue(Metadata.TASK, task.getId());
+        other.setValue(Metadata.VALUE1, "not a tag");
+        metadataDao.createNew(other);
+        assertEquals(new HashSet<String>(Arrays.asList("home")), tagNames(task));
+    }
+
+    public void testAttachmentsKeepCount() {
+        Task task = createTask();
+        assertEquals(0, attachmentCount(task));
+
+        TaskAttachment first = TaskAttachment.createNewAttachment(task.getUuid(), "/a", "a", "text/plain");
+        taskAttachmentDao.createNew(first);
+        TaskAttachment second = TaskAttachment.createNewAttachment(task.getUuid(), "/b", "b", "text/plain");
+        taskAttachmentDao.createNew(second);
+        assertEquals(2, attachmentCount(task));
+
+        second.setValue(TaskAttachment.DELETED_AT, DateUtilities.now());
+        taskAttachmentDao.saveExisting(second);
+        assertEquals(1, attachmentCount(task));
+
+        taskAttachmentDao.delete(first.getId());
+        assertEquals(0, attachmentCount(task));
+    }
+
+    public void testAttachmentsReceivedBeforeTask() {
+        TaskAttachment attachment = TaskAttachment.createNewAttachment("remote-task", "/a", "a", "text/plain");
+        taskAttachmentDao.createNew(attachment);
+
+        Task task = new Task();
+        task.setValue(Task.TITLE, "synchronized");
+        task.setValue(Task.UUID, "remote-task");
+        taskDao.createNew(task);
+        assertEquals(1, attachmentCount(task));
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.ArrayList;
+
+import android.database.Cursor;
+
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Criterion;
+import com.todoroo.andlib.sql.Order;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.UserActivity;
+import com.todoroo.astrid.notes.NoteMetadata;
+import com.todoroo.astrid.service.TaskService;
+import com.todoroo.astrid.tags.TaskToTagMetadata;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class TaskSearchIndexTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Autowired
+    MetadataDao metadataDao;
+
+    @Autowired
+    UserActivityDao userActivityDao;
+
+    @Autowired
+    TaskService taskService;
+
+    private Task createTask(String title, String notes) {
+        Task task = new Task();
+        task.setValue(Task.TITLE, title);
+        task.setValue(Task.NOTES, notes);
+        task.setValue(Task.UUID, "uuid-" + title);
+        taskDao.createNew(task);
+        return task;
+    }
+
+    /**
+     * @return ids of tasks that are not deleted and match the text, oldest first
+     */
+    private ArrayList<Long> search(String text) {
+        ArrayList<Long> ids = new ArrayList<Long>();
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID).where(
+                Criterion.and(TaskService.searchCriterion(text), Task.DELETION_DATE.eq(0))).
+                orderBy(Order.asc(Task.ID)));
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+                ids.add(cursor.get(Task.ID));
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private void assertFound(ArrayList<Long> ids, Task... tasks) {
+        assertEquals(tasks.length, ids.size());
+        for(int i = 0; i < tasks.length; i++)
+            assertEquals(tasks[i].getId(), ids.get(i).longValue());
+    }
+
+    private int indexRows(long taskId) {
+        Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + TaskSearchIndex.TABLE +
+                " WHERE docid = " + taskId, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testMatchQuery() {
+        assertEquals("buy* milk*", TaskSearchIndex.matchQuery(" Buy, milk!").toLowerCase());
+        assertEquals("", TaskSearchIndex.matchQuery("' -- *"));
+        assertEquals("", TaskSearchIndex.matchQuery(null));
+    }
+
+    public void testPrefixSearchOfTitlesAndNotes() {
+        Task groceries = createTask("groceries", "milk and bread");
+        Task garden = createTask("garden", "water plants");
+
+        assertFound(search("groc"), groceries);
+        assertFound(search("mil bre"), groceries);
+        assertFound(search("wat"), garden);
+        assertFound(search("milk water"));
+    }
+
+    private void assertFound(long[] ids, Task... tasks) {
+        assertEquals(tasks.length, ids.length);
+        for(int i = 0; i < tasks.length; i++)
+            assertEquals(tasks[i].getId(), ids[i]);
+    }
+
+    public void testTitleMatchesRankFirst() {
+        Task inNotes = createTask("first", "report");
+        Task inTitle = createTask("report", "");
+        createTask("unrelated", "");
+
+        assertFound(taskDao.search("rep", 10), inTitle, inNotes);
+        assertFound(taskDao.search("rep", 1), inTitle);
+    }
+
+    public void testSearchOrderListsBestMatchesFirst() {
+        // older, so only the rank puts it first
+        Task inTitle = createTask("report", "");
+        Task inNotes = createTask("first", "report");
+
+        ArrayList<Long> ids = new ArrayList<Long>();
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.ID).where(
+                TaskService.searchCriterion("rep")).orderBy(taskService.searchOrder("rep")));
+        try {
+            for(cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+                ids.add(cursor.get(Task.ID));
+        } finally {
+            cursor.close();
+        }
+        assertFound(ids, inTitle, inNotes);
+    }
+
+    public void testEditsAreIndexed() {
+        Task task = createTask("before", "");
+        task.setValue(Task.TITLE, "after");
+        taskDao.save(task);
+        assertFound(search("before"));
+        assertFound(search("after"), task);
+
+        Task template = new Task();
+        template.setValue(Task.NOTES, "bulk");
+        taskDao.update(Task.ID.eq(task.getId()), template);
+        assertFound(search("bulk"), task);
+
+        taskDao.delete(task.getId());
+        assertFound(search("after"));
+    }
+
+    public void testDeletesRemoveIndexRows() {
+        Task byId = createTask("first", "");
+        Task byCriterion = createTask("second", "");
+        Task raw = createTask("third", "");
+        assertEquals(1, indexRows(byId.getId()));
+
+        taskDao.delete(byId.getId());
+        assertEquals(0, indexRows(byId.getId()));
+
+        taskDao.deleteWhere(Task.ID.eq(byCriterion.getId()));
+        assertEquals(0, indexRows(byCriterion.getId()));
+
+        database.delete(Task.TABLE.name, Task.ID.eq(raw.getId()).toString(), null);
+        assertEquals(0, indexRows(raw.getId()));
+    }
+
+    public void testTagsNotesAndComments() {
+        Task task = createTask("task", "");
+
+        metadataDao.persist(TaskToTagMetadata.newTagMetadata(task.getId(), task.getUuid(),
+                "errands", "tag-uuid"));
+        assertFound(search("errand"), task);
+
+        Metadata note = new Metadata();
+        note.setValue(Metadata.KEY, NoteMetadata.METADATA_KEY);
+        note.setValue(Metadata.TASK, task.getId());
+        note.setValue(NoteMetadata.TITLE, "call");
+        note.setValue(NoteMetadata.BODY, "dentist");
+        metadataDao.persist(note);
+        assertFound(search("dent"), task);
+
+        UserActivity comment = new UserActivity();
+        comment.setValue(UserActivity.ACTION, UserActivity.ACTION_TASK_COMMENT);
+        comment.setValue(UserActivity.TARGET_ID, task.getUuid());
+        comment.setValue(UserActivity.MESSAGE, "tomorrow afternoon");
+        userActivityDao.createNew(comment);
+        assertFound(search("aftern"), task);
+
+        metadataDao.delete(note.getId());
+        assertFound(search("dent"));
+    }
+
+}
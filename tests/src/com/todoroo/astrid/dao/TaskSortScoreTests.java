@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.todoroo.andlib.data.AbstractDatabase.TableUpdateListener;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.core.SortHelper;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class TaskSortScoreTests extends DatabaseTestCase {
+
+    private static final int TASKS = 300;
+
+    @Autowired
+    TaskDao taskDao;
+
+    private final Random random = new Random(37);
+
+    private long now;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        now = DateUtilities.now();
+        TaskDao.setSortScoreBase(now);
+    }
+
+    private Task createRandomTask(int i) {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "task " + (i % 7));
+        task.setValue(Task.IMPORTANCE, random.nextInt(4));
+        task.setValue(Task.DUE_DATE, randomDueDate());
+        if(random.nextInt(3) == 0)
+            task.setValue(Task.COMPLETION_DATE, now - random.nextInt(365) * DateUtilities.ONE_DAY);
+        taskDao.createNew(task);
+        return task;
+    }
+
+    /** @return no due date, or a date within a year with or without a time */
+    private long randomDueDate() {
+        switch(random.nextInt(3)) {
+        case 0:
+            return 0;
+        case 1:
+            return Task.createDueDate(Task.URGENCY_SPECIFIC_DAY,
+                    now + (random.nextInt(730) - 365) * DateUtilities.ONE_DAY);
+        default:
+            return Task.createDueDate(Task.URGENCY_SPECIFIC_DAY_TIME,
+                    now + (random.nextInt(730) - 365) * DateUtilities.ONE_HOUR * 12);
+        }
+    }
+
+    private ArrayList<Task> createRandomTasks() {
+        ArrayList<Task> tasks = new ArrayList<Task>(TASKS);
+        for(int i = 0; i < TASKS; i++)
+            tasks.add(createRandomTask(i));
+        return tasks;
+    }
+
+    /**
+     * Assert stored scores equal the expressions they materialize
+     */
+    private void assertScoresCurrent() {
+        long base = TaskDao.getSortScoreBase();
+        Cursor cursor = database.getDatabase().rawQuery("SELECT " + Task.ID.name + ", " +
+                Task.SORT_SCORE.name + ", " + SortHelper.sortScoreSql(base) + ", " +
+                Task.DUE_SORT_SCORE.name + ", " + SortHelper.dueSortScoreSql(base) +
+                " FROM " + Task.TABLE.name, null);
+        try {
+            assertTrue(cursor.getCount() > 0);
+            while(cursor.moveToNext()) {
+                assertEquals("task " + cursor.getLong(0), cursor.getLong(2), cursor.getLong(1));
+                assertEquals("task " + cursor.getLong(0), cursor.getLong(4), cursor.getLong(3));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return true if stored scores equal the expressions they materialize
+     */
+    private boolean scoresCurrent() {
+        long base = TaskDao.getSortScoreBase();
+        Cursor cursor = database.getDatabase().rawQuery("SELECT COUNT(*) FROM " +
+                Task.TABLE.name + " WHERE " + Task.SORT_SCORE.name + " != " +
+                SortHelper.sortScoreSql(base) + " OR " + Task.DUE_SORT_SCORE.name + " != " +
+                SortHelper.dueSortScoreSql(base), null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0) == 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private ArrayList<Long> idsOrderedBy(String order) {
+        Cursor cursor = database.getDatabase().rawQuery("SELECT " + Task.ID.name + " FROM " +
+                Task.TABLE.name + " ORDER BY " + order + ", " + Task.TITLE.name + ", " +
+                Task.ID.name, null);
+        try {
+            ArrayList<Long> ids = new ArrayList<Long>(cursor.getCount());
+            while(cursor.moveToNext())
+                ids.add(cursor.getLong(0));
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testCreatedTasksHaveCurrentScores() {
+        createRandomTasks();
+        assertScoresCurrent();
+    }
+
+    public void testStoredOrderMatchesOrderByCurrentTime() {
+        createRandomTasks();
+        TaskDao.setSortScoreBase(now - DateUtilities.ONE_DAY);
+        taskDao.rebaseSortScores(now);
+
+        // ordering by the expressions at the current time, as before scores
+        // were stored, gives the same tasks in the same order
+        long current = DateUtilities.now() + DateUtilities.ONE_MINUTE;
+        assertEquals(idsOrderedBy(SortHelper.sortScoreSql(current)),
+                idsOrderedBy(Task.SORT_SCORE.name));
+        assertEquals(idsOrderedBy(SortHelper.dueSortScoreSql(current)),
+                idsOrderedBy(Task.DUE_SORT_SCORE.name));
+    }
+
+    public void testSavesKeepScoresCurrent() {
+        ArrayList<Task> tasks = createRandomTasks();
+        for(int i = 0; i < TASKS; i += 2) {
+            Task task = new Task();
+            task.setId(tasks.get(i).getId());
+            switch(i % 3) {
+            case 0:
+                task.setValue(Task.DUE_DATE, randomDueDate());
+                break;
+            case 1:
+                task.setValue(Task.IMPORTANCE, random.nextInt(4));
+                break;
+            default:
+                task.setValue(Task.COMPLETION_DATE, now);
+            }
+            // the task wasn't read, so missing inputs are read before saving
+            assertTrue(taskDao.saveExisting(task));
+        }
+        assertScoresCurrent();
+
+        Task task = taskDao.fetch(tasks.get(1).getId(), Task.PROPERTIES);
+        task.setValue(Task.IMPORTANCE, (task.getValue(Task.IMPORTANCE) + 1) % 4);
+        assertTrue(taskDao.saveExisting(task));
+        assertScoresCurrent();
+    }
+
+    public void testBulkUpdatesKeepScoresCurrent() {
+        createRandomTasks();
+        Task template = new Task();
+        template.setValue(Task.COMPLETION_DATE, now);
+        assertTrue(taskDao.update(Task.COMPLETION_DATE.eq(0), template) > 0);
+        assertScoresCurrent();
+    }
+
+    public void testListenersSeeCurrentScores() {
+        ArrayList<Task> tasks = createRandomTasks();
+        final ArrayList<Boolean> current = new ArrayList<Boolean>();
+        TableUpdateListener listener = new TableUpdateListener() {
+            @Override
+            public void onTableUpdated(String table, ContentValues values) {
+                if(Task.TABLE.name.equals(table))
+                    current.add(scoresCurrent());
+            }
+        };
+        database.addTableListener(listener);
+        try {
+            Task task = new Task();
+            task.setId(tasks.get(0).getId());
+            task.setValue(Task.DUE_DATE, randomDueDate());
+            assertTrue(taskDao.saveExisting(task));
+
+            Task template = new Task();
+            template.setValue(Task.IMPORTANCE, Task.IMPORTANCE_DO_OR_DIE);
+            assertTrue(taskDao.update(Task.COMPLETION_DATE.eq(0), template) > 0);
+        } finally {
+            database.removeTableListener(listener);
+        }
+        assertFalse(current.isEmpty());
+        assertFalse(current.contains(Boolean.FALSE));
+    }
+
+    public void testRebaseMovesTasksWithoutDueDate() {
+        createRandomTasks();
+        long later = now + DateUtilities.ONE_WEEK;
+        taskDao.rebaseSortScores(later);
+        assertEquals(later, TaskDao.getSortScoreBase());
+        assertScoresCurrent();
+
+        assertFalse(taskDao.rebaseSortScoresIfStale());
+        TaskDao.setSortScoreBase(now - TaskDao.SORT_SCORE_REBASE_INTERVAL);
+        assertTrue(taskDao.rebaseSortScoresIfStale());
+        assertScoresCurrent();
+    }
+
+}
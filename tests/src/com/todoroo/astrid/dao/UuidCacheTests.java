@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.dao;
+
+import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.astrid.data.RemoteModel;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+public class UuidCacheTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    public void testEvictsLeastRecentlyUsed() {
+        UuidCache cache = new UuidCache(2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        assertEquals(Long.valueOf(1), cache.getId("a"));
+        cache.put(3, "c");
+        assertEquals(2, cache.size());
+        assertNull(cache.getUuid(2));
+        assertNull(cache.getId("b"));
+        assertEquals("a", cache.getUuid(1));
+        assertEquals(Long.valueOf(3), cache.getId("c"));
+    }
+
+    public void testPutReplacesBothDirections() {
+        UuidCache cache = new UuidCache(10);
+        cache.put(1, "a");
+        cache.put(1, "b");
+        assertNull(cache.getId("a"));
+        assertEquals("b", cache.getUuid(1));
+    }
+
+    public void testReadsBeforeRemovalAreNotCached() {
+        UuidCache cache = new UuidCache(10);
+        cache.put(1, "a");
+        long version = cache.getVersion();
+        cache.removeId(1);
+        cache.put(1, "a", version);
+        assertNull(cache.getUuid(1));
+
+        version = cache.getVersion();
+        cache.put(1, "b", version);
+        assertEquals("b", cache.getUuid(1));
+    }
+
+    public void testDaoLookupsAreCached() {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "cached");
+        task.setValue(Task.UUID, "12345");
+        taskDao.createNew(task);
+
+        UuidCache cache = taskDao.getUuidCache();
+        cache.clear();
+        long misses = cache.getMisses();
+        assertEquals(task.getId(), taskDao.localIdFromUuid("12345"));
+        assertEquals(misses + 1, cache.getMisses());
+
+        long hits = cache.getHits();
+        assertEquals(task.getId(), taskDao.localIdFromUuid("12345"));
+        assertEquals("12345", taskDao.uuidFromLocalId(task.getId()));
+        assertEquals(hits + 2, cache.getHits());
+    }
+
+    public void testUuidChangeAndDeleteInvalidate() {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "cached");
+        task.setValue(Task.UUID, "12345");
+        taskDao.createNew(task);
+        assertEquals(task.getId(), taskDao.localIdFromUuid("12345"));
+
+        task.setValue(Task.UUID, "67890");
+        taskDao.saveExisting(task);
+        assertEquals(AbstractModel.NO_ID, taskDao.localIdFromUuid("12345"));
+        assertEquals("67890", taskDao.uuidFromLocalId(task.getId()));
+
+        taskDao.delete(task.getId());
+        assertEquals(RemoteModel.NO_UUID, taskDao.uuidFromLocalId(task.getId()));
+    }
+
+}
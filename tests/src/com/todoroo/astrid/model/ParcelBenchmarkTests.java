@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.model;
+
+import android.content.ContentValues;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+import com.todoroo.andlib.data.AbstractModel;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.dao.TagDataDao;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.TagData;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Compares parcel size and marshalling time of the binary model codec
+ * against the previous pair of {@link ContentValues} parcelables
+ */
+@SuppressWarnings("nls")
+public class ParcelBenchmarkTests extends DatabaseTestCase {
+
+    private static final String TAG = "parcel-benchmark";
+
+    private static final int ROUNDS = 2000;
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Autowired
+    TagDataDao tagDataDao;
+
+    public void testTask() {
+        Task created = new Task();
+        created.setValue(Task.TITLE, "write the quarterly report");
+        created.setValue(Task.NOTES, "figures are in the shared folder");
+        created.setValue(Task.DUE_DATE, DateUtilities.now());
+        created.setValue(Task.IMPORTANCE, Task.IMPORTANCE_MUST_DO);
+        taskDao.createNew(created);
+
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.PROPERTIES).where(Task.ID.eq(created.getId())));
+        Task task;
+        try {
+            cursor.moveToFirst();
+            task = new Task(cursor);
+        } finally {
+            cursor.close();
+        }
+        task.setValue(Task.TITLE, "write the quarterly report today");
+
+        compare("Task", task, Task.CREATOR);
+    }
+
+    public void testTagData() {
+        TagData created = new TagData();
+        created.setValue(TagData.NAME, "groceries");
+        created.setValue(TagData.TAG_DESCRIPTION, "things to pick up on the way home");
+        tagDataDao.createNew(created);
+
+        TodorooCursor<TagData> cursor = tagDataDao.query(Query.select(TagData.PROPERTIES).where(TagData.ID.eq(created.getId())));
+        TagData tagData;
+        try {
+            cursor.moveToFirst();
+            tagData = new TagData(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        compare("TagData", tagData, TagData.CREATOR);
+    }
+
+    private <TYPE extends AbstractModel> void compare(String name, TYPE model, Parcelable.Creator<TYPE> creator) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            writeContentValues(model, parcel);
+            int oldSize = parcel.dataSize();
+            parcel.setDataPosition(0);
+            TYPE oldCopy = creator.createFromParcel(parcel);
+            assertEquals(model.getDatabaseValues(), oldCopy.getDatabaseValues());
+
+            parcel.setDataSize(0);
+            model.writeToParcel(parcel, 0);
+            int newSize = parcel.dataSize();
+            parcel.setDataPosition(0);
+            TYPE newCopy = creator.createFromParcel(parcel);
+            assertEquals(model.getDatabaseValues(), newCopy.getDatabaseValues());
+            assertEquals(model.getSetValues(), newCopy.getSetValues());
+            assertTrue(newSize < oldSize);
+
+            long start = System.nanoTime();
+            for(int i = 0; i < ROUNDS; i++) {
+                parcel.setDataSize(0);
+                writeContentValues(model, parcel);
+                parcel.setDataPosition(0);
+                creator.createFromParcel(parcel);
+            }
+            long before = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(int i = 0; i < ROUNDS; i++) {
+                parcel.setDataSize(0);
+                model.writeToParcel(parcel, 0);
+                parcel.setDataPosition(0);
+                creator.createFromParcel(parcel);
+            }
+            long after = System.nanoTime() - start;
+
+            Log.i(TAG, String.format("%s: content values %d bytes, %d us/round trip; " +
+                    "binary %d bytes, %d us/round trip", name, oldSize, before / ROUNDS / 1000,
+                    newSize, after / ROUNDS / 1000));
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /** Previous format, still accepted by the model creators */
+    private static void writeContentValues(AbstractModel model, Parcel dest) {
+        dest.writeParcelable(model.getSetValues(), 0);
+        dest.writeParcelable(model.getDatabaseValues(), 0);
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.model;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.todoroo.andlib.data.Property;
+import com.todoroo.andlib.data.TodorooCursor;
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.sql.Query;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+/**
+ * Compares property reads on slot-backed {@link Task} storage against the
+ * previous {@link ContentValues} lookup chain
+ */
+@SuppressWarnings("nls")
+public class TaskStorageBenchmarkTests extends DatabaseTestCase {
+
+    private static final String TAG = "task-storage-benchmark";
+
+    private static final int READS = 20000;
+
+    private static final Property<?>[] READ_PROPERTIES = new Property<?>[] {
+        Task.TITLE, Task.DUE_DATE, Task.IMPORTANCE, Task.COMPLETION_DATE,
+        Task.HIDE_UNTIL, Task.DELETION_DATE, Task.REMINDER_LAST, Task.RECURRENCE
+    };
+
+    @Autowired
+    TaskDao taskDao;
+
+    private Task task;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Task created = new Task();
+        created.setValue(Task.TITLE, "benchmark");
+        created.setValue(Task.DUE_DATE, DateUtilities.now());
+        created.setValue(Task.IMPORTANCE, Task.IMPORTANCE_MUST_DO);
+        taskDao.createNew(created);
+
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.PROPERTIES).where(Task.ID.eq(created.getId())));
+        try {
+            cursor.moveToFirst();
+            task = new Task(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testReadsMatchContentValues() {
+        ContentValues values = task.getDatabaseValues();
+        for(Property<?> property : READ_PROPERTIES)
+            assertEquals(contentValuesRead(values, task.getDefaultValues(), property),
+                    task.getValue(property));
+    }
+
+    public void testGetValue() {
+        ContentValues values = task.getDatabaseValues();
+        ContentValues defaults = task.getDefaultValues();
+
+        long start = System.nanoTime();
+        for(int i = 0; i < READS; i++)
+            for(Property<?> property : READ_PROPERTIES)
+                contentValuesRead(values, defaults, property);
+        long before = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for(int i = 0; i < READS; i++)
+            for(Property<?> property : READ_PROPERTIES)
+                task.getValue(property);
+        long after = System.nanoTime() - start;
+
+        int reads = READS * READ_PROPERTIES.length;
+        Log.i(TAG, String.format("getValue: content values %d ns/read, slots %d ns/read",
+                before / reads, after / reads));
+    }
+
+    public void testReadFromCursor() {
+        TodorooCursor<Task> cursor = taskDao.query(Query.select(Task.PROPERTIES));
+        try {
+            cursor.moveToFirst();
+            ContentValues values = new ContentValues();
+            long start = System.nanoTime();
+            for(int i = 0; i < READS / 10; i++) {
+                values.clear();
+                for(Property<?> property : cursor.getProperties()) {
+                    Object value = cursor.get(property);
+                    if(value instanceof String)
+                        values.put(property.getColumnName(), (String) value);
+                    else if(value instanceof Long)
+                        values.put(property.getColumnName(), (Long) value);
+                    else if(value instanceof Integer)
+                        values.put(property.getColumnName(), (Integer) value);
+                    else if(value instanceof Double)
+                        values.put(property.getColumnName(), (Double) value);
+                }
+            }
+            long before = System.nanoTime() - start;
+
+            Task reused = new Task();
+            start = System.nanoTime();
+            for(int i = 0; i < READS / 10; i++)
+                reused.readFromCursor(cursor);
+            long after = System.nanoTime() - start;
+
+            Log.i(TAG, String.format("readFromCursor: content values %d us/row, slots %d us/row",
+                    before / (READS / 10) / 1000, after / (READS / 10) / 1000));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Previous read path: user-set values, then database values, then
+     * defaults, each a separate hash lookup
+     */
+    private static Object contentValuesRead(ContentValues values, ContentValues defaults, Property<?> property) {
+        String column = property.getColumnName();
+        Object value;
+        if(values != null && values.containsKey(column))
+            value = values.get(column);
+        else if(defaults.containsKey(column))
+            value = defaults.get(column);
+        else
+            throw new UnsupportedOperationException(column);
+        if(value instanceof Integer && property instanceof Property.LongProperty)
+            return ((Number) value).longValue();
+        return value;
+    }
+
+}
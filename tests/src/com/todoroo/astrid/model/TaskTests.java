@@ -49,6 +49,22 @@ public class TaskTests extends DatabaseTestCase {
         assertTrue(defaults.containsKey(Task.IMPORTANCE.name));
     }
 
+    /** Check the database values follow saves and cleared values */
+    public void testDatabaseValuesFollowChanges() {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "before");
+        task.markSaved();
+        assertEquals("before", task.getDatabaseValues().getAsString(Task.TITLE.name));
+        assertSame(task.getDatabaseValues(), task.getDatabaseValues());
+
+        task.setValue(Task.TITLE, "after");
+        task.markSaved();
+        assertEquals("after", task.getDatabaseValues().getAsString(Task.TITLE.name));
+
+        task.clearValue(Task.TITLE);
+        assertFalse(task.getDatabaseValues().containsKey(Task.TITLE.name));
+    }
+
     /** Check task gets a creation date at some point */
     public void checkCreationDate() {
         Task task = new Task();
@@ -5,14 +5,21 @@
  */
 package com.todoroo.astrid.provider;
 
+import java.util.ArrayList;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
 
 import com.todoroo.andlib.data.Property.IntegerProperty;
 import com.todoroo.andlib.data.Property.StringProperty;
+import com.todoroo.andlib.service.Autowired;
 import com.todoroo.astrid.api.AstridApiConstants;
+import com.todoroo.astrid.dao.TaskDao;
 import com.todoroo.astrid.data.Metadata;
 import com.todoroo.astrid.data.StoreObject;
 import com.todoroo.astrid.data.Task;
@@ -20,6 +27,9 @@ import com.todoroo.astrid.test.DatabaseTestCase;
 
 public class Astrid3ProviderTests extends DatabaseTestCase {
 
+    @Autowired
+    TaskDao taskDao;
+
     String[] PROJECTION = new String[] {
             Task.ID.name,
             Task.TITLE.name,
@@ -242,6 +252,19 @@ public class Astrid3ProviderTests extends DatabaseTestCase {
         }
     }
 
+    /** Test that deletes drop the uuids the task dao has cached */
+    public void testDeletingClearsUuidCache() {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "cached");
+        task.setValue(Task.UUID, "1234");
+        taskDao.createNew(task);
+        assertEquals(task.getId(), taskDao.localIdFromUuid("1234"));
+
+        ContentResolver resolver = getContext().getContentResolver();
+        assertEquals(1, resolver.delete(Task.CONTENT_URI, Task.ID.name + " = " + task.getId(), null));
+        assertEquals(Task.NO_ID, taskDao.localIdFromUuid("1234"));
+    }
+
     /** Test CRUD over SINGLE ITEM uri */
     public void testSingleItemCrud() {
         ContentResolver resolver = getContext().getContentResolver();
@@ -351,4 +374,72 @@ public class Astrid3ProviderTests extends DatabaseTestCase {
         assertEquals(20, cursor.getInt(0));
     }
 
+    /** Test inserting many rows in one call */
+    public void testBulkInsert() {
+        ContentResolver resolver = getContext().getContentResolver();
+
+        ContentValues[] rows = new ContentValues[3];
+        for(int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(Task.TITLE.name, "task " + i);
+        }
+        assertEquals(3, resolver.bulkInsert(Task.CONTENT_URI, rows));
+
+        Cursor cursor = resolver.query(Task.CONTENT_URI, PROJECTION, null, null, Task.TITLE.name);
+        assertEquals(3, cursor.getCount());
+        cursor.moveToLast();
+        assertEquals("task 2", cursor.getString(1));
+        cursor.close();
+    }
+
+    /** Test that a failed batch leaves no rows behind */
+    public void testApplyBatch() throws Exception {
+        ContentResolver resolver = getContext().getContentResolver();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(Task.CONTENT_URI).
+                withValue(Task.TITLE.name, "wolf parade").build());
+        operations.add(ContentProviderOperation.newInsert(Task.CONTENT_URI).
+                withValue(Task.TITLE.name, "sunset rubdown").build());
+        ContentProviderResult[] results = resolver.applyBatch(AstridApiConstants.API_PACKAGE, operations);
+        assertEquals(2, results.length);
+        assertNotNull(results[0].uri);
+
+        operations.clear();
+        operations.add(ContentProviderOperation.newUpdate(results[0].uri).
+                withValue(Task.TITLE.name, "handsome furs").build());
+        operations.add(ContentProviderOperation.newUpdate(Task.CONTENT_URI).
+                withValue(Task.TITLE.name, "frog eyes").withExpectedCount(5).build());
+        try {
+            resolver.applyBatch(AstridApiConstants.API_PACKAGE, operations);
+            fail("expected count should fail");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+
+        Cursor cursor = resolver.query(results[0].uri, PROJECTION, null, null, null);
+        cursor.moveToFirst();
+        assertEquals("wolf parade", cursor.getString(1));
+        cursor.close();
+    }
+
+    /** Test limiting the number of rows returned */
+    public void testLimit() {
+        ContentResolver resolver = getContext().getContentResolver();
+
+        ContentValues values = new ContentValues();
+        for(int i = 0; i < 5; i++) {
+            values.put(Task.TITLE.name, "task " + i);
+            resolver.insert(Task.CONTENT_URI, values);
+        }
+
+        Uri uri = Task.CONTENT_URI.buildUpon().appendQueryParameter(
+                AstridApiConstants.LIMIT_PARAMETER, "2").build();
+        Cursor cursor = resolver.query(uri, PROJECTION, null, null, Task.TITLE.name);
+        assertEquals(2, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("task 0", cursor.getString(1));
+        cursor.close();
+    }
+
 }
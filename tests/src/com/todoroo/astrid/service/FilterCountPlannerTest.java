@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+
+@SuppressWarnings("nls")
+public class FilterCountPlannerTest extends AndroidTestCase {
+
+    private static final String TAG_JOIN = "INNER JOIN metadata AS mtags ON (tasks.uuid=mtags.value2)";
+
+    public void testSplit() {
+        assertTrue(Arrays.equals(new String[] { "", "tasks.importance=0" },
+                FilterCountPlanner.split("WHERE tasks.importance=0 ORDER BY tasks.title")));
+        assertTrue(Arrays.equals(new String[] { "", "1" },
+                FilterCountPlanner.split("ORDER BY tasks.title")));
+        assertTrue(Arrays.equals(new String[] { TAG_JOIN, "mtags.value3='abc'" },
+                FilterCountPlanner.split(TAG_JOIN + " WHERE mtags.value3='abc' ")));
+    }
+
+    public void testKeywordsInSubqueriesAndStrings() {
+        String[] parts = FilterCountPlanner.split("WHERE tasks._id IN (SELECT task FROM metadata " +
+                "GROUP BY task LIMIT 5) AND tasks.title != 'order by limit'");
+        assertNotNull(parts);
+        assertEquals("", parts[0]);
+        assertEquals("tasks._id IN (SELECT task FROM metadata GROUP BY task LIMIT 5) AND " +
+                "tasks.title != 'order by limit'", parts[1]);
+    }
+
+    public void testUnmergeable() {
+        assertNull(FilterCountPlanner.split("WHERE tasks.deleted=0 GROUP BY tasks.uuid"));
+        assertNull(FilterCountPlanner.split("WHERE tasks.deleted=0 ORDER BY tasks.title LIMIT 5"));
+        assertNull(FilterCountPlanner.split("garbage WHERE tasks.deleted=0"));
+    }
+
+    public void testFiltersAreGroupedByJoin() {
+        ArrayList<String> templates = new ArrayList<String>();
+        templates.add("WHERE tasks.importance=0");
+        templates.add(TAG_JOIN + " WHERE mtags.value3='a'");
+        templates.add("WHERE tasks.completed>0 GROUP BY tasks.uuid");
+        templates.add("WHERE tasks.importance=1");
+        templates.add(TAG_JOIN + " WHERE mtags.value3='b'");
+        FilterCountPlanner plan = new FilterCountPlanner(templates);
+
+        assertEquals(2, plan.batches.size());
+        assertTrue(Arrays.equals(new int[] { 0, 3 }, plan.batches.get(0).filters));
+        assertEquals("SELECT SUM(CASE WHEN (tasks.importance=0) THEN 1 ELSE 0 END), " +
+                "SUM(CASE WHEN (tasks.importance=1) THEN 1 ELSE 0 END) FROM tasks",
+                plan.batches.get(0).sql);
+        assertTrue(Arrays.equals(new int[] { 1, 4 }, plan.batches.get(1).filters));
+        assertTrue(plan.batches.get(1).sql.endsWith(" FROM tasks " + TAG_JOIN));
+        assertEquals(Arrays.asList(2), plan.separate);
+    }
+
+    public void testManyFiltersAreChunked() {
+        ArrayList<String> templates = new ArrayList<String>();
+        for(int i = 0; i < FilterCountPlanner.MAX_COLUMNS * 2 + 1; i++)
+            templates.add("WHERE tasks.importance=" + i);
+        FilterCountPlanner plan = new FilterCountPlanner(templates);
+
+        assertEquals(3, plan.batches.size());
+        assertEquals(FilterCountPlanner.MAX_COLUMNS, plan.batches.get(0).filters.length);
+        assertEquals(1, plan.batches.get(2).filters.length);
+        assertEquals(FilterCountPlanner.MAX_COLUMNS * 2, plan.batches.get(2).filters[0]);
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.astrid.api.Filter;
+import com.todoroo.astrid.dao.MetadataDao;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class FilterCountServiceTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Autowired
+    MetadataDao metadataDao;
+
+    @Autowired
+    TaskService taskService;
+
+    private FilterCountService service;
+
+    private final Filter important = new Filter("important", "important",
+            "WHERE tasks.importance = 0", null);
+
+    private final Filter flagged = new Filter("flagged", "flagged",
+            "WHERE tasks._id IN (SELECT task FROM metadata WHERE key = 'flag')", null);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        service = new FilterCountService();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        service.detach();
+        super.tearDown();
+    }
+
+    private Task createTask(int importance) {
+        Task task = new Task();
+        task.setValue(Task.TITLE, "task");
+        task.setValue(Task.IMPORTANCE, importance);
+        taskDao.createNew(task);
+        return task;
+    }
+
+    public void testCountsAreComputedOnDemand() {
+        createTask(0);
+        createTask(0);
+        createTask(2);
+
+        assertEquals(-1, service.getCount(important));
+        assertTrue(service.recomputeStale());
+        assertEquals(2, service.getCount(important));
+
+        // nothing changed, nothing to recompute
+        assertFalse(service.recomputeStale());
+        assertEquals(2, service.getCount(important));
+    }
+
+    public void testInsertsDirtyCounts() {
+        createTask(0);
+        service.getCount(important);
+        service.recomputeStale();
+
+        createTask(0);
+        assertTrue(service.recomputeStale());
+        assertEquals(2, service.getCount(important));
+    }
+
+    public void testUpdatesOnlyDirtyFiltersUsingTheirColumns() {
+        Task task = createTask(0);
+        service.getCount(important);
+        service.recomputeStale();
+        assertEquals(1, service.getCount(important));
+
+        // change the row behind the service's back, then save a column
+        // the filter doesn't use: the cached count must be kept
+        database.getDatabase().execSQL("UPDATE tasks SET importance = 3");
+        task.setValue(Task.TITLE, "renamed");
+        taskDao.save(task);
+        assertFalse(service.recomputeStale());
+        assertEquals(1, service.getCount(important));
+
+        task.setValue(Task.IMPORTANCE, 1);
+        taskDao.save(task);
+        assertTrue(service.recomputeStale());
+        assertEquals(0, service.getCount(important));
+    }
+
+    public void testMetadataWritesDirtyFiltersOnMetadata() {
+        Task task = createTask(0);
+        service.getCount(flagged);
+        service.getCount(important);
+        service.recomputeStale();
+        assertEquals(0, service.getCount(flagged));
+
+        database.getDatabase().execSQL("UPDATE tasks SET importance = 3");
+        Metadata metadata = new Metadata();
+        metadata.setValue(Metadata.KEY, "flag");
+        metadata.setValue(Metadata.TASK, task.getId());
+        metadataDao.persist(metadata);
+
+        assertTrue(service.recomputeStale());
+        assertEquals(1, service.getCount(flagged));
+        // the tasks filter doesn't read metadata and wasn't recounted
+        assertEquals(1, service.getCount(important));
+    }
+
+    public void testCombinedCountsMatchSeparateCounts() {
+        Task first = createTask(0);
+        Task second = createTask(1);
+        createTask(2);
+        for(Task task : new Task[] { first, second }) {
+            Metadata metadata = new Metadata();
+            metadata.setValue(Metadata.KEY, "tag");
+            metadata.setValue(Metadata.TASK, task.getId());
+            metadata.setValue(Metadata.VALUE1, "frogs");
+            metadataDao.persist(metadata);
+        }
+
+        String join = "INNER JOIN metadata AS mtags ON (tasks._id = mtags.task) ";
+        Filter[] filters = new Filter[] {
+            important, flagged,
+            new Filter("all", "all", "ORDER BY tasks.title", null),
+            new Filter("frogs", "frogs", join + "WHERE mtags.key = 'tag' AND mtags.value = 'frogs'", null),
+            new Filter("important frogs", "important frogs", join +
+                    "WHERE mtags.key = 'tag' AND mtags.value = 'frogs' AND tasks.importance = 0", null),
+            new Filter("grouped", "grouped", "WHERE tasks.importance < 2 GROUP BY tasks.importance", null),
+        };
+        for(Filter filter : filters)
+            service.getCount(filter);
+        service.recomputeStale();
+
+        for(Filter filter : filters)
+            assertEquals(filter.title, taskService.countTasks(filter), service.getCount(filter));
+    }
+
+    public void testAdjustAndInvalidate() {
+        createTask(0);
+        assertEquals(-1, service.adjustCount(important, 1));
+        service.getCount(important);
+        service.recomputeStale();
+
+        assertEquals(2, service.adjustCount(important, 1));
+        assertEquals(2, service.getCount(important));
+
+        service.invalidate(important);
+        assertTrue(service.recomputeStale());
+        assertEquals(1, service.getCount(important));
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.service;
+
+import android.content.ContentValues;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.andlib.utility.DateUtilities;
+import com.todoroo.astrid.dao.MetadataDao;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Metadata;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.data.User;
+import com.todoroo.astrid.service.TaskListChangeTracker.Changes;
+import com.todoroo.astrid.tags.TaskToTagMetadata;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class TaskListChangeTrackerTests extends DatabaseTestCase {
+
+    private static final String QUERY = "WHERE tasks.completed = 0 ORDER BY tasks.sortScore";
+
+    @Autowired
+    TaskDao taskDao;
+
+    @Autowired
+    MetadataDao metadataDao;
+
+    private TaskListChangeTracker tracker;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tracker = new TaskListChangeTracker();
+        tracker.attach();
+        tracker.reset(QUERY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        tracker.detach();
+        super.tearDown();
+    }
+
+    private Task createTask(String title) {
+        Task task = new Task();
+        task.setValue(Task.TITLE, title);
+        taskDao.createNew(task);
+        return task;
+    }
+
+    public void testAttachingRequiresRequery() {
+        TaskListChangeTracker other = new TaskListChangeTracker();
+        other.attach();
+        try {
+            assertTrue(other.takeChanges().requery);
+            assertTrue(other.takeChanges().isEmpty());
+        } finally {
+            other.detach();
+        }
+    }
+
+    public void testInsertsRequireRequery() {
+        createTask("new");
+        assertTrue(tracker.takeChanges().requery);
+        assertTrue(tracker.takeChanges().isEmpty());
+    }
+
+    public void testSavesOfOtherColumnsArePatched() {
+        Task first = createTask("first");
+        Task second = createTask("second");
+        tracker.reset(QUERY);
+
+        first.setValue(Task.TITLE, "renamed");
+        taskDao.save(first);
+        Task template = new Task();
+        template.setValue(Task.NOTES, "notes");
+        taskDao.update(Task.ID.eq(second.getId()), template);
+
+        Changes changes = tracker.takeChanges();
+        assertFalse(changes.requery);
+        assertEquals(2, changes.ids.length);
+        assertTrue(tracker.takeChanges().isEmpty());
+    }
+
+    public void testSavesOfQueriedColumnsRequireRequery() {
+        Task task = createTask("task");
+        tracker.reset(QUERY);
+
+        task.setValue(Task.COMPLETION_DATE, DateUtilities.now());
+        taskDao.save(task);
+        assertTrue(tracker.takeChanges().requery);
+    }
+
+    public void testSortScoreInputsRequireRequery() {
+        Task task = createTask("task");
+        tracker.reset(QUERY);
+
+        Task template = new Task();
+        template.setValue(Task.IMPORTANCE, Task.IMPORTANCE_DO_OR_DIE);
+        taskDao.update(Task.ID.eq(task.getId()), template);
+        assertTrue(tracker.takeChanges().requery);
+    }
+
+    public void testUpdatesWithoutIdsRequireRequery() {
+        createTask("task");
+        tracker.reset(QUERY);
+
+        database.update(Task.TABLE.name, notesValues(), null, null);
+        assertTrue(tracker.takeChanges().requery);
+    }
+
+    public void testTagLinksArePatched() {
+        Task task = createTask("task");
+        tracker.reset(QUERY);
+
+        Metadata link = new Metadata();
+        link.setValue(Metadata.KEY, TaskToTagMetadata.KEY);
+        link.setValue(Metadata.TASK, task.getId());
+        link.setValue(TaskToTagMetadata.TAG_NAME, "tag");
+        metadataDao.persist(link);
+
+        Changes changes = tracker.takeChanges();
+        assertFalse(changes.requery);
+        assertEquals(1, changes.ids.length);
+        assertEquals(task.getId(), changes.ids[0]);
+    }
+
+    public void testOtherMetadataIsIgnored() {
+        Task task = createTask("task");
+        tracker.reset(QUERY);
+
+        Metadata metadata = new Metadata();
+        metadata.setValue(Metadata.KEY, "other");
+        metadata.setValue(Metadata.TASK, task.getId());
+        metadataDao.persist(metadata);
+        assertTrue(tracker.takeChanges().isEmpty());
+    }
+
+    public void testUserPicturesRequireRequery() {
+        ContentValues user = new ContentValues();
+        user.put(User.UUID.name, "1");
+        user.put(User.NAME.name, "user");
+        database.insert(User.TABLE.name, null, user);
+        tracker.reset(QUERY);
+
+        ContentValues name = new ContentValues();
+        name.put(User.NAME.name, "renamed");
+        database.update(User.TABLE.name, name, null, null);
+        assertTrue(tracker.takeChanges().isEmpty());
+
+        ContentValues picture = new ContentValues();
+        picture.put(User.PICTURE.name, "http://example.com/user.png");
+        database.update(User.TABLE.name, picture, null, null);
+        assertTrue(tracker.takeChanges().requery);
+    }
+
+    private ContentValues notesValues() {
+        ContentValues values = new ContentValues();
+        values.put(Task.NOTES.name, "notes");
+        return values;
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2012 Todoroo Inc
+ *
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package com.todoroo.astrid.widget;
+
+import java.util.List;
+
+import com.todoroo.andlib.service.Autowired;
+import com.todoroo.astrid.dao.TaskDao;
+import com.todoroo.astrid.data.Task;
+import com.todoroo.astrid.test.DatabaseTestCase;
+
+@SuppressWarnings("nls")
+public class WidgetTaskCacheTests extends DatabaseTestCase {
+
+    @Autowired
+    TaskDao taskDao;
+
+    private WidgetTaskCache cache;
+
+    private static final String QUERY = "WHERE tasks.importance = 0 ORDER BY tasks.title LIMIT 5";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new WidgetTaskCache();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cache.detach();
+        super.tearDown();
+    }
+
+    private Task createTask(String title, int importance) {
+        Task task = new Task();
+        task.setValue(Task.TITLE, title);
+        task.setValue(Task.IMPORTANCE, importance);
+        taskDao.createNew(task);
+        return task;
+    }
+
+    public void testResultsAreShared() {
+        createTask("b", 0);
+        createTask("a", 0);
+        createTask("c", 1);
+
+        List<Task> tasks = cache.getTasks(QUERY);
+        assertEquals(2, tasks.size());
+        assertEquals("a", tasks.get(0).getValue(Task.TITLE));
+        assertSame(tasks, cache.getTasks(QUERY));
+    }
+
+    public void testTaskWritesDropResults() {
+        Task task = createTask("a", 0);
+        List<Task> tasks = cache.getTasks(QUERY);
+        assertEquals(1, tasks.size());
+
+        task.setValue(Task.IMPORTANCE, 2);
+        taskDao.save(task);
+        assertEquals(0, cache.getTasks(QUERY).size());
+    }
+
+    public void testOtherTablesOnlyDropQueriesReadingThem() {
+        createTask("a", 0);
+        String flagged = "WHERE tasks._id IN (SELECT task FROM metadata) LIMIT 5";
+        List<Task> tasks = cache.getTasks(QUERY);
+        List<Task> flaggedTasks = cache.getTasks(flagged);
+
+        cache.invalidate("metadata");
+        assertSame(tasks, cache.getTasks(QUERY));
+        assertNotSame(flaggedTasks, cache.getTasks(flagged));
+    }
+
+}